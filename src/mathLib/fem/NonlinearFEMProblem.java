@@ -0,0 +1,59 @@
+package mathLib.fem;
+
+import mathLib.matrix.algebra.SparseMatrixCSR;
+
+/**
+ * Discrete nonlinear (e.g. Navier-Stokes) problem solved by <tt>NonlinearFEMSolver</tt>:
+ * <blockquote><pre>
+ * A(u)*u = b(u),   A(u) = A0 + A1(u),   b(u) = b0 + bt(u_old) + b1(u)
+ * </pre></blockquote>
+ * The weak form is split into the terms which do not depend on the solution (diffusion,
+ * mass, pressure coupling), assembled once, and the ones which do (convection with the
+ * previous iterate), assembled at every nonlinear iteration.
+ * <p>
+ * All the matrices are created by the same <tt>SparsityPattern</tt>, e.g. with
+ * <tt>BasicAssembler.assembleGlobal(SparsityPattern, SparseMatrixCSR, double[])</tt>.
+ * They are zero when passed to the methods, which only accumulate their entries.
+ * Vectors are indexed from 0.
+ *
+ */
+public interface NonlinearFEMProblem {
+
+	/**
+	 * Assemble <tt>A0</tt> and <tt>b0</tt>, the terms independent of the solution and of the time step
+	 *
+	 * @param A
+	 * @param b
+	 */
+	void assembleLinear(SparseMatrixCSR A, double[] b);
+
+	/**
+	 * Assemble <tt>A1(u)</tt> and <tt>b1(u)</tt>, the terms depending on the current iterate <tt>u</tt>
+	 *
+	 * @param u
+	 * @param A
+	 * @param b
+	 */
+	void assembleNonlinear(double[] u, SparseMatrixCSR A, double[] b);
+
+	/**
+	 * Assemble <tt>bt(u_old)</tt>, the terms depending on the solution of the previous
+	 * time step only, e.g. <tt>M*u_old/dt</tt>. Called once per time step.
+	 *
+	 * @param uOld
+	 * @param b
+	 */
+	default void assembleTimeStep(double[] uOld, double[] b) {
+	}
+
+	/**
+	 * Newton method: assemble <tt>d(A1(u)*u - b1(u))/du - A1(u)</tt>, so that the Jacobian of
+	 * the residual is <tt>A(u) + J</tt>. For the convection <tt>(U.grad)u</tt> it is <tt>(u.grad)U</tt>.
+	 *
+	 * @param u
+	 * @param J
+	 */
+	default void assembleJacobian(double[] u, SparseMatrixCSR J) {
+		throw new UnsupportedOperationException("Newton method needs assembleJacobian()");
+	}
+}
@@ -0,0 +1,402 @@
+package mathLib.fem;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import mathLib.fem.assembler.SparsityPattern;
+import mathLib.fem.util.FutureyeException;
+import mathLib.matrix.algebra.FullVector;
+import mathLib.matrix.algebra.SparseMatrixCSR;
+import mathLib.matrix.algebra.intf.AlgebraMatrix;
+import mathLib.matrix.algebra.intf.AlgebraVector;
+import mathLib.matrix.algebra.solver.Preconditioner;
+import mathLib.matrix.algebra.solver.Solver;
+import mathLib.matrix.algebra.solver.SolverStatistics;
+import mathLib.matrix.algebra.solver.SparseLU;
+
+/**
+ * Picard or Newton iterations for a <tt>NonlinearFEMProblem</tt>, steady (<tt>solve()</tt>) or
+ * one time step after the other (<tt>step()</tt>).
+ * <p>
+ * Everything which does not change between the iterations is kept:
+ * <ul>
+ * <li> the matrices share the index arrays of one <tt>SparsityPattern</tt>, the system matrix is
+ *      <tt>A0 + A1(u)</tt> added value by value
+ * <li> <tt>A0</tt> and <tt>b0</tt> are assembled once (until <tt>resetLinear()</tt>), only
+ *      <tt>A1(u)</tt> and <tt>b1(u)</tt> are assembled at each iteration
+ * <li> the Dirichlet rows are replaced in place, with the DOFs given once
+ * <li> the sparse LU factorization of a previous iteration (or time step) preconditions GMRES,
+ *      which starts from the previous iterate. The matrix is factorized again only when GMRES needs
+ *      more than <tt>maxLinearIterations</tt> or fails, so that close to convergence most
+ *      iterations cost a few triangular solves instead of a factorization.
+ * </ul>
+ * Usage:
+ * <blockquote><pre>
+ * NonlinearFEMSolver solver = new NonlinearFEMSolver(pattern, problem);
+ * solver.setDirichlet(diriIndex, diriValues);
+ * for(int t=1; t<=nSteps; t++)
+ *     u = solver.step(u);
+ * </pre></blockquote>
+ *
+ */
+public class NonlinearFEMSolver {
+	public enum Method { PICARD, NEWTON }
+
+	protected SparsityPattern pattern;
+	protected NonlinearFEMProblem problem;
+	protected int dim;
+
+	protected Method method = Method.PICARD;
+	protected double tolerance = 1e-6;
+	protected int maxIterations = 30;
+	protected boolean reuseFactorization = true;
+	protected int maxLinearIterations = 20;
+	protected double linearTolerance = 1e-10;
+
+	protected SparseMatrixCSR A0, A1, A, J;
+	protected double[] b0, bt, b1, b;
+	protected boolean linearAssembled = false;
+
+	protected boolean[] isDiri;
+	protected double[] diriValue;
+
+	protected SparseLU lu = new SparseLU();
+	protected boolean factorized = false;
+	protected Solver linearSolver = new Solver();
+
+	//statistics
+	protected int iterations = 0;
+	protected boolean converged = false;
+	protected double lastUpdate = 0.0;
+	protected int numNonlinearAssemblies = 0;
+	protected int numFactorizations = 0;
+	protected int numLinearSolves = 0;
+	protected int numLinearIterations = 0;
+
+	public NonlinearFEMSolver(SparsityPattern pattern, NonlinearFEMProblem problem) {
+		this.pattern = pattern;
+		this.problem = problem;
+		this.dim = pattern.getDim();
+		A0 = pattern.createMatrix();
+		A1 = pattern.createMatrix();
+		A = pattern.createMatrix();
+		b0 = new double[dim];
+		bt = new double[dim];
+		b1 = new double[dim];
+		b = new double[dim];
+		isDiri = new boolean[dim];
+		diriValue = new double[dim];
+		linearSolver.epsRelIter = linearTolerance;
+		linearSolver.epsAbsIterMax = Double.MAX_VALUE;
+		linearSolver.maxIter = maxLinearIterations;
+	}
+
+	public void setMethod(Method method) {
+		this.method = method;
+	}
+
+	/**
+	 * Stop when <tt>||u_{k+1}-u_k|| <= tolerance*||u_{k+1}||</tt>
+	 */
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * If false, the matrix is factorized at every iteration and solved directly
+	 *
+	 * @param reuseFactorization
+	 */
+	public void setReuseFactorization(boolean reuseFactorization) {
+		this.reuseFactorization = reuseFactorization;
+	}
+
+	/**
+	 * Number of GMRES iterations preconditioned by an old factorization above which
+	 * the matrix is factorized again
+	 *
+	 * @param maxLinearIterations
+	 */
+	public void setMaxLinearIterations(int maxLinearIterations) {
+		this.maxLinearIterations = maxLinearIterations;
+		this.linearSolver.maxIter = maxLinearIterations;
+	}
+
+	/**
+	 * The preconditioned GMRES stops when <tt>||b-A*x|| <= linearTolerance*||b||</tt>, where <tt>b</tt> is
+	 * the right hand side <tt>b(u)</tt> of the nonlinear problem. The initial residual of a warm start is
+	 * already small, so it is not used as the reference.
+	 *
+	 * @param linearTolerance
+	 */
+	public void setLinearTolerance(double linearTolerance) {
+		this.linearTolerance = linearTolerance;
+		this.linearSolver.epsRelIter = linearTolerance;
+	}
+
+	/**
+	 * Preconditioned GMRES, e.g. to get its statistics
+	 */
+	public Solver getLinearSolver() {
+		return linearSolver;
+	}
+
+	/**
+	 * Dirichlet conditions <tt>u(matIndex[k]) = values[k]</tt>, 1-based indices as in
+	 * <tt>Utils.setDirichlet()</tt>
+	 *
+	 * @param matIndex
+	 * @param values
+	 */
+	public void setDirichlet(int[] matIndex, double[] values) {
+		for(int k=0; k<matIndex.length; k++) {
+			int i = matIndex[k]-1;
+			if(i < 0 || i >= dim)
+				throw new FutureyeException("Dirichlet DOF index "+matIndex[k]+" exceeds dimension [1,"+dim+"]");
+			isDiri[i] = true;
+			diriValue[i] = values[k];
+		}
+	}
+
+	public void setDirichlet(Map<Integer,Double> diriValues) {
+		for(Entry<Integer,Double> e : diriValues.entrySet())
+			setDirichlet(new int[] {e.getKey()}, new double[] {e.getValue()});
+	}
+
+	/**
+	 * Assemble <tt>A0</tt> and <tt>b0</tt> again at the next iteration, e.g. after a change of the time step
+	 */
+	public void resetLinear() {
+		linearAssembled = false;
+		factorized = false;
+	}
+
+	/**
+	 * Solve the steady problem
+	 *
+	 * @param u0 initial guess, not modified
+	 * @return
+	 */
+	public double[] solve(double[] u0) {
+		Arrays.fill(bt, 0.0);
+		return iterate(u0);
+	}
+
+	/**
+	 * Advance one time step: <tt>bt(uOld)</tt> is assembled once, the iterations start from <tt>uOld</tt>
+	 *
+	 * @param uOld solution of the previous time step, not modified
+	 * @return
+	 */
+	public double[] step(double[] uOld) {
+		Arrays.fill(bt, 0.0);
+		problem.assembleTimeStep(uOld, bt);
+		return iterate(uOld);
+	}
+
+	protected double[] iterate(double[] u0) {
+		if(!linearAssembled) {
+			A0.zeroData();
+			Arrays.fill(b0, 0.0);
+			problem.assembleLinear(A0, b0);
+			linearAssembled = true;
+		}
+		double[] u = u0.clone();
+		for(int i=0; i<dim; i++)
+			if(isDiri[i])
+				u[i] = diriValue[i];
+		double[] x = new double[dim];
+		converged = false;
+		for(iterations=0; iterations<maxIterations && !converged; ) {
+			iterations++;
+			assembleSystem(u);
+			double bNorm = 0.0;
+			for(int i=0; i<dim; i++)
+				bNorm += b[i]*b[i];
+			linearSolver.epsAbsIterMin = linearTolerance*Math.sqrt(bNorm);
+			double diff = 0.0, norm = 0.0;
+			if(method == Method.PICARD) {
+				//A(u)*x = b(u), from x = u
+				imposeDirichlet(A, b, null);
+				System.arraycopy(u, 0, x, 0, dim);
+				solveLinear(A, b, x);
+				for(int i=0; i<dim; i++) {
+					diff += (x[i]-u[i])*(x[i]-u[i]);
+					norm += x[i]*x[i];
+				}
+				System.arraycopy(x, 0, u, 0, dim);
+			} else {
+				//(A(u)+J(u))*dx = b(u) - A(u)*u
+				if(J == null)
+					J = pattern.createMatrix();
+				J.zeroData();
+				problem.assembleJacobian(u, J);
+				double[] dJ = J.getData();
+				double[] dA = A.getData();
+				for(int k=dJ.length; --k>=0;)
+					dJ[k] += dA[k];
+				A.mult(u, x);
+				for(int i=0; i<dim; i++)
+					b[i] -= x[i];
+				imposeDirichlet(J, b, u);
+				Arrays.fill(x, 0.0);
+				solveLinear(J, b, x);
+				for(int i=0; i<dim; i++) {
+					u[i] += x[i];
+					diff += x[i]*x[i];
+					norm += u[i]*u[i];
+				}
+			}
+			lastUpdate = Math.sqrt(diff/Math.max(norm, Double.MIN_VALUE));
+			converged = lastUpdate <= tolerance;
+		}
+		return u;
+	}
+
+	/**
+	 * A = A0 + A1(u), b = b0 + bt + b1(u)
+	 */
+	protected void assembleSystem(double[] u) {
+		A1.zeroData();
+		Arrays.fill(b1, 0.0);
+		problem.assembleNonlinear(u, A1, b1);
+		numNonlinearAssemblies++;
+		double[] d = A.getData();
+		double[] d0 = A0.getData();
+		double[] d1 = A1.getData();
+		for(int k=d.length; --k>=0;)
+			d[k] = d0[k] + d1[k];
+		for(int i=0; i<dim; i++)
+			b[i] = b0[i] + bt[i] + b1[i];
+	}
+
+	/**
+	 * Unit rows for the Dirichlet DOFs, with the right hand side <tt>g</tt>, or <tt>g-u</tt> for a correction
+	 */
+	protected void imposeDirichlet(SparseMatrixCSR M, double[] rhs, double[] u) {
+		int[] rowPtr = M.getRowPointers();
+		int[] colIndex = M.getColIndices();
+		double[] data = M.getData();
+		for(int r=0; r<dim; r++) {
+			if(!isDiri[r])
+				continue;
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++)
+				data[k] = colIndex[k] == r ? 1.0 : 0.0;
+			rhs[r] = u == null ? diriValue[r] : diriValue[r] - u[r];
+		}
+	}
+
+	/**
+	 * Solve M*x = rhs with x as initial guess, by GMRES preconditioned by the last
+	 * factorization if it is still good enough, by a new factorization otherwise
+	 */
+	protected void solveLinear(SparseMatrixCSR M, double[] rhs, double[] x) {
+		numLinearSolves++;
+		if(reuseFactorization && factorized) {
+			FullVector vb = new FullVector(rhs, false);
+			FullVector vx = new FullVector(x, false);
+			Preconditioner P = (r, z) -> lu.solve(r.getData(), z.getData());
+			linearSolver.solveGMRES(new CSROperator(M), vb, vx, P);
+			SolverStatistics stat = linearSolver.getStatistics();
+			numLinearIterations += stat.getIterations();
+			if(stat.isConverged() && stat.getIterations() < maxLinearIterations)
+				return;
+			if(stat.isConverged()) {
+				//still accurate, but a new factorization is worth it for the next solves
+				factorize(M);
+				return;
+			}
+		}
+		factorize(M);
+		lu.solve(rhs, x);
+	}
+
+	protected void factorize(SparseMatrixCSR M) {
+		lu.factorize(M);
+		factorized = true;
+		numFactorizations++;
+	}
+
+	/**
+	 * <tt>SparseMatrixCSR</tt> as an <tt>AlgebraMatrix</tt> for the iterative solvers, without copy
+	 */
+	protected static class CSROperator implements AlgebraMatrix {
+		SparseMatrixCSR M;
+
+		CSROperator(SparseMatrixCSR M) {
+			this.M = M;
+		}
+
+		@Override
+		public int getRowDim() {
+			return M.getRowDim();
+		}
+
+		@Override
+		public int getColDim() {
+			return M.getColDim();
+		}
+
+		@Override
+		public void mult(AlgebraVector x, AlgebraVector y) {
+			M.mult(x.getData(), y.getData());
+		}
+
+		@Override
+		public void mult(AlgebraMatrix B, AlgebraMatrix C) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public AlgebraMatrix getTrans() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void print() {
+			M.print();
+		}
+	}
+
+	/**
+	 * Number of iterations of the last <tt>solve()</tt> or <tt>step()</tt>
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	public boolean isConverged() {
+		return converged;
+	}
+
+	/**
+	 * Relative size of the last update <tt>||u_{k+1}-u_k||/||u_{k+1}||</tt>
+	 */
+	public double getLastUpdate() {
+		return lastUpdate;
+	}
+
+	public int getNumberOfNonlinearAssemblies() {
+		return numNonlinearAssemblies;
+	}
+
+	public int getNumberOfFactorizations() {
+		return numFactorizations;
+	}
+
+	public int getNumberOfLinearSolves() {
+		return numLinearSolves;
+	}
+
+	/**
+	 * Total number of GMRES iterations preconditioned by a reused factorization
+	 */
+	public int getNumberOfLinearIterations() {
+		return numLinearIterations;
+	}
+}
@@ -1,5 +1,6 @@
 package mathLib.fem.assembler;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -22,6 +23,7 @@ import mathLib.fem.core.intf.AssemblerOld;
 import mathLib.fem.core.intf.WeakFormOld;
 import mathLib.fem.core.intf.WeakFormOld.ItemType;
 import mathLib.fem.util.FutureyeException;
+import mathLib.fem.util.Utils;
 import mathLib.fem.util.container.DOFList;
 import mathLib.fem.util.container.ElementList;
 import mathLib.fem.util.container.VertexList;
@@ -42,6 +44,7 @@ public class AssemblerScalar implements AssemblerOld {
 	protected SparseMatrix globalStiff;
 	protected SparseVector globalLoad;
 	private boolean printInfo = true;
+	protected boolean symmetricDirichlet = true;
 
 	public AssemblerScalar(Mesh mesh, WeakFormOld weakForm) {
 		this.mesh = mesh;
@@ -51,6 +54,23 @@ public class AssemblerScalar implements AssemblerOld {
 		globalStiff = new SparseMatrixRowMajor(dim,dim);
 		globalLoad = new SparseVectorHashMap(dim);
 	}
+
+	/**
+	 * The global stiff matrix is created from a precomputed sparsity pattern, so that
+	 * all entries added during assembly already exist in the matrix. The same pattern
+	 * can be passed to every assembler on the same mesh, e.g. in each time step.
+	 *
+	 * @param mesh
+	 * @param weakForm
+	 * @param pattern see <tt>SparsityPattern(Mesh, int)</tt>
+	 */
+	public AssemblerScalar(Mesh mesh, WeakFormOld weakForm, SparsityPattern pattern) {
+		this.mesh = mesh;
+		this.weakForm = weakForm;
+
+		globalStiff = pattern.createMatrix();
+		globalLoad = new SparseVectorHashMap(pattern.getDim());
+	}
 	
 	@Override
 	public SparseMatrix getStiffnessMatrix() {
@@ -112,6 +132,17 @@ public class AssemblerScalar implements AssemblerOld {
 		this.printInfo = flag;
 	}
 
+	/**
+	 * If true (default), <tt>imposeDirichletCondition()</tt> also eliminates the columns of the
+	 * Dirichlet DOFs so that a symmetric stiff matrix stays symmetric (required by CG).
+	 * If false, only the rows are replaced, which is cheaper.
+	 *
+	 * @param flag
+	 */
+	public void setSymmetricDirichlet(boolean flag) {
+		this.symmetricDirichlet = flag;
+	}
+
 	
 	protected void setDirichlet(int matIndex, double value) {
 		int row = matIndex;
@@ -134,6 +165,8 @@ public class AssemblerScalar implements AssemblerOld {
 	@SuppressWarnings({ "rawtypes" })
 	@Override
 	public void imposeDirichletCondition(MathFunc diri) {
+		//collect all the Dirichlet DOFs, then eliminate them in one pass
+		Map<Integer,Double> diriValues = new HashMap<Integer,Double>();
 		ElementList eList = mesh.getElementList();
 		for(int i=1;i<=eList.size();i++) {
 			Element e = eList.at(i);
@@ -145,7 +178,7 @@ public class AssemblerScalar implements AssemblerOld {
 					Node n = (Node)ge;
 					if(n.getNodeType() == NodeType.Dirichlet) {
 						Variable v = Variable.createFrom(diri, n, n.globalIndex); 
-						setDirichlet(dof.getGlobalIndex(),diri.apply(v));
+						diriValues.put(dof.getGlobalIndex(),diri.apply(v));
 					}
 				} else if(ge instanceof EdgeLocal) {
 					EdgeLocal edge = (EdgeLocal)ge;
@@ -162,7 +195,7 @@ public class AssemblerScalar implements AssemblerOld {
 						Node n = vs.at(k).globalNode();
 						if(NodeType.Dirichlet == n.getNodeType()) {
 							Variable v = Variable.createFrom(diri, n, 0);
-							setDirichlet(dof.getGlobalIndex(),diri.apply(v));
+							diriValues.put(dof.getGlobalIndex(),diri.apply(v));
 						}
 					}
 				} else if(ge instanceof Face) {
@@ -172,7 +205,7 @@ public class AssemblerScalar implements AssemblerOld {
 						Node n = vs.at(k).globalNode();
 						if(NodeType.Dirichlet == n.getNodeType()) {
 							Variable v = Variable.createFrom(diri, n, 0);
-							setDirichlet(dof.getGlobalIndex(),diri.apply(v));
+							diriValues.put(dof.getGlobalIndex(),diri.apply(v));
 						}
 					}
 				} else if(ge instanceof Volume) {
@@ -181,12 +214,13 @@ public class AssemblerScalar implements AssemblerOld {
 						Node n = vs.at(k).globalNode();
 						if(NodeType.Dirichlet == n.getNodeType()) {
 							Variable v = Variable.createFrom(diri, n, 0);
-							setDirichlet(dof.getGlobalIndex(),diri.apply(v));
+							diriValues.put(dof.getGlobalIndex(),diri.apply(v));
 						}
 					}
 				}
 			}
 		}
+		Utils.setDirichlet(globalStiff, globalLoad, diriValues, symmetricDirichlet);
 	}
 	
 	public void assembleGlobal(Element e, Matrix stiff, Vector load) {
@@ -1,15 +1,27 @@
 package mathLib.fem.assembler;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import mathLib.fem.core.Element;
 import mathLib.fem.core.Mesh;
 import mathLib.fem.core.intf.FiniteElement;
+import mathLib.fem.util.FutureyeException;
 import mathLib.fem.util.container.ElementList;
 import mathLib.fem.weakform.WeakForm;
 import mathLib.func.symbolic.operator.FOIntegrate;
+import mathLib.matrix.algebra.SparseMatrixCSR;
 import mathLib.matrix.algebra.SparseMatrixRowMajor;
 import mathLib.matrix.algebra.SparseVectorHashMap;
 import mathLib.matrix.algebra.intf.Matrix;
+import mathLib.matrix.algebra.intf.MatrixEntry;
 import mathLib.matrix.algebra.intf.Vector;
+import mathLib.util.CompiledKernel;
 
 public class BasicAssembler {
 	public Mesh mesh;
@@ -19,10 +31,17 @@ public class BasicAssembler {
 	public double[] b;   // domain local load vector
 	double[] params;
 	int nDOFs;
+	double[] local; // output of the compiled kernel
+	AssembleParam ap;
 
 	Matrix gA; // global stiff matrix
 	Vector gb; // global load vector
 
+	// parallel assembly
+	int nThreads = Runtime.getRuntime().availableProcessors();
+	ExecutorService executor = null;
+	BasicAssembler[] workers = null;
+
 	public BasicAssembler(Mesh mesh, WeakForm weakForm) {
 		this.mesh = mesh;
 		this.weakForm = weakForm;
@@ -30,6 +49,7 @@ public class BasicAssembler {
 		A = new double[nDOFs][nDOFs];
 		b = new double[nDOFs];
 		params = new double[weakForm.getFiniteElement().getArgsOrder().length];
+		local = new double[nDOFs*nDOFs+nDOFs];
 	}
 
 	/**
@@ -46,6 +66,27 @@ public class BasicAssembler {
 
 		weakForm.getCompiledJac().apply(params);
 
+		CompiledKernel kernel = weakForm.getCompiledKernel();
+		if(kernel != null) {
+			//all the entries at once, one call per quadrature point
+			if(ap == null)
+				ap = new AssembleParam(e, -1, -1);
+			ap.element = e;
+			Arrays.fill(local, 0.0);
+			if(fe.getNumberOfDOFs() == 2)
+				FOIntegrate.intOnLinearRefElement(kernel, ap, params, coords.length, 5, local);
+			else if(fe.getNumberOfDOFs() == 3)
+				FOIntegrate.intOnTriangleRefElement(kernel, ap, params, coords.length, 2, local);
+			else if(fe.getNumberOfDOFs() == 4)
+				FOIntegrate.intOnRectangleRefElement(kernel, ap, params, coords.length, 5, local);
+			int n = nDOFs*nDOFs;
+			for(int j=0; j<nDOFs; j++) {
+				System.arraycopy(local, j*nDOFs, A[j], 0, nDOFs);
+				b[j] = local[n+j];
+			}
+			return;
+		}
+
 		if(fe.getNumberOfDOFs() == 2) {
 		for(int j=0;j<nDOFs;j++) {
 			for(int i=0;i<nDOFs;i++) {
@@ -123,6 +164,282 @@ public class BasicAssembler {
 		this.gb = load;
 	}
 
+	/**
+	 * Assemble global stiff matrix and load vector into a new matrix with the
+	 * precomputed sparsity pattern. Use <tt>getGlobalStiffMatrix()</tt> and
+	 * <tt>getGlobalLoadVector()</tt> to access them.
+	 *
+	 * @param pattern
+	 */
+	public void assembleGlobal(SparsityPattern pattern) {
+		gA = pattern.createMatrix();
+		gb = new SparseVectorHashMap(pattern.getDim());
+		assembleGlobal(pattern, (SparseMatrixCSR)gA, gb);
+	}
+
+	/**
+	 * Numeric phase of the assembly: local values are added directly at the positions
+	 * given by the scatter map of <tt>pattern</tt>, no index search or insertion takes place.
+	 * <p>
+	 * <tt>stiff</tt> must be created by <tt>pattern.createMatrix()</tt>. Values are accumulated,
+	 * call <tt>stiff.zeroData()</tt> to reuse the same matrix for a new assembly.
+	 *
+	 * @param pattern
+	 * @param stiff
+	 * @param load
+	 */
+	public void assembleGlobal(SparsityPattern pattern, SparseMatrixCSR stiff, Vector load) {
+		if(!pattern.isPatternOf(stiff))
+			throw new FutureyeException("Matrix "+stiff.getName()+" is not created by the given sparsity pattern!");
+		if(pattern.getNumberOfElements() != mesh.getElementList().size())
+			throw new FutureyeException("Sparsity pattern does not match the mesh!");
+		double[] data = stiff.getData();
+		ElementList eList = mesh.getElementList();
+		int k = 0;
+		for(Element e : eList) {
+			assembleLocal(e);
+
+			int[] pos = pattern.getElementPositions(k);
+			int[] dofs = pattern.getElementDOFs(k);
+			for(int j=0;j<nDOFs;j++) {
+				int base = j*nDOFs;
+				for(int i=0;i<nDOFs;i++) {
+					data[pos[base+i]] += A[j][i];
+				}
+				//Local load vector
+				load.add(dofs[j]+1, b[j]);
+			}
+			k++;
+		}
+		//update gA and gb
+		this.gA = stiff;
+		this.gb = load;
+	}
+
+	/**
+	 * Numeric phase of the assembly into a load vector indexed from 0, e.g. for
+	 * <tt>NonlinearFEMProblem</tt>. <tt>getGlobalLoadVector()</tt> is not updated.
+	 *
+	 * @param pattern
+	 * @param stiff must be created by <tt>pattern.createMatrix()</tt>
+	 * @param load
+	 */
+	public void assembleGlobal(SparsityPattern pattern, SparseMatrixCSR stiff, double[] load) {
+		if(!pattern.isPatternOf(stiff))
+			throw new FutureyeException("Matrix "+stiff.getName()+" is not created by the given sparsity pattern!");
+		if(pattern.getNumberOfElements() != mesh.getElementList().size())
+			throw new FutureyeException("Sparsity pattern does not match the mesh!");
+		double[] data = stiff.getData();
+		ElementList eList = mesh.getElementList();
+		int k = 0;
+		for(Element e : eList) {
+			assembleLocal(e);
+
+			int[] pos = pattern.getElementPositions(k);
+			int[] dofs = pattern.getElementDOFs(k);
+			for(int j=0;j<nDOFs;j++) {
+				int base = j*nDOFs;
+				for(int i=0;i<nDOFs;i++) {
+					data[pos[base+i]] += A[j][i];
+				}
+				load[dofs[j]] += b[j];
+			}
+			k++;
+		}
+		this.gA = stiff;
+	}
+
+	/**
+	 * Set the number of threads and the executor used by the parallel assembly.
+	 * If <tt>executor</tt> is null, a fixed thread pool is created for each call
+	 * of <tt>assembleGlobalParallel()</tt> and shut down afterwards.
+	 *
+	 * @param nThreads
+	 * @param executor
+	 */
+	public void setParallel(int nThreads, ExecutorService executor) {
+		if(nThreads < 1)
+			throw new FutureyeException("Number of threads must be positive: "+nThreads);
+		if(this.workers != null && this.workers.length != nThreads)
+			this.workers = null;
+		this.nThreads = nThreads;
+		this.executor = executor;
+	}
+
+	/**
+	 * One assembler per thread, each one with its own local buffers and compiled weak form
+	 */
+	protected BasicAssembler[] getWorkers() {
+		if(workers == null) {
+			workers = new BasicAssembler[nThreads];
+			for(int t=0; t<nThreads; t++)
+				workers[t] = new BasicAssembler(mesh, weakForm.compileCopy());
+		}
+		return workers;
+	}
+
+	/**
+	 * Return the executor set by <tt>setParallel()</tt>, or a new fixed thread pool which
+	 * must be released by <tt>releaseExecutor()</tt> at the end of the parallel assembly
+	 */
+	protected ExecutorService acquireExecutor() {
+		return this.executor != null ? this.executor : Executors.newFixedThreadPool(nThreads);
+	}
+
+	protected void releaseExecutor(ExecutorService exec) {
+		if(exec != this.executor)
+			exec.shutdown();
+	}
+
+	/**
+	 * Run <tt>task.run(t)</tt> for t=0...nThreads-1 on <tt>exec</tt> and wait for all of them
+	 */
+	protected void runWorkers(ExecutorService exec, WorkerTask task) {
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for(int t=0; t<nThreads; t++) {
+				final int tt = t;
+				futures.add(exec.submit(() -> task.run(tt)));
+			}
+			for(Future<?> f : futures)
+				f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new FutureyeException("Parallel assembly interrupted");
+		} catch (ExecutionException e) {
+			throw new FutureyeException("Parallel assembly failed: "+e.getCause());
+		}
+	}
+
+	interface WorkerTask {
+		void run(int thread);
+	}
+
+	/**
+	 * Parallel numeric assembly on a precomputed sparsity pattern.
+	 * <p>
+	 * Elements are processed colour by colour (see <tt>SparsityPattern.getElementColors()</tt>).
+	 * The elements of one colour are split among the threads and never share a DOF, so no two
+	 * threads write the same global row. Every global entry receives its contributions in the
+	 * order of the colours, the result is therefore bit-identical between runs and independent of
+	 * the number of threads (but it may differ from the sequential assembly in the last bits).
+	 *
+	 * @param pattern
+	 * @param stiff must be created by <tt>pattern.createMatrix()</tt>
+	 * @param load
+	 */
+	public void assembleGlobalParallel(SparsityPattern pattern, SparseMatrixCSR stiff, Vector load) {
+		if(!pattern.isPatternOf(stiff))
+			throw new FutureyeException("Matrix "+stiff.getName()+" is not created by the given sparsity pattern!");
+		if(pattern.getNumberOfElements() != mesh.getElementList().size())
+			throw new FutureyeException("Sparsity pattern does not match the mesh!");
+		final double[] data = stiff.getData();
+		final double[] loadData = new double[pattern.getDim()];
+		final Element[] elements = mesh.getElementList().toArray(new Element[0]);
+		final BasicAssembler[] ws = getWorkers();
+		//computed in advance, they are read concurrently
+		pattern.computeElementPositions();
+		int[][] colors = pattern.getElementColors();
+
+		//one pool for all the colours
+		ExecutorService exec = acquireExecutor();
+		try {
+			for(final int[] eles : colors) {
+				runWorkers(exec, t -> {
+					BasicAssembler w = ws[t];
+					int begin = (int)((long)eles.length*t/nThreads);
+					int end = (int)((long)eles.length*(t+1)/nThreads);
+					for(int m=begin; m<end; m++) {
+						int k = eles[m];
+						w.assembleLocal(elements[k]);
+						int[] pos = pattern.getElementPositions(k);
+						int[] dofs = pattern.getElementDOFs(k);
+						for(int j=0;j<nDOFs;j++) {
+							int base = j*nDOFs;
+							for(int i=0;i<nDOFs;i++) {
+								data[pos[base+i]] += w.A[j][i];
+							}
+							loadData[dofs[j]] += w.b[j];
+						}
+					}
+				});
+			}
+		} finally {
+			releaseExecutor(exec);
+		}
+		for(int i=0; i<loadData.length; i++) {
+			if(loadData[i] != 0.0)
+				load.add(i+1, loadData[i]);
+		}
+		//update gA and gb
+		this.gA = stiff;
+		this.gb = load;
+	}
+
+	/**
+	 * Parallel assembly into any matrix and vector.
+	 * <p>
+	 * The element list is split into <tt>nThreads</tt> contiguous chunks, each thread assembles its chunk
+	 * into a private <tt>SparseMatrixCSR</tt> and load array (per-thread partial accumulators). The partial
+	 * results are then added to <tt>stiff</tt> and <tt>load</tt> by the calling thread, chunk by chunk and in
+	 * increasing (row,column) order, so the result is bit-identical between runs with the same number of threads.
+	 *
+	 * @param stiff
+	 * @param load
+	 */
+	public void assembleGlobalParallel(Matrix stiff, Vector load) {
+		final int dim = this.weakForm.getFiniteElement().getTotalNumberOfDOFs(mesh);
+		final Element[] elements = mesh.getElementList().toArray(new Element[0]);
+		final BasicAssembler[] ws = getWorkers();
+		final SparseMatrixCSR[] partA = new SparseMatrixCSR[nThreads];
+		final double[][] partb = new double[nThreads][];
+
+		ExecutorService exec = acquireExecutor();
+		try {
+			runWorkers(exec, t -> {
+				BasicAssembler w = ws[t];
+				FiniteElement fe  = w.weakForm.getFiniteElement();
+				SparseMatrixCSR pA = new SparseMatrixCSR(dim, dim);
+				double[] pb = new double[dim];
+				int begin = (int)((long)elements.length*t/nThreads);
+				int end = (int)((long)elements.length*(t+1)/nThreads);
+				for(int k=begin; k<end; k++) {
+					Element e = elements[k];
+					w.assembleLocal(e);
+					for(int j=0;j<nDOFs;j++) {
+						int nGlobalRow = fe.getGlobalIndex(mesh, e, j+1);
+						for(int i=0;i<nDOFs;i++) {
+							int nGlobalCol = fe.getGlobalIndex(mesh, e, i+1);
+							pA.add(nGlobalRow, nGlobalCol, w.A[j][i]);
+						}
+						pb[nGlobalRow-1] += w.b[j];
+					}
+				}
+				pA.compact();
+				partA[t] = pA;
+				partb[t] = pb;
+			});
+		} finally {
+			releaseExecutor(exec);
+		}
+
+		//deterministic reduction
+		for(int t=0; t<nThreads; t++) {
+			for(MatrixEntry e : partA[t])
+				stiff.add(e.getRow(), e.getCol(), e.getValue());
+			partA[t] = null;
+			double[] pb = partb[t];
+			for(int i=0; i<dim; i++) {
+				if(pb[i] != 0.0)
+					load.add(i+1, pb[i]);
+			}
+			partb[t] = null;
+		}
+		//update gA and gb
+		this.gA = stiff;
+		this.gb = load;
+	}
+
 	public double[][] getLocalStiffMatrix() {
 		return A;
 	}
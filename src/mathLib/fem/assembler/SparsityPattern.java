@@ -0,0 +1,303 @@
+package mathLib.fem.assembler;
+
+import java.util.Arrays;
+
+import mathLib.fem.core.DOFOrder;
+import mathLib.fem.core.Element;
+import mathLib.fem.core.Mesh;
+import mathLib.fem.core.intf.FiniteElement;
+import mathLib.fem.util.FutureyeException;
+import mathLib.fem.util.container.DOFList;
+import mathLib.fem.util.container.ElementList;
+import mathLib.matrix.algebra.SparseMatrixCSR;
+
+/**
+ * Symbolic phase of the assembly: the sparsity pattern of a global stiff matrix
+ * <p>
+ * The pattern is fully determined by the element connectivity of a mesh and the local-to-global
+ * DOF index of the finite element. It is computed once in compressed row (CSR) form together
+ * with a scatter map, which gives for every element and every local entry (j,i) the position of the
+ * corresponding global entry in the value array. The numeric phase (e.g.
+ * <tt>BasicAssembler.assembleGlobal(SparsityPattern, SparseMatrixCSR, Vector)</tt>)
+ * then only adds local values at these positions, without any search or insertion.
+ * <p>
+ * A pattern can be reused for every re-assembly on the same mesh, for example in time-stepping
+ * and nonlinear iterations. All the matrices created by <tt>createMatrix()</tt> share the
+ * index arrays of the pattern.
+ *
+ */
+public class SparsityPattern {
+	protected int dim;
+
+	/**
+	 * CSR structure, 0-based indices, columns sorted within each row
+	 */
+	protected int[] rowPtr;
+	protected int[] colIndex;
+
+	/**
+	 * 0-based global DOF indices of each element, in the order of the element list
+	 */
+	protected int[][] elementDOFs;
+
+	/**
+	 * Scatter map, computed on demand:
+	 * elementPos[k][j*n+i] is the position of entry (elementDOFs[k][j],elementDOFs[k][i]) in the value array
+	 */
+	protected int[][] elementPos = null;
+
+	/**
+	 * Element colouring, computed on demand
+	 */
+	protected int[][] elementColors = null;
+
+	/**
+	 * Build the pattern from the local-to-global index of <tt>fe</tt> on <tt>mesh</tt>
+	 *
+	 * @param mesh
+	 * @param fe
+	 */
+	public SparsityPattern(Mesh mesh, FiniteElement fe) {
+		ElementList eList = mesh.getElementList();
+		int nDOFs = fe.getNumberOfDOFs();
+		int[][] dofs = new int[eList.size()][nDOFs];
+		int k = 0;
+		for(Element e : eList) {
+			//the assemblers reorder the vertices, do it before the local order is recorded
+			e.adjustVerticeToCounterClockwise();
+			for(int i=0; i<nDOFs; i++)
+				dofs[k][i] = fe.getGlobalIndex(mesh, e, i+1) - 1;
+			k++;
+		}
+		build(fe.getTotalNumberOfDOFs(mesh), dofs);
+	}
+
+	/**
+	 * Build the pattern from the DOFs attached to the elements of <tt>mesh</tt>
+	 * (<tt>Element.getAllDOFList()</tt>), as used by <tt>AssemblerScalar</tt>.
+	 *
+	 * @param mesh
+	 * @param dim Dimension of the global stiff matrix
+	 */
+	public SparsityPattern(Mesh mesh, int dim) {
+		ElementList eList = mesh.getElementList();
+		int[][] dofs = new int[eList.size()][];
+		for(int k=1; k<=eList.size(); k++) {
+			eList.at(k).adjustVerticeToCounterClockwise();
+			DOFList DOFs = eList.at(k).getAllDOFList(DOFOrder.NEFV);
+			dofs[k-1] = new int[DOFs.size()];
+			for(int i=1; i<=DOFs.size(); i++)
+				dofs[k-1][i-1] = DOFs.at(i).getGlobalIndex() - 1;
+		}
+		build(dim, dofs);
+	}
+
+	/**
+	 * Build the pattern from element connectivity given by 0-based global DOF indices
+	 *
+	 * @param dim Dimension of the global stiff matrix
+	 * @param elementDOFs
+	 */
+	public SparsityPattern(int dim, int[][] elementDOFs) {
+		build(dim, elementDOFs);
+	}
+
+	protected void build(int dim, int[][] elementDOFs) {
+		this.dim = dim;
+		this.elementDOFs = elementDOFs;
+
+		int[][] dofEleMap = getDOFElementMap();
+		int[] dofElePtr = dofEleMap[0];
+		int[] dofEle = dofEleMap[1];
+
+		//row r couples with all the DOFs of the elements containing r
+		int[] marker = new int[dim];
+		Arrays.fill(marker, -1);
+		this.rowPtr = new int[dim+1];
+		for(int r=0; r<dim; r++) {
+			int len = 0;
+			for(int p=dofElePtr[r]; p<dofElePtr[r+1]; p++) {
+				for(int c : elementDOFs[dofEle[p]]) {
+					if(marker[c] != r) {
+						marker[c] = r;
+						len++;
+					}
+				}
+			}
+			rowPtr[r+1] = rowPtr[r] + len;
+		}
+		Arrays.fill(marker, -1);
+		this.colIndex = new int[rowPtr[dim]];
+		for(int r=0; r<dim; r++) {
+			int nnz = rowPtr[r];
+			for(int p=dofElePtr[r]; p<dofElePtr[r+1]; p++) {
+				for(int c : elementDOFs[dofEle[p]]) {
+					if(marker[c] != r) {
+						marker[c] = r;
+						colIndex[nnz++] = c;
+					}
+				}
+			}
+			Arrays.sort(colIndex, rowPtr[r], rowPtr[r+1]);
+		}
+	}
+
+	/**
+	 * DOF to element map in CSR form: elements containing DOF <tt>d</tt> are
+	 * <tt>map[1][map[0][d]]...map[1][map[0][d+1]-1]</tt>, in increasing order
+	 */
+	protected int[][] getDOFElementMap() {
+		int nEle = elementDOFs.length;
+		int[] dofElePtr = new int[dim+1];
+		for(int k=0; k<nEle; k++) {
+			for(int d : elementDOFs[k]) {
+				if(d < 0 || d >= dim)
+					throw new FutureyeException("DOF index "+(d+1)+" exceeds dimenstion [1,"+dim+"]");
+				dofElePtr[d+1]++;
+			}
+		}
+		for(int r=0; r<dim; r++) dofElePtr[r+1] += dofElePtr[r];
+		int[] dofEle = new int[dofElePtr[dim]];
+		int[] pos = Arrays.copyOf(dofElePtr, dim);
+		for(int k=0; k<nEle; k++) {
+			for(int d : elementDOFs[k])
+				dofEle[pos[d]++] = k;
+		}
+		return new int[][] {dofElePtr, dofEle};
+	}
+
+	/**
+	 * Greedy colouring of the elements: two elements sharing a DOF never have the same colour,
+	 * so the elements of one colour can be assembled concurrently without any two threads
+	 * writing the same global row. The colouring only depends on the element order and is
+	 * computed once.
+	 *
+	 * @return Element indices (0-based) grouped by colour, increasing within each colour
+	 */
+	public int[][] getElementColors() {
+		if(elementColors != null)
+			return elementColors;
+		int nEle = elementDOFs.length;
+		int[][] dofEleMap = getDOFElementMap();
+		int[] dofElePtr = dofEleMap[0];
+		int[] dofEle = dofEleMap[1];
+
+		int[] color = new int[nEle];
+		Arrays.fill(color, -1);
+		int[] forbidden = new int[16];
+		Arrays.fill(forbidden, -1);
+		int nColors = 0;
+		for(int k=0; k<nEle; k++) {
+			for(int d : elementDOFs[k]) {
+				for(int p=dofElePtr[d]; p<dofElePtr[d+1]; p++) {
+					int c = color[dofEle[p]];
+					if(c >= 0) forbidden[c] = k;
+				}
+			}
+			int c = 0;
+			while(c < nColors && forbidden[c] == k) c++;
+			color[k] = c;
+			if(c == nColors) {
+				nColors++;
+				if(nColors == forbidden.length) {
+					forbidden = Arrays.copyOf(forbidden, 2*nColors);
+					Arrays.fill(forbidden, nColors, 2*nColors, -1);
+				}
+			}
+		}
+		int[] count = new int[nColors];
+		for(int k=0; k<nEle; k++) count[color[k]]++;
+		elementColors = new int[nColors][];
+		for(int c=0; c<nColors; c++) elementColors[c] = new int[count[c]];
+		Arrays.fill(count, 0);
+		for(int k=0; k<nEle; k++) elementColors[color[k]][count[color[k]]++] = k;
+		return elementColors;
+	}
+
+	/**
+	 * Compute the scatter map of all elements. It is called automatically by <tt>getElementPositions()</tt>.
+	 */
+	public void computeElementPositions() {
+		if(elementPos != null)
+			return;
+		int nEle = elementDOFs.length;
+		elementPos = new int[nEle][];
+		for(int k=0; k<nEle; k++) {
+			int[] dofs = elementDOFs[k];
+			int n = dofs.length;
+			int[] p = new int[n*n];
+			for(int j=0; j<n; j++) {
+				int r = dofs[j];
+				for(int i=0; i<n; i++)
+					p[j*n+i] = Arrays.binarySearch(colIndex, rowPtr[r], rowPtr[r+1], dofs[i]);
+			}
+			elementPos[k] = p;
+		}
+	}
+
+	/**
+	 * Create a new matrix with this pattern and zero values.
+	 * The index arrays are shared with this pattern, only the value array is allocated.
+	 *
+	 * @return
+	 */
+	public SparseMatrixCSR createMatrix() {
+		return new SparseMatrixCSR(dim, dim, rowPtr, colIndex, new double[colIndex.length]);
+	}
+
+	/**
+	 * Return true if the compressed structure of <tt>A</tt> is this pattern
+	 *
+	 * @param A
+	 * @return
+	 */
+	public boolean isPatternOf(SparseMatrixCSR A) {
+		return A.getRowPointers() == this.rowPtr && A.getColIndices() == this.colIndex;
+	}
+
+	/**
+	 * Positions of the local entries of the <tt>k</tt>-th element (0-based, in the
+	 * order of the element list) in the value array, row-major: <tt>[j*n+i]</tt>
+	 *
+	 * @param k
+	 * @return
+	 */
+	public int[] getElementPositions(int k) {
+		computeElementPositions();
+		return elementPos[k];
+	}
+
+	/**
+	 * 0-based global DOF indices of the <tt>k</tt>-th element
+	 *
+	 * @param k
+	 * @return
+	 */
+	public int[] getElementDOFs(int k) {
+		return elementDOFs[k];
+	}
+
+	public int getNumberOfElements() {
+		return elementDOFs.length;
+	}
+
+	public int getDim() {
+		return dim;
+	}
+
+	public int getNonZeroNumber() {
+		return colIndex.length;
+	}
+
+	public int[] getRowPointers() {
+		return rowPtr;
+	}
+
+	public int[] getColIndices() {
+		return colIndex;
+	}
+
+	public String toString() {
+		return "SparsityPattern("+dim+","+dim+"):NNZ="+colIndex.length;
+	}
+}
@@ -49,6 +49,12 @@ public class Mesh {
 
 	public boolean debug = false;
 
+	//Spatial index of nodes and elements, built on demand
+	protected MeshSpatialIndex spatialIndex = null;
+
+	//Adjacency of nodes and elements, built on demand
+	protected MeshTopology topology = null;
+
 	public EdgeList getEdgeList() {
 		return edgeList;
 	}
@@ -96,7 +102,8 @@ public class Mesh {
 	}
 
 	/**
-	 * Add a node to the mesh
+	 * Add a node to the mesh, it is inserted into the spatial index (if any)
+	 * before the next query
 	 * @param n
 	 */
 	public void addNode(Node n) {
@@ -115,21 +122,80 @@ public class Mesh {
 	public void clearAll() {
 		nodeList.clear();
 		eleList.clear();
+		spatialIndex = null;
+		topology = null;
+	}
+
+	/**
+	 * Return the spatial index of the nodes and elements, which is built at the first call
+	 *
+	 * @return
+	 */
+	public MeshSpatialIndex getSpatialIndex() {
+		if(spatialIndex == null)
+			spatialIndex = new MeshSpatialIndex(this);
+		return spatialIndex;
+	}
+
+	/**
+	 * The spatial index is rebuilt at the next query. Call this function if nodes
+	 * are moved, or removed from the node or element list.
+	 */
+	public void invalidateSpatialIndex() {
+		spatialIndex = null;
+	}
+
+	/**
+	 * Return the adjacency of the nodes and elements in CSR form. It is rebuilt if nodes
+	 * or elements have been added or removed since the last call.
+	 *
+	 * @return
+	 */
+	public MeshTopology getTopology() {
+		if(topology == null || topology.isOutdated())
+			topology = new MeshTopology(this);
+		return topology;
+	}
+
+	/**
+	 * The topology is rebuilt at the next call of <tt>getTopology()</tt>. Call this function
+	 * if the nodes of elements are changed in place.
+	 */
+	public void invalidateTopology() {
+		topology = null;
 	}
 
 	public void computeNodeBelongsToElements() {
 		if(debug)
 			System.out.println("computeNodesBelongToElement...");
 
-		//New algorithm
-		for(int i=1;i<=nodeList.size();i++) {
-			nodeList.at(i).clearBelongToElements();
-		}
-		for(int i=1;i<=eleList.size();i++) {
-			Element e = eleList.at(i);
-			for(int j=1;j<=e.nodes.size();j++) {
-				e.nodes.at(j).addBelongToElements(e);
+		if(!MeshTopology.canBuild(this)) {
+			for(int i=1;i<=nodeList.size();i++) {
+				nodeList.at(i).clearBelongToElements();
+			}
+			for(int i=1;i<=eleList.size();i++) {
+				Element e = eleList.at(i);
+				for(int j=1;j<=e.nodes.size();j++) {
+					e.nodes.at(j).addBelongToElements(e);
+				}
 			}
+			if(debug)
+				System.out.println("computeNodesBelongToElement done!");
+			return;
+		}
+		//Filled from the node to element relation of the topology
+		MeshTopology topo = getTopology();
+		int[] ptr = topo.getNodeElementPtr();
+		int[] idx = topo.getNodeElementIdx();
+		for(int i=1;i<=nodeList.size();i++) {
+			Node node = nodeList.at(i);
+			node.clearBelongToElements();
+			if(ptr[i] == ptr[i+1])
+				continue;
+			if(node.belongToElements == null)
+				node.belongToElements = new ElementList();
+			for(int j=ptr[i];j<ptr[i+1];j++)
+				node.belongToElements.add(eleList.at(idx[j]));
 		}
 		if(debug)
 			System.out.println("computeNodesBelongToElement done!");
@@ -143,6 +209,8 @@ public class Mesh {
 				node.remove();
 			}
 		}
+		spatialIndex = null;
+		topology = null;
 		//Renumbering
 		node = nodeList.iterator();
 		int index = 1;
@@ -261,6 +329,29 @@ public class Mesh {
 	 * @return the node object in the mesh if success, null if no matches
 	 */
 	public Node findNode(Node node) {
+		MeshSpatialIndex index = getSpatialIndex();
+		index.update();
+		if(node.dim() != index.getDim())
+			return findNodeLinear(node);
+		int n = index.queryNodes(node.coords(), Constant.meshEps);
+		int[] cand = index.getCandidates();
+		for(int k=0; k<n; k++) {
+			Node nd = nodeList.at(cand[k]);
+			int nDim = node.dim();
+			boolean same = true;
+			for(int j=1;j<=nDim;j++) {
+				if(Math.abs(node.coord(j)-nd.coord(j)) > Constant.meshEps) {
+					same = false;
+					break;
+				}
+			}
+			if(same)
+				return nd;
+		}
+		return null;
+	}
+
+	protected Node findNodeLinear(Node node) {
 		for(int i=1;i<=nodeList.size();i++) {
 			int nDim = node.dim();
 			boolean same = true;
@@ -285,24 +376,37 @@ public class Mesh {
 	 * @return the node object in the mesh if success, null if no matches
 	 */
 	public Node findNodeByCoord(double[] coord, double threshold) {
-		for(int i=1;i<=nodeList.size();i++) {
-			int nDim = nodeList.at(1).dim();
+		if(nodeList.size() == 0)
+			return null;
+		MeshSpatialIndex index = getSpatialIndex();
+		int n = index.queryNodes(coord, threshold);
+		int[] cand = index.getCandidates();
+		for(int k=0; k<n; k++) {
+			Node nd = nodeList.at(cand[k]);
+			int nDim = nd.dim();
 			boolean same = true;
 			for(int j=1;j<=nDim;j++) {
-				if(Math.abs(coord[j-1]-nodeList.at(i).coord(j)) > threshold) {
+				if(Math.abs(coord[j-1]-nd.coord(j)) > threshold) {
 					same = false;
 					break;
 				}
 			}
 			if(same)
-				return nodeList.at(i);
+				return nd;
 		}
 		return null;
 	}
 
 	public Element getElementByNodes(NodeList nodes) {
-		for(int i=1;i<=this.eleList.size();i++) {
-			Element e = this.eleList.at(i);
+		MeshSpatialIndex index = getSpatialIndex();
+		index.update();
+		if(nodes.size() == 0 || nodes.at(1).dim() != index.getDim())
+			return null;
+		//the element contains its first node
+		int n = index.queryElements(nodes.at(1).coords());
+		int[] cand = index.getCandidates();
+		for(int k=0; k<n; k++) {
+			Element e = this.eleList.at(cand[k]);
 			boolean find = true;
 			if(e.nodes.size()!=nodes.size())
 				continue;
@@ -319,16 +423,40 @@ public class Mesh {
 	}
 
 	public Element getElementByCoord(double[] coord) {
-		Node node = new Node(2);
-		node.set(0, coord);
-		for(int i=1;i<=eleList.size();i++) {
-			Element e = eleList.at(i);
+		MeshSpatialIndex index = getSpatialIndex();
+		int n = index.queryElements(coord);
+		int[] cand = index.getCandidates();
+		for(int k=0; k<n; k++) {
+			Element e = eleList.at(cand[k]);
 			if(e.isCoordInElement(coord))
 				return e;
 		}
 		return null;
 	}
 
+	/**
+	 * Locate a list of points in the mesh
+	 *
+	 * @param coords <tt>coords[k]</tt> is the coordinates of the k-th point
+	 * @param bary if not null, <tt>bary[k]</tt> returns the barycentric coordinates of the k-th
+	 * point in its element (NaN for non-simplex elements), it is allocated if null
+	 * @return the elements containing the points, null for the points outside of the mesh
+	 */
+	public Element[] getElementsByCoords(double[][] coords, double[][] bary) {
+		MeshSpatialIndex index = getSpatialIndex();
+		Element[] rlt = new Element[coords.length];
+		double[] lambda = new double[index.getDim()+1];
+		for(int k=0; k<coords.length; k++) {
+			int i = index.locate(coords[k], lambda);
+			if(i > 0) {
+				rlt[k] = eleList.at(i);
+				if(bary != null)
+					bary[k] = lambda.clone();
+			}
+		}
+		return rlt;
+	}
+
 	/**
 	 * Compute neighbor nodes of a node
 	 *
@@ -340,6 +468,21 @@ public class Mesh {
 		for(int i=1;i<=nodeList.size();i++) {
 			nodeList.at(i).clearNeighbors();
 		}
+		if(MeshTopology.canBuild(this)) {
+			MeshTopology topo = getTopology();
+			int[] ptr = topo.getNodeNodePtr();
+			int[] idx = topo.getNodeNodeIdx();
+			for(int i=1;i<=nodeList.size();i++) {
+				Node node = nodeList.at(i);
+				if(ptr[i] == ptr[i+1])
+					continue;
+				if(node.neighbors == null)
+					node.neighbors = new NodeList();
+				for(int j=ptr[i];j<ptr[i+1];j++)
+					node.neighbors.add(nodeList.at(idx[j]));
+			}
+			return;
+		}
 		for(int i=1;i<=nodeList.size();i++) {
 			Node node = nodeList.at(i);
 			if(node.belongToElements==null || node.belongToElements.size()==0) {
@@ -376,6 +519,19 @@ public class Mesh {
 		for(int i=1;i<=eleList.size();i++) {
 			eleList.at(i).neighbors.clear();
 		}
+		//Elements sharing an edge. Elements of a refined mesh are also neighbors if
+		//their edges overlap, which needs the geometric test below.
+		if(MeshTopology.canBuild(this) && !hasHangingNode()) {
+			MeshTopology topo = getTopology();
+			int[] ptr = topo.getElementElementPtr();
+			int[] idx = topo.getElementElementIdx();
+			for(int i=1;i<=eleList.size();i++) {
+				Element e = eleList.at(i);
+				for(int j=ptr[i];j<ptr[i+1];j++)
+					e.neighbors.add(eleList.at(idx[j]));
+			}
+			return;
+		}
 		for(int i=1;i<=nodeList.size();i++) {
 			Node node = nodeList.at(i);
 			if(node.belongToElements.size()==0) {
@@ -407,6 +563,29 @@ public class Mesh {
 	 *
 	 */
 	public void computeGlobalEdge() {
+		if(MeshTopology.canBuild(this)) {
+			//Edges are numbered in the order of the topology
+			MeshTopology topo = getTopology();
+			Edge[] edges = new Edge[topo.getNumEdges()];
+			for(int i=1;i<=eleList.size();i++) {
+				ObjList<EdgeLocal> localEdges = eleList.at(i).edges();
+				for(int j=1;j<=localEdges.size();j++) {
+					EdgeLocal localEdge = localEdges.at(j);
+					int k = topo.getEdgeIndex(localEdge.beginNode().globalIndex,
+							localEdge.endNode().globalIndex) - 1;
+					if(edges[k] == null) {
+						edges[k] = localEdge.buildEdge();
+						edges[k].setGlobalIndex(k+1);
+					}
+					localEdge.globalEdge = edges[k];
+				}
+			}
+			this.edgeList = new EdgeList();
+			for(Edge edge : edges) {
+				this.edgeList.add(edge);
+			}
+			return;
+		}
 		Map<MultiKey, Edge> map = new HashMap<MultiKey, Edge>();
 		for(int i=1;i<=eleList.size();i++) {
 			Element e = eleList.at(i);
@@ -473,6 +652,15 @@ public class Mesh {
 		}
 	}
 
+	protected boolean hasHangingNode() {
+		for(int i=1;i<=nodeList.size();i++) {
+			Node node = nodeList.at(i);
+			if(node instanceof NodeRefined && ((NodeRefined)node).isHangingNode())
+				return true;
+		}
+		return false;
+	}
+
 	//2011-02-19
 	public boolean isNeighbor(Element e1, Element e2) {
 		ObjList<EdgeLocal> e1EdgeList = e1.edges();
@@ -521,6 +709,8 @@ public class Mesh {
 		this.nVertex = mesh.nVertex;
 		this.mapNTF = mesh.mapNTF;
 		this.debug = mesh.debug;
+		this.spatialIndex = null;
+		this.topology = null;
 	}
 
 	/**
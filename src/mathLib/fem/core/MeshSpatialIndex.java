@@ -0,0 +1,467 @@
+package mathLib.fem.core;
+
+import java.util.Arrays;
+
+import mathLib.fem.util.Constant;
+import mathLib.fem.util.container.ElementList;
+import mathLib.fem.util.container.NodeList;
+import mathLib.fem.util.container.VertexList;
+
+/**
+ * Spatial index of the nodes and elements of a mesh
+ * <p>
+ * Nodes and the bounding boxes of elements are put into the cells of a uniform grid over the
+ * bounding box of the mesh (about one node per cell), so that a point is located by checking
+ * only the few elements whose bounding boxes cover its cell instead of the whole mesh.
+ * <p>
+ * The index is built on demand by <tt>Mesh.getSpatialIndex()</tt>. Nodes and elements
+ * appended to the mesh afterwards (<tt>Mesh.addNode()</tt>, <tt>Mesh.addElement()</tt>) are
+ * inserted before the next query, the grid is rebuilt if they are outside of it or if it
+ * becomes too dense. <tt>Mesh.invalidateSpatialIndex()</tt> must be called if nodes are moved
+ * or removed.
+ * <p>
+ * Indices returned by the queries are 1-based positions in the node or element list.
+ *
+ */
+public class MeshSpatialIndex {
+	protected Mesh mesh;
+	protected int dim;
+
+	protected Grid nodeGrid;
+	protected Grid eleGrid;
+	protected int nNodes = 0;
+	protected int nElements = 0;
+	protected Node lastNode = null;
+	protected Element lastElement = null;
+
+	/**
+	 * Vertex coordinates of simplex elements (triangles in 2D, tetrahedra in 3D, lines in 1D),
+	 * null for other elements
+	 */
+	protected double[][] simplexCoords = new double[16][];
+
+	//candidates of a query, sorted and without duplicates
+	protected int[] buf = new int[16];
+	protected int nBuf;
+
+	protected double[] qmin, qmax;
+
+	public MeshSpatialIndex(Mesh mesh) {
+		this.mesh = mesh;
+		build();
+	}
+
+	public int getDim() {
+		return dim;
+	}
+
+	/**
+	 * Bring the index up to date with the node and element lists of the mesh
+	 */
+	public void update() {
+		NodeList nodes = mesh.getNodeList();
+		ElementList eles = mesh.getElementList();
+		if(nodes.size() < nNodes || (nNodes > 0 && nodes.at(nNodes) != lastNode) ||
+				(nNodes == 0 && nodes.size() > 0 && nodes.at(1).dim() != dim) ||
+				eles.size() < nElements || (nElements > 0 && eles.at(nElements) != lastElement)) {
+			//the lists have been changed other than by appending
+			build();
+			return;
+		}
+		double[] bmin = new double[dim];
+		double[] bmax = new double[dim];
+		for(int i=nNodes+1; i<=nodes.size(); i++) {
+			Node n = nodes.at(i);
+			for(int j=0; j<dim; j++)
+				bmin[j] = bmax[j] = n.coord(j+1);
+			if(!nodeGrid.add(i, bmin, bmax)) {
+				build(true);
+				return;
+			}
+		}
+		setNodeCount(nodes.size());
+		for(int i=nElements+1; i<=eles.size(); i++) {
+			Element e = eles.at(i);
+			boundingBox(e, bmin, bmax);
+			if(!eleGrid.add(i, bmin, bmax)) {
+				build(true);
+				return;
+			}
+			setSimplexCoords(i, e);
+		}
+		setElementCount(eles.size());
+		if(nodeGrid.isTooDense() || eleGrid.isTooDense())
+			build();
+	}
+
+	protected void setNodeCount(int n) {
+		nNodes = n;
+		lastNode = n > 0 ? mesh.getNodeList().at(n) : null;
+	}
+
+	protected void setElementCount(int n) {
+		nElements = n;
+		lastElement = n > 0 ? mesh.getElementList().at(n) : null;
+	}
+
+	protected void build() {
+		build(false);
+	}
+
+	/**
+	 * @param grow enlarge the grid beyond the bounding box of the mesh, used when nodes
+	 * or elements are added outside of the grid, so that a growing mesh does not
+	 * rebuild the index at every new node
+	 */
+	protected void build(boolean grow) {
+		NodeList nodes = mesh.getNodeList();
+		ElementList eles = mesh.getElementList();
+		this.dim = nodes.size() > 0 ? nodes.at(1).dim() : 2;
+		this.qmin = new double[dim];
+		this.qmax = new double[dim];
+		double[] lo = new double[dim];
+		double[] hi = new double[dim];
+		Arrays.fill(lo, Double.MAX_VALUE);
+		Arrays.fill(hi, -Double.MAX_VALUE);
+		for(int i=1; i<=nodes.size(); i++) {
+			Node n = nodes.at(i);
+			for(int j=0; j<dim; j++) {
+				double x = n.coord(j+1);
+				if(x < lo[j]) lo[j] = x;
+				if(x > hi[j]) hi[j] = x;
+			}
+		}
+		double[] bmin = new double[dim];
+		double[] bmax = new double[dim];
+		for(int i=1; i<=eles.size(); i++) {
+			boundingBox(eles.at(i), bmin, bmax);
+			for(int j=0; j<dim; j++) {
+				if(bmin[j] < lo[j]) lo[j] = bmin[j];
+				if(bmax[j] > hi[j]) hi[j] = bmax[j];
+			}
+		}
+		if(nodes.size() == 0 && eles.size() == 0) {
+			Arrays.fill(lo, 0.0);
+			Arrays.fill(hi, 1.0);
+		}
+		if(grow) {
+			double ext = 0.0;
+			for(int j=0; j<dim; j++)
+				ext = Math.max(ext, hi[j]-lo[j]);
+			if(ext == 0.0)
+				ext = 1.0;
+			for(int j=0; j<dim; j++) {
+				lo[j] -= 0.5*ext;
+				hi[j] += 0.5*ext;
+			}
+		}
+
+		nodeGrid = new Grid(lo, hi, Math.max(nodes.size(), 1));
+		for(int i=1; i<=nodes.size(); i++) {
+			Node n = nodes.at(i);
+			for(int j=0; j<dim; j++)
+				bmin[j] = bmax[j] = n.coord(j+1);
+			nodeGrid.add(i, bmin, bmax);
+		}
+		setNodeCount(nodes.size());
+
+		eleGrid = new Grid(lo, hi, Math.max(eles.size(), 1));
+		simplexCoords = new double[eles.size()+16][];
+		for(int i=1; i<=eles.size(); i++) {
+			Element e = eles.at(i);
+			boundingBox(e, bmin, bmax);
+			eleGrid.add(i, bmin, bmax);
+			setSimplexCoords(i, e);
+		}
+		setElementCount(eles.size());
+	}
+
+	/**
+	 * Bounding box of the nodes of <tt>e</tt>, enlarged by the tolerance of
+	 * <tt>Element.isCoordInElement()</tt>
+	 */
+	protected void boundingBox(Element e, double[] bmin, double[] bmax) {
+		Arrays.fill(bmin, Double.MAX_VALUE);
+		Arrays.fill(bmax, -Double.MAX_VALUE);
+		NodeList nodes = e.nodes;
+		for(int i=1; i<=nodes.size(); i++) {
+			Node n = nodes.at(i);
+			for(int j=0; j<dim; j++) {
+				double x = n.coord(j+1);
+				if(x < bmin[j]) bmin[j] = x;
+				if(x > bmax[j]) bmax[j] = x;
+			}
+		}
+		double size = 0.0;
+		for(int j=0; j<dim; j++)
+			size = Math.max(size, bmax[j]-bmin[j]);
+		double tol = Constant.meshEps + Constant.angleEps*size;
+		for(int j=0; j<dim; j++) {
+			bmin[j] -= tol;
+			bmax[j] += tol;
+		}
+	}
+
+	protected void setSimplexCoords(int i, Element e) {
+		if(i >= simplexCoords.length)
+			simplexCoords = Arrays.copyOf(simplexCoords, 2*i);
+		VertexList vs = e.vertices();
+		if(e.dim() != dim || vs.size() != dim+1) {
+			simplexCoords[i] = null;
+			return;
+		}
+		double[] c = new double[dim*(dim+1)];
+		for(int k=0; k<=dim; k++)
+			for(int j=0; j<dim; j++)
+				c[k*dim+j] = vs.at(k+1).coord(j+1);
+		simplexCoords[i] = c;
+	}
+
+	/**
+	 * Nodes whose coordinates differ from <tt>coord</tt> by at most <tt>threshold</tt>
+	 * in every direction are candidates
+	 *
+	 * @return number of candidates, stored increasingly in <tt>getCandidates()</tt>
+	 */
+	public int queryNodes(double[] coord, double threshold) {
+		update();
+		for(int j=0; j<dim; j++) {
+			qmin[j] = coord[j] - threshold;
+			qmax[j] = coord[j] + threshold;
+		}
+		return query(nodeGrid, qmin, qmax);
+	}
+
+	/**
+	 * Elements whose bounding boxes contain <tt>coord</tt>
+	 *
+	 * @return number of candidates, stored increasingly in <tt>getCandidates()</tt>
+	 */
+	public int queryElements(double[] coord) {
+		update();
+		for(int j=0; j<dim; j++)
+			qmin[j] = qmax[j] = coord[j];
+		return query(eleGrid, qmin, qmax);
+	}
+
+	/**
+	 * Candidates of the last query, the first entries given by its return value are valid
+	 */
+	public int[] getCandidates() {
+		return buf;
+	}
+
+	protected int query(Grid g, double[] bmin, double[] bmax) {
+		nBuf = 0;
+		if(!g.overlaps(bmin, bmax))
+			return 0;
+		int[] c0 = new int[dim];
+		int[] c1 = new int[dim];
+		for(int j=0; j<dim; j++) {
+			c0[j] = g.cell(j, bmin[j]);
+			c1[j] = g.cell(j, bmax[j]);
+		}
+		int[] c = c0.clone();
+		while(true) {
+			int idx = g.index(c);
+			int[] items = g.items[idx];
+			for(int k=0; k<g.count[idx]; k++) {
+				if(nBuf == buf.length)
+					buf = Arrays.copyOf(buf, 2*nBuf);
+				buf[nBuf++] = items[k];
+			}
+			int j = 0;
+			while(j < dim && c[j] == c1[j]) {
+				c[j] = c0[j];
+				j++;
+			}
+			if(j == dim)
+				break;
+			c[j]++;
+		}
+		Arrays.sort(buf, 0, nBuf);
+		int n = 0;
+		for(int k=0; k<nBuf; k++) {
+			if(n == 0 || buf[n-1] != buf[k])
+				buf[n++] = buf[k];
+		}
+		nBuf = n;
+		return n;
+	}
+
+	/**
+	 * Locate the element containing <tt>coord</tt>
+	 * <p>
+	 * For simplex elements the point is tested with its barycentric coordinates which are
+	 * returned in <tt>bary</tt>. Other elements and points on the boundaries within the
+	 * tolerance of the mesh are tested by <tt>Element.isCoordInElement()</tt>, the
+	 * barycentric coordinates of non-simplex elements are NaN.
+	 *
+	 * @param coord
+	 * @param bary the barycentric coordinates of <tt>coord</tt>, length <tt>dim+1</tt>, can be null
+	 * @return 1-based index of the element in the element list, 0 if not found
+	 */
+	public int locate(double[] coord, double[] bary) {
+		int n = queryElements(coord);
+		double[] lambda = bary;
+		if(lambda == null)
+			lambda = new double[dim+1];
+		//exact test of the simplices first
+		for(int k=0; k<n; k++) {
+			double[] c = simplexCoords[buf[k]];
+			if(c != null && barycentric(c, coord, lambda)) {
+				return buf[k];
+			}
+		}
+		ElementList eles = mesh.getElementList();
+		for(int k=0; k<n; k++) {
+			int i = buf[k];
+			if(eles.at(i).isCoordInElement(coord)) {
+				if(simplexCoords[i] != null)
+					barycentric(simplexCoords[i], coord, lambda);
+				else
+					Arrays.fill(lambda, Double.NaN);
+				return i;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Compute the barycentric coordinates of <tt>p</tt> in the simplex with vertex
+	 * coordinates <tt>c</tt> and return true if <tt>p</tt> is in the simplex
+	 */
+	protected boolean barycentric(double[] c, double[] p, double[] lambda) {
+		double tol = 1e-12;
+		if(dim == 1) {
+			double d = c[0] - c[1];
+			lambda[0] = (p[0] - c[1]) / d;
+			lambda[1] = 1.0 - lambda[0];
+		} else if(dim == 2) {
+			double x3 = c[4], y3 = c[5];
+			double a = c[0]-x3, b = c[2]-x3;
+			double cc = c[1]-y3, d = c[3]-y3;
+			double det = a*d - b*cc;
+			double px = p[0]-x3, py = p[1]-y3;
+			lambda[0] = ( d*px - b*py) / det;
+			lambda[1] = (-cc*px + a*py) / det;
+			lambda[2] = 1.0 - lambda[0] - lambda[1];
+		} else {
+			double x4 = c[9], y4 = c[10], z4 = c[11];
+			double a11 = c[0]-x4, a12 = c[3]-x4, a13 = c[6]-x4;
+			double a21 = c[1]-y4, a22 = c[4]-y4, a23 = c[7]-y4;
+			double a31 = c[2]-z4, a32 = c[5]-z4, a33 = c[8]-z4;
+			double px = p[0]-x4, py = p[1]-y4, pz = p[2]-z4;
+			double det = a11*(a22*a33-a23*a32) - a12*(a21*a33-a23*a31) + a13*(a21*a32-a22*a31);
+			lambda[0] = (px*(a22*a33-a23*a32) - a12*(py*a33-a23*pz) + a13*(py*a32-a22*pz)) / det;
+			lambda[1] = (a11*(py*a33-a23*pz) - px*(a21*a33-a23*a31) + a13*(a21*pz-py*a31)) / det;
+			lambda[2] = (a11*(a22*pz-py*a32) - a12*(a21*pz-py*a31) + px*(a21*a32-a22*a31)) / det;
+			lambda[3] = 1.0 - lambda[0] - lambda[1] - lambda[2];
+		}
+		for(int k=0; k<=dim; k++) {
+			if(!(lambda[k] >= -tol))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Uniform grid, each cell holds the indices of the items whose boxes overlap it
+	 */
+	protected static class Grid {
+		int dim;
+		double[] lo, hi, invH;
+		int[] n;
+		int[][] items;
+		int[] count;
+		int size = 0;
+		int capacity;
+
+		Grid(double[] lo, double[] hi, int nItems) {
+			this.dim = lo.length;
+			this.lo = lo.clone();
+			this.hi = hi.clone();
+			this.n = new int[dim];
+			this.invH = new double[dim];
+			//cells of about the same size in all directions, about one item per cell
+			double maxExt = 0.0;
+			for(int j=0; j<dim; j++)
+				maxExt = Math.max(maxExt, hi[j]-lo[j]);
+			double vol = 1.0;
+			int k = 0;
+			for(int j=0; j<dim; j++) {
+				if(hi[j]-lo[j] > 1e-12*maxExt) {
+					vol *= hi[j]-lo[j];
+					k++;
+				}
+			}
+			double h = k == 0 ? 1.0 : Math.pow(vol/nItems, 1.0/k);
+			int nCells = 1;
+			for(int j=0; j<dim; j++) {
+				double ext = hi[j]-lo[j];
+				n[j] = ext > 1e-12*maxExt ? (int)Math.max(1, Math.min(Math.ceil(ext/h), 1<<20)) : 1;
+				invH[j] = ext > 0 ? n[j]/ext : 0.0;
+				nCells *= n[j];
+			}
+			this.items = new int[nCells][];
+			this.count = new int[nCells];
+			this.capacity = nItems;
+		}
+
+		int cell(int j, double x) {
+			int c = (int)((x - lo[j])*invH[j]);
+			return c < 0 ? 0 : (c >= n[j] ? n[j]-1 : c);
+		}
+
+		int index(int[] c) {
+			int idx = 0;
+			for(int j=dim-1; j>=0; j--)
+				idx = idx*n[j] + c[j];
+			return idx;
+		}
+
+		boolean overlaps(double[] bmin, double[] bmax) {
+			for(int j=0; j<dim; j++)
+				if(bmax[j] < lo[j] || bmin[j] > hi[j])
+					return false;
+			return true;
+		}
+
+		boolean isTooDense() {
+			return size > 2*capacity + 64;
+		}
+
+		/**
+		 * Return false if the box is not inside of the grid
+		 */
+		boolean add(int id, double[] bmin, double[] bmax) {
+			int[] c0 = new int[dim];
+			int[] c1 = new int[dim];
+			for(int j=0; j<dim; j++) {
+				if(bmin[j] < lo[j] || bmax[j] > hi[j])
+					return false;
+				c0[j] = cell(j, bmin[j]);
+				c1[j] = cell(j, bmax[j]);
+			}
+			int[] c = c0.clone();
+			while(true) {
+				int idx = index(c);
+				if(items[idx] == null)
+					items[idx] = new int[2];
+				else if(count[idx] == items[idx].length)
+					items[idx] = Arrays.copyOf(items[idx], 2*count[idx]);
+				items[idx][count[idx]++] = id;
+				int j = 0;
+				while(j < dim && c[j] == c1[j]) {
+					c[j] = c0[j];
+					j++;
+				}
+				if(j == dim)
+					break;
+				c[j]++;
+			}
+			size++;
+			return true;
+		}
+	}
+}
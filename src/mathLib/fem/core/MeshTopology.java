@@ -0,0 +1,402 @@
+package mathLib.fem.core;
+
+import java.util.Arrays;
+
+import mathLib.fem.util.FutureyeException;
+import mathLib.fem.util.container.ElementList;
+import mathLib.fem.util.container.NodeList;
+import mathLib.fem.util.container.ObjList;
+
+/**
+ * Adjacency of the nodes and elements of a mesh in compressed row (CSR) form
+ * <p>
+ * Each relation is stored in two int arrays <tt>ptr</tt> and <tt>idx</tt>: the entries of row
+ * <tt>i</tt> (1-based global index of a node or position of an element) are
+ * <tt>idx[ptr[i]], ..., idx[ptr[i+1]-1]</tt>, sorted in increasing order. Entries are 1-based
+ * global indices as well. The relations are
+ * <ul>
+ * <li>node to element: the elements containing a node in <tt>e.nodes</tt></li>
+ * <li>node to node: the nodes connected to a node by an edge of an element</li>
+ * <li>element to element: the elements sharing an edge with an element</li>
+ * </ul>
+ * The node to element relation is built by counting, the edges are sorted once as
+ * <tt>long</tt> keys, the other relations are built from them on demand. No per node or per
+ * element objects are allocated.
+ * <p>
+ * The topology is built by <tt>Mesh.getTopology()</tt> and requires the global indices of
+ * the nodes to be <tt>1...N</tt> in the order of the node list.
+ *
+ */
+public class MeshTopology {
+	protected Mesh mesh;
+	protected int nNodes;
+	protected int nElements;
+	protected Node lastNode;
+	protected Element lastElement;
+
+	protected int[] nodeElePtr, nodeEleIdx;
+
+	//sorted keys a*(N+1)+b, a<b, of the edges
+	protected long[] edgeKeys;
+	protected int[] nodeNodePtr, nodeNodeIdx;
+	protected int[] eleElePtr, eleEleIdx;
+
+	public MeshTopology(Mesh mesh) {
+		this.mesh = mesh;
+		NodeList nodes = mesh.getNodeList();
+		ElementList eles = mesh.getElementList();
+		nNodes = nodes.size();
+		nElements = eles.size();
+		lastNode = nNodes > 0 ? nodes.at(nNodes) : null;
+		lastElement = nElements > 0 ? eles.at(nElements) : null;
+		if(!canBuild(mesh))
+			throw new FutureyeException("Error: MeshTopology requires node global indices 1...N "+
+					"in the order of the node list");
+		buildNodeElements();
+	}
+
+	/**
+	 * Return true if the global indices of the nodes are <tt>1...N</tt> in the order of the
+	 * node list and the elements only refer to these nodes
+	 *
+	 * @param mesh
+	 * @return
+	 */
+	public static boolean canBuild(Mesh mesh) {
+		NodeList nodes = mesh.getNodeList();
+		int n = nodes.size();
+		for(int i=1; i<=n; i++) {
+			if(nodes.at(i).globalIndex != i)
+				return false;
+		}
+		ElementList eles = mesh.getElementList();
+		for(int i=1; i<=eles.size(); i++) {
+			NodeList en = eles.at(i).nodes;
+			for(int j=1; j<=en.size(); j++) {
+				int k = en.at(j).globalIndex;
+				if(k < 1 || k > n)
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Return true if nodes or elements have been added or removed since the topology was built
+	 *
+	 * @return
+	 */
+	public boolean isOutdated() {
+		NodeList nodes = mesh.getNodeList();
+		ElementList eles = mesh.getElementList();
+		return nodes.size() != nNodes || eles.size() != nElements ||
+				(nNodes > 0 && nodes.at(nNodes) != lastNode) ||
+				(nElements > 0 && eles.at(nElements) != lastElement);
+	}
+
+	public int getNumNodes() {
+		return nNodes;
+	}
+
+	public int getNumElements() {
+		return nElements;
+	}
+
+	protected void buildNodeElements() {
+		ElementList eles = mesh.getElementList();
+		nodeElePtr = new int[nNodes+2];
+		for(int i=1; i<=nElements; i++) {
+			NodeList en = eles.at(i).nodes;
+			for(int j=1; j<=en.size(); j++)
+				nodeElePtr[en.at(j).globalIndex+1]++;
+		}
+		for(int i=1; i<=nNodes; i++)
+			nodeElePtr[i+1] += nodeElePtr[i];
+		nodeEleIdx = new int[nodeElePtr[nNodes+1]];
+		int[] pos = Arrays.copyOf(nodeElePtr, nNodes+1);
+		//elements are visited in increasing order, so the rows are sorted
+		for(int i=1; i<=nElements; i++) {
+			NodeList en = eles.at(i).nodes;
+			for(int j=1; j<=en.size(); j++) {
+				int n = en.at(j).globalIndex;
+				//a node listed twice in an element is stored once
+				if(pos[n] == nodeElePtr[n] || nodeEleIdx[pos[n]-1] != i)
+					nodeEleIdx[pos[n]++] = i;
+			}
+		}
+		compact(nodeElePtr, nodeEleIdx, pos, nNodes);
+		nodeEleIdx = Arrays.copyOf(nodeEleIdx, nodeElePtr[nNodes+1]);
+	}
+
+	/**
+	 * Remove the unused tails of the rows, <tt>end[i]</tt> being the end of row <tt>i</tt>
+	 */
+	private static void compact(int[] ptr, int[] idx, int[] end, int n) {
+		int k = 0;
+		for(int i=1; i<=n; i++) {
+			int begin = ptr[i];
+			ptr[i] = k;
+			for(int j=begin; j<end[i]; j++)
+				idx[k++] = idx[j];
+		}
+		ptr[n+1] = k;
+	}
+
+	/**
+	 * Write the end nodes of the edges of element <tt>e</tt> into <tt>buf</tt>,
+	 * two global indices per edge, and return the number of edges
+	 */
+	protected static int getElementEdges(Element e, int[][] buf) {
+		if(e.dim() == 1) {
+			ensure(buf, 2);
+			buf[0][0] = e.nodes.at(1).globalIndex;
+			buf[0][1] = e.nodes.at(2).globalIndex;
+			return 1;
+		}
+		ObjList<EdgeLocal> edges = e.edges();
+		ensure(buf, 2*edges.size());
+		for(int j=1; j<=edges.size(); j++) {
+			EdgeLocal edge = edges.at(j);
+			buf[0][2*j-2] = edge.beginNode().globalIndex;
+			buf[0][2*j-1] = edge.endNode().globalIndex;
+		}
+		return edges.size();
+	}
+
+	private static void ensure(int[][] buf, int size) {
+		if(buf[0].length < size)
+			buf[0] = new int[Math.max(size, 2*buf[0].length)];
+	}
+
+	protected long edgeKey(int a, int b) {
+		return a < b ? (long)a*(nNodes+1)+b : (long)b*(nNodes+1)+a;
+	}
+
+	protected void buildEdges() {
+		ElementList eles = mesh.getElementList();
+		int[][] buf = { new int[24] };
+		long[] keys = new long[6*nElements+16];
+		int nKeys = 0;
+		for(int i=1; i<=nElements; i++) {
+			int ne = getElementEdges(eles.at(i), buf);
+			if(nKeys + ne > keys.length)
+				keys = Arrays.copyOf(keys, Math.max(nKeys + ne, 2*keys.length));
+			for(int j=0; j<ne; j++)
+				keys[nKeys++] = edgeKey(buf[0][2*j], buf[0][2*j+1]);
+		}
+		Arrays.sort(keys, 0, nKeys);
+		int nEdges = 0;
+		for(int i=0; i<nKeys; i++) {
+			if(nEdges == 0 || keys[i] != keys[nEdges-1])
+				keys[nEdges++] = keys[i];
+		}
+		edgeKeys = Arrays.copyOf(keys, nEdges);
+	}
+
+	/**
+	 * Return the number of distinct edges of the mesh
+	 *
+	 * @return
+	 */
+	public int getNumEdges() {
+		if(edgeKeys == null)
+			buildEdges();
+		return edgeKeys.length;
+	}
+
+	/**
+	 * Return the index (1-based) of the edge between nodes <tt>a</tt> and <tt>b</tt>
+	 * (global indices), edges are numbered in increasing order of their end nodes.
+	 * Return 0 if there is no such edge.
+	 *
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public int getEdgeIndex(int a, int b) {
+		if(edgeKeys == null)
+			buildEdges();
+		int k = Arrays.binarySearch(edgeKeys, edgeKey(a, b));
+		return k < 0 ? 0 : k+1;
+	}
+
+	/**
+	 * Return the end nodes of edge <tt>index</tt> (1-based), the smaller global index first
+	 *
+	 * @param index
+	 * @return
+	 */
+	public int[] getEdgeNodes(int index) {
+		if(edgeKeys == null)
+			buildEdges();
+		long key = edgeKeys[index-1];
+		return new int[] { (int)(key/(nNodes+1)), (int)(key%(nNodes+1)) };
+	}
+
+	protected void buildNodeNodes() {
+		if(edgeKeys == null)
+			buildEdges();
+		nodeNodePtr = new int[nNodes+2];
+		for(long key : edgeKeys) {
+			nodeNodePtr[(int)(key/(nNodes+1))+1]++;
+			nodeNodePtr[(int)(key%(nNodes+1))+1]++;
+		}
+		for(int i=1; i<=nNodes; i++)
+			nodeNodePtr[i+1] += nodeNodePtr[i];
+		nodeNodeIdx = new int[nodeNodePtr[nNodes+1]];
+		int[] pos = Arrays.copyOf(nodeNodePtr, nNodes+1);
+		//keys are sorted by (a,b), so both directions are filled in increasing order:
+		//a->b in the order of b, and b->a in the order of a
+		for(long key : edgeKeys) {
+			int b = (int)(key%(nNodes+1));
+			nodeNodeIdx[pos[b]++] = (int)(key/(nNodes+1));
+		}
+		for(long key : edgeKeys) {
+			int a = (int)(key/(nNodes+1));
+			nodeNodeIdx[pos[a]++] = (int)(key%(nNodes+1));
+		}
+	}
+
+	protected void buildElementElements() {
+		ElementList eles = mesh.getElementList();
+		int[][] buf = { new int[24] };
+		//last element which has been added as neighbor of each element
+		int[] mark = new int[nElements+1];
+		eleElePtr = new int[nElements+2];
+		int[] idx = new int[4*nElements+16];
+		int k = 0;
+		for(int i=1; i<=nElements; i++) {
+			eleElePtr[i] = k;
+			int ne = getElementEdges(eles.at(i), buf);
+			for(int j=0; j<ne; j++) {
+				int a = buf[0][2*j], b = buf[0][2*j+1];
+				//intersection of the sorted rows of the two end nodes
+				int p = nodeElePtr[a], pEnd = nodeElePtr[a+1];
+				int q = nodeElePtr[b], qEnd = nodeElePtr[b+1];
+				while(p < pEnd && q < qEnd) {
+					int ea = nodeEleIdx[p], eb = nodeEleIdx[q];
+					if(ea < eb) p++;
+					else if(ea > eb) q++;
+					else {
+						if(ea != i && mark[ea] != i) {
+							mark[ea] = i;
+							if(k == idx.length)
+								idx = Arrays.copyOf(idx, 2*idx.length);
+							idx[k++] = ea;
+						}
+						p++;
+						q++;
+					}
+				}
+			}
+			Arrays.sort(idx, eleElePtr[i], k);
+		}
+		eleElePtr[nElements+1] = k;
+		eleEleIdx = Arrays.copyOf(idx, k);
+	}
+
+	/**
+	 * Row pointers of the node to element relation
+	 *
+	 * @return
+	 */
+	public int[] getNodeElementPtr() {
+		return nodeElePtr;
+	}
+
+	/**
+	 * Column indices of the node to element relation
+	 *
+	 * @return
+	 */
+	public int[] getNodeElementIdx() {
+		return nodeEleIdx;
+	}
+
+	/**
+	 * Row pointers of the node to node relation
+	 *
+	 * @return
+	 */
+	public int[] getNodeNodePtr() {
+		if(nodeNodePtr == null)
+			buildNodeNodes();
+		return nodeNodePtr;
+	}
+
+	/**
+	 * Column indices of the node to node relation
+	 *
+	 * @return
+	 */
+	public int[] getNodeNodeIdx() {
+		if(nodeNodePtr == null)
+			buildNodeNodes();
+		return nodeNodeIdx;
+	}
+
+	/**
+	 * Row pointers of the element to element relation
+	 *
+	 * @return
+	 */
+	public int[] getElementElementPtr() {
+		if(eleElePtr == null)
+			buildElementElements();
+		return eleElePtr;
+	}
+
+	/**
+	 * Column indices of the element to element relation
+	 *
+	 * @return
+	 */
+	public int[] getElementElementIdx() {
+		if(eleElePtr == null)
+			buildElementElements();
+		return eleEleIdx;
+	}
+
+	/**
+	 * Return the elements containing node <tt>node</tt> (global index)
+	 *
+	 * @param node
+	 * @return
+	 */
+	public ElementList getElementsOfNode(int node) {
+		return toElementList(nodeElePtr, nodeEleIdx, node);
+	}
+
+	/**
+	 * Return the nodes connected to node <tt>node</tt> (global index) by an edge
+	 *
+	 * @param node
+	 * @return
+	 */
+	public NodeList getNeighborNodes(int node) {
+		int[] ptr = getNodeNodePtr();
+		NodeList nodes = mesh.getNodeList();
+		NodeList rlt = new NodeList();
+		for(int j=ptr[node]; j<ptr[node+1]; j++)
+			rlt.add(nodes.at(nodeNodeIdx[j]));
+		return rlt;
+	}
+
+	/**
+	 * Return the elements sharing an edge with element <tt>ele</tt> (position in the element list)
+	 *
+	 * @param ele
+	 * @return
+	 */
+	public ElementList getNeighborElements(int ele) {
+		return toElementList(getElementElementPtr(), eleEleIdx, ele);
+	}
+
+	protected ElementList toElementList(int[] ptr, int[] idx, int row) {
+		ElementList eles = mesh.getElementList();
+		ElementList rlt = new ElementList();
+		for(int j=ptr[row]; j<ptr[row+1]; j++)
+			rlt.add(eles.at(idx[j]));
+		return rlt;
+	}
+}
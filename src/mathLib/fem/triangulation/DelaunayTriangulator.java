@@ -131,6 +131,28 @@ public class DelaunayTriangulator {
         triangleSoup.removeTrianglesUsing(superTriangle.c);
     }
 
+    /**
+     * This method generates the Delaunay triangulation of the point set with
+     * <tt>FastDelaunayTriangulator</tt> in O(n log n) expected time and stores
+     * the triangles in the same form as <tt>triangulate()</tt>.
+     * 
+     * @throws NotEnoughPointsException
+     */
+    public void triangulateFast() throws NotEnoughPointsException {
+        triangleSoup = new TriangleSoup();
+
+        if (pointSet == null || pointSet.size() < 3) {
+            throw new NotEnoughPointsException("Less than three points in point set.");
+        }
+
+        FastDelaunayTriangulator fast = new FastDelaunayTriangulator(pointSet);
+        fast.triangulate();
+        int[] tri = fast.getTriangles();
+        for (int k = 0; k < tri.length; k += 3) {
+            triangleSoup.add(new Triangle2D(pointSet.get(tri[k]), pointSet.get(tri[k + 1]), pointSet.get(tri[k + 2])));
+        }
+    }
+
     /**
      * This method legalizes edges by recursively flipping all illegal edges.
      * 
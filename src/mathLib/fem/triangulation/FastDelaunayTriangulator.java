@@ -0,0 +1,443 @@
+package mathLib.fem.triangulation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import mathLib.fem.core.Element;
+import mathLib.fem.core.Mesh;
+import mathLib.fem.core.Node;
+import mathLib.fem.util.container.NodeList;
+
+/**
+ * An O(n log n) incremental 2D Delaunay triangulation.
+ * <p>
+ * The triangulation is stored in arrays: three vertices (counterclockwise) and three
+ * neighbours per triangle, the neighbour <tt>i</tt> being across the edge from vertex
+ * <tt>i</tt> to vertex <tt>i+1</tt>. The outside of the convex hull is covered by ghost
+ * triangles sharing a vertex at infinity, so no super triangle is needed and the result is
+ * always convex.
+ * <p>
+ * Points are inserted in a biased randomized insertion order (BRIO): random rounds of
+ * doubling size, each round sorted along a Hilbert curve. A point is located by a visibility
+ * walk from the last created triangle, which is short in this order, and the Delaunay
+ * property is restored by Lawson edge flips. The expected cost is O(n log n).
+ * <p>
+ * Duplicated points are inserted once, <tt>getVertexIndex()</tt> gives the vertex used for each
+ * input point.
+ *
+ */
+public class FastDelaunayTriangulator {
+
+    private static final int INF = -1;
+
+    private double[] x;
+    private double[] y;
+    private int n;
+
+    /**
+     * Triangle vertices and neighbours, 3 entries per triangle
+     */
+    private int[] tv;
+    private int[] tn;
+    private int nTri;
+
+    private int[] vertexIndex;
+    private int[] stack = new int[64];
+    private int last;
+    private int seed = 0x2545F491;
+
+    /**
+     * Seed of the random insertion order
+     */
+    public long randomSeed = 1L;
+
+    /**
+     * Constructor used to create a new triangulator instance.
+     *
+     * @param x
+     *            The x coordinates of the points
+     * @param y
+     *            The y coordinates of the points
+     */
+    public FastDelaunayTriangulator(double[] x, double[] y) {
+        this.x = x;
+        this.y = y;
+        this.n = x.length;
+    }
+
+    /**
+     * Constructor used to create a new triangulator instance.
+     *
+     * @param pointSet
+     *            The point set to be triangulated
+     */
+    public FastDelaunayTriangulator(List<Vector2D> pointSet) {
+        this.n = pointSet.size();
+        this.x = new double[n];
+        this.y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = pointSet.get(i).x;
+            y[i] = pointSet.get(i).y;
+        }
+    }
+
+    /**
+     * This method generates the Delaunay triangulation of the point set.
+     *
+     * @throws NotEnoughPointsException
+     *             Thrown when the point set has less than three points which are not collinear
+     */
+    public void triangulate() throws NotEnoughPointsException {
+        if (n < 3) {
+            throw new NotEnoughPointsException("Less than three points in point set.");
+        }
+        int[] order = brioOrder();
+
+        tv = new int[3 * (2 * n + 8)];
+        tn = new int[3 * (2 * n + 8)];
+        nTri = 0;
+        vertexIndex = new int[n];
+        Arrays.fill(vertexIndex, -1);
+
+        // first triangle: two distinct points and a third one not collinear with them
+        int i0 = order[0];
+        int k1 = 1;
+        while (k1 < n && x[order[k1]] == x[i0] && y[order[k1]] == y[i0]) {
+            k1++;
+        }
+        int k2 = k1 + 1;
+        while (k2 < n && orient(i0, order[k1], order[k2]) == 0.0) {
+            k2++;
+        }
+        if (k2 >= n) {
+            throw new NotEnoughPointsException("All the points are collinear.");
+        }
+        int i1 = order[k1];
+        int i2 = order[k2];
+        if (orient(i0, i1, i2) < 0) {
+            int tmp = i1;
+            i1 = i2;
+            i2 = tmp;
+        }
+        int t = newTriangle(i0, i1, i2);
+        int g0 = newTriangle(i1, i0, INF);
+        int g1 = newTriangle(i2, i1, INF);
+        int g2 = newTriangle(i0, i2, INF);
+        setNeighbours(t, g0, g1, g2);
+        setNeighbours(g0, t, g2, g1);
+        setNeighbours(g1, t, g0, g2);
+        setNeighbours(g2, t, g1, g0);
+        vertexIndex[i0] = i0;
+        vertexIndex[i1] = i1;
+        vertexIndex[i2] = i2;
+        last = t;
+
+        for (int k = 1; k < n; k++) {
+            int p = order[k];
+            if (vertexIndex[p] < 0) {
+                insert(p);
+            }
+        }
+    }
+
+    /**
+     * Biased randomized insertion order: each point is in the last round with probability 1/2,
+     * in the previous one with probability 1/4 and so on, the points of each round are
+     * sorted along a Hilbert curve.
+     */
+    private int[] brioOrder() {
+        double xmin = Double.MAX_VALUE, xmax = -Double.MAX_VALUE;
+        double ymin = Double.MAX_VALUE, ymax = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            xmin = Math.min(xmin, x[i]);
+            xmax = Math.max(xmax, x[i]);
+            ymin = Math.min(ymin, y[i]);
+            ymax = Math.max(ymax, y[i]);
+        }
+        double scale = Math.max(xmax - xmin, ymax - ymin);
+        scale = scale > 0 ? 65535.0 / scale : 0.0;
+        Random rnd = new Random(randomSeed);
+        // key: round (5 bits) | Hilbert index (32 bits) | point index (26 bits)
+        boolean packed = n < (1 << 26);
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            int round = Math.min(Long.numberOfTrailingZeros(rnd.nextLong() | Long.MIN_VALUE), 31);
+            long h = hilbert((int) ((x[i] - xmin) * scale), (int) ((y[i] - ymin) * scale));
+            // rounds with a larger number are smaller and inserted first
+            keys[i] = ((long) (31 - round) << 58) | (h << 26) | (packed ? i : 0);
+        }
+        int[] order = new int[n];
+        if (packed) {
+            Arrays.sort(keys);
+            for (int i = 0; i < n; i++) {
+                order[i] = (int) (keys[i] & ((1L << 26) - 1));
+            }
+        } else {
+            Integer[] idx = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                idx[i] = i;
+            }
+            Arrays.sort(idx, (a, b) -> Long.compare(keys[a], keys[b]));
+            for (int i = 0; i < n; i++) {
+                order[i] = idx[i];
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Index of (x,y) on the Hilbert curve of order 16
+     */
+    private static long hilbert(int px, int py) {
+        long d = 0;
+        for (int s = 1 << 15; s > 0; s >>= 1) {
+            int rx = (px & s) > 0 ? 1 : 0;
+            int ry = (py & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    px = s - 1 - px;
+                    py = s - 1 - py;
+                }
+                int tmp = px;
+                px = py;
+                py = tmp;
+            }
+        }
+        return d;
+    }
+
+    private void insert(int p) {
+        int t = locate(p);
+        for (int i = 0; i < 3; i++) {
+            int v = tv[3 * t + i];
+            if (v != INF && x[v] == x[p] && y[v] == y[p]) {
+                vertexIndex[p] = v;
+                return;
+            }
+        }
+        vertexIndex[p] = p;
+
+        // split t = (v0,v1,v2) into (v0,v1,p), (v1,v2,p), (v2,v0,p)
+        int v0 = tv[3 * t], v1 = tv[3 * t + 1], v2 = tv[3 * t + 2];
+        int n0 = tn[3 * t], n1 = tn[3 * t + 1], n2 = tn[3 * t + 2];
+        int t1 = newTriangle(v1, v2, p);
+        int t2 = newTriangle(v2, v0, p);
+        tv[3 * t + 2] = p;
+        setNeighbours(t, n0, t1, t2);
+        setNeighbours(t1, n1, t2, t);
+        setNeighbours(t2, n2, t, t1);
+        replaceNeighbour(n1, t, t1);
+        replaceNeighbour(n2, t, t2);
+        last = t;
+
+        // Lawson flips, the new point is always vertex 2 of the triangles on the stack
+        int top = 0;
+        stack[top++] = t;
+        stack[top++] = t1;
+        stack[top++] = t2;
+        while (top > 0) {
+            int a = stack[--top];
+            int b = tn[3 * a];
+            int f = indexOf(b, a);
+            int d = tv[3 * b + (f + 2) % 3];
+            if (inCircle(b, f, p)) {
+                int q0 = tv[3 * a], q1 = tv[3 * a + 1];
+                int na1 = tn[3 * a + 1], na2 = tn[3 * a + 2];
+                int nb1 = tn[3 * b + (f + 1) % 3], nb2 = tn[3 * b + (f + 2) % 3];
+                // a = (q0,d,p), b = (d,q1,p)
+                tv[3 * a] = q0;
+                tv[3 * a + 1] = d;
+                tv[3 * a + 2] = p;
+                tv[3 * b] = d;
+                tv[3 * b + 1] = q1;
+                tv[3 * b + 2] = p;
+                setNeighbours(a, nb1, b, na2);
+                setNeighbours(b, nb2, na1, a);
+                replaceNeighbour(na1, a, b);
+                replaceNeighbour(nb1, b, a);
+                if (top + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                }
+                stack[top++] = a;
+                stack[top++] = b;
+            }
+        }
+    }
+
+    /**
+     * Visibility walk to the triangle containing p, or to a ghost triangle if p is
+     * outside of the convex hull
+     */
+    private int locate(int p) {
+        int t = last;
+        if (isGhost(t)) {
+            int i = indexOfVertex(t, INF);
+            t = tn[3 * t + (i + 1) % 3];
+        }
+        walk: while (true) {
+            if (isGhost(t)) {
+                return t;
+            }
+            seed ^= seed << 13;
+            seed ^= seed >>> 17;
+            seed ^= seed << 5;
+            int r = (seed & 0x7fffffff) % 3;
+            for (int k = 0; k < 3; k++) {
+                int i = (r + k) % 3;
+                if (orient(tv[3 * t + i], tv[3 * t + (i + 1) % 3], p) < 0) {
+                    t = tn[3 * t + i];
+                    continue walk;
+                }
+            }
+            return t;
+        }
+    }
+
+    /**
+     * Return true if p is in the circumcircle of triangle b. For a ghost triangle (a,b,INF)
+     * this is the open half plane outside of the edge ab and the open edge itself.
+     */
+    private boolean inCircle(int b, int f, int p) {
+        int gi = indexOfVertex(b, INF);
+        if (gi >= 0) {
+            int a0 = tv[3 * b + (gi + 1) % 3];
+            int a1 = tv[3 * b + (gi + 2) % 3];
+            double o = orient(a0, a1, p);
+            if (o > 0) {
+                return true;
+            }
+            if (o < 0) {
+                return false;
+            }
+            double dot = (x[p] - x[a0]) * (x[a1] - x[a0]) + (y[p] - y[a0]) * (y[a1] - y[a0]);
+            double len = (x[a1] - x[a0]) * (x[a1] - x[a0]) + (y[a1] - y[a0]) * (y[a1] - y[a0]);
+            return dot > 0 && dot < len;
+        }
+        int a = tv[3 * b], c = tv[3 * b + 1], d = tv[3 * b + 2];
+        double adx = x[a] - x[p], ady = y[a] - y[p];
+        double bdx = x[c] - x[p], bdy = y[c] - y[p];
+        double cdx = x[d] - x[p], cdy = y[d] - y[p];
+        double ad = adx * adx + ady * ady;
+        double bd = bdx * bdx + bdy * bdy;
+        double cd = cdx * cdx + cdy * cdy;
+        double det = adx * (bdy * cd - bd * cdy) - ady * (bdx * cd - bd * cdx) + ad * (bdx * cdy - bdy * cdx);
+        return det > 0;
+    }
+
+    private double orient(int a, int b, int c) {
+        return (x[b] - x[a]) * (y[c] - y[a]) - (y[b] - y[a]) * (x[c] - x[a]);
+    }
+
+    private boolean isGhost(int t) {
+        return tv[3 * t] == INF || tv[3 * t + 1] == INF || tv[3 * t + 2] == INF;
+    }
+
+    private int indexOfVertex(int t, int v) {
+        for (int i = 0; i < 3; i++) {
+            if (tv[3 * t + i] == v) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOf(int t, int neighbour) {
+        for (int i = 0; i < 3; i++) {
+            if (tn[3 * t + i] == neighbour) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Broken adjacency of triangle " + t);
+    }
+
+    private int newTriangle(int a, int b, int c) {
+        if (3 * nTri + 3 > tv.length) {
+            tv = Arrays.copyOf(tv, 2 * tv.length);
+            tn = Arrays.copyOf(tn, 2 * tn.length);
+        }
+        tv[3 * nTri] = a;
+        tv[3 * nTri + 1] = b;
+        tv[3 * nTri + 2] = c;
+        return nTri++;
+    }
+
+    private void setNeighbours(int t, int n0, int n1, int n2) {
+        tn[3 * t] = n0;
+        tn[3 * t + 1] = n1;
+        tn[3 * t + 2] = n2;
+    }
+
+    private void replaceNeighbour(int t, int oldNeighbour, int newNeighbour) {
+        tn[3 * t + indexOf(t, oldNeighbour)] = newNeighbour;
+    }
+
+    /**
+     * Returns the triangles of the triangulation, three 0-based point indices per triangle in
+     * counterclockwise order.
+     *
+     * @return Returns the triangles of the triangulation.
+     */
+    public int[] getTriangles() {
+        int m = 0;
+        for (int t = 0; t < nTri; t++) {
+            if (!isGhost(t)) {
+                m++;
+            }
+        }
+        int[] rlt = new int[3 * m];
+        int k = 0;
+        for (int t = 0; t < nTri; t++) {
+            if (!isGhost(t)) {
+                rlt[k++] = tv[3 * t];
+                rlt[k++] = tv[3 * t + 1];
+                rlt[k++] = tv[3 * t + 2];
+            }
+        }
+        return rlt;
+    }
+
+    /**
+     * Returns the number of triangles of the triangulation.
+     *
+     * @return Returns the number of triangles.
+     */
+    public int getNumberOfTriangles() {
+        return getTriangles().length / 3;
+    }
+
+    /**
+     * Returns the index of the point used as vertex for each input point, which differs from
+     * the point itself only for duplicated points.
+     *
+     * @return Returns the vertex indices.
+     */
+    public int[] getVertexIndex() {
+        return vertexIndex;
+    }
+
+    /**
+     * Creates a mesh of the triangulation. Node <tt>i+1</tt> of the mesh is the point
+     * <tt>i</tt>, duplicated points are not used by any element.
+     *
+     * @return Returns the mesh.
+     */
+    public Mesh toMesh() {
+        Mesh mesh = new Mesh();
+        Node[] nodes = new Node[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = new Node(i + 1, x[i], y[i]);
+            mesh.addNode(nodes[i]);
+        }
+        int[] tri = getTriangles();
+        for (int k = 0; k < tri.length; k += 3) {
+            NodeList nl = new NodeList();
+            nl.add(nodes[tri[k]]);
+            nl.add(nodes[tri[k + 1]]);
+            nl.add(nodes[tri[k + 2]]);
+            mesh.addElement(new Element(nl));
+        }
+        return mesh;
+    }
+}
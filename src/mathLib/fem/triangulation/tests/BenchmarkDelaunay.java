@@ -0,0 +1,111 @@
+package mathLib.fem.triangulation.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import mathLib.fem.core.Mesh;
+import mathLib.fem.triangulation.DelaunayTriangulator;
+import mathLib.fem.triangulation.FastDelaunayTriangulator;
+import mathLib.fem.triangulation.NotEnoughPointsException;
+import mathLib.fem.triangulation.Vector2D;
+
+public class BenchmarkDelaunay {
+
+	public static void main(String[] args) throws NotEnoughPointsException {
+		check(randomPoints(2000, 1), "random");
+		check(gridPoints(40), "grid");
+
+		// the old triangulator for comparison
+		List<Vector2D> pts = new ArrayList<Vector2D>();
+		double[][] xy = randomPoints(5000, 2);
+		for(int i=0; i<xy[0].length; i++)
+			pts.add(new Vector2D(xy[0][i], xy[1][i]));
+		long begin = System.currentTimeMillis();
+		DelaunayTriangulator dt = new DelaunayTriangulator(pts);
+		dt.triangulate();
+		long t1 = System.currentTimeMillis() - begin;
+		begin = System.currentTimeMillis();
+		dt.triangulateFast();
+		long t2 = System.currentTimeMillis() - begin;
+		System.out.println("5000 points: triangulate() "+t1+" ms, triangulateFast() "+t2+" ms");
+
+		for(int n : new int[]{10000, 100000, 1000000}) {
+			xy = randomPoints(n, 3);
+			begin = System.currentTimeMillis();
+			FastDelaunayTriangulator fdt = new FastDelaunayTriangulator(xy[0], xy[1]);
+			fdt.triangulate();
+			long t = System.currentTimeMillis() - begin;
+			System.out.println(n+" points: "+fdt.getNumberOfTriangles()+" triangles, "+t+" ms, "+
+					(long)(n/(Math.max(t, 1)/1000.0))+" points/s");
+		}
+
+		FastDelaunayTriangulator fdt = new FastDelaunayTriangulator(gridPoints(10)[0], gridPoints(10)[1]);
+		fdt.triangulate();
+		Mesh mesh = fdt.toMesh();
+		System.out.println("Mesh: "+mesh.getNodeList().size()+" nodes, "+mesh.getElementList().size()+" elements");
+	}
+
+	static double[][] randomPoints(int n, long seed) {
+		Random rnd = new Random(seed);
+		double[][] xy = new double[2][n];
+		for(int i=0; i<n; i++) {
+			xy[0][i] = rnd.nextDouble();
+			xy[1][i] = rnd.nextDouble();
+		}
+		return xy;
+	}
+
+	static double[][] gridPoints(int m) {
+		double[][] xy = new double[2][m*m];
+		for(int i=0; i<m; i++)
+			for(int j=0; j<m; j++) {
+				xy[0][i*m+j] = i;
+				xy[1][i*m+j] = j;
+			}
+		return xy;
+	}
+
+	/**
+	 * Check orientation, the empty circumcircle property (brute force) and the number
+	 * of triangles 2n-h-2, h being the number of points on the convex hull
+	 */
+	static void check(double[][] xy, String name) throws NotEnoughPointsException {
+		double[] x = xy[0], y = xy[1];
+		int n = x.length;
+		FastDelaunayTriangulator fdt = new FastDelaunayTriangulator(x, y);
+		fdt.triangulate();
+		int[] tri = fdt.getTriangles();
+		int bad = 0;
+		double area = 0;
+		for(int k=0; k<tri.length; k+=3) {
+			int a = tri[k], b = tri[k+1], c = tri[k+2];
+			double o = (x[b]-x[a])*(y[c]-y[a]) - (y[b]-y[a])*(x[c]-x[a]);
+			if(o <= 0) bad++;
+			area += o/2;
+			for(int p=0; p<n; p++) {
+				if(p == a || p == b || p == c) continue;
+				double adx = x[a]-x[p], ady = y[a]-y[p];
+				double bdx = x[b]-x[p], bdy = y[b]-y[p];
+				double cdx = x[c]-x[p], cdy = y[c]-y[p];
+				double det = (adx*adx+ady*ady)*(bdx*cdy-bdy*cdx)
+						- (bdx*bdx+bdy*bdy)*(adx*cdy-ady*cdx)
+						+ (cdx*cdx+cdy*cdy)*(adx*bdy-ady*bdx);
+				if(det > 1e-9) bad++;
+			}
+		}
+		// number of edges on the boundary
+		java.util.Map<Long, Integer> edges = new java.util.HashMap<Long, Integer>();
+		for(int k=0; k<tri.length; k+=3)
+			for(int i=0; i<3; i++) {
+				int a = tri[k+i], b = tri[k+(i+1)%3];
+				long key = Math.min(a, b)*(long)n + Math.max(a, b);
+				edges.merge(key, 1, Integer::sum);
+			}
+		int h = 0;
+		for(int c : edges.values())
+			if(c == 1) h++;
+		System.out.println(name+": "+n+" points, "+tri.length/3+" triangles (2n-h-2="+(2*n-h-2)+
+				"), area="+area+", violations="+bad);
+	}
+}
@@ -131,21 +131,15 @@ public class Ex8_AdvectionDiffusion1D {
 	}
 
 	/**
+	 * Weak form of the upwind method: the test function of the convection term is
+	 * shifted upwind by a coefficient depending on the local index of the test DOF
 	 *
-	 * @param mesh
-	 * @param L
-	 * @param N
+	 * @param fe
 	 * @param k diffusivity
 	 * @param u flow velocity
-	 * @return
+	 * @return the compiled weak form
 	 */
-	public static Vector solveUpwind(Mesh mesh,
-			final double L, final int N, double k, double u) {
-		// Mark border types
-		HashMap<NodeType, MathFunc> mapNTF = new HashMap<NodeType, MathFunc>();
-		mapNTF.put(NodeType.Dirichlet, null);
-		mesh.markBorderNode(mapNTF);
-
+	public static WeakForm getUpwindWeakForm(FiniteElement fe, double k, double u) {
 		MathFunc upwindCoef = new UserDefFunc() {
 			//@Override
 			public double apply(AssembleParam ap, double... args) {
@@ -173,13 +167,33 @@ public class Ex8_AdvectionDiffusion1D {
 			}
 		};
 		// Weak form definition
-		FiniteElement fe = new FELinearLine1D();
 		WeakForm wf = new WeakForm(fe,
 				//the convection term is weighted with a modified test function
 				(c, v) -> k * c.diff("x") * v.diff("x") + u * c.diff("x") * (v + upwindCoef),
 				(v)    -> C0
 				);
 		wf.compile();
+		return wf;
+	}
+
+	/**
+	 *
+	 * @param mesh
+	 * @param L
+	 * @param N
+	 * @param k diffusivity
+	 * @param u flow velocity
+	 * @return
+	 */
+	public static Vector solveUpwind(Mesh mesh,
+			final double L, final int N, double k, double u) {
+		// Mark border types
+		HashMap<NodeType, MathFunc> mapNTF = new HashMap<NodeType, MathFunc>();
+		mapNTF.put(NodeType.Dirichlet, null);
+		mesh.markBorderNode(mapNTF);
+
+		FiniteElement fe = new FELinearLine1D();
+		WeakForm wf = getUpwindWeakForm(fe, k, u);
 
 		// Assembly and boundary condition(s)
 		BasicAssembler assembler = new BasicAssembler(mesh, wf);
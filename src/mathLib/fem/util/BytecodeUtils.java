@@ -20,9 +20,11 @@ import org.apache.bcel.generic.MethodGen;
 import org.apache.bcel.generic.Type;
 
 import mathLib.fem.assembler.AssembleParam;
+import mathLib.func.symbolic.MathFuncBase;
 import mathLib.func.symbolic.basic.FComposite;
 import mathLib.func.symbolic.intf.MathFunc;
 import mathLib.func.symbolic.operator.FBinaryOp;
+import mathLib.func.symbolic.operator.FUniaryOp;
 
 @SuppressWarnings("deprecation")
 public class BytecodeUtils {
@@ -30,6 +32,8 @@ public class BytecodeUtils {
 		if(func instanceof FBinaryOp) {
 			postOrder(((FBinaryOp) func).arg1, list);
 			postOrder(((FBinaryOp) func).arg2, list);
+		} else if(func instanceof FUniaryOp) {
+			postOrder(((FUniaryOp) func).arg, list);
 		} else if(func instanceof FComposite) {
 			FComposite fc = (FComposite)func;
 			for(Entry<String, MathFunc> e : fc.fInners.entrySet()) {
@@ -40,6 +44,23 @@ public class BytecodeUtils {
 		list.add(func);
 	}
 
+	/**
+	 * Values of the functions compiled to a field (see <tt>MathFunc.compileToStaticField()</tt>)
+	 * which are read instead of being evaluated, indexed as <tt>refs</tt>
+	 *
+	 * @param refs the functions returned by <tt>postOrder()</tt>
+	 * @return
+	 */
+	public static double[][] getFieldRefs(List<MathFunc> refs) {
+		double[][] values = new double[refs.size()][];
+		for(int i=0; i<refs.size(); i++) {
+			MathFunc f = refs.get(i);
+			if(f instanceof MathFuncBase && ((MathFuncBase)f).isReadFromStaticField())
+				values[i] = ((MathFuncBase)f).getFieldValue();
+		}
+		return values;
+	}
+
 	public static Map<MathFunc, Integer> getFuncRefsMap(MathFunc func) {
 		List<MathFunc> list = new ArrayList<MathFunc>();
 		postOrder(func, list);
@@ -7,6 +7,7 @@ import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
 
 /**
  * A wrapper class for ClassWriter This is used to generate a class
@@ -66,10 +67,14 @@ public class ClassGenerator implements Opcodes {
 	 * @param access
 	 * @param name
 	 * @param type
-	 * @return
+	 * @return a visitor allocating the local variables after the arguments of the method
 	 */
-	public MethodVisitor startMethod(int access, String name, String type) {
-		return cw.visitMethod(access, name, type, null, null);
+	public FuncMethodVisitor startMethod(int access, String name, String type) {
+		//the size of the arguments includes 'this'
+		int firstLocal = Type.getArgumentsAndReturnSizes(type) >> 2;
+		if((access & ACC_STATIC) != 0)
+			firstLocal--;
+		return new FuncMethodVisitor(cw.visitMethod(access, name, type, null, null), firstLocal);
 	}
 
 	/**
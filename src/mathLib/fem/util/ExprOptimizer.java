@@ -0,0 +1,476 @@
+package mathLib.fem.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import mathLib.func.symbolic.MathFuncBase;
+import mathLib.func.symbolic.basic.FC;
+import mathLib.func.symbolic.basic.FX;
+import mathLib.func.symbolic.intf.MathFunc;
+import mathLib.func.symbolic.operator.FAbs;
+import mathLib.func.symbolic.operator.FAcos;
+import mathLib.func.symbolic.operator.FAdd;
+import mathLib.func.symbolic.operator.FAsin;
+import mathLib.func.symbolic.operator.FBinaryOp;
+import mathLib.func.symbolic.operator.FCos;
+import mathLib.func.symbolic.operator.FCosh;
+import mathLib.func.symbolic.operator.FDiv;
+import mathLib.func.symbolic.operator.FExp;
+import mathLib.func.symbolic.operator.FLog;
+import mathLib.func.symbolic.operator.FLog10;
+import mathLib.func.symbolic.operator.FMax;
+import mathLib.func.symbolic.operator.FMin;
+import mathLib.func.symbolic.operator.FMul;
+import mathLib.func.symbolic.operator.FSignum;
+import mathLib.func.symbolic.operator.FSin;
+import mathLib.func.symbolic.operator.FSinh;
+import mathLib.func.symbolic.operator.FSqrt;
+import mathLib.func.symbolic.operator.FSub;
+import mathLib.func.symbolic.operator.FTan;
+import mathLib.func.symbolic.operator.FTanh;
+import mathLib.func.symbolic.operator.FUniaryOp;
+
+/**
+ * Optimisation pass over expression trees before bytecode emission
+ * <p>
+ * The trees are translated into a DAG of simple operations:
+ * <ul>
+ * <li>hash-consing: structurally equal subtrees (same operation on the same operands, constants
+ *     with the same value, the same variable) become one node, + and * are commutative
+ * <li>constant folding of FC operands
+ * <li>algebraic simplification: x*1, x*0, x+0, x-0, 0-x, x/1, 0/x, -(-x)
+ * </ul>
+ * Nodes used more than once are evaluated once and kept in a local variable of the generated
+ * method. Nodes that are not arithmetic operators or functions of <tt>java.lang.Math</tt>
+ * (e.g. shape functions, user defined functions) are emitted by their own <tt>bytecodeGen()</tt>
+ * and only shared if they are the same object.
+ * <p>
+ * The values of opaque nodes may depend on the state of <tt>AssembleParam</tt> (e.g. the DOF
+ * indices of the entry being assembled). With <tt>setPerRootOpaque(true)</tt> an opaque node, and
+ * every node computed from it, is only shared within one root and evaluated again for each root.
+ * <p>
+ * Usage: <tt>add()</tt> all the expressions of a method, <tt>allocateLocals()</tt>, then
+ * <tt>startRoot()</tt> and <tt>emit()</tt> for each root.
+ *
+ */
+public class ExprOptimizer implements Opcodes {
+	/**
+	 * The pass can be switched off to compare with the plain bytecode generation
+	 */
+	public static boolean enabled = true;
+	/**
+	 * Print the operation count before and after optimisation for each compiled function
+	 */
+	public static boolean printReport = false;
+
+	static final int CONST = 0;
+	static final int VAR = 1;
+	static final int ADD = 2;
+	static final int SUB = 3;
+	static final int MUL = 4;
+	static final int DIV = 5;
+	static final int NEG = 6;
+	static final int CALL1 = 7; // java.lang.Math.name(D)D
+	static final int CALL2 = 8; // java.lang.Math.name(DD)D
+	static final int OPAQUE = 9;
+
+	public static class Node {
+		int op;
+		int id;
+		Node a, b;
+		double value;
+		String name;
+		MathFunc func;
+		int refCount = 0;
+		int local = -1;
+		boolean emitted = false;
+		boolean dependsOnOpaque = false;
+		int lastRoot = -1;
+		int rootRefs = 0;
+	}
+
+	protected boolean useStaticFields;
+	protected boolean perRootOpaque = false;
+	protected List<Node> nodes = new ArrayList<Node>();
+	protected Map<String, Node> table = new HashMap<String, Node>();
+	protected Map<MathFunc, Node> memo = new IdentityHashMap<MathFunc, Node>();
+	protected Map<MathFunc, Long> treeOps = new IdentityHashMap<MathFunc, Long>();
+	protected List<Node> roots = new ArrayList<Node>();
+	protected long opsBefore = 0;
+	protected long opsAfter = 0;
+	protected int nLocals = 0;
+
+	/**
+	 * @param useStaticFields if true, subexpressions already compiled to fields
+	 * (<tt>MathFunc.compileToStaticField()</tt>) are read from their fields, otherwise they are
+	 * evaluated by the generated code
+	 */
+	public ExprOptimizer(boolean useStaticFields) {
+		this.useStaticFields = useStaticFields;
+	}
+
+	/**
+	 * @param perRootOpaque if true, opaque nodes and the nodes depending on them are not
+	 * shared between different roots
+	 */
+	public void setPerRootOpaque(boolean perRootOpaque) {
+		this.perRootOpaque = perRootOpaque;
+	}
+
+	/**
+	 * Add an expression to be emitted
+	 *
+	 * @param f
+	 * @return the root node of <tt>f</tt>
+	 */
+	public Node add(MathFunc f) {
+		opsBefore += countTreeOps(f);
+		Node n = build(f);
+		roots.add(n);
+		return n;
+	}
+
+	/**
+	 * Count references and assign local variables to the shared nodes
+	 *
+	 * @param firstLocal index of the first free local variable of the method
+	 * @return the next free local variable index
+	 */
+	public int allocateLocals(int firstLocal) {
+		//operands are created before the nodes using them
+		for(Node n : nodes) {
+			n.refCount = 0;
+			n.local = -1;
+			n.lastRoot = -1;
+			n.rootRefs = 0;
+			n.dependsOnOpaque = n.op == OPAQUE ||
+					(n.a != null && n.a.dependsOnOpaque) || (n.b != null && n.b.dependsOnOpaque);
+		}
+		opsAfter = 0;
+		for(int i=0; i<roots.size(); i++)
+			ref(roots.get(i), i);
+		int next = firstLocal;
+		for(Node n : nodes) {
+			if(n.refCount > 1 && n.op != CONST && n.op != VAR) {
+				n.local = next;
+				next += 2;
+				nLocals++;
+			}
+		}
+		return next;
+	}
+
+	private void ref(Node n, int root) {
+		if(perRootOpaque && n.dependsOnOpaque) {
+			//counted again in each root, a local is only needed for the uses within one root
+			if(n.lastRoot != root) {
+				n.lastRoot = root;
+				n.rootRefs = 0;
+			}
+			n.rootRefs++;
+			n.refCount = Math.max(n.refCount, n.rootRefs);
+			if(n.rootRefs > 1)
+				return;
+		} else {
+			n.refCount++;
+			if(n.refCount > 1)
+				return;
+		}
+		if(n.op == OPAQUE)
+			opsAfter += countTreeOps(n.func);
+		else if(n.op != CONST && n.op != VAR)
+			opsAfter++;
+		if(n.a != null) ref(n.a, root);
+		if(n.b != null) ref(n.b, root);
+	}
+
+	/**
+	 * Must be called before <tt>emit()</tt> of each root if <tt>setPerRootOpaque(true)</tt>:
+	 * the values depending on opaque nodes are evaluated again
+	 */
+	public void startRoot() {
+		if(!perRootOpaque)
+			return;
+		for(Node n : nodes)
+			if(n.dependsOnOpaque)
+				n.emitted = false;
+	}
+
+	/**
+	 * Emit the bytecode of <tt>root</tt>, the value is left on the operand stack
+	 */
+	public void emit(MethodVisitor mv, Node root, Map<String, Integer> argsMap, int argsStartPos,
+			Map<MathFunc, Integer> funcRefsMap, String clsName) {
+		Node n = root;
+		if(n.emitted) {
+			mv.visitVarInsn(DLOAD, n.local);
+			return;
+		}
+		switch(n.op) {
+		case CONST:
+			mv.visitLdcInsn(n.value);
+			break;
+		case VAR:
+			mv.visitVarInsn(ALOAD, argsStartPos);
+			mv.visitLdcInsn(argsMap.get(n.name));
+			mv.visitInsn(DALOAD);
+			break;
+		case NEG:
+			emit(mv, n.a, argsMap, argsStartPos, funcRefsMap, clsName);
+			mv.visitInsn(DNEG);
+			break;
+		case CALL1:
+			emit(mv, n.a, argsMap, argsStartPos, funcRefsMap, clsName);
+			mv.visitMethodInsn(INVOKESTATIC, "java/lang/Math", n.name, "(D)D", false);
+			break;
+		case OPAQUE:
+			n.func.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
+			break;
+		default:
+			emit(mv, n.a, argsMap, argsStartPos, funcRefsMap, clsName);
+			emit(mv, n.b, argsMap, argsStartPos, funcRefsMap, clsName);
+			if(n.op == ADD) mv.visitInsn(DADD);
+			else if(n.op == SUB) mv.visitInsn(DSUB);
+			else if(n.op == MUL) mv.visitInsn(DMUL);
+			else if(n.op == DIV) mv.visitInsn(DDIV);
+			else mv.visitMethodInsn(INVOKESTATIC, "java/lang/Math", n.name, "(DD)D", false);
+		}
+		if(n.local >= 0) {
+			mv.visitInsn(DUP2);
+			mv.visitVarInsn(DSTORE, n.local);
+			n.emitted = true;
+		}
+	}
+
+	/**
+	 * Number of operations (arithmetic operators, function calls and opaque functions)
+	 * executed by the plain bytecode of the expressions
+	 */
+	public long getOpCountBefore() {
+		return opsBefore;
+	}
+
+	/**
+	 * Number of operations executed by the optimised bytecode, valid after <tt>allocateLocals()</tt>
+	 */
+	public long getOpCountAfter() {
+		return opsAfter;
+	}
+
+	/**
+	 * Number of values kept in local variables
+	 */
+	public int getNumberOfLocals() {
+		return nLocals;
+	}
+
+	public String report() {
+		return "ops "+opsBefore+" -> "+opsAfter+", shared values "+nLocals;
+	}
+
+	////////////////////////////////////////////////////////////////////
+
+	protected long countTreeOps(MathFunc f) {
+		Long c = treeOps.get(f);
+		if(c != null)
+			return c;
+		long n;
+		if(isLeaf(f) || readFromStaticField(f))
+			n = 0;
+		else if(isArithmetic(f) || mathName(f) != null) {
+			if(f instanceof FBinaryOp)
+				n = 1 + countTreeOps(((FBinaryOp)f).arg1) + countTreeOps(((FBinaryOp)f).arg2);
+			else
+				n = 1 + countTreeOps(((FUniaryOp)f).arg);
+		} else
+			n = 1;
+		treeOps.put(f, n);
+		return n;
+	}
+
+	protected boolean readFromStaticField(MathFunc f) {
+		return useStaticFields && f instanceof MathFuncBase &&
+				((MathFuncBase)f).isReadFromStaticField();
+	}
+
+	/**
+	 * Constants and variables, subclasses (e.g. constant shape functions) may generate their own bytecode
+	 */
+	protected static boolean isLeaf(MathFunc f) {
+		return f.getClass() == FC.class || f.getClass() == FX.class;
+	}
+
+	protected static boolean isArithmetic(MathFunc f) {
+		return f instanceof FAdd || f instanceof FSub || f instanceof FMul || f instanceof FDiv;
+	}
+
+	/**
+	 * Name of the function of <tt>java.lang.Math</tt> which is called by the bytecode of <tt>f</tt>
+	 */
+	protected static String mathName(MathFunc f) {
+		if(f instanceof FSin) return "sin";
+		if(f instanceof FCos) return "cos";
+		if(f instanceof FTan) return "tan";
+		if(f instanceof FExp) return "exp";
+		if(f instanceof FLog10) return "log10";
+		if(f instanceof FLog) return "log";
+		if(f instanceof FSqrt) return "sqrt";
+		if(f instanceof FAbs) return "abs";
+		if(f instanceof FSinh) return "sinh";
+		if(f instanceof FCosh) return "cosh";
+		if(f instanceof FTanh) return "tanh";
+		if(f instanceof FAsin) return "asin";
+		if(f instanceof FAcos) return "acos";
+		if(f instanceof FSignum) return "signum";
+		if(f instanceof FMax) return "max";
+		if(f instanceof FMin) return "min";
+		return null;
+	}
+
+	protected Node build(MathFunc f) {
+		Node n = memo.get(f);
+		if(n != null)
+			return n;
+		if(!enabled || readFromStaticField(f)) {
+			n = opaque(f);
+		} else if(f.getClass() == FC.class) {
+			n = constant(((FC)f).apply());
+		} else if(f.getClass() == FX.class) {
+			n = node(VAR, null, null, 0.0, f.getExpr());
+		} else if(f instanceof FAdd) {
+			n = add(build(((FBinaryOp)f).arg1), build(((FBinaryOp)f).arg2));
+		} else if(f instanceof FSub) {
+			n = sub(build(((FBinaryOp)f).arg1), build(((FBinaryOp)f).arg2));
+		} else if(f instanceof FMul) {
+			n = mul(build(((FBinaryOp)f).arg1), build(((FBinaryOp)f).arg2));
+		} else if(f instanceof FDiv) {
+			n = div(build(((FBinaryOp)f).arg1), build(((FBinaryOp)f).arg2));
+		} else if(mathName(f) != null && f instanceof FUniaryOp) {
+			Node a = build(((FUniaryOp)f).arg);
+			String name = mathName(f);
+			if(a.op == CONST)
+				n = constant(call(name, a.value));
+			else
+				n = node(CALL1, a, null, 0.0, name);
+		} else if(mathName(f) != null && f instanceof FBinaryOp) {
+			Node a = build(((FBinaryOp)f).arg1);
+			Node b = build(((FBinaryOp)f).arg2);
+			String name = mathName(f);
+			if(a.op == CONST && b.op == CONST)
+				n = constant(name.equals("max") ? Math.max(a.value, b.value) : Math.min(a.value, b.value));
+			else
+				n = node(CALL2, a, b, 0.0, name);
+		} else {
+			n = opaque(f);
+		}
+		memo.put(f, n);
+		return n;
+	}
+
+	protected static double call(String name, double x) {
+		switch(name) {
+		case "sin": return Math.sin(x);
+		case "cos": return Math.cos(x);
+		case "tan": return Math.tan(x);
+		case "exp": return Math.exp(x);
+		case "log": return Math.log(x);
+		case "log10": return Math.log10(x);
+		case "sqrt": return Math.sqrt(x);
+		case "abs": return Math.abs(x);
+		case "sinh": return Math.sinh(x);
+		case "cosh": return Math.cosh(x);
+		case "tanh": return Math.tanh(x);
+		case "asin": return Math.asin(x);
+		case "acos": return Math.acos(x);
+		default: return Math.signum(x);
+		}
+	}
+
+	private static boolean isConst(Node n, double v) {
+		return n.op == CONST && n.value == v;
+	}
+
+	protected Node add(Node a, Node b) {
+		if(a.op == CONST && b.op == CONST) return constant(a.value+b.value);
+		if(isConst(a, 0.0)) return b;
+		if(isConst(b, 0.0)) return a;
+		return a.id <= b.id ? node(ADD, a, b, 0.0, null) : node(ADD, b, a, 0.0, null);
+	}
+
+	protected Node sub(Node a, Node b) {
+		if(a.op == CONST && b.op == CONST) return constant(a.value-b.value);
+		if(isConst(b, 0.0)) return a;
+		if(isConst(a, 0.0)) return neg(b);
+		return node(SUB, a, b, 0.0, null);
+	}
+
+	protected Node mul(Node a, Node b) {
+		if(a.op == CONST && b.op == CONST) return constant(a.value*b.value);
+		if(isConst(a, 0.0) || isConst(b, 0.0)) return constant(0.0);
+		if(isConst(a, 1.0)) return b;
+		if(isConst(b, 1.0)) return a;
+		if(isConst(a, -1.0)) return neg(b);
+		if(isConst(b, -1.0)) return neg(a);
+		return a.id <= b.id ? node(MUL, a, b, 0.0, null) : node(MUL, b, a, 0.0, null);
+	}
+
+	protected Node div(Node a, Node b) {
+		if(a.op == CONST && b.op == CONST) return constant(a.value/b.value);
+		if(isConst(b, 1.0)) return a;
+		if(isConst(a, 0.0)) return constant(0.0);
+		return node(DIV, a, b, 0.0, null);
+	}
+
+	protected Node neg(Node a) {
+		if(a.op == CONST) return constant(-a.value);
+		if(a.op == NEG) return a.a;
+		return node(NEG, a, null, 0.0, null);
+	}
+
+	protected Node constant(double v) {
+		return node(CONST, null, null, v, null);
+	}
+
+	protected Node opaque(MathFunc f) {
+		Node n = new Node();
+		n.op = OPAQUE;
+		n.func = f;
+		n.id = nodes.size();
+		nodes.add(n);
+		return n;
+	}
+
+	/**
+	 * Find or create the node with the given operation and operands (hash-consing)
+	 */
+	protected Node node(int op, Node a, Node b, double value, String name) {
+		StringBuilder key = new StringBuilder();
+		key.append(op).append(':');
+		if(op == CONST)
+			key.append(Double.doubleToLongBits(value));
+		else if(name != null)
+			key.append(name);
+		if(a != null) key.append(':').append(a.id);
+		if(b != null) key.append(':').append(b.id);
+		String k = key.toString();
+		Node n = table.get(k);
+		if(n == null) {
+			n = new Node();
+			n.op = op;
+			n.a = a;
+			n.b = b;
+			n.value = value;
+			n.name = name;
+			n.id = nodes.size();
+			nodes.add(n);
+			table.put(k, n);
+		}
+		return n;
+	}
+}
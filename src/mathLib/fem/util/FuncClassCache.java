@@ -0,0 +1,253 @@
+package mathLib.fem.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import mathLib.func.symbolic.MathFuncBase;
+import mathLib.func.symbolic.intf.MathFunc;
+import mathLib.func.symbolic.operator.FBinaryOp;
+import mathLib.func.symbolic.operator.FUniaryOp;
+
+/**
+ * Content-addressed cache of the classes generated by <tt>MathFunc.compileWithASM()</tt>
+ * and <tt>KernelGenerator</tt>
+ * <p>
+ * The key of a class is the SHA-1 digest of the canonical form of the expressions, the order
+ * of the arguments and the options of the code generation. Compiling an expression equal to
+ * one compiled before returns a new instance of the same class without generating any bytecode.
+ * If <tt>dir</tt> is set (by default from the system property <tt>mathLib.classCacheDir</tt>)
+ * the class bytes are also written to <tt>dir/key.class</tt> and loaded from there by later runs.
+ * <p>
+ * Each class is defined by its own class loader, so a class evicted from the cache (least
+ * recently used beyond <tt>maxSize</tt> classes) is unloaded once its instances are garbage
+ * collected. The value of a function compiled to a field (see
+ * <tt>MathFunc.compileToStaticField()</tt>) is held by the instances of the generated classes,
+ * not by a class, so these classes are cached like the others: the functions reading such a
+ * value are keyed by the expression of the function writing it.
+ * <p>
+ * In the canonical form, operators are identified by their class and operands, other functions
+ * by their class and <tt>getExpr()</tt>. Different objects with the same expression are
+ * distinguished since they are evaluated separately by the generated code.
+ *
+ */
+public class FuncClassCache {
+	/**
+	 * System property giving the default cache directory
+	 */
+	public static final String DIR_PROPERTY = "mathLib.classCacheDir";
+	/**
+	 * Changed whenever the generated code changes, so that the classes of a cache directory
+	 * written by an older version are not used
+	 */
+	public static final int FORMAT_VERSION = 2;
+
+	private static FuncClassCache instance = null;
+
+	/**
+	 * If false, every compilation generates a new class
+	 */
+	public boolean enabled = true;
+	/**
+	 * Maximum number of classes kept in memory
+	 */
+	public int maxSize = 4096;
+	/**
+	 * Directory of the persistent cache, null for an in-memory cache only
+	 */
+	public File dir = null;
+
+	protected Map<String, Class<?>> classes = new LinkedHashMap<String, Class<?>>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Class<?>> eldest) {
+			if(size() > maxSize) {
+				evictions++;
+				return true;
+			}
+			return false;
+		}
+	};
+
+	protected int hits = 0;
+	protected int diskHits = 0;
+	protected int misses = 0;
+	protected int evictions = 0;
+
+	public FuncClassCache() {
+		String d = System.getProperty(DIR_PROPERTY);
+		if(d != null && d.length() > 0)
+			dir = new File(d);
+	}
+
+	public static synchronized FuncClassCache getInstance() {
+		if(instance == null)
+			instance = new FuncClassCache();
+		return instance;
+	}
+
+	/**
+	 * Compute the key of the class generated for <tt>funcs</tt>
+	 *
+	 * @param kind type of the generated class, e.g. "CompiledFunc"
+	 * @param funcs
+	 * @param varNames order of the arguments
+	 * @param useStaticFields true if the generated code reads the values compiled to static fields
+	 * @param options any other option of the code generation
+	 * @return
+	 */
+	public static String getKey(String kind, MathFunc[] funcs, String[] varNames,
+			boolean useStaticFields, String options) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(FORMAT_VERSION).append('|').append(kind).append('|');
+		sb.append(ExprOptimizer.enabled).append('|');
+		for(String v : varNames)
+			sb.append(v).append(',');
+		sb.append('|').append(options).append('|');
+		Map<MathFunc, Integer> ids = new IdentityHashMap<MathFunc, Integer>();
+		for(MathFunc f : funcs) {
+			canonicalForm(f, useStaticFields, ids, sb);
+			sb.append(';');
+		}
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			byte[] digest = md.digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder();
+			for(byte b : digest)
+				hex.append(String.format("%02x", b));
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new FutureyeException(e.getMessage());
+		}
+	}
+
+	protected static void canonicalForm(MathFunc f, boolean useStaticFields,
+			Map<MathFunc, Integer> ids, StringBuilder sb) {
+		if(useStaticFields && f instanceof MathFuncBase && ((MathFuncBase)f).isReadFromStaticField()) {
+			sb.append("S(");
+			canonicalForm(f, false, ids, sb);
+			sb.append(')');
+		} else if(f instanceof FBinaryOp) {
+			sb.append(f.getClass().getName()).append('(');
+			canonicalForm(((FBinaryOp)f).arg1, useStaticFields, ids, sb);
+			sb.append(',');
+			canonicalForm(((FBinaryOp)f).arg2, useStaticFields, ids, sb);
+			sb.append(')');
+		} else if(f instanceof FUniaryOp) {
+			sb.append(f.getClass().getName()).append('(');
+			canonicalForm(((FUniaryOp)f).arg, useStaticFields, ids, sb);
+			sb.append(')');
+		} else {
+			Integer id = ids.get(f);
+			if(id == null) {
+				id = ids.size();
+				ids.put(f, id);
+			}
+			sb.append(f.getClass().getName()).append('[').append(f.getExpr()).append("]#").append(id);
+		}
+	}
+
+	/**
+	 * Return the class of <tt>key</tt> from memory or from the cache directory
+	 *
+	 * @param key
+	 * @return null if the class is not in the cache
+	 */
+	public synchronized Class<?> get(String key) {
+		Class<?> c = classes.get(key);
+		if(c != null) {
+			hits++;
+			return c;
+		}
+		if(dir != null) {
+			File file = new File(dir, key+".class");
+			if(file.isFile()) {
+				try {
+					c = defineClass(Files.readAllBytes(file.toPath()));
+					classes.put(key, c);
+					diskHits++;
+					return c;
+				} catch(IOException | LinkageError e) {
+					//unreadable or corrupted file, the class is generated again
+				}
+			}
+		}
+		misses++;
+		return null;
+	}
+
+	/**
+	 * Define the class <tt>bytes</tt> generated for <tt>key</tt> and add it to the cache
+	 *
+	 * @param key
+	 * @param bytes
+	 * @return
+	 */
+	public synchronized Class<?> define(String key, byte[] bytes) {
+		Class<?> c = defineClass(bytes);
+		classes.put(key, c);
+		if(dir != null)
+			write(key, bytes);
+		return c;
+	}
+
+	protected Class<?> defineClass(byte[] bytes) {
+		FuncClassLoader<?> parent = FuncClassLoader.getInstance(ClassGenerator.class.getClassLoader());
+		FuncClassLoader<?> loader = new FuncClassLoader<Object>(parent);
+		return loader.defineClassForName(null, bytes);
+	}
+
+	protected void write(String key, byte[] bytes) {
+		try {
+			if(!dir.exists())
+				dir.mkdirs();
+			//write to a temporary file first, another process may read the same key
+			File tmp = File.createTempFile(key, ".tmp", dir);
+			Files.write(tmp.toPath(), bytes);
+			Files.move(tmp.toPath(), new File(dir, key+".class").toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch(IOException e) {
+			//the cache directory is optional
+		}
+	}
+
+	/**
+	 * Remove all the classes from memory, the cache directory is not changed.
+	 */
+	public synchronized void clear() {
+		classes.clear();
+	}
+
+	public int getHits() {
+		return hits;
+	}
+
+	public int getDiskHits() {
+		return diskHits;
+	}
+
+	public int getMisses() {
+		return misses;
+	}
+
+	public int getEvictions() {
+		return evictions;
+	}
+
+	public synchronized int size() {
+		return classes.size();
+	}
+
+	public String toString() {
+		return "FuncClassCache(size="+size()+", hits="+hits+", diskHits="+diskHits+
+				", misses="+misses+", evictions="+evictions+(dir==null?"":", dir="+dir)+")";
+	}
+}
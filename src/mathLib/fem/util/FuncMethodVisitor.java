@@ -0,0 +1,55 @@
+package mathLib.fem.util;
+
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * A MethodVisitor which also allocates the local variables of the generated method
+ * <p>
+ * The code of a generated method is emitted by several generators (e.g. <tt>ExprOptimizer</tt>
+ * and the <tt>bytecodeGen()</tt> of the functions). Each of them takes the local variables
+ * it needs from the same visitor, so that they never overlap with the arguments of the method
+ * or with each other.
+ *
+ */
+public class FuncMethodVisitor extends MethodVisitor {
+	protected int nextLocal;
+
+	/**
+	 * @param mv
+	 * @param firstLocal index of the first local variable after the arguments of the method
+	 */
+	public FuncMethodVisitor(MethodVisitor mv, int firstLocal) {
+		super(Opcodes.ASM5, mv);
+		this.nextLocal = firstLocal;
+	}
+
+	/**
+	 * Allocate a new local variable
+	 *
+	 * @param size 1 for an int or a reference, 2 for a double
+	 * @return the index of the local variable
+	 */
+	public int newLocal(int size) {
+		int local = nextLocal;
+		nextLocal += size;
+		return local;
+	}
+
+	/**
+	 * Index of the next free local variable
+	 */
+	public int getNextLocal() {
+		return nextLocal;
+	}
+
+	/**
+	 * Release the local variables from <tt>local</tt> on, e.g. a temporary variable after the
+	 * code using it has been emitted
+	 *
+	 * @param local a value returned by <tt>getNextLocal()</tt> or <tt>newLocal()</tt>
+	 */
+	public void setNextLocal(int local) {
+		this.nextLocal = local;
+	}
+}
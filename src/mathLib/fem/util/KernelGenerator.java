@@ -0,0 +1,177 @@
+package mathLib.fem.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+
+import mathLib.fem.assembler.AssembleParam;
+import mathLib.func.symbolic.intf.MathFunc;
+import mathLib.util.CompiledFunc;
+import mathLib.util.CompiledKernel;
+
+/**
+ * Generate a <tt>CompiledKernel</tt> which evaluates a list of functions in one method
+ * <p>
+ * The functions are optimised together by <tt>ExprOptimizer</tt>: every subexpression shared
+ * by the functions (e.g. the Jacobian which multiplies every entry of a local stiffness matrix,
+ * or structurally equal products of derivatives of shape functions) is evaluated once and
+ * kept in a local variable of the generated method. Functions which are not arithmetic
+ * expressions (e.g. user defined functions reading <tt>AssembleParam.testDOFIdx</tt>) are
+ * evaluated again for each entry, after the DOF indices of the entry are set.
+ * <p>
+ * The local variables make the generated kernel reentrant, unlike expressions compiled to
+ * a field which is shared with the functions reading it.
+ *
+ */
+public class KernelGenerator implements Opcodes {
+	// double accumulate(AssembleParam ap, double[] args, double weight, double[] out)
+	static final int apIdx = 1;
+	static final int argsIdx = 2;
+	static final int weightIdx = 3;
+	static final int outIdx = 5;
+	static final int firstLocalIdx = 6;
+
+	protected String clsName;
+	protected Map<String, Integer> argsMap;
+	protected Map<MathFunc, Integer> refsMap;
+	protected FuncMethodVisitor mv;
+	protected ExprOptimizer opt;
+
+	/**
+	 * Compile the functions <tt>funcs</tt> into one kernel, <tt>out[k]</tt> of
+	 * <tt>CompiledKernel.accumulate()</tt> corresponds to <tt>funcs[k]</tt>
+	 *
+	 * @param name prefix of the generated class name
+	 * @param funcs
+	 * @param trialIdx DOF indices set into <tt>AssembleParam.trialDOFIdx</tt> before <tt>funcs[k]</tt>
+	 * is evaluated, null if not used
+	 * @param testIdx DOF indices set into <tt>AssembleParam.testDOFIdx</tt>, null if not used
+	 * @param varNames order of the arguments
+	 * @return
+	 */
+	public static CompiledKernel compile(String name, MathFunc[] funcs, int[] trialIdx, int[] testIdx,
+			String ...varNames) {
+		KernelGenerator gen = new KernelGenerator();
+		return gen.generate(name, funcs, trialIdx, testIdx, varNames);
+	}
+
+	protected CompiledKernel generate(String name, MathFunc[] funcs, int[] trialIdx, int[] testIdx,
+			String[] varNames) {
+		//the kernel writes no field, the class of equal functions can always be reused
+		FuncClassCache cache = FuncClassCache.getInstance();
+		String cacheKey = null;
+		Class<?> cached = null;
+		if(cache.enabled) {
+			cacheKey = FuncClassCache.getKey("CompiledKernel", funcs, varNames, false,
+					java.util.Arrays.toString(trialIdx)+java.util.Arrays.toString(testIdx));
+			cached = cache.get(cacheKey);
+			clsName = name + "_" + cacheKey;
+		} else {
+			clsName = name + java.util.UUID.randomUUID().toString().replaceAll("-", "");
+		}
+		argsMap = new HashMap<String, Integer>();
+		for(int i=0; i<varNames.length; i++)
+			argsMap.put(varNames[i], i);
+
+		//references of all the functions, see MathFuncBase.bytecodeGen()
+		List<MathFunc> refs = new ArrayList<MathFunc>();
+		for(MathFunc f : funcs)
+			BytecodeUtils.postOrder(f, refs);
+		refsMap = new HashMap<MathFunc, Integer>();
+		for(int i=0; i<refs.size(); i++)
+			refsMap.put(refs.get(i), i);
+
+		//the values compiled to fields are evaluated again, the kernel is reentrant
+		opt = new ExprOptimizer(false);
+		opt.setPerRootOpaque(true);
+		ExprOptimizer.Node[] roots = new ExprOptimizer.Node[funcs.length];
+		for(int k=0; k<funcs.length; k++)
+			roots[k] = opt.add(funcs[k]);
+		int nextLocal = opt.allocateLocals(firstLocalIdx);
+		if(ExprOptimizer.printReport)
+			System.out.println("KernelGenerator: "+name+" "+opt.report());
+
+		if(cached != null)
+			return newKernel(cached, refs);
+		try {
+			FuncClassLoader<CompiledFunc> mcl = FuncClassLoader.getInstance(ClassGenerator.class.getClassLoader());
+			ClassGenerator cgen = new ClassGenerator(clsName);
+			cgen.startClass(ClassGenerator.getASMName(CompiledKernel.class), null);
+
+			Label startLabel = new Label();
+			Label endLabel = new Label();
+			String apDesc = org.objectweb.asm.Type.getType(AssembleParam.class).getDescriptor();
+			mv = cgen.startMethod(ACC_PUBLIC, "accumulate", "("+apDesc+"[DD[D)V");
+			//the functions take their local variables after the shared subexpressions
+			mv.setNextLocal(nextLocal);
+			cgen.startCode(mv, startLabel);
+			String apName = ClassGenerator.getASMName(AssembleParam.class);
+
+			for(int k=0; k<funcs.length; k++) {
+				if(trialIdx != null || testIdx != null) {
+					Label skip = new Label();
+					mv.visitVarInsn(ALOAD, apIdx);
+					mv.visitJumpInsn(IFNULL, skip);
+					if(trialIdx != null) {
+						mv.visitVarInsn(ALOAD, apIdx);
+						mv.visitLdcInsn(trialIdx[k]);
+						mv.visitFieldInsn(PUTFIELD, apName, "trialDOFIdx", "I");
+					}
+					if(testIdx != null) {
+						mv.visitVarInsn(ALOAD, apIdx);
+						mv.visitLdcInsn(testIdx[k]);
+						mv.visitFieldInsn(PUTFIELD, apName, "testDOFIdx", "I");
+					}
+					mv.visitLabel(skip);
+				}
+				// out[k] += weight*f_k
+				opt.startRoot();
+				mv.visitVarInsn(ALOAD, outIdx);
+				mv.visitLdcInsn(k);
+				mv.visitInsn(DUP2);
+				mv.visitInsn(DALOAD);
+				mv.visitVarInsn(DLOAD, weightIdx);
+				opt.emit(mv, roots[k], argsMap, argsIdx, refsMap, clsName);
+				mv.visitInsn(DMUL);
+				mv.visitInsn(DADD);
+				mv.visitInsn(DASTORE);
+			}
+			mv.visitInsn(RETURN);
+
+			mv.visitLocalVariable("this", "L" + clsName + ";", null, startLabel, endLabel, 0);
+			mv.visitLocalVariable("ap", apDesc, null, startLabel, endLabel, apIdx);
+			mv.visitLocalVariable("args", "[D", null, startLabel, endLabel, argsIdx);
+			mv.visitLocalVariable("weight", "D", null, startLabel, endLabel, weightIdx);
+			mv.visitLocalVariable("out", "[D", null, startLabel, endLabel, outIdx);
+			mv.visitMaxs(-1, -1); // Auto generated
+			cgen.endCode(mv, endLabel);
+			cgen.endClass();
+
+			Class<?> c;
+			if(cacheKey != null)
+				c = cache.define(cacheKey, cgen.dump());
+			else
+				c = mcl.defineClassForName(null, cgen.dump());
+			return newKernel(c, refs);
+		} catch (Exception | LinkageError e) {
+			//e.g. VerifyError, the entries are then integrated one by one
+			throw new FutureyeException("Kernel "+name+" cannot be compiled: "+e);
+		}
+	}
+
+	protected CompiledKernel newKernel(Class<?> c, List<MathFunc> refs) {
+		try {
+			CompiledKernel kernel = (CompiledKernel) c.getDeclaredConstructor().newInstance();
+			kernel.setFuncRefs(refs.toArray(new MathFunc[0]));
+			kernel.setFieldRefs(BytecodeUtils.getFieldRefs(refs));
+			kernel.setOpCount(opt.getOpCountBefore(), opt.getOpCountAfter());
+			return kernel;
+		} catch (ReflectiveOperationException | LinkageError e) {
+			throw new FutureyeException("Kernel "+clsName+" cannot be instantiated: "+e);
+		}
+	}
+}
@@ -216,6 +216,58 @@ public class Tools {
 		return rlt;
 	}
 
+	/**
+	 * Interpolate the nodal values <tt>u</tt> on <tt>meshFrom</tt> at the nodes of <tt>meshTo</tt>:
+	 * linear interpolation on simplex elements, bilinear on quadrilaterals. The nodes
+	 * are located by the spatial index of <tt>meshFrom</tt> in one batch.
+	 *
+	 * @param meshFrom
+	 * @param meshTo
+	 * @param u
+	 * @param deaultValue value at the nodes outside of <tt>meshFrom</tt>
+	 * @return
+	 */
+	public static Vector interpolateData(Mesh meshFrom, Mesh meshTo, Vector u, double deaultValue) {
+		NodeList nodeTo = meshTo.getNodeList();
+		int dimTo = nodeTo.size();
+		double[][] coords = new double[dimTo][];
+		for(int i=1;i<=dimTo;i++)
+			coords[i-1] = nodeTo.at(i).coords();
+		double[][] bary = new double[dimTo][];
+		Element[] eles = meshFrom.getElementsByCoords(coords, bary);
+
+		Vector rlt = u.copy();
+		rlt.setDim(dimTo);
+		for(int i=1;i<=dimTo;i++) {
+			Element e = eles[i-1];
+			if(e == null) {
+				rlt.set(i, deaultValue);
+				continue;
+			}
+			double[] lambda = bary[i-1];
+			if(!Double.isNaN(lambda[0])) {
+				double v = 0.0;
+				for(int k=0;k<lambda.length;k++)
+					v += lambda[k]*u.get(e.nodes.at(k+1).globalIndex);
+				rlt.set(i, v);
+			} else if(e.vertices().size() == 4 && coords[i-1].length == 2) {
+				Point[] p = new Point[4];
+				double[] f = new double[4];
+				for(int k=1;k<=4;k++) {
+					p[k-1] = e.nodes.at(k);
+					f[k-1] = u.get(e.nodes.at(k).globalIndex);
+				}
+				double[] coef = Utils.computeBilinearFunctionCoef(p, f);
+				double x = coords[i-1][0];
+				double y = coords[i-1][1];
+				rlt.set(i, coef[0] + coef[1]*x + coef[2]*y + coef[3]*x*y);
+			} else {
+				throw new FutureyeException("Interpolation is not supported on element "+e);
+			}
+		}
+		return rlt;
+	}
+
 	/**
 	 * Solve the L2 problem for a(x)
 	 *
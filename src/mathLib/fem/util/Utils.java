@@ -1,6 +1,7 @@
 package mathLib.fem.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -46,7 +47,10 @@ import mathLib.func.symbolic.intf.MathFunc;
 import mathLib.func.symbolic.intf.ScalarShapeFunction;
 import mathLib.func.symbolic.intf.VecMathFunc;
 import mathLib.matrix.algebra.SpaceVector;
+import mathLib.matrix.algebra.SparseMatrixCSR;
 import mathLib.matrix.algebra.intf.Matrix;
+import mathLib.matrix.algebra.intf.MatrixEntry;
+import mathLib.matrix.algebra.intf.SparseMatrix;
 import mathLib.matrix.algebra.intf.Vector;
 
 public class Utils {
@@ -932,7 +936,124 @@ public class Utils {
 	}
 
 
+	/**
+	 * Batched Dirichlet imposition: all the constrained DOFs are collected first and then
+	 * eliminated in one pass over the nonzeros of <tt>stiff</tt>, instead of one pass over all
+	 * rows and columns per DOF as <tt>setDirichlet(stiff, load, matIndex, value)</tt> does.
+	 * <p>
+	 * The row of each constrained DOF <tt>d</tt> is replaced by the unit row and
+	 * <tt>load(d)=value</tt>. If <tt>symmetric</tt> is true, column <tt>d</tt> is eliminated as
+	 * well by moving <tt>-stiff(r,d)*value</tt> to the load vector, which keeps a symmetric matrix
+	 * symmetric (e.g. for CG) and gives the same result as calling <tt>setDirichlet()</tt> for
+	 * each DOF. Otherwise the columns are left untouched, which is cheaper and gives the same solution.
+	 *
+	 * @param stiff
+	 * @param load
+	 * @param matIndex global indices (1-based) of the constrained DOFs, repeated indices are allowed,
+	 * the last value wins
+	 * @param values
+	 * @param symmetric
+	 */
+	public static void setDirichlet(Matrix stiff, Vector load, int[] matIndex, double[] values, boolean symmetric) {
+		int nRow = stiff.getRowDim();
+		boolean[] isDiri = new boolean[nRow+1];
+		double[] diriValue = new double[nRow+1];
+		for(int k=0; k<matIndex.length; k++) {
+			isDiri[matIndex[k]] = true;
+			diriValue[matIndex[k]] = values[k];
+		}
+		double[] loadCorrection = new double[nRow+1];
+
+		if(stiff instanceof SparseMatrixCSR) {
+			SparseMatrixCSR csr = (SparseMatrixCSR)stiff;
+			csr.compact();
+			int[] rowPtr = csr.getRowPointers();
+			int[] colIdx = csr.getColIndices();
+			double[] data = csr.getData();
+			for(int r=0; r<nRow; r++) {
+				if(isDiri[r+1]) {
+					for(int k=rowPtr[r]; k<rowPtr[r+1]; k++)
+						data[k] = colIdx[k] == r ? 1.0 : 0.0;
+				} else if(symmetric) {
+					for(int k=rowPtr[r]; k<rowPtr[r+1]; k++) {
+						int c = colIdx[k]+1;
+						if(isDiri[c]) {
+							loadCorrection[r+1] -= data[k]*diriValue[c];
+							data[k] = 0.0;
+						}
+					}
+				}
+			}
+		} else if(stiff instanceof SparseMatrix) {
+			//setting zeros removes entries, so collect them first
+			int[] rows = new int[64];
+			int[] cols = new int[64];
+			int nZero = 0;
+			for(MatrixEntry e : (SparseMatrix)stiff) {
+				int r = e.getRow();
+				int c = e.getCol();
+				if(r == c && isDiri[r])
+					continue;
+				if(isDiri[r] || (symmetric && isDiri[c])) {
+					if(!isDiri[r])
+						loadCorrection[r] -= e.getValue()*diriValue[c];
+					if(nZero == rows.length) {
+						rows = Arrays.copyOf(rows, 2*nZero);
+						cols = Arrays.copyOf(cols, 2*nZero);
+					}
+					rows[nZero] = r;
+					cols[nZero++] = c;
+				}
+			}
+			for(int k=0; k<nZero; k++)
+				stiff.set(rows[k], cols[k], 0.0);
+		} else {
+			int nCol = stiff.getColDim();
+			for(int r=1; r<=nRow; r++) {
+				if(isDiri[r]) {
+					for(int c=1; c<=nCol; c++)
+						if(c != r) stiff.set(r, c, 0.0);
+				} else if(symmetric) {
+					for(int c=1; c<=nCol; c++) {
+						if(isDiri[c]) {
+							loadCorrection[r] -= stiff.get(r, c)*diriValue[c];
+							stiff.set(r, c, 0.0);
+						}
+					}
+				}
+			}
+		}
+		for(int r=1; r<=nRow; r++) {
+			if(isDiri[r]) {
+				stiff.set(r, r, 1.0);
+				load.set(r, diriValue[r]);
+			} else if(loadCorrection[r] != 0.0) {
+				load.add(r, loadCorrection[r]);
+			}
+		}
+	}
+
+	/**
+	 * Batched Dirichlet imposition, see <tt>setDirichlet(Matrix, Vector, int[], double[], boolean)</tt>
+	 *
+	 * @param stiff
+	 * @param load
+	 * @param diriValues global index (1-based) of constrained DOF -&gt; value
+	 * @param symmetric
+	 */
+	public static void setDirichlet(Matrix stiff, Vector load, Map<Integer,Double> diriValues, boolean symmetric) {
+		int[] matIndex = new int[diriValues.size()];
+		double[] values = new double[diriValues.size()];
+		int k = 0;
+		for(Entry<Integer,Double> e : diriValues.entrySet()) {
+			matIndex[k] = e.getKey();
+			values[k++] = e.getValue();
+		}
+		setDirichlet(stiff, load, matIndex, values, symmetric);
+	}
+
 	public static void imposeDirichletCondition(Matrix stiff, Vector load, FiniteElement fe, Mesh mesh, MathFunc diri) {
+		Map<Integer,Double> diriValues = new HashMap<Integer,Double>();
 		ElementList eList = mesh.getElementList();
 		for(int i=1;i<=eList.size();i++) {
 			NodeList nodes = eList.at(i).nodes;
@@ -942,14 +1063,16 @@ public class Utils {
 					Variable v = Variable.createFrom(diri, n, n.globalIndex); //bugfix 11/27/2013 Variable.createFrom(diri, n, 0);
 					double vv = diri.apply(v);
 					//System.out.println("===>"+vv);
-					setDirichlet(stiff, load, fe.getGlobalIndex(mesh, eList.at(i), j), vv);
+					diriValues.put(fe.getGlobalIndex(mesh, eList.at(i), j), vv);
 				}
 			}
 		}
+		setDirichlet(stiff, load, diriValues, true);
 	}
 
 
 	public static void imposeDirichletCondition(Matrix stiff, Vector load, VecFiniteElement fe, Mesh mesh, VecMathFunc diri) {
+		Map<Integer,Double> diriValues = new HashMap<Integer,Double>();
 		int nDOFs = fe.getNumberOfDOFs();
 		for(Element e : mesh.getElementList()) {
 			for(int localIndex=1; localIndex<=nDOFs; localIndex++) {
@@ -960,15 +1083,17 @@ public class Utils {
 					Variable v = Variable.createFrom(f, n, n.globalIndex); //bugfix 11/27/2013 Variable.createFrom(diri, n, 0);
 					double vv = f.apply(v);
 					//System.out.println("===>"+vv);
-					setDirichlet(stiff, load, fe.getGlobalIndex(mesh, e, localIndex), vv);
+					diriValues.put(fe.getGlobalIndex(mesh, e, localIndex), vv);
 				}
 			}
 		}
+		setDirichlet(stiff, load, diriValues, true);
 	}
 
 	@SuppressWarnings("rawtypes")
 	@Deprecated
 	public static void imposeDirichletCondition(Matrix stiff, Vector load, Mesh mesh, MathFunc diri) {
+		Map<Integer,Double> diriValues = new HashMap<Integer,Double>();
 		ElementList eList = mesh.getElementList();
 		for(int i=1;i<=eList.size();i++) {
 			Element e = eList.at(i);
@@ -980,7 +1105,7 @@ public class Utils {
 					Node n = (Node)ge;
 					if(n.getNodeType() == NodeType.Dirichlet) {
 						Variable v = Variable.createFrom(diri, n, n.globalIndex); //bugfix 11/27/2013 Variable.createFrom(diri, n, 0);
-						setDirichlet(stiff, load, dof.getGlobalIndex(),diri.apply(v));
+						diriValues.put(dof.getGlobalIndex(),diri.apply(v));
 					}
 				} else if(ge instanceof EdgeLocal) {
 
@@ -1003,7 +1128,7 @@ public class Utils {
 						Node n = vs.at(k).globalNode();
 						if(NodeType.Dirichlet == n.getNodeType()) {
 							Variable v = Variable.createFrom(diri, n, 0);
-							setDirichlet(stiff, load, dof.getGlobalIndex(),diri.apply(v));
+							diriValues.put(dof.getGlobalIndex(),diri.apply(v));
 						}
 					}
 				} else if(ge instanceof Face) {
@@ -1014,7 +1139,7 @@ public class Utils {
 						Node n = vs.at(k).globalNode();
 						if(NodeType.Dirichlet == n.getNodeType()) {
 							Variable v = Variable.createFrom(diri, n, 0);
-							setDirichlet(stiff, load, dof.getGlobalIndex(),diri.apply(v));
+							diriValues.put(dof.getGlobalIndex(),diri.apply(v));
 						}
 					}
 				} else if(ge instanceof Volume) {
@@ -1024,12 +1149,13 @@ public class Utils {
 						Node n = vs.at(k).globalNode();
 						if(NodeType.Dirichlet == n.getNodeType()) {
 							Variable v = Variable.createFrom(diri, n, 0);
-							setDirichlet(stiff, load, dof.getGlobalIndex(),diri.apply(v));
+							diriValues.put(dof.getGlobalIndex(),diri.apply(v));
 						}
 					}
 				}
 			}
 		}
+		setDirichlet(stiff, load, diriValues, true);
 	}
 
 }
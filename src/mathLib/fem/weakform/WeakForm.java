@@ -5,8 +5,11 @@ import java.util.Map;
 import mathLib.fem.core.intf.FiniteElement;
 import mathLib.fem.core.intf.LHSExpr;
 import mathLib.fem.core.intf.RHSExpr;
+import mathLib.fem.util.FutureyeException;
+import mathLib.fem.util.KernelGenerator;
 import mathLib.func.symbolic.intf.MathFunc;
 import mathLib.util.CompiledFunc;
+import mathLib.util.CompiledKernel;
 
 public class WeakForm {
 	FiniteElement fe;
@@ -18,6 +21,8 @@ public class WeakForm {
 	CompiledFunc cjac;
 	CompiledFunc[][] clhs;
 	CompiledFunc[] crhs;
+	CompiledKernel ckernel;
+	boolean useKernel = true;
 
 	public WeakForm(FiniteElement fe, LHSExpr lhsExpr, RHSExpr rhsExpr) {
 		this.fe = fe;
@@ -41,24 +46,90 @@ public class WeakForm {
 		}
 	}
 
+	private WeakForm() {
+	}
+
 	public void compile() {
+		compile(true);
+	}
+
+	/**
+	 * @param useCache reuse the classes generated for equal expressions, see <tt>FuncClassCache</tt>
+	 */
+	protected void compile(boolean useCache) {
 		String[] argsOrder = fe.getArgsOrder();
 		jac.compileToStaticField(true);
-		cjac = jac.compileWithASM(argsOrder);
+		cjac = jac.compileWithASM(useCache, argsOrder);
 
 		int nDOFs = this.fe.getNumberOfDOFs();
 		clhs = new CompiledFunc[nDOFs][nDOFs];
 		crhs = new CompiledFunc[nDOFs];
 		for(int j=0; j<nDOFs; j++) {
 			for(int i=0; i<nDOFs; i++) {
-				clhs[j][i] = matLHS[j][i].compileWithASM(argsOrder);
+				clhs[j][i] = matLHS[j][i].compileWithASM(useCache, argsOrder);
 				//clhs[j][i] = matLHS[j][i].compile(argsOrder);
 			}
-			crhs[j] = vecRHS[j].compileWithASM(argsOrder);
+			crhs[j] = vecRHS[j].compileWithASM(useCache, argsOrder);
 			//crhs[j] = vecRHS[j].compile(argsOrder);
 		}
+		ckernel = compileKernel(argsOrder);
+	}
+
+	/**
+	 * Compile the whole local stiffness matrix and load vector into one kernel:
+	 * <tt>out[j*nDOFs+i]</tt> is the integrand of LHS(i,j) and <tt>out[nDOFs*nDOFs+j]</tt>
+	 * the integrand of RHS(j). Subexpressions shared by the entries are evaluated once
+	 * per quadrature point.
+	 * <p>
+	 * Returns null if the kernel cannot be generated (e.g. the generated method exceeds
+	 * the size limit of the JVM for high order elements), the entries are then integrated
+	 * one by one with the compiled functions.
+	 */
+	protected CompiledKernel compileKernel(String[] argsOrder) {
+		int nDOFs = this.fe.getNumberOfDOFs();
+		int n = nDOFs*nDOFs;
+		MathFunc[] funcs = new MathFunc[n+nDOFs];
+		int[] trialIdx = new int[n+nDOFs];
+		int[] testIdx = new int[n+nDOFs];
+		for(int j=0; j<nDOFs; j++) {
+			for(int i=0; i<nDOFs; i++) {
+				funcs[j*nDOFs+i] = matLHS[j][i];
+				trialIdx[j*nDOFs+i] = i+1;
+				testIdx[j*nDOFs+i] = j+1;
+			}
+			funcs[n+j] = vecRHS[j];
+			trialIdx[n+j] = -1;
+			testIdx[n+j] = j+1;
+		}
+		try {
+			return KernelGenerator.compile("Kernel", funcs, trialIdx, testIdx, argsOrder);
+		} catch(FutureyeException e) {
+			return null;
+		}
 	}
 	
+	/**
+	 * Return a new weak form sharing the expressions of this weak form
+	 * but with its own compiled functions.
+	 * <p>
+	 * The Jacobian is compiled to a field of its compiled function which is read
+	 * by the compiled LHS and RHS, so the compiled functions of one weak form must not
+	 * be used by several threads at the same time. Each thread of a parallel assembly
+	 * uses its own copy instead: new instances of the cached classes with their own field.
+	 *
+	 * @return
+	 */
+	public WeakForm compileCopy() {
+		WeakForm wf = new WeakForm();
+		wf.fe = this.fe;
+		wf.jac = this.jac;
+		wf.matLHS = this.matLHS;
+		wf.vecRHS = this.vecRHS;
+		wf.useKernel = this.useKernel;
+		wf.compile();
+		return wf;
+	}
+
 	public CompiledFunc[][] getCompiledLHS() {
 		return clhs;
 	}
@@ -67,6 +138,23 @@ public class WeakForm {
 		return crhs;
 	}
 	
+	/**
+	 * Compiled kernel of the local stiffness matrix and load vector, see <tt>compileKernel()</tt>
+	 *
+	 * @return null if the kernel is not available
+	 */
+	public CompiledKernel getCompiledKernel() {
+		return useKernel ? ckernel : null;
+	}
+
+	/**
+	 * @param useKernel if false, the entries are integrated one by one with the compiled
+	 * functions even if the kernel is available
+	 */
+	public void setUseKernel(boolean useKernel) {
+		this.useKernel = useKernel;
+	}
+
 	public CompiledFunc getCompiledJac() {
 		return this.cjac;
 	}
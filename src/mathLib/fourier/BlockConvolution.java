@@ -0,0 +1,295 @@
+package mathLib.fourier;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import mathLib.fourier.core.FFTPlan;
+import mathLib.fourier.core.RealFFTPlan;
+import mathLib.func.intf.RealFunction;
+
+/**
+ * Block based convolution of a long (or unbounded) signal with a short kernel:
+ * <tt>y[n] = sum_k h[k] x[n-k]</tt>
+ * <p>
+ * The spectrum of the kernel is computed once. The input is consumed incrementally by the
+ * <tt>write()</tt> methods, split into blocks of <tt>B = L-K+1</tt> samples (<tt>L</tt> being
+ * the FFT length, <tt>K</tt> the kernel length) and convolved with the kernel by real FFTs
+ * of length <tt>L</tt>, either by overlap-add or by overlap-save. Every completed block of
+ * output is passed to a <tt>BlockConsumer</tt>, so the memory used is <tt>O(L)</tt>
+ * whatever the length of the signal.
+ * <p>
+ * The output is the full linear convolution: <tt>flush()</tt> pads the input with zeros
+ * until the last <tt>K-1</tt> samples of the convolution have been passed to the consumer.
+ *
+ */
+public class BlockConvolution {
+
+	public enum Method { OVERLAP_ADD, OVERLAP_SAVE }
+
+	/**
+	 * Receives the output samples <tt>data[offset...offset+length-1]</tt>, the array is reused
+	 * for the next block
+	 */
+	public interface BlockConsumer {
+		void accept(double[] data, int offset, int length);
+	}
+
+	private final Method method;
+	private final int K, L, B;
+	private final RealFFTPlan plan;
+	private final double[] hRe, hIm;
+
+	// overlap-save: K-1 previous samples followed by B new ones; overlap-add: B new ones
+	private final double[] inBuf;
+	private final double[] outBuf;
+	private final double[] specRe, specIm;
+	// overlap-add: last K-1 samples of the previous block
+	private final double[] tail;
+
+	private int nNew = 0;
+	private long nInput = 0;
+	private long nOutput = 0;
+	private BlockConsumer consumer;
+
+	/**
+	 * @param kernel
+	 * @param method
+	 * @param fftSize FFT length, at least the length of the kernel. It is rounded up to the next fast length
+	 * @param consumer
+	 */
+	public BlockConvolution(double[] kernel, Method method, int fftSize, BlockConsumer consumer) {
+		if(kernel.length == 0)
+			throw new IllegalArgumentException("Empty kernel");
+		this.method = method;
+		this.K = kernel.length;
+		this.L = FFTPlan.nextFastSize(Math.max(fftSize, K + 1));
+		this.B = L - K + 1;
+		this.plan = RealFFTPlan.getInstance(L);
+		this.consumer = consumer;
+
+		int nBins = plan.spectrumSize();
+		hRe = new double[nBins];
+		hIm = new double[nBins];
+		double[] padded = new double[L];
+		System.arraycopy(kernel, 0, padded, 0, K);
+		plan.forward(padded, hRe, hIm);
+
+		inBuf = new double[L];
+		outBuf = new double[L];
+		specRe = new double[nBins];
+		specIm = new double[nBins];
+		tail = new double[K];
+	}
+
+	/**
+	 * Overlap-save with an FFT length of about four times the kernel length
+	 *
+	 * @param kernel
+	 * @param consumer
+	 */
+	public BlockConvolution(double[] kernel, BlockConsumer consumer) {
+		this(kernel, Method.OVERLAP_SAVE, Math.max(4 * kernel.length, 1024), consumer);
+	}
+
+	public void setConsumer(BlockConsumer consumer) {
+		this.consumer = consumer;
+	}
+
+	public int getFFTSize() {
+		return L;
+	}
+
+	/**
+	 * Number of input samples per block
+	 *
+	 * @return
+	 */
+	public int getBlockSize() {
+		return B;
+	}
+
+	public int getKernelLength() {
+		return K;
+	}
+
+	private int newStart() {
+		return method == Method.OVERLAP_SAVE ? K - 1 : 0;
+	}
+
+	public void write(double x) {
+		inBuf[newStart() + nNew++] = x;
+		nInput++;
+		if(nNew == B)
+			processBlock(B);
+	}
+
+	public void write(double[] x) {
+		write(x, 0, x.length);
+	}
+
+	public void write(double[] x, int offset, int length) {
+		int start = newStart();
+		while(length > 0) {
+			int m = Math.min(length, B - nNew);
+			System.arraycopy(x, offset, inBuf, start + nNew, m);
+			nNew += m;
+			nInput += m;
+			offset += m;
+			length -= m;
+			if(nNew == B)
+				processBlock(B);
+		}
+	}
+
+	/**
+	 * Write the samples <tt>f(t0 + i*ts)</tt>, <tt>i=0...n-1</tt>
+	 *
+	 * @param f
+	 * @param t0
+	 * @param ts
+	 * @param n
+	 */
+	public void write(RealFunction f, double t0, double ts, long n) {
+		int start = newStart();
+		for(long i=0; i<n; i++) {
+			inBuf[start + nNew++] = f.evaluate(t0 + i * ts);
+			nInput++;
+			if(nNew == B)
+				processBlock(B);
+		}
+	}
+
+	/**
+	 * Read <tt>n</tt> samples from <tt>in</tt> by <tt>readDouble()</tt>
+	 *
+	 * @param in
+	 * @param n
+	 * @throws IOException
+	 */
+	public void write(DataInput in, long n) throws IOException {
+		int start = newStart();
+		for(long i=0; i<n; i++) {
+			inBuf[start + nNew++] = in.readDouble();
+			nInput++;
+			if(nNew == B)
+				processBlock(B);
+		}
+	}
+
+	/**
+	 * Pass all the remaining output samples, including the last <tt>K-1</tt> samples of the
+	 * convolution, to the consumer and reset the convolution for a new signal
+	 */
+	public void flush() {
+		long total = nInput + K - 1;
+		int start = newStart();
+		while(nOutput < total) {
+			for(int i=nNew; i<B; i++)
+				inBuf[start + i] = 0.0;
+			nNew = B;
+			processBlock((int) Math.min(B, total - nOutput));
+		}
+		reset();
+	}
+
+	/**
+	 * Discard the input and output state
+	 */
+	public void reset() {
+		Arrays.fill(inBuf, 0.0);
+		Arrays.fill(tail, 0.0);
+		nNew = 0;
+		nInput = 0;
+		nOutput = 0;
+	}
+
+	/**
+	 * Total number of samples passed to the consumer since the last reset
+	 *
+	 * @return
+	 */
+	public long getOutputCount() {
+		return nOutput;
+	}
+
+	private void processBlock(int nEmit) {
+		if(method == Method.OVERLAP_ADD) {
+			for(int i=B; i<L; i++)
+				inBuf[i] = 0.0;
+		}
+		plan.forward(inBuf, specRe, specIm);
+		for(int i=0; i<specRe.length; i++) {
+			double re = specRe[i] * hRe[i] - specIm[i] * hIm[i];
+			double im = specRe[i] * hIm[i] + specIm[i] * hRe[i];
+			specRe[i] = re;
+			specIm[i] = im;
+		}
+		plan.inverse(specRe, specIm, outBuf);
+		if(method == Method.OVERLAP_SAVE) {
+			// the first K-1 samples are wrapped around, keep the last K-1 inputs
+			System.arraycopy(inBuf, B, inBuf, 0, K - 1);
+			nNew = 0;
+			nOutput += nEmit;
+			if(consumer != null)
+				consumer.accept(outBuf, K - 1, nEmit);
+		} else {
+			for(int i=0; i<K-1; i++)
+				outBuf[i] += tail[i];
+			System.arraycopy(outBuf, B, tail, 0, K - 1);
+			nNew = 0;
+			nOutput += nEmit;
+			if(consumer != null)
+				consumer.accept(outBuf, 0, nEmit);
+		}
+	}
+
+	/**
+	 * Full linear convolution of <tt>x</tt> and <tt>h</tt>, of length <tt>x.length+h.length-1</tt>
+	 *
+	 * @param x
+	 * @param h
+	 * @return
+	 */
+	public static double[] convolve(double[] x, double[] h) {
+		final double[] y = new double[x.length + h.length - 1];
+		BlockConvolution conv = new BlockConvolution(h, null);
+		final int[] pos = { 0 };
+		conv.setConsumer((data, offset, length) -> {
+			System.arraycopy(data, offset, y, pos[0], length);
+			pos[0] += length;
+		});
+		conv.write(x);
+		conv.flush();
+		return y;
+	}
+
+	/**
+	 * Filter <tt>n</tt> samples of <tt>in</tt> by <tt>kernel</tt> and write the
+	 * <tt>n+K-1</tt> samples of the result to <tt>out</tt>
+	 *
+	 * @param in
+	 * @param n
+	 * @param kernel
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void filter(DataInput in, long n, double[] kernel, final DataOutput out) throws IOException {
+		final IOException[] error = { null };
+		BlockConvolution conv = new BlockConvolution(kernel, (data, offset, length) -> {
+			if(error[0] != null)
+				return;
+			try {
+				for(int i=offset; i<offset+length; i++)
+					out.writeDouble(data[i]);
+			} catch (IOException e) {
+				error[0] = e;
+			}
+		});
+		conv.write(in, n);
+		conv.flush();
+		if(error[0] != null)
+			throw error[0];
+	}
+}
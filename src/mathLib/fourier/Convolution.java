@@ -1,9 +1,9 @@
 package mathLib.fourier;
 
-import mathLib.fourier.core.FFT;
+import mathLib.fourier.core.FFTPlan;
+import mathLib.fourier.core.RealFFTPlan;
 import mathLib.fourier.intf.ConvolutionFunctionPair;
 import mathLib.func.intf.RealFunction;
-import mathLib.util.MathUtils;
 
 public class Convolution {
 
@@ -23,8 +23,8 @@ public class Convolution {
 			){
 		this.funcs = funcs ;
 		this.ts = ts ;
-		M = (int) (Math.log(tPeriod/ts)/Math.log(2) + 1) ;
-		N = (int) (Math.pow(2, M)) ;
+		N = (int) Math.ceil(tPeriod/ts) ;
+		M = (int) Math.ceil(Math.log(N)/Math.log(2)) ;
 		this.fs = 1.0/ts ;
 		this.df = fs/N ;
 	}
@@ -48,42 +48,43 @@ public class Convolution {
 			}
 		} ;
 		this.ts = ts ;
-		M = (int) (Math.log(tPeriod/ts)/Math.log(2) + 1) ;
-		N = (int) (Math.pow(2, M)) ;
+		N = (int) Math.ceil(tPeriod/ts) ;
+		M = (int) Math.ceil(Math.log(N)/Math.log(2)) ;
 		this.fs = 1.0/ts ;
 		this.df = fs/N ;
 	}
 
 	public void performConvolution(){
-		double[] realFunc1 = MathUtils.Arrays.setZero(2*N) ; // N points zero padding at the end
-		double[] imagFunc1 = MathUtils.Arrays.setZero(2*N) ; // N points zero padding at the end
-		double[] realFunc2 = MathUtils.Arrays.setZero(2*N) ; // N points zero padding at the end
-		double[] imagFunc2 = MathUtils.Arrays.setZero(2*N) ; // N points zero padding at the end
+		// linear convolution of N samples: 2N-1 points, zero padded to a fast FFT length
+		int L = FFTPlan.nextFastSize(2*N-1) ;
+		RealFFTPlan fft = RealFFTPlan.getInstance(L) ;
+		double[] padded1 = new double[L] ;
+		double[] padded2 = new double[L] ;
 		time = new double[N] ;
 		func1 = new double[N] ;
 		func2 = new double[N] ;
 		convResult = new double[N] ;
 		for(int i=0; i<N; i++){
-			realFunc1[i] = funcs.func1(i*ts) ;
-			imagFunc1[i] = 0 ; // no imaginary part
-			realFunc2[i] = funcs.func2(i*ts) ;
-			imagFunc2[i] = 0 ; // no imaginary part
 			time[i] = i*ts ;
 			func1[i] = funcs.func1(i*ts) ;
 			func2[i] = funcs.func2(i*ts) ;
+			padded1[i] = func1[i] ;
+			padded2[i] = func2[i] ;
 		}
-		FFT fft = new FFT(2*N) ;
-		fft.fft(realFunc1, imagFunc1);
-		fft.fft(realFunc2, imagFunc2);
-		double[] realConv = new double[2*N] ;
-		double[] imagConv = new double[2*N] ;
-		for(int i=0; i<2*N; i++){
-			realConv[i] = realFunc1[i]*realFunc2[i]-imagFunc1[i]*imagFunc2[i] ;
-			imagConv[i] = realFunc1[i]*imagFunc2[i]+imagFunc1[i]*realFunc2[i] ;
+		int nBins = fft.spectrumSize() ;
+		double[] re1 = new double[nBins], im1 = new double[nBins] ;
+		double[] re2 = new double[nBins], im2 = new double[nBins] ;
+		fft.forward(padded1, re1, im1);
+		fft.forward(padded2, re2, im2);
+		for(int i=0; i<nBins; i++){
+			double re = re1[i]*re2[i]-im1[i]*im2[i] ;
+			double im = re1[i]*im2[i]+im1[i]*re2[i] ;
+			re1[i] = re ;
+			im1[i] = im ;
 		}
-		fft.fft(imagConv, realConv);
+		fft.inverse(re1, im1, padded1);
 		for(int i=0; i<N; i++){
-			convResult[i] = realConv[i]/(2*N*fs) ; // don't forget to divide by 2*N*fs
+			convResult[i] = padded1[i]*ts ; // Riemann sum of the convolution integral
 		}
 	}
 }
@@ -1,6 +1,6 @@
 package mathLib.fourier;
 
-import mathLib.fourier.core.FFT;
+import mathLib.fourier.core.FFTPlan;
 import mathLib.fourier.intf.FourierFunction;
 
 public class FourierTransform {
@@ -26,16 +26,15 @@ public class FourierTransform {
 	public void setTimeResAndFreqRes(double ts, double df) {
 		this.ts = ts;
 		this.fs = 1.0 / ts;
-		double a = Math.floor(fs / df);
-		M = (int) (Math.log(a) / Math.log(2) + 1);
-		N = (int) (Math.pow(2, M));
+		N = FFTPlan.nextFastSize((int) Math.ceil(fs / df));
+		M = (int) Math.ceil(Math.log(N) / Math.log(2));
 		this.df = fs / N;
 	}
 
 	// time duration and number of samples
 	public void setTimeDurationAndNumSamples(double T, int N) {
-		M = (int) (Math.log(N) / Math.log(2) + 1);
-		this.N = (int) (Math.pow(2, M));
+		this.N = N;
+		M = (int) Math.ceil(Math.log(N) / Math.log(2));
 		this.ts = (double) (T / N);
 		this.fs = 1.0 / ts;
 		this.df = fs / this.N;
@@ -44,9 +43,8 @@ public class FourierTransform {
 	// Total frequency bandwidth and freq resolution
 	public void setFreqResAndBandwidth(double fs, double df) {
 		this.fs = fs;
-		double a = Math.floor(fs / df);
-		M = (int) (Math.log(a) / Math.log(2) + 1);
-		N = (int) (Math.pow(2, M));
+		N = FFTPlan.nextFastSize((int) Math.ceil(fs / df));
+		M = (int) Math.ceil(Math.log(N) / Math.log(2));
 		this.df = fs / N;
 		this.ts = 1.0 / fs;
 	}
@@ -54,8 +52,8 @@ public class FourierTransform {
 	// total frequency bandwidth and number of samples
 	public void setFreqBandwidthAndSamples(double fs, double N) {
 		this.fs = fs;
-		M = (int) (Math.log(N) / Math.log(2) + 1);
-		this.N = (int) (Math.pow(2, M));
+		this.N = (int) N;
+		M = (int) Math.ceil(Math.log(N) / Math.log(2));
 		this.df = fs / this.N;
 		this.ts = 1.0 / fs;
 	}
@@ -78,8 +76,7 @@ public class FourierTransform {
 			funcReal[i] = func.realPart(i * ts);
 			funcImag[i] = func.imagPart(i * ts);
 		}
-		FFT transform = new FFT(N);
-		transform.fft(realPart, imagPart);
+		FFTPlan.getInstance(N).fft(realPart, imagPart);
 		for (int i = 0; i < N / 2; i++) {
 			freq[i] = i * df;
 			ftReal[i] = realPart[i];
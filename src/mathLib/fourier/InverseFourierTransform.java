@@ -1,6 +1,6 @@
 package mathLib.fourier;
 
-import mathLib.fourier.core.FFT;
+import mathLib.fourier.core.FFTPlan;
 import mathLib.fourier.intf.InverseFourierFunction;
 
 public class InverseFourierTransform {
@@ -22,16 +22,15 @@ public class InverseFourierTransform {
 	public void setTimeResAndFreqRes(double ts, double df) {
 		this.ts = ts;
 		this.fs = 1.0 / ts;
-		double a = Math.floor(fs / df);
-		M = (int) (Math.log(a) / Math.log(2) + 1);
-		N = (int) (Math.pow(2, M));
+		N = FFTPlan.nextFastSize((int) Math.ceil(fs / df));
+		M = (int) Math.ceil(Math.log(N) / Math.log(2));
 		this.df = fs / N;
 	}
 
 	// time duration and number of samples
 	public void setTimeDurationAndNumSamples(double T, int N) {
-		M = (int) (Math.log(N) / Math.log(2) + 1);
-		this.N = (int) (Math.pow(2, M));
+		this.N = N;
+		M = (int) Math.ceil(Math.log(N) / Math.log(2));
 		this.ts = (double) (T / N);
 		this.fs = 1.0 / ts;
 		this.df = fs / this.N;
@@ -40,9 +39,8 @@ public class InverseFourierTransform {
 	// Total frequency bandwidth and freq resolution
 	public void setFreqResAndBandwidth(double fs, double df) {
 		this.fs = fs;
-		double a = Math.floor(fs / df);
-		M = (int) (Math.log(a) / Math.log(2) + 1);
-		N = (int) (Math.pow(2, M));
+		N = FFTPlan.nextFastSize((int) Math.ceil(fs / df));
+		M = (int) Math.ceil(Math.log(N) / Math.log(2));
 		this.df = fs / N;
 		this.ts = 1.0 / fs;
 	}
@@ -50,8 +48,8 @@ public class InverseFourierTransform {
 	// total frequency bandwidth and number of samples
 	public void setFreqBandwidthAndSamples(double fs, double N) {
 		this.fs = fs;
-		M = (int) (Math.log(N) / Math.log(2) + 1);
-		this.N = (int) (Math.pow(2, M));
+		this.N = (int) N;
+		M = (int) Math.ceil(Math.log(N) / Math.log(2));
 		this.df = fs / this.N;
 		this.ts = 1.0 / fs;
 	}
@@ -77,8 +75,7 @@ public class InverseFourierTransform {
 			ftPhase[i] = Math.atan(ftImag[i] / ftReal[i]);
 
 		}
-		FFT transform = new FFT(N);
-		transform.fft(realPart, imagPart);
+		FFTPlan.getInstance(N).fft(realPart, imagPart);
 		for (int i = 0; i < N / 2; i++) {
 			time[i] = i * ts;
 			funcReal[i] = df * (2 * imagPart[i] - ftReal[0]);
@@ -0,0 +1,205 @@
+package mathLib.fourier.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Fast Fourier transforms of many independent signals, or of the rows and columns of a 2D
+ * array, on several threads.
+ * <p>
+ * The signals are split into <tt>nThreads</tt> contiguous ranges which are transformed by the
+ * cached <tt>FFTPlan</tt>/<tt>RealFFTPlan</tt> of their length; the plans keep their work
+ * buffers per thread. If no executor is given, a fixed thread pool is created for each call
+ * and shut down afterwards.
+ *
+ */
+public class BatchFFT {
+	protected int nThreads = Runtime.getRuntime().availableProcessors();
+	protected ExecutorService executor = null;
+
+	// number of columns gathered together by the column transforms of fft2D()
+	private static final int COLUMN_BLOCK = 16;
+
+	public BatchFFT() {
+	}
+
+	public BatchFFT(int nThreads) {
+		setParallel(nThreads, null);
+	}
+
+	/**
+	 * Set the number of threads and the executor used by the transforms
+	 *
+	 * @param nThreads
+	 * @param executor
+	 */
+	public void setParallel(int nThreads, ExecutorService executor) {
+		if(nThreads < 1)
+			throw new IllegalArgumentException("Number of threads must be positive: " + nThreads);
+		this.nThreads = nThreads;
+		this.executor = executor;
+	}
+
+	/**
+	 * In-place forward transform of each signal <tt>(re[i], im[i])</tt>
+	 *
+	 * @param re
+	 * @param im
+	 */
+	public void fft(final double[][] re, final double[][] im) {
+		run(re.length, (begin, end) -> {
+			for(int i=begin; i<end; i++)
+				FFTPlan.getInstance(re[i].length).fft(re[i], im[i]);
+		});
+	}
+
+	/**
+	 * In-place inverse transform of each signal <tt>(re[i], im[i])</tt>, normalized by <tt>1/n</tt>
+	 *
+	 * @param re
+	 * @param im
+	 */
+	public void ifft(final double[][] re, final double[][] im) {
+		run(re.length, (begin, end) -> {
+			for(int i=begin; i<end; i++)
+				FFTPlan.getInstance(re[i].length).ifft(re[i], im[i]);
+		});
+	}
+
+	/**
+	 * Forward transforms of the real signals <tt>x[i]</tt>, the bins <tt>0...n/2</tt> are
+	 * written to <tt>re[i]</tt> and <tt>im[i]</tt>
+	 *
+	 * @param x
+	 * @param re
+	 * @param im
+	 */
+	public void forwardReal(final double[][] x, final double[][] re, final double[][] im) {
+		run(x.length, (begin, end) -> {
+			for(int i=begin; i<end; i++)
+				RealFFTPlan.getInstance(x[i].length).forward(x[i], re[i], im[i]);
+		});
+	}
+
+	/**
+	 * Inverse transforms of the spectra <tt>(re[i], im[i])</tt> to the real signals <tt>x[i]</tt>
+	 *
+	 * @param re
+	 * @param im
+	 * @param x
+	 */
+	public void inverseReal(final double[][] re, final double[][] im, final double[][] x) {
+		run(x.length, (begin, end) -> {
+			for(int i=begin; i<end; i++)
+				RealFFTPlan.getInstance(x[i].length).inverse(re[i], im[i], x[i]);
+		});
+	}
+
+	/**
+	 * In-place 2D forward transform of a <tt>rows x cols</tt> array stored row by row
+	 *
+	 * @param re
+	 * @param im
+	 * @param rows
+	 * @param cols
+	 */
+	public void fft2D(double[] re, double[] im, int rows, int cols) {
+		transform2D(re, im, rows, cols);
+	}
+
+	/**
+	 * In-place 2D inverse transform of a <tt>rows x cols</tt> array stored row by row,
+	 * normalized by <tt>1/(rows*cols)</tt>
+	 *
+	 * @param re
+	 * @param im
+	 * @param rows
+	 * @param cols
+	 */
+	public void ifft2D(double[] re, double[] im, int rows, int cols) {
+		// conj(fft(conj(x))) is the transform with the real and imaginary parts swapped
+		transform2D(im, re, rows, cols);
+		final double s = 1.0 / ((double) rows * cols);
+		run(rows, (begin, end) -> {
+			for(int k=begin*cols; k<end*cols; k++) {
+				re[k] *= s;
+				im[k] *= s;
+			}
+		});
+	}
+
+	private void transform2D(final double[] re, final double[] im, final int rows, final int cols) {
+		if(re.length < rows * cols || im.length < rows * cols)
+			throw new IllegalArgumentException("Array shorter than rows*cols");
+		final FFTPlan rowPlan = FFTPlan.getInstance(cols);
+		final FFTPlan colPlan = FFTPlan.getInstance(rows);
+		run(rows, (begin, end) -> {
+			for(int i=begin; i<end; i++)
+				rowPlan.fft(re, im, i * cols);
+		});
+		// columns are gathered by blocks so that the rows are read contiguously
+		int nBlocks = (cols + COLUMN_BLOCK - 1) / COLUMN_BLOCK;
+		run(nBlocks, (begin, end) -> {
+			double[] br = new double[COLUMN_BLOCK * rows];
+			double[] bi = new double[COLUMN_BLOCK * rows];
+			for(int b=begin; b<end; b++) {
+				int c0 = b * COLUMN_BLOCK;
+				int nc = Math.min(COLUMN_BLOCK, cols - c0);
+				for(int i=0; i<rows; i++) {
+					for(int j=0; j<nc; j++) {
+						br[j * rows + i] = re[i * cols + c0 + j];
+						bi[j * rows + i] = im[i * cols + c0 + j];
+					}
+				}
+				for(int j=0; j<nc; j++)
+					colPlan.fft(br, bi, j * rows);
+				for(int i=0; i<rows; i++) {
+					for(int j=0; j<nc; j++) {
+						re[i * cols + c0 + j] = br[j * rows + i];
+						im[i * cols + c0 + j] = bi[j * rows + i];
+					}
+				}
+			}
+		});
+	}
+
+	interface RangeTask {
+		void run(int begin, int end);
+	}
+
+	/**
+	 * Split <tt>0...n-1</tt> into <tt>nThreads</tt> ranges and run <tt>task</tt> on them in parallel
+	 */
+	protected void run(int n, RangeTask task) {
+		int nt = Math.min(nThreads, n);
+		if(nt <= 1) {
+			task.run(0, n);
+			return;
+		}
+		ExecutorService exec = this.executor;
+		if(exec == null)
+			exec = Executors.newFixedThreadPool(nt);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for(int t=0; t<nt; t++) {
+				final int begin = (int) ((long) n * t / nt);
+				final int end = (int) ((long) n * (t + 1) / nt);
+				futures.add(exec.submit(() -> task.run(begin, end)));
+			}
+			for(Future<?> f : futures)
+				f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Parallel FFT interrupted");
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Parallel FFT failed: " + e.getCause(), e.getCause());
+		} finally {
+			if(this.executor == null)
+				exec.shutdown();
+		}
+	}
+}
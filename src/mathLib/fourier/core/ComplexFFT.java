@@ -13,12 +13,9 @@ import mathLib.numbers.Complex;
  *
  *  Limitations
  *  -----------
- *   -  assumes n is a power of 2
- *
  *   -  not the most memory efficient algorithm (because it uses
- *      an object type for representing complex numbers and because
- *      it re-allocates memory for the subarray, instead of doing
- *      in-place or reusing a single temporary array)
+ *      an object type for representing complex numbers), use
+ *      FFTPlan on double arrays instead
  *
  *
  *  % java FFT 4
@@ -68,13 +65,10 @@ import mathLib.numbers.Complex;
  *  FFT (Fast-Fourier Transform), inverse FFT, linear convolution,
  *  and circular convolution of a complex array.
  *  <p>
- *  It is a bare-bones implementation that runs in <em>n</em> log <em>n</em> time,
- *  where <em>n</em> is the length of the complex array. For simplicity,
- *  <em>n</em> must be a power of 2.
- *  Our goal is to optimize the clarity of the code, rather than performance.
+ *  It runs in <em>n</em> log <em>n</em> time for any length <em>n</em> of the
+ *  complex array, the transforms are done by {@link FFTPlan}.
  *  It is not the most memory efficient implementation because it uses
- *  objects to represents complex numbers and it it re-allocates memory
- *  for the subarray, instead of doing in-place or reusing a single temporary array.
+ *  objects to represents complex numbers.
  *
  *  <p>
  *  For additional documentation, see <a href="http://algs4.cs.princeton.edu/99scientific">Section 9.9</a> of
@@ -93,42 +87,19 @@ public class ComplexFFT {
      *
      * @param  x the complex array
      * @return the FFT of the complex array {@code x}
-     * @throws IllegalArgumentException if the length of {@code x} is not a power of 2
      */
     public static Complex[] fft(Complex[] x) {
         int n = x.length;
-
-        // base case
-        if (n == 1) {
-            return new Complex[] { x[0] };
-        }
-
-        // radix 2 Cooley-Tukey FFT
-        if (n % 2 != 0) {
-            throw new IllegalArgumentException("n is not a power of 2");
-        }
-
-        // fft of even terms
-        Complex[] even = new Complex[n/2];
-        for (int k = 0; k < n/2; k++) {
-            even[k] = x[2*k];
-        }
-        Complex[] q = fft(even);
-
-        // fft of odd terms
-        Complex[] odd  = even;  // reuse the array
-        for (int k = 0; k < n/2; k++) {
-            odd[k] = x[2*k + 1];
+        double[] re = new double[n];
+        double[] im = new double[n];
+        for (int i = 0; i < n; i++) {
+            re[i] = x[i].re();
+            im[i] = x[i].im();
         }
-        Complex[] r = fft(odd);
-
-        // combine
+        FFTPlan.getInstance(n).fft(re, im);
         Complex[] y = new Complex[n];
-        for (int k = 0; k < n/2; k++) {
-            double kth = -2 * k * Math.PI / n;
-            Complex wk = new Complex(Math.cos(kth), Math.sin(kth));
-            y[k]       = q[k].plus(wk.times(r[k]));
-            y[k + n/2] = q[k].minus(wk.times(r[k]));
+        for (int i = 0; i < n; i++) {
+            y[i] = new Complex(re[i], im[i]);
         }
         return y;
     }
@@ -139,32 +110,21 @@ public class ComplexFFT {
      *
      * @param  x the complex array
      * @return the inverse FFT of the complex array {@code x}
-     * @throws IllegalArgumentException if the length of {@code x} is not a power of 2
      */
     public static Complex[] ifft(Complex[] x) {
         int n = x.length;
-        Complex[] y = new Complex[n];
-
-        // take conjugate
-        for (int i = 0; i < n; i++) {
-            y[i] = x[i].conjugate();
-        }
-
-        // compute forward FFT
-        y = fft(y);
-
-        // take conjugate again
+        double[] re = new double[n];
+        double[] im = new double[n];
         for (int i = 0; i < n; i++) {
-            y[i] = y[i].conjugate();
+            re[i] = x[i].re();
+            im[i] = x[i].im();
         }
-
-        // divide by n
+        FFTPlan.getInstance(n).ifft(re, im);
+        Complex[] y = new Complex[n];
         for (int i = 0; i < n; i++) {
-            y[i] = y[i].times(1.0d / n);
+            y[i] = new Complex(re[i], im[i]);
         }
-
         return y;
-
     }
 
     /**
@@ -174,12 +134,10 @@ public class ComplexFFT {
      * @param  y the other complex array
      * @return the circular convolution of {@code x} and {@code y}
      * @throws IllegalArgumentException if the length of {@code x} does not equal
-     *         the length of {@code y} or if the length is not a power of 2
+     *         the length of {@code y}
      */
     public static Complex[] cconvolve(Complex[] x, Complex[] y) {
 
-        // should probably pad x and y with 0s so that they have same length
-        // and are powers of 2
         if (x.length != y.length) {
             throw new IllegalArgumentException("Dimensions don't agree");
         }
@@ -207,7 +165,7 @@ public class ComplexFFT {
      * @param  y the other complex array
      * @return the linear convolution of {@code x} and {@code y}
      * @throws IllegalArgumentException if the length of {@code x} does not equal
-     *         the length of {@code y} or if the length is not a power of 2
+     *         the length of {@code y}
      */
     public static Complex[] convolve(Complex[] x, Complex[] y) {
         Complex[] a = new Complex[2*x.length];
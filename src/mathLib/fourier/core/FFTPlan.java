@@ -0,0 +1,496 @@
+package mathLib.fourier.core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed fast Fourier transform of a given length.
+ * <p>
+ * Lengths whose prime factors are 2, 3, 5 (or small primes up to <tt>MAX_RADIX</tt>) are
+ * transformed by a mixed-radix Stockham algorithm with radix 2, 3, 4, 5 kernels, which needs
+ * no bit reversal. Other lengths use Bluestein's algorithm on top of a plan of a larger fast
+ * length. Like <tt>FFT</tt>, the twiddle factors are computed once when the plan is created,
+ * and <tt>getInstance()</tt> caches the plans by length.
+ * <p>
+ * Transforms work in place on split (<tt>re</tt>, <tt>im</tt>) or interleaved
+ * (<tt>re0, im0, re1, im1, ...</tt>) double arrays. The work buffers are kept per thread, so
+ * a plan may be shared between threads and repeated transforms do not allocate any memory.
+ * The forward transform is <tt>X[k] = sum x[j] exp(-2 pi i j k / n)</tt>, the inverse
+ * transform is normalized by <tt>1/n</tt>.
+ *
+ */
+public class FFTPlan {
+
+	/**
+	 * Largest prime factor transformed directly, longer prime factors use Bluestein's algorithm
+	 */
+	public static final int MAX_RADIX = 13;
+
+	/**
+	 * Maximum number of cached plans, the cache is cleared when it is exceeded
+	 */
+	public static int maxCachedPlans = 64;
+
+	private static final Map<Integer, FFTPlan> cache = new ConcurrentHashMap<Integer, FFTPlan>();
+
+	private final int n;
+	private final int[] factors;
+
+	// W[k] = exp(-2 pi i k / n)
+	private final double[] wr, wi;
+
+	// Bluestein's algorithm: chirp exp(-pi i k^2 / n) and the spectrum of its conjugate
+	private final FFTPlan inner;
+	private final double[] chirpRe, chirpIm, bRe, bIm;
+
+	private final ThreadLocal<double[][]> work = new ThreadLocal<double[][]>();
+
+	public FFTPlan(int n) {
+		if(n < 1)
+			throw new IllegalArgumentException("FFT length must be positive, n=" + n);
+		this.n = n;
+		int[] f = factorize(n);
+		if(f != null) {
+			factors = f;
+			wr = new double[n];
+			wi = new double[n];
+			for(int k=0; k<n; k++) {
+				double a = -2 * Math.PI * k / n;
+				wr[k] = Math.cos(a);
+				wi[k] = Math.sin(a);
+			}
+			inner = null;
+			chirpRe = chirpIm = bRe = bIm = null;
+		} else {
+			factors = null;
+			wr = wi = null;
+			int m = nextFastSize(2 * n - 1);
+			inner = getInstance(m);
+			chirpRe = new double[n];
+			chirpIm = new double[n];
+			for(int k=0; k<n; k++) {
+				// k^2 mod 2n keeps the angle accurate for large k
+				double a = -Math.PI * (((long) k * k) % (2L * n)) / n;
+				chirpRe[k] = Math.cos(a);
+				chirpIm[k] = Math.sin(a);
+			}
+			bRe = new double[m];
+			bIm = new double[m];
+			bRe[0] = chirpRe[0];
+			bIm[0] = -chirpIm[0];
+			for(int k=1; k<n; k++) {
+				bRe[k] = bRe[m - k] = chirpRe[k];
+				bIm[k] = bIm[m - k] = -chirpIm[k];
+			}
+			inner.fft(bRe, bIm);
+			// the inverse transform of the convolution is scaled here once
+			for(int k=0; k<m; k++) {
+				bRe[k] /= m;
+				bIm[k] /= m;
+			}
+		}
+	}
+
+	/**
+	 * Return the cached plan of length <tt>n</tt>, a new plan is created at the first call
+	 *
+	 * @param n
+	 * @return
+	 */
+	public static FFTPlan getInstance(int n) {
+		FFTPlan plan = cache.get(n);
+		if(plan == null) {
+			plan = new FFTPlan(n);
+			if(cache.size() >= maxCachedPlans)
+				cache.clear();
+			FFTPlan old = cache.putIfAbsent(n, plan);
+			if(old != null)
+				plan = old;
+		}
+		return plan;
+	}
+
+	public static void clearCache() {
+		cache.clear();
+	}
+
+	/**
+	 * Return the smallest length <tt>&gt;= n</tt> whose prime factors are 2, 3 and 5
+	 *
+	 * @param n
+	 * @return
+	 */
+	public static int nextFastSize(int n) {
+		for(int m=Math.max(n, 1); ; m++) {
+			int r = m;
+			while(r % 2 == 0) r /= 2;
+			while(r % 3 == 0) r /= 3;
+			while(r % 5 == 0) r /= 5;
+			if(r == 1)
+				return m;
+		}
+	}
+
+	/**
+	 * Radices of the Stockham stages, radix 4 first. Return null if a prime factor is
+	 * larger than <tt>MAX_RADIX</tt>.
+	 */
+	private static int[] factorize(int n) {
+		int[] f = new int[32];
+		int k = 0;
+		int r = n;
+		while(r % 4 == 0) {
+			f[k++] = 4;
+			r /= 4;
+		}
+		for(int p=2; p<=MAX_RADIX && r > 1; p++) {
+			while(r % p == 0) {
+				f[k++] = p;
+				r /= p;
+			}
+		}
+		if(r > 1)
+			return null;
+		int[] rlt = new int[k];
+		System.arraycopy(f, 0, rlt, 0, k);
+		return rlt;
+	}
+
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * Return true if the plan uses Bluestein's algorithm
+	 *
+	 * @return
+	 */
+	public boolean isBluestein() {
+		return inner != null;
+	}
+
+	private double[][] getWork() {
+		double[][] w = work.get();
+		if(w == null) {
+			int len = inner == null ? n : inner.size();
+			w = new double[][] { new double[len], new double[len], new double[2 * MAX_RADIX], null, null };
+			work.set(w);
+		}
+		return w;
+	}
+
+	/**
+	 * In-place forward transform
+	 *
+	 * @param re
+	 * @param im
+	 */
+	public void fft(double[] re, double[] im) {
+		fft(re, im, 0);
+	}
+
+	/**
+	 * In-place forward transform of <tt>re[offset...offset+n-1]</tt>, <tt>im[offset...offset+n-1]</tt>
+	 *
+	 * @param re
+	 * @param im
+	 * @param offset
+	 */
+	public void fft(double[] re, double[] im, int offset) {
+		if(n == 1)
+			return;
+		if(inner != null)
+			bluestein(re, im, offset);
+		else
+			stockham(re, im, offset);
+	}
+
+	/**
+	 * In-place inverse transform, normalized by <tt>1/n</tt>
+	 *
+	 * @param re
+	 * @param im
+	 */
+	public void ifft(double[] re, double[] im) {
+		ifft(re, im, 0);
+	}
+
+	public void ifft(double[] re, double[] im, int offset) {
+		// conj(fft(conj(x))) is fft() with the real and imaginary parts swapped
+		fft(im, re, offset);
+		double s = 1.0 / n;
+		for(int k=offset; k<offset+n; k++) {
+			re[k] *= s;
+			im[k] *= s;
+		}
+	}
+
+	/**
+	 * In-place forward transform of interleaved complex data <tt>re0, im0, re1, im1, ...</tt>
+	 *
+	 * @param data
+	 */
+	public void fftInterleaved(double[] data) {
+		interleaved(data, false);
+	}
+
+	/**
+	 * In-place inverse transform of interleaved complex data, normalized by <tt>1/n</tt>
+	 *
+	 * @param data
+	 */
+	public void ifftInterleaved(double[] data) {
+		interleaved(data, true);
+	}
+
+	private void interleaved(double[] data, boolean inverse) {
+		double[][] w = getWork();
+		if(w[3] == null) {
+			w[3] = new double[n];
+			w[4] = new double[n];
+		}
+		double[] sr = w[3], si = w[4];
+		for(int k=0; k<n; k++) {
+			sr[k] = data[2 * k];
+			si[k] = data[2 * k + 1];
+		}
+		if(inverse)
+			ifft(sr, si, 0);
+		else
+			fft(sr, si, 0);
+		for(int k=0; k<n; k++) {
+			data[2 * k] = sr[k];
+			data[2 * k + 1] = si[k];
+		}
+	}
+
+	private void stockham(double[] re, double[] im, int offset) {
+		double[][] w = getWork();
+		double[] xr = re, xi = im, yr = w[0], yi = w[1];
+		int xo = offset, yo = 0;
+		int len = n, s = 1;
+		for(int p : factors) {
+			int m = len / p;
+			switch(p) {
+			case 2:
+				radix2(xr, xi, xo, yr, yi, yo, m, s);
+				break;
+			case 3:
+				radix3(xr, xi, xo, yr, yi, yo, m, s);
+				break;
+			case 4:
+				radix4(xr, xi, xo, yr, yi, yo, m, s);
+				break;
+			case 5:
+				radix5(xr, xi, xo, yr, yi, yo, m, s);
+				break;
+			default:
+				radixGeneric(p, xr, xi, xo, yr, yi, yo, m, s, w[2]);
+			}
+			double[] tr = xr, ti = xi;
+			xr = yr;
+			xi = yi;
+			yr = tr;
+			yi = ti;
+			int to = xo;
+			xo = yo;
+			yo = to;
+			len = m;
+			s *= p;
+		}
+		if(xr != re) {
+			System.arraycopy(xr, xo, re, offset, n);
+			System.arraycopy(xi, xo, im, offset, n);
+		}
+	}
+
+	/*
+	 * A stage of radix p takes the p sub-sequences x[q + s*(i + r*m)], r=0...p-1, applies a
+	 * DFT of length p and the twiddle factors W^(i*t*s) and writes y[q + s*(p*i + t)].
+	 */
+
+	private void radix2(double[] xr, double[] xi, int xo, double[] yr, double[] yi, int yo, int m, int s) {
+		for(int i=0; i<m; i++) {
+			double w1r = wr[i * s], w1i = wi[i * s];
+			int a = xo + s * i, b = a + s * m;
+			int c = yo + s * 2 * i, d = c + s;
+			for(int q=0; q<s; q++) {
+				double ar = xr[a + q], ai = xi[a + q];
+				double br = xr[b + q], bi = xi[b + q];
+				yr[c + q] = ar + br;
+				yi[c + q] = ai + bi;
+				double dr = ar - br, di = ai - bi;
+				yr[d + q] = dr * w1r - di * w1i;
+				yi[d + q] = dr * w1i + di * w1r;
+			}
+		}
+	}
+
+	private void radix3(double[] xr, double[] xi, int xo, double[] yr, double[] yi, int yo, int m, int s) {
+		final double s3 = Math.sqrt(3.0) / 2;
+		for(int i=0; i<m; i++) {
+			double w1r = wr[i * s], w1i = wi[i * s];
+			double w2r = wr[2 * i * s], w2i = wi[2 * i * s];
+			int a0 = xo + s * i, a1 = a0 + s * m, a2 = a1 + s * m;
+			int c0 = yo + s * 3 * i, c1 = c0 + s, c2 = c1 + s;
+			for(int q=0; q<s; q++) {
+				double x0r = xr[a0 + q], x0i = xi[a0 + q];
+				double x1r = xr[a1 + q], x1i = xi[a1 + q];
+				double x2r = xr[a2 + q], x2i = xi[a2 + q];
+				double t1r = x1r + x2r, t1i = x1i + x2i;
+				double t2r = x0r - 0.5 * t1r, t2i = x0i - 0.5 * t1i;
+				// -i*s3*(x1-x2)
+				double t3r = s3 * (x1i - x2i), t3i = -s3 * (x1r - x2r);
+				yr[c0 + q] = x0r + t1r;
+				yi[c0 + q] = x0i + t1i;
+				double y1r = t2r + t3r, y1i = t2i + t3i;
+				double y2r = t2r - t3r, y2i = t2i - t3i;
+				yr[c1 + q] = y1r * w1r - y1i * w1i;
+				yi[c1 + q] = y1r * w1i + y1i * w1r;
+				yr[c2 + q] = y2r * w2r - y2i * w2i;
+				yi[c2 + q] = y2r * w2i + y2i * w2r;
+			}
+		}
+	}
+
+	private void radix4(double[] xr, double[] xi, int xo, double[] yr, double[] yi, int yo, int m, int s) {
+		for(int i=0; i<m; i++) {
+			double w1r = wr[i * s], w1i = wi[i * s];
+			double w2r = wr[2 * i * s], w2i = wi[2 * i * s];
+			double w3r = wr[3 * i * s], w3i = wi[3 * i * s];
+			int a0 = xo + s * i, a1 = a0 + s * m, a2 = a1 + s * m, a3 = a2 + s * m;
+			int c0 = yo + s * 4 * i, c1 = c0 + s, c2 = c1 + s, c3 = c2 + s;
+			for(int q=0; q<s; q++) {
+				double x0r = xr[a0 + q], x0i = xi[a0 + q];
+				double x1r = xr[a1 + q], x1i = xi[a1 + q];
+				double x2r = xr[a2 + q], x2i = xi[a2 + q];
+				double x3r = xr[a3 + q], x3i = xi[a3 + q];
+				double t0r = x0r + x2r, t0i = x0i + x2i;
+				double t1r = x0r - x2r, t1i = x0i - x2i;
+				double t2r = x1r + x3r, t2i = x1i + x3i;
+				// -i*(x1-x3)
+				double t3r = x1i - x3i, t3i = x3r - x1r;
+				yr[c0 + q] = t0r + t2r;
+				yi[c0 + q] = t0i + t2i;
+				double y1r = t1r + t3r, y1i = t1i + t3i;
+				double y2r = t0r - t2r, y2i = t0i - t2i;
+				double y3r = t1r - t3r, y3i = t1i - t3i;
+				yr[c1 + q] = y1r * w1r - y1i * w1i;
+				yi[c1 + q] = y1r * w1i + y1i * w1r;
+				yr[c2 + q] = y2r * w2r - y2i * w2i;
+				yi[c2 + q] = y2r * w2i + y2i * w2r;
+				yr[c3 + q] = y3r * w3r - y3i * w3i;
+				yi[c3 + q] = y3r * w3i + y3i * w3r;
+			}
+		}
+	}
+
+	private void radix5(double[] xr, double[] xi, int xo, double[] yr, double[] yi, int yo, int m, int s) {
+		final double c1 = Math.cos(2 * Math.PI / 5), c2 = Math.cos(4 * Math.PI / 5);
+		final double s1 = Math.sin(2 * Math.PI / 5), s2 = Math.sin(4 * Math.PI / 5);
+		for(int i=0; i<m; i++) {
+			double w1r = wr[i * s], w1i = wi[i * s];
+			double w2r = wr[2 * i * s], w2i = wi[2 * i * s];
+			double w3r = wr[3 * i * s], w3i = wi[3 * i * s];
+			double w4r = wr[4 * i * s], w4i = wi[4 * i * s];
+			int a0 = xo + s * i, a1 = a0 + s * m, a2 = a1 + s * m, a3 = a2 + s * m, a4 = a3 + s * m;
+			int o0 = yo + s * 5 * i;
+			for(int q=0; q<s; q++) {
+				double x0r = xr[a0 + q], x0i = xi[a0 + q];
+				double b1r = xr[a1 + q] + xr[a4 + q], b1i = xi[a1 + q] + xi[a4 + q];
+				double b2r = xr[a2 + q] + xr[a3 + q], b2i = xi[a2 + q] + xi[a3 + q];
+				double d1r = xr[a1 + q] - xr[a4 + q], d1i = xi[a1 + q] - xi[a4 + q];
+				double d2r = xr[a2 + q] - xr[a3 + q], d2i = xi[a2 + q] - xi[a3 + q];
+				double e1r = x0r + c1 * b1r + c2 * b2r, e1i = x0i + c1 * b1i + c2 * b2i;
+				double e2r = x0r + c2 * b1r + c1 * b2r, e2i = x0i + c2 * b1i + c1 * b2i;
+				// f = -i*(...)
+				double f1r = s1 * d1i + s2 * d2i, f1i = -(s1 * d1r + s2 * d2r);
+				double f2r = s2 * d1i - s1 * d2i, f2i = -(s2 * d1r - s1 * d2r);
+				double y1r = e1r + f1r, y1i = e1i + f1i;
+				double y4r = e1r - f1r, y4i = e1i - f1i;
+				double y2r = e2r + f2r, y2i = e2i + f2i;
+				double y3r = e2r - f2r, y3i = e2i - f2i;
+				int o = o0 + q;
+				yr[o] = x0r + b1r + b2r;
+				yi[o] = x0i + b1i + b2i;
+				o += s;
+				yr[o] = y1r * w1r - y1i * w1i;
+				yi[o] = y1r * w1i + y1i * w1r;
+				o += s;
+				yr[o] = y2r * w2r - y2i * w2i;
+				yi[o] = y2r * w2i + y2i * w2r;
+				o += s;
+				yr[o] = y3r * w3r - y3i * w3i;
+				yi[o] = y3r * w3i + y3i * w3r;
+				o += s;
+				yr[o] = y4r * w4r - y4i * w4i;
+				yi[o] = y4r * w4i + y4i * w4r;
+			}
+		}
+	}
+
+	private void radixGeneric(int p, double[] xr, double[] xi, int xo, double[] yr, double[] yi, int yo,
+			int m, int s, double[] tmp) {
+		int np = n / p;
+		for(int i=0; i<m; i++) {
+			for(int q=0; q<s; q++) {
+				for(int r=0; r<p; r++) {
+					tmp[2 * r] = xr[xo + q + s * (i + r * m)];
+					tmp[2 * r + 1] = xi[xo + q + s * (i + r * m)];
+				}
+				for(int t=0; t<p; t++) {
+					double sr = 0, si = 0;
+					for(int r=0, k=0; r<p; r++, k=(k + t) % p) {
+						double cr = wr[k * np], ci = wi[k * np];
+						sr += tmp[2 * r] * cr - tmp[2 * r + 1] * ci;
+						si += tmp[2 * r] * ci + tmp[2 * r + 1] * cr;
+					}
+					double twr = wr[i * t * s], twi = wi[i * t * s];
+					yr[yo + q + s * (p * i + t)] = sr * twr - si * twi;
+					yi[yo + q + s * (p * i + t)] = sr * twi + si * twr;
+				}
+			}
+		}
+	}
+
+	private void bluestein(double[] re, double[] im, int offset) {
+		double[][] w = getWork();
+		double[] ar = w[0], ai = w[1];
+		int m = inner.size();
+		for(int k=0; k<n; k++) {
+			double xr = re[offset + k], xi = im[offset + k];
+			ar[k] = xr * chirpRe[k] - xi * chirpIm[k];
+			ai[k] = xr * chirpIm[k] + xi * chirpRe[k];
+		}
+		for(int k=n; k<m; k++) {
+			ar[k] = 0;
+			ai[k] = 0;
+		}
+		inner.fft(ar, ai);
+		for(int k=0; k<m; k++) {
+			double xr = ar[k], xi = ai[k];
+			ar[k] = xr * bRe[k] - xi * bIm[k];
+			ai[k] = xr * bIm[k] + xi * bRe[k];
+		}
+		// unnormalized inverse transform, the scaling is in (bRe, bIm)
+		inner.fft(ai, ar);
+		for(int k=0; k<n; k++) {
+			double xr = ar[k], xi = ai[k];
+			re[offset + k] = xr * chirpRe[k] - xi * chirpIm[k];
+			im[offset + k] = xr * chirpIm[k] + xi * chirpRe[k];
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("FFTPlan(n=" + n);
+		if(inner != null) {
+			sb.append(", Bluestein m=" + inner.size());
+		} else {
+			sb.append(", radix=");
+			for(int i=0; i<factors.length; i++)
+				sb.append(i == 0 ? "" : "*").append(factors[i]);
+		}
+		return sb.append(")").toString();
+	}
+}
@@ -0,0 +1,185 @@
+package mathLib.fourier.core;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed fast Fourier transform of real data of a given length.
+ * <p>
+ * For even lengths the real sequence is packed into a complex sequence of half length, which
+ * is transformed by <tt>FFTPlan</tt> and then split into the spectrum, so a real transform
+ * costs about half of a complex transform of the same length. Only the bins
+ * <tt>0...n/2</tt> are returned, the others are their complex conjugates.
+ * <p>
+ * As for <tt>FFTPlan</tt>, plans are cached by <tt>getInstance()</tt> and repeated transforms
+ * do not allocate any memory.
+ *
+ */
+public class RealFFTPlan {
+
+	private static final Map<Integer, RealFFTPlan> cache = new ConcurrentHashMap<Integer, RealFFTPlan>();
+
+	private final int n;
+	private final FFTPlan plan;
+
+	// W[k] = exp(-2 pi i k / n), k=0...n/2-1, for even n
+	private final double[] wr, wi;
+
+	private final ThreadLocal<double[][]> work = new ThreadLocal<double[][]>();
+
+	public RealFFTPlan(int n) {
+		if(n < 1)
+			throw new IllegalArgumentException("FFT length must be positive, n=" + n);
+		this.n = n;
+		if(n % 2 == 0) {
+			plan = FFTPlan.getInstance(n / 2);
+			wr = new double[n / 2];
+			wi = new double[n / 2];
+			for(int k=0; k<n/2; k++) {
+				double a = -2 * Math.PI * k / n;
+				wr[k] = Math.cos(a);
+				wi[k] = Math.sin(a);
+			}
+		} else {
+			plan = FFTPlan.getInstance(n);
+			wr = wi = null;
+		}
+	}
+
+	/**
+	 * Return the cached plan of length <tt>n</tt>, a new plan is created at the first call
+	 *
+	 * @param n
+	 * @return
+	 */
+	public static RealFFTPlan getInstance(int n) {
+		RealFFTPlan plan = cache.get(n);
+		if(plan == null) {
+			plan = new RealFFTPlan(n);
+			if(cache.size() >= FFTPlan.maxCachedPlans)
+				cache.clear();
+			RealFFTPlan old = cache.putIfAbsent(n, plan);
+			if(old != null)
+				plan = old;
+		}
+		return plan;
+	}
+
+	public static void clearCache() {
+		cache.clear();
+	}
+
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * Number of bins of the spectrum: <tt>n/2+1</tt>
+	 *
+	 * @return
+	 */
+	public int spectrumSize() {
+		return n / 2 + 1;
+	}
+
+	private double[][] getWork() {
+		double[][] w = work.get();
+		if(w == null) {
+			int len = n % 2 == 0 ? n / 2 : n;
+			w = new double[][] { new double[len], new double[len] };
+			work.set(w);
+		}
+		return w;
+	}
+
+	/**
+	 * Forward transform of <tt>x[0...n-1]</tt>. The bins <tt>0...n/2</tt> are written to
+	 * <tt>re</tt> and <tt>im</tt>.
+	 *
+	 * @param x
+	 * @param re
+	 * @param im
+	 */
+	public void forward(double[] x, double[] re, double[] im) {
+		forward(x, 0, re, im);
+	}
+
+	public void forward(double[] x, int offset, double[] re, double[] im) {
+		double[][] w = getWork();
+		double[] zr = w[0], zi = w[1];
+		if(n % 2 != 0) {
+			System.arraycopy(x, offset, zr, 0, n);
+			Arrays.fill(zi, 0.0);
+			plan.fft(zr, zi);
+			System.arraycopy(zr, 0, re, 0, n / 2 + 1);
+			System.arraycopy(zi, 0, im, 0, n / 2 + 1);
+			return;
+		}
+		int h = n / 2;
+		for(int k=0; k<h; k++) {
+			zr[k] = x[offset + 2 * k];
+			zi[k] = x[offset + 2 * k + 1];
+		}
+		plan.fft(zr, zi);
+		re[0] = zr[0] + zi[0];
+		im[0] = 0;
+		re[h] = zr[0] - zi[0];
+		im[h] = 0;
+		for(int k=1; k<h; k++) {
+			// E = (Z[k] + conj(Z[h-k]))/2, O = (Z[k] - conj(Z[h-k]))/(2i)
+			double ar = zr[k], ai = zi[k];
+			double br = zr[h - k], bi = -zi[h - k];
+			double er = 0.5 * (ar + br), ei = 0.5 * (ai + bi);
+			double or = 0.5 * (ai - bi), oi = -0.5 * (ar - br);
+			re[k] = er + or * wr[k] - oi * wi[k];
+			im[k] = ei + or * wi[k] + oi * wr[k];
+		}
+	}
+
+	/**
+	 * Inverse transform of the bins <tt>0...n/2</tt> in <tt>re</tt> and <tt>im</tt>, normalized
+	 * by <tt>1/n</tt>. The real sequence is written to <tt>x[0...n-1]</tt>.
+	 *
+	 * @param re
+	 * @param im
+	 * @param x
+	 */
+	public void inverse(double[] re, double[] im, double[] x) {
+		inverse(re, im, x, 0);
+	}
+
+	public void inverse(double[] re, double[] im, double[] x, int offset) {
+		double[][] w = getWork();
+		double[] zr = w[0], zi = w[1];
+		if(n % 2 != 0) {
+			for(int k=0; k<=n/2; k++) {
+				zr[k] = re[k];
+				zi[k] = im[k];
+			}
+			for(int k=n/2+1; k<n; k++) {
+				zr[k] = re[n - k];
+				zi[k] = -im[n - k];
+			}
+			plan.ifft(zr, zi);
+			System.arraycopy(zr, 0, x, offset, n);
+			return;
+		}
+		int h = n / 2;
+		for(int k=0; k<h; k++) {
+			// E = (X[k] + conj(X[h-k]))/2, O = (X[k] - conj(X[h-k]))/2 * conj(W^k), Z = E + iO
+			double ar = re[k], ai = im[k];
+			double br = re[h - k], bi = -im[h - k];
+			double er = 0.5 * (ar + br), ei = 0.5 * (ai + bi);
+			double dr = 0.5 * (ar - br), di = 0.5 * (ai - bi);
+			double or = dr * wr[k] + di * wi[k], oi = di * wr[k] - dr * wi[k];
+			zr[k] = er - oi;
+			zi[k] = ei + or;
+		}
+		plan.ifft(zr, zi);
+		for(int k=0; k<h; k++) {
+			x[offset + 2 * k] = zr[k];
+			x[offset + 2 * k + 1] = zi[k];
+		}
+	}
+}
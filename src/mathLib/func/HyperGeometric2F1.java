@@ -25,7 +25,6 @@ public class HyperGeometric2F1 {
 			}
 		};
 		Integral1D integral = new Integral1D(func, 0, 1) ;
-		integral.setNumPoints(200);
 		integral.setErrorBound(1e-12);
 		return integral.getIntegral() ;
 	}
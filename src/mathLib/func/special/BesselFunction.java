@@ -13,23 +13,17 @@ import static mathLib.numbers.Complex.* ;
 /**
  * Bessel Functions: Jv(x), Yv(x)
  * 		solutions of ODE: x^2 y'' + x y' + (x^2 - v^2) y = 0
+ * <p>
+ * The instance methods keep no state between calls, so that one instance can be shared by
+ * several threads. The static methods evaluate all the integer orders <tt>0..nmax</tt> at once
+ * by recurrences over the order (<tt>BesselRecurrence</tt>), for one or many arguments.
  *
  * @author Meisam
  *
  */
 public class BesselFunction {
 
-	private Sequence jvSeq ;
-	private double leadTerm ;
-	private double val ;
-
-	private ComplexSequence jvSeqComplex ;
-	private Complex leadTermComplex ;
-	private Complex valComplex ;
-
 	GammaFunction gammaFunc = new GammaFunction() ;
-	private double lastv = 0.0 ;
-	private double lastGamma = 1.0 ;
 
 	public BesselFunction() {
 
@@ -38,16 +32,9 @@ public class BesselFunction {
 	//********* power series for Jv(z) *********************
 
 	private double jvSmallArgument(double v, double x) {
-		if(abs(v-lastv)<1e-2) {
-			leadTerm = pow(x/2.0, v) / lastGamma ;
-		}
-		else {
-			lastv = v ;
-			lastGamma = gammaFunc.gamma(v+1.0) ;
-			leadTerm = pow(x/2.0, v) / lastGamma ;
-		}
-		val = (0.5*x)*(0.5*x) ;
-		jvSeq = n -> {
+		double leadTerm = pow(x/2.0, v) / gammaFunc.gamma(v+1.0) ;
+		double val = (0.5*x)*(0.5*x) ;
+		Sequence jvSeq = n -> {
 			double result = 1.0 ;
 			for(int i=(int)n; i>0; i--) {
 				result = 1.0 - val/(i*(i+v))*result ;
@@ -121,16 +108,9 @@ public class BesselFunction {
 			return jvSmallArgument(v, x.conjugate()).conjugate() ;
 		else if(x.re()>0.0 && x.im()<0.0)
 			return jvSmallArgument(v, x.conjugate()).conjugate() ;
-		if(abs(v-lastv)<1e-2) {
-			leadTermComplex = ComplexMath.pow(x/2.0, v) / lastGamma ;
-		}
-		else {
-			lastv = v ;
-			lastGamma = gammaFunc.gamma(v+1.0) ;
-			leadTermComplex = ComplexMath.pow(x/2.0, v) / lastGamma ;
-		}
-		valComplex = (0.5*x)*(0.5*x) ;
-		jvSeqComplex = n -> {
+		Complex leadTermComplex = ComplexMath.pow(x/2.0, v) / gammaFunc.gamma(v+1.0) ;
+		Complex valComplex = (0.5*x)*(0.5*x) ;
+		ComplexSequence jvSeqComplex = n -> {
 			Complex result = 1.0+0.0*j ;
 			for(int i=(int)n; i>0; i--) {
 				result = 1.0 - valComplex/(i*(i+v))*result ;
@@ -334,4 +314,162 @@ public class BesselFunction {
 		return 0.5*(hankel2(v-1, x)-hankel2(v+1, x)) ;
 	}
 
+	//********* all integer orders at once (stateless) *********************
+
+	/**
+	 * <tt>J_0(x)..J_nmax(x)</tt> by Miller's backward recurrence
+	 * @param nmax highest order
+	 * @param x
+	 * @return an array of length <tt>nmax+1</tt>
+	 */
+	public static double[] jnAll(int nmax, double x) {
+		checkOrder(nmax) ;
+		return BesselRecurrence.jn(nmax, x) ;
+	}
+
+	/**
+	 * <tt>Y_0(x)..Y_nmax(x)</tt> by forward recurrence, <tt>NaN</tt> for <tt>x &lt; 0</tt>
+	 * @param nmax highest order
+	 * @param x
+	 * @return an array of length <tt>nmax+1</tt>
+	 */
+	public static double[] ynAll(int nmax, double x) {
+		checkOrder(nmax) ;
+		return BesselRecurrence.yn(nmax, x) ;
+	}
+
+	public static Complex[] hankel1All(int nmax, double x) {
+		return BesselRecurrence.combine(jnAll(nmax, x), ynAll(nmax, x), 1.0) ;
+	}
+
+	public static Complex[] hankel2All(int nmax, double x) {
+		return BesselRecurrence.combine(jnAll(nmax, x), ynAll(nmax, x), -1.0) ;
+	}
+
+	/**
+	 * <tt>J_0(z)..J_nmax(z)</tt> by Miller's backward recurrence
+	 * @param nmax highest order
+	 * @param z
+	 * @return an array of length <tt>nmax+1</tt>
+	 */
+	public static Complex[] jnAll(int nmax, Complex z) {
+		checkOrder(nmax) ;
+		double[][] f = BesselRecurrence.jn(nmax, z.re(), z.im()) ;
+		return BesselRecurrence.toComplex(f[0], f[1]) ;
+	}
+
+	/**
+	 * <tt>Y_0(z)..Y_nmax(z)</tt> on the principal branch. The Hankel functions are obtained as
+	 * <tt>J +- iY</tt>: the one decreasing as <tt>exp(-|Im(z)|)</tt> loses its relative accuracy.
+	 * @param nmax highest order
+	 * @param z
+	 * @return an array of length <tt>nmax+1</tt>
+	 */
+	public static Complex[] ynAll(int nmax, Complex z) {
+		checkOrder(nmax) ;
+		double[][] f = BesselRecurrence.yn(nmax, z.re(), z.im()) ;
+		return BesselRecurrence.toComplex(f[0], f[1]) ;
+	}
+
+	public static Complex[] hankel1All(int nmax, Complex z) {
+		checkOrder(nmax) ;
+		return BesselRecurrence.combine(BesselRecurrence.jn(nmax, z.re(), z.im()),
+				BesselRecurrence.yn(nmax, z.re(), z.im()), 1.0) ;
+	}
+
+	public static Complex[] hankel2All(int nmax, Complex z) {
+		checkOrder(nmax) ;
+		return BesselRecurrence.combine(BesselRecurrence.jn(nmax, z.re(), z.im()),
+				BesselRecurrence.yn(nmax, z.re(), z.im()), -1.0) ;
+	}
+
+	//********* many arguments at once (stateless) *********************
+
+	/**
+	 * @return <tt>result[i][n] = J_n(x[i])</tt>, <tt>n = 0..nmax</tt>
+	 */
+	public static double[][] jnAll(int nmax, double[] x) {
+		double[][] result = new double[x.length][] ;
+		for(int i=0; i<x.length; i++)
+			result[i] = jnAll(nmax, x[i]) ;
+		return result ;
+	}
+
+	/**
+	 * @return <tt>result[i][n] = Y_n(x[i])</tt>, <tt>n = 0..nmax</tt>
+	 */
+	public static double[][] ynAll(int nmax, double[] x) {
+		double[][] result = new double[x.length][] ;
+		for(int i=0; i<x.length; i++)
+			result[i] = ynAll(nmax, x[i]) ;
+		return result ;
+	}
+
+	public static Complex[][] hankel1All(int nmax, double[] x) {
+		Complex[][] result = new Complex[x.length][] ;
+		for(int i=0; i<x.length; i++)
+			result[i] = hankel1All(nmax, x[i]) ;
+		return result ;
+	}
+
+	public static Complex[][] hankel2All(int nmax, double[] x) {
+		Complex[][] result = new Complex[x.length][] ;
+		for(int i=0; i<x.length; i++)
+			result[i] = hankel2All(nmax, x[i]) ;
+		return result ;
+	}
+
+	public static Complex[][] jnAll(int nmax, Complex[] z) {
+		Complex[][] result = new Complex[z.length][] ;
+		for(int i=0; i<z.length; i++)
+			result[i] = jnAll(nmax, z[i]) ;
+		return result ;
+	}
+
+	public static Complex[][] ynAll(int nmax, Complex[] z) {
+		Complex[][] result = new Complex[z.length][] ;
+		for(int i=0; i<z.length; i++)
+			result[i] = ynAll(nmax, z[i]) ;
+		return result ;
+	}
+
+	public static Complex[][] hankel1All(int nmax, Complex[] z) {
+		Complex[][] result = new Complex[z.length][] ;
+		for(int i=0; i<z.length; i++)
+			result[i] = hankel1All(nmax, z[i]) ;
+		return result ;
+	}
+
+	public static Complex[][] hankel2All(int nmax, Complex[] z) {
+		Complex[][] result = new Complex[z.length][] ;
+		for(int i=0; i<z.length; i++)
+			result[i] = hankel2All(nmax, z[i]) ;
+		return result ;
+	}
+
+	/**
+	 * @return <tt>J_n(x[i])</tt>
+	 */
+	public static double[] jn(int n, double[] x) {
+		double[] result = new double[x.length] ;
+		for(int i=0; i<x.length; i++)
+			result[i] = jnAll(abs(n), x[i])[abs(n)] * ((n<0 && n%2!=0) ? -1 : 1) ;
+		return result ;
+	}
+
+	/**
+	 * @return <tt>Y_n(x[i])</tt>
+	 */
+	public static double[] yn(int n, double[] x) {
+		double[] result = new double[x.length] ;
+		for(int i=0; i<x.length; i++)
+			result[i] = ynAll(abs(n), x[i])[abs(n)] * ((n<0 && n%2!=0) ? -1 : 1) ;
+		return result ;
+	}
+
+	static void checkOrder(int nmax) {
+		if(nmax<0)
+			throw new IllegalArgumentException("nmax must be non-negative: " + nmax) ;
+	}
+
 }
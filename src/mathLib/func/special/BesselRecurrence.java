@@ -0,0 +1,636 @@
+package mathLib.func.special;
+
+import static java.lang.Math.* ;
+
+import java.util.Arrays;
+
+import mathLib.numbers.Complex;
+
+/**
+ * Recurrences over the order of the Bessel functions, evaluating all the integer orders
+ * <tt>0..nmax</tt> at one argument:
+ * <ul>
+ * <li> minimal solutions (<tt>Jn</tt>, <tt>In</tt>, spherical <tt>jn</tt>): Miller backward recurrence
+ * from an order above <tt>max(nmax, |z|)</tt>, normalized by a sum rule or by the order 0,
+ * <li> dominant solutions (<tt>Yn</tt>, <tt>Kn</tt>, spherical <tt>yn</tt>): forward recurrence from
+ * the orders 0 and 1.
+ * </ul>
+ * The methods are static and keep no state, so that they can be called concurrently.
+ * Complex values are handled as real and imaginary parts, <tt>{re[], im[]}</tt>.
+ *
+ */
+final class BesselRecurrence {
+
+	static final double EULER = 0.5772156649015329 ;
+	static final double BIG = 1e100 ;
+	static final double ASYMPTOTIC_ARG = 25.0 ;
+	static final double SERIES_ARG_K = 2.0 ;
+	static final double RECESSIVE_IM = 2.0 ;
+	static final int MAX_ITERATIONS = 10000 ;
+
+	private BesselRecurrence() {
+	}
+
+	/**
+	 * even starting order of the backward recurrence, far enough above <tt>nmax</tt> and the turning point
+	 */
+	static int millerStart(int nmax, double ax) {
+		int n = max(nmax, (int) min(ax, 1e7)) + 1 ;
+		int m = n + 15 + (int) sqrt(40.0*n) ;
+		return m + (m & 1) ;
+	}
+
+	/**
+	 * unnormalized minimal solution of <tt>f(k-1) = (2k+a)/x*f(k) + s*f(k+1)</tt>, <tt>k = m..1</tt>
+	 */
+	static double[] backward(int m, double x, double a, double s) {
+		double[] f = new double[m+2] ;
+		f[m] = 1.0 ;
+		for(int k=m; k>0; k--) {
+			f[k-1] = (2*k+a)/x*f[k] + s*f[k+1] ;
+			if(abs(f[k-1])>BIG) {
+				for(int i=k-1; i<=m; i++)
+					f[i] /= BIG ;
+			}
+		}
+		return f ;
+	}
+
+	static double[][] backward(int m, double zr, double zi, double a, double s) {
+		double[] fr = new double[m+2] ;
+		double[] fi = new double[m+2] ;
+		double d = zr*zr+zi*zi ;
+		double wr = zr/d, wi = -zi/d ; // 1/z
+		fr[m] = 1.0 ;
+		for(int k=m; k>0; k--) {
+			double c = 2*k+a ;
+			double cr = c*wr, ci = c*wi ;
+			fr[k-1] = cr*fr[k]-ci*fi[k] + s*fr[k+1] ;
+			fi[k-1] = cr*fi[k]+ci*fr[k] + s*fi[k+1] ;
+			if(abs(fr[k-1])+abs(fi[k-1])>BIG) {
+				for(int i=k-1; i<=m; i++) {
+					fr[i] /= BIG ;
+					fi[i] /= BIG ;
+				}
+			}
+		}
+		return new double[][] {fr, fi} ;
+	}
+
+	//********* Bessel functions of the first and second kind *********************
+
+	/**
+	 * <tt>J_0..J_m(x)</tt>, <tt>x &gt; 0</tt>, normalized by <tt>J0 + 2*(J2 + J4 + ...) = 1</tt>
+	 */
+	static double[] besselJ(int nmax, double x) {
+		int m = millerStart(nmax, x) ;
+		double[] f = backward(m, x, 0.0, -1.0) ;
+		double s = f[0] ;
+		for(int k=2; k<=m; k+=2)
+			s += 2.0*f[k] ;
+		for(int k=0; k<=m; k++)
+			f[k] /= s ;
+		return f ;
+	}
+
+	static double[] jn(int nmax, double x) {
+		double[] jn = new double[nmax+1] ;
+		if(x==0.0) {
+			jn[0] = 1.0 ;
+			return jn ;
+		}
+		double[] f = besselJ(nmax, abs(x)) ;
+		for(int n=0; n<=nmax; n++)
+			jn[n] = (x<0.0 && n%2==1) ? -f[n] : f[n] ;
+		return jn ;
+	}
+
+	/**
+	 * <tt>Y_0..Y_nmax(x)</tt>, <tt>x &gt; 0</tt>: Neumann series of <tt>Y0, Y1</tt> on the <tt>Jn</tt>
+	 * (or Hankel asymptotic expansion for large <tt>x</tt>) and forward recurrence
+	 */
+	static double[] yn(int nmax, double x) {
+		double[] yn = new double[max(nmax, 1)+1] ;
+		if(x<0.0 || Double.isNaN(x)) {
+			Arrays.fill(yn, Double.NaN) ;
+		}
+		else if(x==0.0) {
+			Arrays.fill(yn, Double.NEGATIVE_INFINITY) ;
+		}
+		else {
+			if(x<=ASYMPTOTIC_ARG) {
+				double[] f = besselJ(1, x) ;
+				int m = f.length-2 ;
+				double ln = log(0.5*x)+EULER ;
+				double s0 = 0.0, s1 = 0.0 ;
+				for(int k=1; 2*k<=m; k++) {
+					double sign = (k%2==0) ? 1.0 : -1.0 ;
+					s0 += sign*f[2*k]/k ;
+					s1 += sign*(f[2*k-1]-f[2*k+1])/k ;
+				}
+				yn[0] = 2.0/PI*(ln*f[0] - 2.0*s0) ;
+				yn[1] = 2.0/PI*(ln*f[1] - f[0]/x + s1) ;
+			}
+			else {
+				double[] jy = new double[2] ;
+				hankelAsymptotic(0.0, x, jy) ;
+				yn[0] = jy[1] ;
+				hankelAsymptotic(1.0, x, jy) ;
+				yn[1] = jy[1] ;
+			}
+			for(int n=1; n<nmax; n++)
+				yn[n+1] = 2.0*n/x*yn[n] - yn[n-1] ;
+		}
+		return (nmax==0) ? Arrays.copyOf(yn, 1) : yn ;
+	}
+
+	/**
+	 * <tt>{J_nu(x), Y_nu(x)}</tt> from the Hankel expansion, summed up to its smallest term
+	 */
+	static void hankelAsymptotic(double nu, double x, double[] jy) {
+		double mu = 4.0*nu*nu ;
+		double p = 1.0, q = 0.0, t = 1.0 ;
+		for(int k=1; k<MAX_ITERATIONS; k++) {
+			double tNew = t*(mu-(2*k-1)*(2*k-1))/(8.0*k*x) ;
+			if(abs(tNew)>=abs(t) || abs(tNew)<1e-17)
+				break ;
+			t = tNew ;
+			switch(k%4) {
+				case 0: p += t ; break ;
+				case 1: q += t ; break ;
+				case 2: p -= t ; break ;
+				default: q -= t ;
+			}
+		}
+		double chi = x - (0.5*nu+0.25)*PI ;
+		double c = cos(chi), s = sin(chi) ;
+		double amp = sqrt(2.0/(PI*x)) ;
+		jy[0] = amp*(p*c - q*s) ;
+		jy[1] = amp*(p*s + q*c) ;
+	}
+
+	/**
+	 * <tt>J_0..J_m(z)</tt>, <tt>z != 0</tt>, normalized by <tt>J0 + 2*sum((-i)^n*Jn) = exp(-iz)</tt>
+	 * for <tt>Im(z) &gt;= 0</tt> and <tt>J0 + 2*sum(i^n*Jn) = exp(iz)</tt> otherwise, which grow as <tt>Jn</tt>.
+	 */
+	static double[][] besselJ(int nmax, double zr, double zi) {
+		int m = millerStart(nmax, hypot(zr, zi)) ;
+		double[][] f = backward(m, zr, zi, 0.0, -1.0) ;
+		double[] fr = f[0], fi = f[1] ;
+		double sgn = (zi>=0.0) ? -1.0 : 1.0 ;
+		double sr = fr[0], si = fi[0] ;
+		for(int n=1; n<=m; n++) {
+			// weight (sgn*i)^n
+			switch(n%4) {
+				case 1: sr -= 2.0*sgn*fi[n] ; si += 2.0*sgn*fr[n] ; break ;
+				case 2: sr -= 2.0*fr[n] ; si -= 2.0*fi[n] ; break ;
+				case 3: sr += 2.0*sgn*fi[n] ; si -= 2.0*sgn*fr[n] ; break ;
+				default: sr += 2.0*fr[n] ; si += 2.0*fi[n] ;
+			}
+		}
+		double mag = exp(-sgn*zi) ;
+		double er = mag*cos(sgn*zr), ei = mag*sin(sgn*zr) ;
+		double d = hypot(sr, si) ;
+		sr /= d ;
+		si /= d ;
+		double cr = (er*sr+ei*si)/d, ci = (ei*sr-er*si)/d ;
+		for(int k=0; k<=m; k++) {
+			double re = fr[k] ;
+			fr[k] = cr*re-ci*fi[k] ;
+			fi[k] = cr*fi[k]+ci*re ;
+		}
+		return f ;
+	}
+
+	static double[][] jn(int nmax, double zr, double zi) {
+		if(zr==0.0 && zi==0.0) {
+			double[][] jn = new double[2][nmax+1] ;
+			jn[0][0] = 1.0 ;
+			return jn ;
+		}
+		double[][] f = besselJ(nmax, zr, zi) ;
+		return new double[][] {Arrays.copyOf(f[0], nmax+1), Arrays.copyOf(f[1], nmax+1)} ;
+	}
+
+	/**
+	 * <tt>Y_0..Y_nmax(z)</tt> on the principal branch, <tt>-pi &lt; arg(z) &lt;= pi</tt>
+	 */
+	static double[][] yn(int nmax, double zr, double zi) {
+		int len = max(nmax, 1)+1 ;
+		double[] yr = new double[len] ;
+		double[] yi = new double[len] ;
+		if(zr==0.0 && zi==0.0) {
+			Arrays.fill(yr, Double.NEGATIVE_INFINITY) ;
+		}
+		else {
+			Complex z = new Complex(zr, zi) ;
+			Complex y0, y1 ;
+			double[][] f = null ;
+			if(z.abs()<=ASYMPTOTIC_ARG || abs(zi)>RECESSIVE_IM)
+				f = besselJ(nmax, zr, zi) ;
+			if(z.abs()<=ASYMPTOTIC_ARG) {
+				double[] fr = f[0], fi = f[1] ;
+				int m = fr.length-2 ;
+				double s0r = 0.0, s0i = 0.0, s1r = 0.0, s1i = 0.0 ;
+				for(int k=1; 2*k<=m; k++) {
+					double sign = (k%2==0) ? 1.0 : -1.0 ;
+					s0r += sign*fr[2*k]/k ;
+					s0i += sign*fi[2*k]/k ;
+					s1r += sign*(fr[2*k-1]-fr[2*k+1])/k ;
+					s1i += sign*(fi[2*k-1]-fi[2*k+1])/k ;
+				}
+				Complex ln = new Complex(log(0.5*z.abs())+EULER, atan2(zi, zr)) ;
+				Complex j0 = new Complex(fr[0], fi[0]) ;
+				Complex j1 = new Complex(fr[1], fi[1]) ;
+				y0 = ln.times(j0).minus(new Complex(2.0*s0r, 2.0*s0i)).times(2.0/PI) ;
+				y1 = ln.times(j1).minus(j0.divides(z)).plus(new Complex(s1r, s1i)).times(2.0/PI) ;
+			}
+			else if(zr>=0.0) {
+				y0 = hankelAsymptotic(0.0, z)[1] ;
+				y1 = hankelAsymptotic(1.0, z)[1] ;
+			}
+			else {
+				// Yn(z) = (-1)^n*(Yn(-z) +- 2i*Jn(-z)), the sign of Im(z) (+ on the cut)
+				Complex w = z.times(-1.0) ;
+				Complex c = new Complex(0.0, (zi>=0.0) ? 2.0 : -2.0) ;
+				Complex[] jy0 = hankelAsymptotic(0.0, w) ;
+				Complex[] jy1 = hankelAsymptotic(1.0, w) ;
+				y0 = jy0[1].plus(c.times(jy0[0])) ;
+				y1 = jy1[1].plus(c.times(jy1[0])).times(-1.0) ;
+			}
+			yr[0] = y0.re() ; yi[0] = y0.im() ;
+			yr[1] = y1.re() ; yi[1] = y1.im() ;
+			int n0 = 1 ;
+			if(abs(zi)>RECESSIVE_IM) {
+				Complex w = z.reciprocal().times(2.0/PI) ;
+				n0 = casoratian(nmax, f[0], f[1], w.re(), w.im(), yr, yi) ;
+			}
+			forward(n0, nmax, zr, zi, 0.0, -1.0, yr, yi) ;
+		}
+		if(nmax==0)
+			return new double[][] {Arrays.copyOf(yr, 1), Arrays.copyOf(yi, 1)} ;
+		return new double[][] {yr, yi} ;
+	}
+
+	static Complex[] hankelAsymptotic(double nu, Complex z) {
+		double mu = 4.0*nu*nu ;
+		Complex w = z.reciprocal() ;
+		double pr = 1.0, pi = 0.0, qr = 0.0, qi = 0.0, tr = 1.0, ti = 0.0 ;
+		double wr = w.re()/8.0, wi = w.im()/8.0 ;
+		for(int k=1; k<MAX_ITERATIONS; k++) {
+			double c = (mu-(2*k-1)*(2*k-1))/k ;
+			double nr = c*(tr*wr-ti*wi), ni = c*(tr*wi+ti*wr) ;
+			double tNew = hypot(nr, ni) ;
+			if(tNew>=hypot(tr, ti) || tNew<1e-17)
+				break ;
+			tr = nr ; ti = ni ;
+			switch(k%4) {
+				case 0: pr += tr ; pi += ti ; break ;
+				case 1: qr += tr ; qi += ti ; break ;
+				case 2: pr -= tr ; pi -= ti ; break ;
+				default: qr -= tr ; qi -= ti ;
+			}
+		}
+		Complex p = new Complex(pr, pi), q = new Complex(qr, qi) ;
+		Complex chi = z.minus((0.5*nu+0.25)*PI) ;
+		Complex c = chi.cos(), s = chi.sin() ;
+		Complex amp = csqrt(w.times(2.0/PI)) ;
+		return new Complex[] {amp.times(p.times(c).minus(q.times(s))), amp.times(p.times(s).plus(q.times(c)))} ;
+	}
+
+	/**
+	 * forward recurrence <tt>f(n+1) = (2n+a)/z*f(n) + s*f(n-1)</tt> from <tt>f(n0-1), f(n0)</tt>
+	 */
+	static void forward(int n0, int nmax, double zr, double zi, double a, double s, double[] fr, double[] fi) {
+		double d = zr*zr+zi*zi ;
+		double wr = zr/d, wi = -zi/d ;
+		for(int n=n0; n<nmax; n++) {
+			double c = 2*n+a ;
+			double cr = c*wr, ci = c*wi ;
+			fr[n+1] = cr*fr[n]-ci*fi[n] + s*fr[n-1] ;
+			fi[n+1] = cr*fi[n]+ci*fr[n] + s*fi[n-1] ;
+		}
+	}
+
+	/**
+	 * second solution <tt>g(2..)</tt> from the minimal one <tt>f</tt> and the Casoratian
+	 * <tt>f(n+1)*g(n) - f(n)*g(n+1) = w</tt>, until <tt>f</tt> underflows. Far from the real axis the
+	 * forward recurrence of <tt>Yn</tt> loses the part of the Hankel function decreasing as
+	 * <tt>exp(-|Im(z)|)</tt>, this one does not.
+	 * @return the last order computed
+	 */
+	static int casoratian(int nmax, double[] fr, double[] fi, double wr, double wi, double[] gr, double[] gi) {
+		int n = 1 ;
+		for(; n<nmax; n++) {
+			double d = fr[n]*fr[n]+fi[n]*fi[n] ;
+			if(d<Double.MIN_NORMAL)
+				break ;
+			double pr = fr[n+1]*gr[n]-fi[n+1]*gi[n] - wr ;
+			double pi = fr[n+1]*gi[n]+fi[n+1]*gr[n] - wi ;
+			gr[n+1] = (pr*fr[n]+pi*fi[n])/d ;
+			gi[n+1] = (pi*fr[n]-pr*fi[n])/d ;
+		}
+		return n ;
+	}
+
+	//********* modified Bessel functions *********************
+
+	/**
+	 * <tt>I_0..I_nmax(x)</tt>: normalized by <tt>I0 + 2*(I1 + I2 + ...) = exp(x)</tt>
+	 */
+	static double[] in(int nmax, double x) {
+		double[] in = new double[nmax+1] ;
+		if(x==0.0) {
+			in[0] = 1.0 ;
+			return in ;
+		}
+		double ax = abs(x) ;
+		// In decreases as exp(-n^2/2x) for large x
+		int m = millerStart(nmax, min(ax, 10.0*sqrt(ax))) ;
+		double[] f = backward(m, ax, 0.0, 1.0) ;
+		double s = f[0] ;
+		for(int k=1; k<=m; k++)
+			s += 2.0*f[k] ;
+		// exp(x)/s, without overflowing before the division
+		double scale = (ax>700.0) ? exp(ax-700.0)/s*exp(700.0) : exp(ax)/s ;
+		for(int n=0; n<=nmax; n++)
+			in[n] = (x<0.0 && n%2==1) ? -f[n]*scale : f[n]*scale ;
+		return in ;
+	}
+
+	/**
+	 * <tt>I_n(z) = (-i)^n*J_n(iz)</tt>
+	 */
+	static double[][] in(int nmax, double zr, double zi) {
+		double[][] f = jn(nmax, -zi, zr) ;
+		double[] fr = f[0], fi = f[1] ;
+		for(int n=1; n<=nmax; n++) {
+			double re = fr[n] ;
+			switch(n%4) {
+				case 1: fr[n] = fi[n] ; fi[n] = -re ; break ;
+				case 2: fr[n] = -re ; fi[n] = -fi[n] ; break ;
+				case 3: fr[n] = -fi[n] ; fi[n] = re ; break ;
+				default:
+			}
+		}
+		return f ;
+	}
+
+	/**
+	 * <tt>K_0..K_nmax(x)</tt>, <tt>x &gt; 0</tt>: <tt>K0</tt> from its series and <tt>K1</tt> from the
+	 * Wronskian for small <tt>x</tt>, Steed's continued fraction otherwise, and forward recurrence
+	 */
+	static double[] kn(int nmax, double x) {
+		double[] kn = new double[max(nmax, 1)+1] ;
+		if(x<0.0 || Double.isNaN(x)) {
+			Arrays.fill(kn, Double.NaN) ;
+		}
+		else if(x==0.0) {
+			Arrays.fill(kn, Double.POSITIVE_INFINITY) ;
+		}
+		else {
+			if(x<=SERIES_ARG_K) {
+				double[] i01 = in(1, x) ;
+				double y = 0.25*x*x ;
+				double t = 1.0, h = 0.0, s = 0.0 ;
+				for(int k=1; k<MAX_ITERATIONS; k++) {
+					t *= y/((double) k*k) ;
+					h += 1.0/k ;
+					s += t*h ;
+					if(t*h<1e-17*s)
+						break ;
+				}
+				kn[0] = -(log(0.5*x)+EULER)*i01[0] + s ;
+				kn[1] = (1.0/x - i01[1]*kn[0])/i01[0] ;
+			}
+			else {
+				// Steed's algorithm for the continued fraction CF2 (order 0)
+				double b = 2.0*(1.0+x) ;
+				double d = 1.0/b ;
+				double h = d, delh = d ;
+				double q1 = 0.0, q2 = 1.0 ;
+				double a1 = 0.25 ;
+				double q = a1, c = a1, a = -a1 ;
+				double s = 1.0+q*delh ;
+				for(int i=2; i<MAX_ITERATIONS; i++) {
+					a -= 2*(i-1) ;
+					c = -a*c/i ;
+					double qnew = (q1-b*q2)/a ;
+					q1 = q2 ;
+					q2 = qnew ;
+					q += c*qnew ;
+					b += 2.0 ;
+					d = 1.0/(b+a*d) ;
+					delh = (b*d-1.0)*delh ;
+					h += delh ;
+					double dels = q*delh ;
+					s += dels ;
+					if(abs(dels)<1e-17*abs(s))
+						break ;
+				}
+				h = a1*h ;
+				kn[0] = sqrt(PI/(2.0*x))*exp(-x)/s ;
+				kn[1] = kn[0]*(x+0.5-h)/x ;
+			}
+			for(int n=1; n<nmax; n++)
+				kn[n+1] = kn[n-1] + 2.0*n/x*kn[n] ;
+		}
+		return (nmax==0) ? Arrays.copyOf(kn, 1) : kn ;
+	}
+
+	/**
+	 * <tt>K_0..K_nmax(z)</tt> on the principal branch
+	 */
+	static double[][] kn(int nmax, double zr, double zi) {
+		if(zr<0.0) {
+			// Kn(z) = (-1)^n*Kn(-z) -+ i*pi*In(-z), with the sign of Im(z) (- on the cut)
+			double[][] k = kn(nmax, -zr, -zi) ;
+			double[][] in = in(nmax, -zr, -zi) ;
+			double c = (zi>=0.0) ? PI : -PI ;
+			for(int n=0; n<=nmax; n++) {
+				double sign = (n%2==0) ? 1.0 : -1.0 ;
+				k[0][n] = sign*k[0][n] + c*in[1][n] ;
+				k[1][n] = sign*k[1][n] - c*in[0][n] ;
+			}
+			return k ;
+		}
+		int len = max(nmax, 1)+1 ;
+		double[] kr = new double[len] ;
+		double[] ki = new double[len] ;
+		if(zr==0.0 && zi==0.0) {
+			Arrays.fill(kr, Double.POSITIVE_INFINITY) ;
+		}
+		else {
+			Complex z = new Complex(zr, zi) ;
+			Complex k0, k1 ;
+			if(z.abs()<=SERIES_ARG_K) {
+				double[][] i01 = in(1, zr, zi) ;
+				Complex i0 = new Complex(i01[0][0], i01[1][0]) ;
+				Complex i1 = new Complex(i01[0][1], i01[1][1]) ;
+				Complex y = z.times(z).times(0.25) ;
+				double tr = 1.0, ti = 0.0, h = 0.0, sr = 0.0, si = 0.0 ;
+				for(int k=1; k<MAX_ITERATIONS; k++) {
+					double c = 1.0/((double) k*k) ;
+					double nr = c*(tr*y.re()-ti*y.im()), ni = c*(tr*y.im()+ti*y.re()) ;
+					tr = nr ; ti = ni ;
+					h += 1.0/k ;
+					sr += tr*h ;
+					si += ti*h ;
+					if(hypot(tr, ti)*h<1e-17*hypot(sr, si))
+						break ;
+				}
+				Complex ln = new Complex(log(0.5*z.abs())+EULER, atan2(zi, zr)) ;
+				k0 = new Complex(sr, si).minus(ln.times(i0)) ;
+				k1 = z.reciprocal().minus(i1.times(k0)).divides(i0) ;
+			}
+			else {
+				Complex b = z.plus(1.0).times(2.0) ;
+				Complex d = b.reciprocal() ;
+				Complex h = d, delh = d ;
+				Complex q1 = Complex.ZERO, q2 = Complex.ONE ;
+				double a1 = 0.25 ;
+				double c = a1, a = -a1 ;
+				Complex q = new Complex(a1, 0.0) ;
+				Complex s = Complex.ONE.plus(q.times(delh)) ;
+				for(int i=2; i<MAX_ITERATIONS; i++) {
+					a -= 2*(i-1) ;
+					c = -a*c/i ;
+					Complex qnew = q1.minus(b.times(q2)).divides(a) ;
+					q1 = q2 ;
+					q2 = qnew ;
+					q = q.plus(qnew.times(c)) ;
+					b = b.plus(2.0) ;
+					d = b.plus(d.times(a)).reciprocal() ;
+					delh = b.times(d).minus(1.0).times(delh) ;
+					h = h.plus(delh) ;
+					Complex dels = q.times(delh) ;
+					s = s.plus(dels) ;
+					if(dels.abs()<1e-17*s.abs())
+						break ;
+				}
+				h = h.times(a1) ;
+				k0 = csqrt(z.reciprocal().times(0.5*PI)).times(z.times(-1.0).exp()).divides(s) ;
+				k1 = k0.times(z.plus(0.5).minus(h)).divides(z) ;
+			}
+			kr[0] = k0.re() ; ki[0] = k0.im() ;
+			kr[1] = k1.re() ; ki[1] = k1.im() ;
+			forward(1, nmax, zr, zi, 0.0, 1.0, kr, ki) ;
+		}
+		if(nmax==0)
+			return new double[][] {Arrays.copyOf(kr, 1), Arrays.copyOf(ki, 1)} ;
+		return new double[][] {kr, ki} ;
+	}
+
+	//********* spherical Bessel functions *********************
+
+	/**
+	 * spherical <tt>j_0..j_nmax(x)</tt>: backward recurrence normalized by the larger of
+	 * <tt>j0 = sin(x)/x</tt> and <tt>j1 = sin(x)/x^2 - cos(x)/x</tt>
+	 */
+	static double[] sphericalJn(int nmax, double x) {
+		double[] jn = new double[nmax+1] ;
+		if(x==0.0) {
+			jn[0] = 1.0 ;
+			return jn ;
+		}
+		int m = millerStart(nmax, abs(x)) ;
+		double[] f = backward(m, x, 1.0, -1.0) ;
+		double j0 = sin(x)/x ;
+		double j1 = (j0-cos(x))/x ;
+		double scale = (abs(j0)>=abs(j1)) ? j0/f[0] : j1/f[1] ;
+		for(int n=0; n<=nmax; n++)
+			jn[n] = f[n]*scale ;
+		return jn ;
+	}
+
+	static double[] sphericalYn(int nmax, double x) {
+		double[] yn = new double[max(nmax, 1)+1] ;
+		yn[0] = -cos(x)/x ;
+		yn[1] = (yn[0]-sin(x))/x ;
+		for(int n=1; n<nmax; n++)
+			yn[n+1] = (2*n+1)/x*yn[n] - yn[n-1] ;
+		return (nmax==0) ? Arrays.copyOf(yn, 1) : yn ;
+	}
+
+	static double[][] sphericalJn(int nmax, double zr, double zi) {
+		if(zr==0.0 && zi==0.0) {
+			double[][] jn = new double[2][nmax+1] ;
+			jn[0][0] = 1.0 ;
+			return jn ;
+		}
+		int m = millerStart(nmax, hypot(zr, zi)) ;
+		double[][] f = backward(m, zr, zi, 1.0, -1.0) ;
+		Complex z = new Complex(zr, zi) ;
+		Complex j0 = z.sin().divides(z) ;
+		Complex j1 = j0.minus(z.cos()).divides(z) ;
+		Complex scale = (j0.abs()>=j1.abs()) ? j0.divides(new Complex(f[0][0], f[1][0]))
+											  : j1.divides(new Complex(f[0][1], f[1][1])) ;
+		double[] jr = new double[nmax+1] ;
+		double[] ji = new double[nmax+1] ;
+		for(int n=0; n<=nmax; n++) {
+			jr[n] = scale.re()*f[0][n]-scale.im()*f[1][n] ;
+			ji[n] = scale.re()*f[1][n]+scale.im()*f[0][n] ;
+		}
+		return new double[][] {jr, ji} ;
+	}
+
+	static double[][] sphericalYn(int nmax, double zr, double zi) {
+		int len = max(nmax, 1)+1 ;
+		double[] yr = new double[len] ;
+		double[] yi = new double[len] ;
+		Complex z = new Complex(zr, zi) ;
+		Complex y0 = z.cos().divides(z).times(-1.0) ;
+		Complex y1 = y0.minus(z.sin()).divides(z) ;
+		yr[0] = y0.re() ; yi[0] = y0.im() ;
+		yr[1] = y1.re() ; yi[1] = y1.im() ;
+		int n0 = 1 ;
+		if(abs(zi)>RECESSIVE_IM) {
+			double[][] f = sphericalJn(nmax, zr, zi) ;
+			Complex w = z.times(z).reciprocal() ;
+			n0 = casoratian(nmax, f[0], f[1], w.re(), w.im(), yr, yi) ;
+		}
+		forward(n0, nmax, zr, zi, 1.0, -1.0, yr, yi) ;
+		if(nmax==0)
+			return new double[][] {Arrays.copyOf(yr, 1), Arrays.copyOf(yi, 1)} ;
+		return new double[][] {yr, yi} ;
+	}
+
+	//********* conversions *********************
+
+	/**
+	 * principal square root, <tt>Re &gt;= 0</tt>
+	 */
+	static Complex csqrt(Complex z) {
+		double r = Math.sqrt(0.5*(z.abs()+abs(z.re()))) ;
+		if(r==0.0)
+			return Complex.ZERO ;
+		if(z.re()>=0.0)
+			return new Complex(r, 0.5*z.im()/r) ;
+		return new Complex(0.5*abs(z.im())/r, copySign(r, z.im())) ;
+	}
+
+	static Complex[] toComplex(double[] re, double[] im) {
+		Complex[] z = new Complex[re.length] ;
+		for(int i=0; i<re.length; i++)
+			z[i] = new Complex(re[i], im[i]) ;
+		return z ;
+	}
+
+	/**
+	 * <tt>f + sign*i*g</tt>, e.g. the Hankel functions from <tt>J</tt> and <tt>Y</tt>
+	 */
+	static Complex[] combine(double[] f, double[] g, double sign) {
+		Complex[] z = new Complex[f.length] ;
+		for(int i=0; i<f.length; i++)
+			z[i] = new Complex(f[i], sign*g[i]) ;
+		return z ;
+	}
+
+	static Complex[] combine(double[][] f, double[][] g, double sign) {
+		Complex[] z = new Complex[f[0].length] ;
+		for(int i=0; i<z.length; i++)
+			z[i] = new Complex(f[0][i]-sign*g[1][i], f[1][i]+sign*g[0][i]) ;
+		return z ;
+	}
+
+}
@@ -1,9 +1,15 @@
 package mathLib.func.special;
 
+import static java.lang.Math.PI;
 import static java.lang.Math.abs;
+import static java.lang.Math.atan2;
+import static java.lang.Math.cos;
 import static java.lang.Math.exp;
+import static java.lang.Math.hypot;
 import static java.lang.Math.log;
 import static java.lang.Math.pow;
+import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
 
 import mathLib.numbers.Complex;
 import mathLib.numbers.ComplexMath;
@@ -12,20 +18,28 @@ import mathLib.sequence.Sequence;
 
 /**
  * Implementation of Gamma function
+ * <p>
+ * The instance methods keep no state between calls. The static array methods use the
+ * Lanczos approximation (relative error about 1e-15) and can be called from several threads.
  *
  * @author Meisam
  *
  */
 public class GammaFunction {
 
-	Sequence gammaSeq, gammaSeqProd ;
-	ComplexSequence gammaSeqComplex ;
 	int order = 1000 ;
 	double g = 	0.5772156649 ; // Euler-Mascheroni number
 
+	// Lanczos coefficients for g = 7, n = 9
+	static final double LANCZOS_G = 7.0 ;
+	static final double[] LANCZOS = {
+			0.99999999999980993, 676.5203681218851, -1259.1392167224028,
+			771.32342877765313, -176.61502916214059, 12.507343278686905,
+			-0.13857109526572012, 9.9843695780195716e-6, 1.5056327351493116e-7} ;
+	static final double SQRT_2PI = sqrt(2.0*PI) ;
+
 	public GammaFunction() {
-		gammaSeq = n -> Double.NaN ;
-		gammaSeqProd = n -> Double.NaN ;
+
 	}
 
 	//********** fast implementation of Gamma function ***************
@@ -84,8 +98,8 @@ public class GammaFunction {
 
 	// Original implementation of Euler's definition of Gamma function
 	double gamma2(double x) {
-		gammaSeq = n -> pow(1.0+1.0/n, x)/(1.0+x/n) ;
-		gammaSeqProd = n -> {
+		Sequence gammaSeq = n -> pow(1.0+1.0/n, x)/(1.0+x/n) ;
+		Sequence gammaSeqProd = n -> {
 			double result = 1.0 ;
 			for(int i=1; i<n+1; i++) {
 				result *= gammaSeq.evaluate(i) ;
@@ -97,13 +111,13 @@ public class GammaFunction {
 
 	// enhanced version of Euler's definition
 	double gamma2Modified(double x) {
-		gammaSeq = n -> {
+		Sequence gammaSeq = n -> {
 			double result = 1.0 ;
 			for(int i=1; i<n+1; i++)
 				result *= 1.0 + 1.0/i ;
 			return result ;
 		} ;
-		gammaSeqProd = n -> {
+		Sequence gammaSeqProd = n -> {
 			double result = 1.0 ;
 			for(int i=1; i<n+1; i++) {
 				result *= 1.0/(1.0+x/i) ;
@@ -116,7 +130,7 @@ public class GammaFunction {
 
 	// Weierstrass implementation for real numbers
 	double gamma3(double x) {
-		gammaSeqProd = n -> {
+		Sequence gammaSeqProd = n -> {
 			double result = 1.0 ;
 			for(int i=1; i<n+1; i++) {
 				result *= 1.0+x/i ;
@@ -135,13 +149,13 @@ public class GammaFunction {
 
 	// most efficient implementation of Euler's definition for Gamma(z)
 	double gamma4(double x) {
-		gammaSeq = n -> {
+		Sequence gammaSeq = n -> {
 			double result = 1.0 ;
 			for(int i=1; i<n+1; i++)
 				result *= 1.0 + 1.0/i ;
 			return result ;
 		} ;
-		gammaSeqProd = n -> {
+		Sequence gammaSeqProd = n -> {
 			double result = 1.0 ;
 			for(int i=1; i<n+1; i++) {
 				result *= 1.0+x/i ;
@@ -154,7 +168,7 @@ public class GammaFunction {
 
 	// Weierstrass implementation for complex numbers
 	Complex gamma5(Complex x) {
-		gammaSeqComplex = n -> {
+		ComplexSequence gammaSeqComplex = n -> {
 			Complex result = 1.0 ;
 			for(int i=1; i<n+1; i++) {
 				result = result * (1.0+x/i) ;
@@ -172,4 +186,110 @@ public class GammaFunction {
 	}
 
 
+	//********** stateless batch evaluation (Lanczos approximation) ***************
+
+	/**
+	 * Gamma function at each <tt>x[i]</tt>
+	 * @param x
+	 * @return <tt>Gamma(x[i])</tt>
+	 */
+	public static double[] gamma(double[] x) {
+		double[] y = new double[x.length] ;
+		for(int i=0; i<x.length; i++)
+			y[i] = lanczos(x[i]) ;
+		return y ;
+	}
+
+	/**
+	 * Gamma function at each <tt>z[i]</tt>
+	 * @param z
+	 * @return <tt>Gamma(z[i])</tt>
+	 */
+	public static Complex[] gamma(Complex[] z) {
+		Complex[] y = new Complex[z.length] ;
+		double[] w = new double[2] ;
+		for(int i=0; i<z.length; i++) {
+			lanczos(z[i].re(), z[i].im(), w) ;
+			y[i] = new Complex(w[0], w[1]) ;
+		}
+		return y ;
+	}
+
+	/**
+	 * <tt>Gamma(x), Gamma(x+1), ..., Gamma(x+nmax)</tt> with the recurrence <tt>Gamma(x+1) = x*Gamma(x)</tt>
+	 * @param nmax
+	 * @param x
+	 * @return an array of length <tt>nmax+1</tt>
+	 */
+	public static double[] gammaAll(int nmax, double x) {
+		if(nmax<0)
+			throw new IllegalArgumentException("nmax must be non-negative") ;
+		double[] y = new double[nmax+1] ;
+		y[0] = lanczos(x) ;
+		for(int n=0; n<nmax; n++)
+			y[n+1] = (x+n==0.0) ? lanczos(x+n+1) : (x+n)*y[n] ;
+		return y ;
+	}
+
+	public static Complex[] gammaAll(int nmax, Complex z) {
+		if(nmax<0)
+			throw new IllegalArgumentException("nmax must be non-negative") ;
+		double[] w = new double[2] ;
+		lanczos(z.re(), z.im(), w) ;
+		double yr = w[0], yi = w[1] ;
+		Complex[] y = new Complex[nmax+1] ;
+		y[0] = new Complex(yr, yi) ;
+		for(int n=0; n<nmax; n++) {
+			double ar = z.re()+n, ai = z.im() ;
+			double re = ar*yr-ai*yi ;
+			yi = ar*yi+ai*yr ;
+			yr = re ;
+			y[n+1] = new Complex(yr, yi) ;
+		}
+		return y ;
+	}
+
+	static double lanczos(double x) {
+		if(x<0.5)
+			return PI/(sin(PI*x)*lanczos(1.0-x)) ;
+		x -= 1.0 ;
+		double a = LANCZOS[0] ;
+		for(int i=1; i<LANCZOS.length; i++)
+			a += LANCZOS[i]/(x+i) ;
+		double t = x+LANCZOS_G+0.5 ;
+		// t^(x+0.5)*exp(-t) in two halves, not to overflow before Gamma(x+1) does
+		double p = pow(t, 0.5*(x+0.5)) ;
+		return SQRT_2PI*p*(p*exp(-t))*a ;
+	}
+
+	static void lanczos(double zr, double zi, double[] w) {
+		if(zr<0.5) {
+			// Gamma(z) = pi/(sin(pi*z)*Gamma(1-z))
+			lanczos(1.0-zr, -zi, w) ;
+			double sr = sin(PI*zr)*Math.cosh(PI*zi), si = cos(PI*zr)*Math.sinh(PI*zi) ;
+			double dr = sr*w[0]-si*w[1], di = sr*w[1]+si*w[0] ;
+			double d = dr*dr+di*di ;
+			w[0] = PI*dr/d ;
+			w[1] = -PI*di/d ;
+			return ;
+		}
+		zr -= 1.0 ;
+		double ar = LANCZOS[0], ai = 0.0 ;
+		for(int i=1; i<LANCZOS.length; i++) {
+			double xr = zr+i ;
+			double d = xr*xr+zi*zi ;
+			ar += LANCZOS[i]*xr/d ;
+			ai -= LANCZOS[i]*zi/d ;
+		}
+		double tr = zr+LANCZOS_G+0.5 ;
+		// exp((z+0.5)*log(t) - t)
+		double lr = log(hypot(tr, zi)), li = atan2(zi, tr) ;
+		double er = (zr+0.5)*lr - zi*li - tr ;
+		double ei = (zr+0.5)*li + zi*lr - zi ;
+		double mag = SQRT_2PI*exp(er) ;
+		double cr = mag*cos(ei), ci = mag*sin(ei) ;
+		w[0] = cr*ar-ci*ai ;
+		w[1] = cr*ai+ci*ar ;
+	}
+
 }
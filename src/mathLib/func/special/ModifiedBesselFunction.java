@@ -13,23 +13,15 @@ import static mathLib.numbers.Complex.* ;
 /**
  * Modified Bessel Functions: Iv(x), Kv(x)
  * <p> Solutions of ODE: x^2 y'' + x y' - (x^2 + v^2) y = 0 </p>
+ * The instance methods keep no state between calls. The static methods evaluate all the
+ * integer orders <tt>0..nmax</tt> at once by recurrences over the order (<tt>BesselRecurrence</tt>).
  *
  * @author Meisam
  *
  */
 public class ModifiedBesselFunction {
 
-	Sequence ivSeq ;
-	double leadTerm ;
-	double val ;
-
-	ComplexSequence ivSeqComplex ;
-	Complex leadTermComplex ;
-	Complex valComplex ;
-
 	GammaFunction gammaFunc ;
-	double lastv = 0.0 ;
-	double lastGamma = 1.0 ;
 
 	BesselFunction bessel ;
 
@@ -41,16 +33,9 @@ public class ModifiedBesselFunction {
 	//********* Modified Bessel of First Kind: Iv(x) *********************
 
 	private double ivSeries(double v, double x) {
-		if(abs(v-lastv)<1e-2) {
-			leadTerm = pow(x/2.0, v) / lastGamma ;
-		}
-		else {
-			lastv = v ;
-			lastGamma = gammaFunc.gamma(v+1.0) ;
-			leadTerm = pow(x/2.0, v) / lastGamma ;
-		}
-		val = (0.5*x)*(0.5*x) ;
-		ivSeq = n -> {
+		double leadTerm = pow(x/2.0, v) / gammaFunc.gamma(v+1.0) ;
+		double val = (0.5*x)*(0.5*x) ;
+		Sequence ivSeq = n -> {
 			double result = 1.0 ;
 			for(int i=(int)n; i>0; i--) {
 				result = 1.0 + val/(i*(i+v))*result ;
@@ -92,16 +77,9 @@ public class ModifiedBesselFunction {
 			return ivSeries(v, x.conjugate()).conjugate() ;
 		else if(x.re()>=0.0 && x.im()<0.0)
 			return ivSeries(v, x.conjugate()).conjugate() ;
-		if(abs(v-lastv)<1e-2) {
-			leadTermComplex = ComplexMath.pow(x/2.0, v) / lastGamma ;
-		}
-		else {
-			lastv = v ;
-			lastGamma = gammaFunc.gamma(v+1.0) ;
-			leadTermComplex = ComplexMath.pow(x/2.0, v) / lastGamma ;
-		}
-		valComplex = (0.5*x)*(0.5*x) ;
-		ivSeqComplex = n -> {
+		Complex leadTermComplex = ComplexMath.pow(x/2.0, v) / gammaFunc.gamma(v+1.0) ;
+		Complex valComplex = (0.5*x)*(0.5*x) ;
+		ComplexSequence ivSeqComplex = n -> {
 			Complex result = 1.0+0.0*j ;
 			for(int i=(int)n; i>0; i--) {
 				result = 1.0 + valComplex/(i*(i+v))*result ;
@@ -225,4 +203,99 @@ public class ModifiedBesselFunction {
 //		return 0.5*(kv(v-1, x)-kv(v+1, x)) ;
 //	}
 
+	//********* all integer orders at once (stateless) *********************
+
+	/**
+	 * <tt>I_0(x)..I_nmax(x)</tt> by Miller's backward recurrence
+	 * @param nmax highest order
+	 * @param x
+	 * @return an array of length <tt>nmax+1</tt>
+	 */
+	public static double[] inAll(int nmax, double x) {
+		BesselFunction.checkOrder(nmax) ;
+		return BesselRecurrence.in(nmax, x) ;
+	}
+
+	/**
+	 * <tt>K_0(x)..K_nmax(x)</tt> by forward recurrence, <tt>NaN</tt> for <tt>x &lt; 0</tt>
+	 * @param nmax highest order
+	 * @param x
+	 * @return an array of length <tt>nmax+1</tt>
+	 */
+	public static double[] knAll(int nmax, double x) {
+		BesselFunction.checkOrder(nmax) ;
+		return BesselRecurrence.kn(nmax, x) ;
+	}
+
+	public static Complex[] inAll(int nmax, Complex z) {
+		BesselFunction.checkOrder(nmax) ;
+		double[][] f = BesselRecurrence.in(nmax, z.re(), z.im()) ;
+		return BesselRecurrence.toComplex(f[0], f[1]) ;
+	}
+
+	/**
+	 * <tt>K_0(z)..K_nmax(z)</tt> on the principal branch
+	 */
+	public static Complex[] knAll(int nmax, Complex z) {
+		BesselFunction.checkOrder(nmax) ;
+		double[][] f = BesselRecurrence.kn(nmax, z.re(), z.im()) ;
+		return BesselRecurrence.toComplex(f[0], f[1]) ;
+	}
+
+	//********* many arguments at once (stateless) *********************
+
+	/**
+	 * @return <tt>result[i][n] = I_n(x[i])</tt>, <tt>n = 0..nmax</tt>
+	 */
+	public static double[][] inAll(int nmax, double[] x) {
+		double[][] result = new double[x.length][] ;
+		for(int i=0; i<x.length; i++)
+			result[i] = inAll(nmax, x[i]) ;
+		return result ;
+	}
+
+	/**
+	 * @return <tt>result[i][n] = K_n(x[i])</tt>, <tt>n = 0..nmax</tt>
+	 */
+	public static double[][] knAll(int nmax, double[] x) {
+		double[][] result = new double[x.length][] ;
+		for(int i=0; i<x.length; i++)
+			result[i] = knAll(nmax, x[i]) ;
+		return result ;
+	}
+
+	public static Complex[][] inAll(int nmax, Complex[] z) {
+		Complex[][] result = new Complex[z.length][] ;
+		for(int i=0; i<z.length; i++)
+			result[i] = inAll(nmax, z[i]) ;
+		return result ;
+	}
+
+	public static Complex[][] knAll(int nmax, Complex[] z) {
+		Complex[][] result = new Complex[z.length][] ;
+		for(int i=0; i<z.length; i++)
+			result[i] = knAll(nmax, z[i]) ;
+		return result ;
+	}
+
+	/**
+	 * @return <tt>I_n(x[i])</tt>
+	 */
+	public static double[] in(int n, double[] x) {
+		double[] result = new double[x.length] ;
+		for(int i=0; i<x.length; i++)
+			result[i] = inAll(abs(n), x[i])[abs(n)] ;
+		return result ;
+	}
+
+	/**
+	 * @return <tt>K_n(x[i])</tt>
+	 */
+	public static double[] kn(int n, double[] x) {
+		double[] result = new double[x.length] ;
+		for(int i=0; i<x.length; i++)
+			result[i] = knAll(abs(n), x[i])[abs(n)] ;
+		return result ;
+	}
+
 }
@@ -4,6 +4,13 @@ import static java.lang.Math.* ;
 import static mathLib.numbers.Complex.* ;
 import mathLib.numbers.Complex;
 
+/**
+ * Spherical Bessel functions: jn(x) = sqrt(pi/2x) J(n+1/2)(x), yn(x) = sqrt(pi/2x) Y(n+1/2)(x)
+ * <p>
+ * The static methods evaluate all the orders <tt>0..nmax</tt> at once by recurrences over the
+ * order (<tt>BesselRecurrence</tt>). They keep no state and can be called from several threads.
+ *
+ */
 public class SphericalBesselFunction {
 
 	private BesselFunction besselFunc ;
@@ -33,4 +40,130 @@ public class SphericalBesselFunction {
 		return jn(n, x) - j*yn(n, x) ;
 	}
 
+	//********* all orders at once (stateless) *********************
+
+	/**
+	 * <tt>j_0(x)..j_nmax(x)</tt> by Miller's backward recurrence
+	 * @param nmax highest order
+	 * @param x
+	 * @return an array of length <tt>nmax+1</tt>
+	 */
+	public static double[] jnAll(int nmax, double x) {
+		BesselFunction.checkOrder(nmax) ;
+		return BesselRecurrence.sphericalJn(nmax, x) ;
+	}
+
+	/**
+	 * <tt>y_0(x)..y_nmax(x)</tt> by forward recurrence
+	 * @param nmax highest order
+	 * @param x
+	 * @return an array of length <tt>nmax+1</tt>
+	 */
+	public static double[] ynAll(int nmax, double x) {
+		BesselFunction.checkOrder(nmax) ;
+		return BesselRecurrence.sphericalYn(nmax, x) ;
+	}
+
+	public static Complex[] hankel1All(int nmax, double x) {
+		return BesselRecurrence.combine(jnAll(nmax, x), ynAll(nmax, x), 1.0) ;
+	}
+
+	public static Complex[] hankel2All(int nmax, double x) {
+		return BesselRecurrence.combine(jnAll(nmax, x), ynAll(nmax, x), -1.0) ;
+	}
+
+	public static Complex[] jnAll(int nmax, Complex z) {
+		BesselFunction.checkOrder(nmax) ;
+		double[][] f = BesselRecurrence.sphericalJn(nmax, z.re(), z.im()) ;
+		return BesselRecurrence.toComplex(f[0], f[1]) ;
+	}
+
+	public static Complex[] ynAll(int nmax, Complex z) {
+		BesselFunction.checkOrder(nmax) ;
+		double[][] f = BesselRecurrence.sphericalYn(nmax, z.re(), z.im()) ;
+		return BesselRecurrence.toComplex(f[0], f[1]) ;
+	}
+
+	public static Complex[] hankel1All(int nmax, Complex z) {
+		BesselFunction.checkOrder(nmax) ;
+		return BesselRecurrence.combine(BesselRecurrence.sphericalJn(nmax, z.re(), z.im()),
+				BesselRecurrence.sphericalYn(nmax, z.re(), z.im()), 1.0) ;
+	}
+
+	public static Complex[] hankel2All(int nmax, Complex z) {
+		BesselFunction.checkOrder(nmax) ;
+		return BesselRecurrence.combine(BesselRecurrence.sphericalJn(nmax, z.re(), z.im()),
+				BesselRecurrence.sphericalYn(nmax, z.re(), z.im()), -1.0) ;
+	}
+
+	//********* many arguments at once (stateless) *********************
+
+	/**
+	 * @return <tt>result[i][n] = j_n(x[i])</tt>, <tt>n = 0..nmax</tt>
+	 */
+	public static double[][] jnAll(int nmax, double[] x) {
+		double[][] result = new double[x.length][] ;
+		for(int i=0; i<x.length; i++)
+			result[i] = jnAll(nmax, x[i]) ;
+		return result ;
+	}
+
+	/**
+	 * @return <tt>result[i][n] = y_n(x[i])</tt>, <tt>n = 0..nmax</tt>
+	 */
+	public static double[][] ynAll(int nmax, double[] x) {
+		double[][] result = new double[x.length][] ;
+		for(int i=0; i<x.length; i++)
+			result[i] = ynAll(nmax, x[i]) ;
+		return result ;
+	}
+
+	public static Complex[][] jnAll(int nmax, Complex[] z) {
+		Complex[][] result = new Complex[z.length][] ;
+		for(int i=0; i<z.length; i++)
+			result[i] = jnAll(nmax, z[i]) ;
+		return result ;
+	}
+
+	public static Complex[][] ynAll(int nmax, Complex[] z) {
+		Complex[][] result = new Complex[z.length][] ;
+		for(int i=0; i<z.length; i++)
+			result[i] = ynAll(nmax, z[i]) ;
+		return result ;
+	}
+
+	public static Complex[][] hankel1All(int nmax, Complex[] z) {
+		Complex[][] result = new Complex[z.length][] ;
+		for(int i=0; i<z.length; i++)
+			result[i] = hankel1All(nmax, z[i]) ;
+		return result ;
+	}
+
+	public static Complex[][] hankel2All(int nmax, Complex[] z) {
+		Complex[][] result = new Complex[z.length][] ;
+		for(int i=0; i<z.length; i++)
+			result[i] = hankel2All(nmax, z[i]) ;
+		return result ;
+	}
+
+	/**
+	 * @return <tt>j_n(x[i])</tt>
+	 */
+	public static double[] jn(int n, double[] x) {
+		double[] result = new double[x.length] ;
+		for(int i=0; i<x.length; i++)
+			result[i] = jnAll(n, x[i])[n] ;
+		return result ;
+	}
+
+	/**
+	 * @return <tt>y_n(x[i])</tt>
+	 */
+	public static double[] yn(int n, double[] x) {
+		double[] result = new double[x.length] ;
+		for(int i=0; i<x.length; i++)
+			result[i] = ynAll(n, x[i])[n] ;
+		return result ;
+	}
+
 }
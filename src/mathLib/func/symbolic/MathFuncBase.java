@@ -23,7 +23,6 @@ import org.apache.bcel.generic.InstructionList;
 import org.apache.bcel.generic.MethodGen;
 import org.apache.bcel.generic.PUSH;
 import org.apache.bcel.generic.Type;
-import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
@@ -34,7 +33,10 @@ import mathLib.fem.util.BytecodeConst;
 import mathLib.fem.util.BytecodeUtils;
 import mathLib.fem.util.ClassGenerator;
 import mathLib.fem.util.Constant;
+import mathLib.fem.util.ExprOptimizer;
+import mathLib.fem.util.FuncClassCache;
 import mathLib.fem.util.FuncClassLoader;
+import mathLib.fem.util.FuncMethodVisitor;
 import mathLib.func.symbolic.basic.FC;
 import mathLib.func.symbolic.basic.FComposite;
 import mathLib.func.symbolic.intf.MathFunc;
@@ -250,14 +252,36 @@ public abstract class MathFuncBase implements MathFunc, Cloneable {
 
 	@Override
 	public CompiledFunc compileWithASM(String ...varNames) {
+		return compileWithASM(true, varNames);
+	}
+
+	@Override
+	public CompiledFunc compileWithASM(boolean useCache, String ...varNames) {
 
 //		boolean writeFile = true;
 		boolean writeFile = false ;
 		genClassName = getName();
 		if (genClassName == null || genClassName.length() == 0)
 			genClassName = this.getClass().getSimpleName();
-		genClassName = genClassName
-				+ java.util.UUID.randomUUID().toString().replaceAll("-", "");
+
+		//Reuse the class generated for an equal expression, see FuncClassCache.
+		//The value of a function compiled to a field is held by each instance, not by the class
+		FuncClassCache cache = FuncClassCache.getInstance();
+		String cacheKey = null;
+		if(useCache && cache.enabled) {
+			String[] argsOrder = varNames;
+			if(varNames == null || varNames.length == 0)
+				argsOrder = this.getVarNames().toArray(new String[0]);
+			cacheKey = FuncClassCache.getKey("CompiledFunc", new MathFunc[] {this}, argsOrder, true,
+					this.compileToStaticField ? "field" : "");
+			Class<?> c = cache.get(cacheKey);
+			if(c != null)
+				return newCompiledFunc(c);
+			genClassName = genClassName + "_" + cacheKey;
+		} else {
+			genClassName = genClassName
+					+ java.util.UUID.randomUUID().toString().replaceAll("-", "");
+		}
 		try {
 			FuncClassLoader<CompiledFunc> mcl = FuncClassLoader.getInstance(ClassGenerator.class.getClassLoader());
 			ClassGenerator cgen = new ClassGenerator(genClassName);
@@ -266,7 +290,7 @@ public abstract class MathFuncBase implements MathFunc, Cloneable {
 
 			// Define method:
 			// double apply(Element e, Node n, double ...args);
-			MethodVisitor mv = null;
+			FuncMethodVisitor mv = null;
 			String methodName = "apply";
 
 			// Generate the function for the root expression
@@ -304,22 +328,26 @@ public abstract class MathFuncBase implements MathFunc, Cloneable {
 
 			Map<MathFunc, Integer> refsMap = BytecodeUtils.getFuncRefsMap(this);
 
-			if (this.compileToStaticField) {
-				this.bytecodeGen(mv, argsMap, 2, refsMap, genClassName); //2 for args: double apply(Element e, Node n, double ...args);
-				staticFieldName = "var_" + this.getName();
-				FieldVisitor fv = cgen.getClassWriter().visitField(
-						Opcodes.ACC_PUBLIC + Opcodes.ACC_STATIC, staticFieldName, "D", "D", 0.0);
-				fv.visitEnd();
-				mv.visitInsn(Opcodes.DUP2);
-				mv.visitFieldInsn(Opcodes.PUTSTATIC, cgen.getClassName(),
-						staticFieldName, "D");
-
-				//no need to do this here:
-				//this.compileToStaticField = false; //set to false to indicate that it is already compiled
+			//Common subexpressions, constant folding and simplification, see ExprOptimizer
+			//Local variables of the shared subexpressions start after args, the ones of the
+			//functions emitting their own code (e.g. FComposite) after the shared subexpressions
+			ExprOptimizer opt = new ExprOptimizer(true);
+			ExprOptimizer.Node root = opt.add(this);
+			mv.setNextLocal(opt.allocateLocals(mv.getNextLocal()));
+			if(ExprOptimizer.printReport)
+				System.out.println("JIT compileWithASM: "+this.getName()+" "+opt.report());
 
-				this.isCompiledToStaticFiled = true;
+			if (this.compileToStaticField) {
+				//fieldValue[0] = value, the value is also returned
+				mv.visitVarInsn(Opcodes.ALOAD, 0);
+				mv.visitFieldInsn(Opcodes.GETFIELD, ClassGenerator.getASMName(CompiledFunc.class),
+						"fieldValue", "[D");
+				mv.visitInsn(Opcodes.ICONST_0);
+				opt.emit(mv, root, argsMap, 2, refsMap, genClassName); //2 for args: double apply(Element e, Node n, double ...args);
+				mv.visitInsn(Opcodes.DUP2_X2);
+				mv.visitInsn(Opcodes.DASTORE);
 			} else {
-				this.bytecodeGen(mv, argsMap, 2, refsMap, genClassName); //2 for args: double apply(Element e, Node n, double ...args);
+				opt.emit(mv, root, argsMap, 2, refsMap, genClassName); //2 for args: double apply(Element e, Node n, double ...args);
 			}
 			mv.visitInsn(retType.getOpcode(Opcodes.IRETURN));
 
@@ -343,30 +371,51 @@ public abstract class MathFuncBase implements MathFunc, Cloneable {
 				fos.close();
 			}
 
-			Class<?> c = mcl.defineClassForName(null, bcode);
+			Class<?> c;
+			if(cacheKey != null)
+				c = cache.define(cacheKey, bcode);
+			else
+				c = mcl.defineClassForName(null, bcode);
 
-			CompiledFunc func = (CompiledFunc) c.newInstance();
+			return newCompiledFunc(c);
+		} catch (Exception e) {
+			e.printStackTrace();
+			throw new RuntimeException(e.getMessage());
+		}
+	}
 
-			// Set funcRefs field in CompiledFunc
+	/**
+	 * Create an instance of the class generated for this expression
+	 * and set the funcRefs and field values in CompiledFunc
+	 */
+	protected CompiledFunc newCompiledFunc(Class<?> c) {
+		try {
+			CompiledFunc func = (CompiledFunc) c.getDeclaredConstructor().newInstance();
 			List<MathFunc> list = new ArrayList<MathFunc>();
 			BytecodeUtils.postOrder(this, list);
 			func.setFuncRefs(list.toArray(new MathFunc[0]));
-
+			func.setFieldRefs(BytecodeUtils.getFieldRefs(list));
+			if (this.compileToStaticField) {
+				// The functions compiled after this instance read its value
+				this.fieldValue = new double[1];
+				func.setFieldValue(this.fieldValue);
+				this.isCompiledToStaticFiled = true;
+			}
 			return func;
-		} catch (Exception e) {
-			e.printStackTrace();
+		} catch (ReflectiveOperationException e) {
 			throw new RuntimeException(e.getMessage());
 		}
 	}
 
-	// Indicate whether the result of the expression is needed to be assigned to a static field
+	// Indicate whether the result of the expression is needed to be assigned to a field
 	protected boolean compileToStaticField = false;
 	// This flag is automatically set to false when 'compileToStaticField' is set to true and
 	// it is set to true after the first time of compilation so the expressions that contain this
-	// expression will refer the static field thereafter
+	// expression will refer the field thereafter
 	protected boolean isCompiledToStaticFiled = false;
 	protected String genClassName;
-	protected String staticFieldName;
+	// The field of the last compiled instance, shared with the instances compiled after it
+	protected double[] fieldValue;
 
 	@Override
 	public void compileToStaticField(boolean flag) {
@@ -374,6 +423,35 @@ public abstract class MathFuncBase implements MathFunc, Cloneable {
 		this.isCompiledToStaticFiled = false;
 	}
 
+	/**
+	 * Return true if the compiled code of the expressions containing this expression
+	 * reads the value of this expression from a field instead of evaluating it
+	 */
+	public boolean isReadFromStaticField() {
+		return this.compileToStaticField && this.isCompiledToStaticFiled;
+	}
+
+	/**
+	 * The array holding the value of this expression, written by the last
+	 * compiled instance of this expression
+	 */
+	public double[] getFieldValue() {
+		return this.fieldValue;
+	}
+
+	/**
+	 * Generate the code reading the value of this expression from the field values
+	 * of the compiled function, see <tt>CompiledFunc.setFieldRefs()</tt>
+	 */
+	protected void loadFieldValue(MethodVisitor mv, Map<MathFunc, Integer> funcRefsMap) {
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitFieldInsn(Opcodes.GETFIELD, ClassGenerator.getASMName(CompiledFunc.class), "fieldRefs", "[[D");
+		mv.visitLdcInsn(funcRefsMap.get(this));
+		mv.visitInsn(Opcodes.AALOAD);
+		mv.visitInsn(Opcodes.ICONST_0);
+		mv.visitInsn(Opcodes.DALOAD);
+	}
+
 	//////////////Operator overloading support through Java-OO//////////////////
 
 	public MathFunc valueOf(int v) {
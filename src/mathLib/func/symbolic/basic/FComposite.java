@@ -34,6 +34,7 @@ import mathLib.fem.util.BytecodeConst;
 import mathLib.fem.util.BytecodeTest;
 import mathLib.fem.util.BytecodeUtils;
 import mathLib.fem.util.FuncClassLoader;
+import mathLib.fem.util.FuncMethodVisitor;
 import mathLib.fem.util.FutureyeException;
 import mathLib.fem.util.Utils;
 import mathLib.func.symbolic.MultiVarFunc;
@@ -446,8 +447,11 @@ public class FComposite extends MultiVarFunc {
 		if(this.isOuterVariablesActive) {
 			fOuter.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
 		} else {
-			//TODO find a way to determine aryArgOuterLVTIdx and put the variable in LVT
-			int aryArgOuterLVTIdx = 3;//???
+			//The array of the outer arguments is kept in a local variable after the ones used
+			//by the enclosing code (e.g. the arguments of a kernel or the shared subexpressions)
+			int aryArgOuterLVTIdx = 3;
+			if(mv instanceof FuncMethodVisitor)
+				aryArgOuterLVTIdx = ((FuncMethodVisitor)mv).newLocal(1);
 			
 			//define a local variable 
 			//double[] aryArgOuter = new double[size];
@@ -482,6 +486,8 @@ public class FComposite extends MultiVarFunc {
 			}
 			// Pass the generated double array to fOuter by specifying the start position to 'aryArgOuterLVTIdx'
 			fOuter.bytecodeGen(mv, fOuter.getArgIdxMap(), aryArgOuterLVTIdx, funcRefsMap, clsName);
+			if(mv instanceof FuncMethodVisitor)
+				((FuncMethodVisitor)mv).setNextLocal(aryArgOuterLVTIdx);
 		}
 	}
 
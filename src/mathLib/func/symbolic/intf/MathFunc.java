@@ -340,11 +340,24 @@ public interface MathFunc {
 	 */
 	CompiledFunc compileWithASM(String ...varNames);
 
+	/**
+	 * Compile the function with ASM library. If <tt>useCache</tt> is false,
+	 * a new class is generated instead of reusing the class of an equal
+	 * expression from <tt>FuncClassCache</tt>.
+	 *
+	 * @param useCache
+	 * @param varNames
+	 * @return
+	 */
+	CompiledFunc compileWithASM(boolean useCache, String ...varNames);
+
 	/**
 	 * Set the flag so that the evaluation results of this expression
-	 * is compiled to a static filed of the generated class. Any expression
-	 * that contains this expression will access the static filed instead for
-	 * evaluation.
+	 * is written to a field of the compiled function. Any expression
+	 * that contains this expression and is compiled afterwards reads the
+	 * field of the last compiled instance instead for evaluation.
+	 * The field belongs to the instance, not to the generated class, so
+	 * the class can be shared by equal expressions.
 	 *
 	 * The default flag is false
 	 *
@@ -53,7 +53,7 @@ public class FAbs extends FUniaryOp {
 	public void bytecodeGen(MethodVisitor mv, Map<String, Integer> argsMap,
 			int argsStartPos, Map<MathFunc, Integer> funcRefsMap, String clsName) {
 		if (this.compileToStaticField && this.isCompiledToStaticFiled) {
-			mv.visitFieldInsn(Opcodes.GETSTATIC, this.genClassName, this.staticFieldName, "D");
+			loadFieldValue(mv, funcRefsMap);
 		} else {
 			arg.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
 			mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", "abs", "(D)D", false);
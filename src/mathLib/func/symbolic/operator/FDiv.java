@@ -85,7 +85,7 @@ public class FDiv extends FBinaryOp {
 	public void bytecodeGen(MethodVisitor mv, Map<String, Integer> argsMap,
 			int argsStartPos, Map<MathFunc, Integer> funcRefsMap, String clsName) {
 		if (this.compileToStaticField && this.isCompiledToStaticFiled) {
-			mv.visitFieldInsn(Opcodes.GETSTATIC, this.genClassName, this.staticFieldName, "D");
+			loadFieldValue(mv, funcRefsMap);
 		} else {
 			arg1.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
 			arg2.bytecodeGen(mv, argsMap, argsStartPos, funcRefsMap, clsName);
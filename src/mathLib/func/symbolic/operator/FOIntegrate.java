@@ -8,6 +8,7 @@ import mathLib.func.symbolic.Variable;
 import mathLib.func.symbolic.VariableArray;
 import mathLib.func.symbolic.intf.MathFunc;
 import mathLib.util.CompiledFunc;
+import mathLib.util.CompiledKernel;
 
 /**
  * Function Operator FOIntegrate: 
@@ -577,4 +578,105 @@ public class FOIntegrate{
 		return rlt;
 	}
 
+
+	/**
+	 * Integrate all the functions of <tt>kernel</tt> on the triangle reference element
+	 * with the same rules as <tt>intOnTriangleRefElement(CompiledFunc, ...)</tt>.
+	 * The integrals are added to <tt>out</tt>.
+	 */
+	public static void intOnTriangleRefElement(CompiledKernel kernel,
+			AssembleParam ap, double[] params, int paramsStart,
+			int order, double[] out) {
+		if(order == 2) {
+			params[paramsStart] = 0.333333333333333;
+			params[paramsStart+1] = 0.333333333333333;
+			params[paramsStart+2] = 0.333333333333333;
+			kernel.accumulate(ap, params, 0.5, out);
+		} else if(order == 3) {
+			double w = 0.5*0.333333333333333;
+			params[paramsStart] = 0.5; params[paramsStart+1] = 0.5; params[paramsStart+2] = 0.0;
+			kernel.accumulate(ap, params, w, out);
+			params[paramsStart] = 0.0; params[paramsStart+1] = 0.5; params[paramsStart+2] = 0.5;
+			kernel.accumulate(ap, params, w, out);
+			params[paramsStart] = 0.5; params[paramsStart+1] = 0.0; params[paramsStart+2] = 0.5;
+			kernel.accumulate(ap, params, w, out);
+		} else if(order == 4) {
+			double w123 = 0.5*25.0/48.0;
+			double w4 = 0.5*-27.0/48.0;
+			params[paramsStart] = 0.6; params[paramsStart+1] = 0.2; params[paramsStart+2] = 0.2;
+			kernel.accumulate(ap, params, w123, out);
+			params[paramsStart] = 0.2; params[paramsStart+1] = 0.6; params[paramsStart+2] = 0.2;
+			kernel.accumulate(ap, params, w123, out);
+			params[paramsStart] = 0.2; params[paramsStart+1] = 0.2; params[paramsStart+2] = 0.6;
+			kernel.accumulate(ap, params, w123, out);
+			params[paramsStart] = 0.333333333333333; params[paramsStart+1] = 0.333333333333333; params[paramsStart+2] = 0.333333333333333;
+			kernel.accumulate(ap, params, w4, out);
+		} else if(order == 5) {
+			for(int i=0;i<7;i++) {
+				params[paramsStart]   = triR[i];
+				params[paramsStart+1] = triS[i];
+				params[paramsStart+2] = 1.0-triR[i]-triS[i];
+				kernel.accumulate(ap, params, triW[i], out);
+			}
+		} else {
+			System.out.println("ERROR: intOnTriangleRefElement() Not supported order = "+order);
+		}
+	}
+
+	/**
+	 * Integrate all the functions of <tt>kernel</tt> on the rectangle reference element [-1,1]*[-1,1]
+	 * with the same rules as <tt>intOnRectangleRefElement(CompiledFunc, ...)</tt>.
+	 * The integrals are added to <tt>out</tt>.
+	 */
+	public static void intOnRectangleRefElement(CompiledKernel kernel,
+			AssembleParam ap, double[] params, int paramsStart,
+			int order, double[] out) {
+		double a2 = 0.577350269189626;
+		if(order == 1) {
+			params[paramsStart] = 0.0;
+			params[paramsStart+1] = 0.0;
+			kernel.accumulate(ap, params, 4.0, out);
+		} else if(order == 2) {
+			for(int i=0;i<4;i++) {
+				params[paramsStart] = (i&1)==0 ? a2 : -a2;
+				params[paramsStart+1] = i<2 ? a2 : -a2;
+				kernel.accumulate(ap, params, 1.0, out);
+			}
+		} else if(order == 5) {
+			for(int i=0;i<order;i++) {
+				for(int j=0;j<order;j++) {
+					params[paramsStart] = a5[i];
+					params[paramsStart+1] = a5[j];
+					kernel.accumulate(ap, params, h5[i]*h5[j], out);
+				}
+			}
+		} else {
+			System.out.println("ERROR: intOnRectangleRefElement() Not supported order = "+order);
+		}
+	}
+
+	/**
+	 * Integrate all the functions of <tt>kernel</tt> on the 1D reference element [-1,1]
+	 * with Gauss rules. The integrals are added to <tt>out</tt>.
+	 */
+	public static void intOnLinearRefElement(CompiledKernel kernel,
+			AssembleParam ap, double[] params, int paramsStart,
+			int order, double[] out) {
+		double[] a, h;
+		switch(order) {
+		case 1: a = new double[]{0.0}; h = new double[]{2.0}; break;
+		case 2: a = a2; h = h2; break;
+		case 3: a = a3; h = h3; break;
+		case 4: a = a4; h = h4; break;
+		case 5: a = a5; h = h5; break;
+		default:
+			System.out.println("ERROR: intOnLinearRefElement() Not supported order = "+order);
+			return;
+		}
+		for(int i=0;i<order;i++) {
+			params[paramsStart] = a[i];
+			kernel.accumulate(ap, params, h[i], out);
+		}
+	}
+
 }
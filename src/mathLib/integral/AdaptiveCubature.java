@@ -0,0 +1,348 @@
+package mathLib.integral;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import mathLib.integral.intf.IntegralFunctionND;
+
+/**
+ * Globally adaptive integration of a function of <tt>n >= 2</tt> variables on the box
+ * <tt>[a_1,b_1] x ... x [a_n,b_n]</tt> by the Genz-Malik rule.
+ * <p>
+ * Each box is integrated by the degree 7 Genz-Malik rule, which uses
+ * <tt>2^n + 2n^2 + 2n + 1</tt> points (17 in 2D, 33 in 3D), and its error is estimated
+ * from the embedded degree 5 rule. The boxes are kept in a priority queue ordered by
+ * their error; the worst one is bisected along the axis with the largest fourth
+ * difference of the function, until the total error is below
+ * <tt>max(absErrorBound, relErrorBound*|I|)</tt> or the budget of function evaluations
+ * is used.
+ * <p>
+ * In parallel mode (<tt>setParallel()</tt>) several of the worst boxes are bisected at
+ * each step and their halves are integrated on <tt>nThreads</tt> threads, so the function
+ * must be thread-safe.
+ *
+ */
+public class AdaptiveCubature {
+
+	// Genz-Malik nodes on [-1,1]
+	private static final double LAMBDA2 = Math.sqrt(9.0 / 70.0);
+	private static final double LAMBDA4 = Math.sqrt(9.0 / 10.0);
+	private static final double LAMBDA5 = Math.sqrt(9.0 / 19.0);
+	// (LAMBDA2/LAMBDA4)^2, used by the fourth differences
+	private static final double RATIO = 1.0 / 7.0;
+
+	private static final double EPS = Math.ulp(1.0);
+
+	IntegralFunctionND func;
+	final int n;
+	double[] a, b;
+
+	double relErrorBound = 1e-10;
+	double absErrorBound = 0.0;
+	int maxEvaluations = 2000000;
+
+	protected int nThreads = 1;
+	protected ExecutorService executor = null;
+
+	double result, error;
+	int numEvaluations, numRegions;
+	boolean converged;
+
+	// weights of the degree 7 and of the embedded degree 5 rules
+	private final double w1, w2, w3, w4, w5;
+	private final double we1, we2, we3, we4;
+
+	/**
+	 * @param func
+	 * @param a lower limits
+	 * @param b upper limits
+	 */
+	public AdaptiveCubature(IntegralFunctionND func, double[] a, double[] b) {
+		if(a.length != b.length)
+			throw new IllegalArgumentException("Limits of different dimensions: " + a.length + ", " + b.length);
+		if(a.length < 2)
+			throw new IllegalArgumentException("Dimension must be at least 2, use AdaptiveIntegral1D in 1D");
+		this.func = func;
+		this.n = a.length;
+		this.a = a.clone();
+		this.b = b.clone();
+
+		w1 = (12824.0 - 9120.0 * n + 400.0 * n * n) / 19683.0;
+		w2 = 980.0 / 6561.0;
+		w3 = (1820.0 - 400.0 * n) / 19683.0;
+		w4 = 200.0 / 19683.0;
+		w5 = 6859.0 / 19683.0 / (1 << n);
+		we1 = (729.0 - 950.0 * n + 50.0 * n * n) / 729.0;
+		we2 = 245.0 / 486.0;
+		we3 = (265.0 - 100.0 * n) / 1458.0;
+		we4 = 25.0 / 729.0;
+	}
+
+	public void setRelativeErrorBound(double relErrorBound) {
+		this.relErrorBound = relErrorBound;
+	}
+
+	public void setAbsoluteErrorBound(double absErrorBound) {
+		this.absErrorBound = absErrorBound;
+	}
+
+	public void setMaximumNumberOfEvaluations(int maxEvaluations) {
+		this.maxEvaluations = maxEvaluations;
+	}
+
+	/**
+	 * Set the number of threads and the executor used to integrate the boxes. If no executor
+	 * is given, a fixed thread pool is created for each call of <tt>getIntegral()</tt>.
+	 *
+	 * @param nThreads
+	 * @param executor
+	 */
+	public void setParallel(int nThreads, ExecutorService executor) {
+		if(nThreads < 1)
+			throw new IllegalArgumentException("Number of threads must be positive: " + nThreads);
+		this.nThreads = nThreads;
+		this.executor = executor;
+	}
+
+	/**
+	 * Number of function evaluations of the rule in dimension <tt>n</tt>
+	 *
+	 * @param n
+	 * @return
+	 */
+	public static int getNumberOfPoints(int n) {
+		return (1 << n) + 2 * n * n + 2 * n + 1;
+	}
+
+	private static class Region implements Comparable<Region> {
+		final double[] c, h;
+		double result, error;
+		int splitDim;
+
+		Region(double[] c, double[] h) {
+			this.c = c;
+			this.h = h;
+		}
+
+		@Override
+		public int compareTo(Region r) {
+			// largest error first
+			return Double.compare(r.error, error);
+		}
+	}
+
+	/**
+	 * Integrate <tt>f</tt> on the box of center <tt>r.c</tt> and half-widths <tt>r.h</tt>
+	 */
+	private void integrate(Region r) {
+		double[] c = r.c, h = r.h;
+		double[] x = c.clone();
+		double vol = 1.0;
+		for(int i=0; i<n; i++)
+			vol *= 2.0 * h[i];
+
+		double f0 = func.function(x);
+		double sum2 = 0.0, sum3 = 0.0, sum4 = 0.0, sum5 = 0.0;
+		double maxDiff = -1.0;
+		int splitDim = 0;
+		for(int i=0; i<n; i++) {
+			x[i] = c[i] - LAMBDA2 * h[i];
+			double f2 = func.function(x);
+			x[i] = c[i] + LAMBDA2 * h[i];
+			f2 += func.function(x);
+			x[i] = c[i] - LAMBDA4 * h[i];
+			double f3 = func.function(x);
+			x[i] = c[i] + LAMBDA4 * h[i];
+			f3 += func.function(x);
+			x[i] = c[i];
+			sum2 += f2;
+			sum3 += f3;
+			// split along the axis of largest fourth difference, or the widest one for ties
+			double diff = Math.abs(f2 - 2 * f0 - RATIO * (f3 - 2 * f0));
+			if(diff > maxDiff * (1 + 1e-10) || (diff >= maxDiff * (1 - 1e-10) && h[i] > h[splitDim])) {
+				maxDiff = diff;
+				splitDim = i;
+			}
+		}
+		for(int i=0; i<n-1; i++) {
+			for(int j=i+1; j<n; j++) {
+				for(int s=0; s<4; s++) {
+					x[i] = c[i] + ((s & 1) == 0 ? -LAMBDA4 : LAMBDA4) * h[i];
+					x[j] = c[j] + ((s & 2) == 0 ? -LAMBDA4 : LAMBDA4) * h[j];
+					sum4 += func.function(x);
+				}
+				x[i] = c[i];
+				x[j] = c[j];
+			}
+		}
+		for(int mask=0; mask<(1<<n); mask++) {
+			for(int i=0; i<n; i++)
+				x[i] = c[i] + ((mask >> i & 1) == 0 ? -LAMBDA5 : LAMBDA5) * h[i];
+			sum5 += func.function(x);
+		}
+
+		double res7 = vol * (w1 * f0 + w2 * sum2 + w3 * sum3 + w4 * sum4 + w5 * sum5);
+		double res5 = vol * (we1 * f0 + we2 * sum2 + we3 * sum3 + we4 * sum4);
+		r.result = res7;
+		r.error = Math.abs(res7 - res5);
+		r.splitDim = splitDim;
+	}
+
+	public double getIntegral() {
+		int nPoints = getNumberOfPoints(n);
+		numEvaluations = 0;
+		converged = false;
+
+		ExecutorService exec = executor;
+		if(nThreads > 1 && exec == null)
+			exec = Executors.newFixedThreadPool(nThreads);
+		// in parallel mode several boxes are bisected at each step
+		int maxBatch = nThreads > 1 ? 4 * nThreads : 1;
+
+		PriorityQueue<Region> queue = new PriorityQueue<Region>();
+		try {
+			double[] c = new double[n], h = new double[n];
+			for(int i=0; i<n; i++) {
+				c[i] = 0.5 * (a[i] + b[i]);
+				h[i] = 0.5 * (b[i] - a[i]);
+			}
+			Region first = new Region(c, h);
+			integrate(first);
+			numEvaluations += nPoints;
+			queue.add(first);
+			double sum = first.result, errSum = first.error;
+
+			List<Region> parents = new ArrayList<Region>();
+			Region[] children = new Region[2 * maxBatch];
+			int step = 0;
+			while(true) {
+				double tol = Math.max(absErrorBound, relErrorBound * Math.abs(sum));
+				if(errSum <= tol || errSum <= 100 * EPS * Math.abs(sum)) {
+					converged = true;
+					break;
+				}
+				// bisect the worst boxes until the error of the other ones is below the tolerance
+				parents.clear();
+				double remaining = errSum;
+				while(parents.size() < maxBatch && !queue.isEmpty()
+						&& numEvaluations + 2 * nPoints * (parents.size() + 1) <= maxEvaluations) {
+					Region p = queue.peek();
+					double hs = 0.5 * p.h[p.splitDim];
+					double cs = p.c[p.splitDim];
+					// stop when the worst box can not be split any more
+					if(!(cs - hs < cs && cs + hs > cs))
+						break;
+					parents.add(queue.poll());
+					remaining -= p.error;
+					if(remaining <= tol)
+						break;
+				}
+				if(parents.isEmpty())
+					break;
+
+				int nc = 0;
+				for(Region p : parents) {
+					int d = p.splitDim;
+					double[] hh = p.h.clone();
+					hh[d] *= 0.5;
+					double[] cl = p.c.clone(), cr = p.c.clone();
+					cl[d] -= hh[d];
+					cr[d] += hh[d];
+					children[nc++] = new Region(cl, hh);
+					children[nc++] = new Region(cr, hh.clone());
+				}
+				integrateAll(children, nc, exec);
+				numEvaluations += nc * nPoints;
+				for(Region p : parents) {
+					sum -= p.result;
+					errSum -= p.error;
+				}
+				for(int k=0; k<nc; k++) {
+					queue.add(children[k]);
+					sum += children[k].result;
+					errSum += children[k].error;
+				}
+
+				// the sums are recomputed from time to time to limit the accumulated rounding errors
+				if(++step % 64 == 0) {
+					sum = 0.0;
+					errSum = 0.0;
+					for(Region r : queue) {
+						sum += r.result;
+						errSum += r.error;
+					}
+				}
+			}
+		} finally {
+			if(exec != null && executor == null)
+				exec.shutdown();
+		}
+
+		numRegions = queue.size();
+		result = 0.0;
+		error = 0.0;
+		for(Region r : queue) {
+			result += r.result;
+			error += r.error;
+		}
+		return result;
+	}
+
+	private void integrateAll(final Region[] regions, final int count, ExecutorService exec) {
+		int nt = Math.min(nThreads, count);
+		if(nt <= 1 || exec == null) {
+			for(int k=0; k<count; k++)
+				integrate(regions[k]);
+			return;
+		}
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for(int t=0; t<nt; t++) {
+				final int begin = count * t / nt;
+				final int end = count * (t + 1) / nt;
+				futures.add(exec.submit(() -> {
+					for(int k=begin; k<end; k++)
+						integrate(regions[k]);
+				}));
+			}
+			for(Future<?> f : futures)
+				f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Parallel cubature interrupted");
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Parallel cubature failed: " + e.getCause(), e.getCause());
+		}
+	}
+
+	/**
+	 * Estimate of the absolute error of the last call of <tt>getIntegral()</tt>
+	 *
+	 * @return
+	 */
+	public double getErrorEstimate() {
+		return error;
+	}
+
+	public int getNumberOfEvaluations() {
+		return numEvaluations;
+	}
+
+	public int getNumberOfRegions() {
+		return numRegions;
+	}
+
+	/**
+	 * Whether the requested accuracy was reached within the budget of function evaluations
+	 *
+	 * @return
+	 */
+	public boolean isConverged() {
+		return converged;
+	}
+}
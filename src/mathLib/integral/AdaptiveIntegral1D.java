@@ -0,0 +1,244 @@
+package mathLib.integral;
+
+import java.util.PriorityQueue;
+
+import flanagan.integration.IntegralFunction;
+import mathLib.integral.intf.IntegralFunction1DBatch;
+import mathLib.integral.methods.GaussKronrodQuadrature;
+
+/**
+ * Globally adaptive integration of a function on <tt>[x_start, x_end]</tt> by the
+ * 10-point Gauss / 21-point Kronrod pair (as QUADPACK qag).
+ * <p>
+ * Each subinterval is integrated by the Kronrod rule and its error is estimated from the
+ * difference with the embedded Gauss rule. The subintervals are kept in a priority queue
+ * ordered by their error and only the worst one is bisected, until the total error is
+ * below <tt>max(absErrorBound, relErrorBound*|I|)</tt> or the budget of function
+ * evaluations is used. Nothing is evaluated twice: a bisection costs 42 evaluations.
+ * <p>
+ * The 21 nodes of a subinterval can be passed to the function in one call by an
+ * <tt>IntegralFunction1DBatch</tt>.
+ *
+ */
+public class AdaptiveIntegral1D {
+
+	public static final int NODES_PER_INTERVAL = 21;
+
+	private static final double EPS = Math.ulp(1.0);
+
+	IntegralFunction func;
+	IntegralFunction1DBatch batchFunc;
+	double x_start, x_end;
+
+	double relErrorBound = 1e-10;
+	double absErrorBound = 0.0;
+	int maxEvaluations = 100000;
+	int numInitialIntervals = 1;
+
+	double result, error;
+	int numEvaluations, numIntervals, numBisections;
+	boolean converged;
+
+	// nodes and values of one subinterval, reused for all of them
+	private final double[] x = new double[NODES_PER_INTERVAL];
+	private final double[] fx = new double[NODES_PER_INTERVAL];
+
+	public AdaptiveIntegral1D(IntegralFunction func, double x_start, double x_end) {
+		this.func = func;
+		this.x_start = x_start;
+		this.x_end = x_end;
+	}
+
+	public AdaptiveIntegral1D(IntegralFunction1DBatch batchFunc, double x_start, double x_end) {
+		this.batchFunc = batchFunc;
+		this.x_start = x_start;
+		this.x_end = x_end;
+	}
+
+	public void setRelativeErrorBound(double relErrorBound) {
+		this.relErrorBound = relErrorBound;
+	}
+
+	public void setAbsoluteErrorBound(double absErrorBound) {
+		this.absErrorBound = absErrorBound;
+	}
+
+	/**
+	 * Maximum number of function evaluations, at least one subinterval (21 evaluations) is always integrated
+	 *
+	 * @param maxEvaluations
+	 */
+	public void setMaximumNumberOfEvaluations(int maxEvaluations) {
+		this.maxEvaluations = maxEvaluations;
+	}
+
+	/**
+	 * Number of equal subintervals integrated before any bisection
+	 *
+	 * @param n
+	 */
+	public void setNumInitialIntervals(int n) {
+		this.numInitialIntervals = Math.max(1, n);
+	}
+
+	private static class Panel implements Comparable<Panel> {
+		final double a, b, result, error, resabs;
+
+		Panel(double a, double b, double result, double error, double resabs) {
+			this.a = a;
+			this.b = b;
+			this.result = result;
+			this.error = error;
+			this.resabs = resabs;
+		}
+
+		@Override
+		public int compareTo(Panel p) {
+			// largest error first
+			return Double.compare(p.error, error);
+		}
+	}
+
+	private Panel integrate(double a, double b) {
+		double[] xgk = GaussKronrodQuadrature.XGK21;
+		double[] wgk = GaussKronrodQuadrature.WGK21;
+		double[] wg = GaussKronrodQuadrature.WG10;
+		double c = 0.5 * (a + b);
+		double h = 0.5 * (b - a);
+
+		// center first, then the pairs c-h*xgk[j], c+h*xgk[j]
+		x[0] = c;
+		for(int j=0; j<10; j++) {
+			x[2 * j + 1] = c - h * xgk[j];
+			x[2 * j + 2] = c + h * xgk[j];
+		}
+		if(batchFunc != null) {
+			batchFunc.function(x, fx);
+		} else {
+			for(int i=0; i<NODES_PER_INTERVAL; i++)
+				fx[i] = func.function(x[i]);
+		}
+		numEvaluations += NODES_PER_INTERVAL;
+
+		double fc = fx[0];
+		double resk = wgk[10] * fc;
+		double resg = 0.0;
+		double resabs = Math.abs(resk);
+		for(int j=0; j<10; j++) {
+			double f1 = fx[2 * j + 1], f2 = fx[2 * j + 2];
+			resk += wgk[j] * (f1 + f2);
+			resabs += wgk[j] * (Math.abs(f1) + Math.abs(f2));
+			if(j % 2 == 1)
+				resg += wg[j / 2] * (f1 + f2);
+		}
+		double mean = 0.5 * resk;
+		double resasc = wgk[10] * Math.abs(fc - mean);
+		for(int j=0; j<10; j++)
+			resasc += wgk[j] * (Math.abs(fx[2 * j + 1] - mean) + Math.abs(fx[2 * j + 2] - mean));
+
+		h = Math.abs(h);
+		double err = Math.abs((resk - resg) * h);
+		resasc *= h;
+		resabs *= h;
+		if(resasc != 0.0 && err != 0.0)
+			err = resasc * Math.min(1.0, Math.pow(200.0 * err / resasc, 1.5));
+		if(resabs > Double.MIN_NORMAL / (50 * EPS))
+			err = Math.max(50 * EPS * resabs, err);
+		return new Panel(a, b, resk * (0.5 * (b - a)), err, resabs);
+	}
+
+	public double getIntegral() {
+		numEvaluations = 0;
+		numBisections = 0;
+		converged = false;
+
+		PriorityQueue<Panel> queue = new PriorityQueue<Panel>();
+		double sum = 0.0, errSum = 0.0, absSum = 0.0;
+		int n = numInitialIntervals;
+		for(int i=0; i<n; i++) {
+			double a = x_start + (x_end - x_start) * i / n;
+			double b = (i == n - 1) ? x_end : x_start + (x_end - x_start) * (i + 1) / n;
+			Panel p = integrate(a, b);
+			queue.add(p);
+			sum += p.result;
+			errSum += p.error;
+			absSum += p.resabs;
+		}
+
+		while(true) {
+			double tol = Math.max(absErrorBound, relErrorBound * Math.abs(sum));
+			if(errSum <= tol || errSum <= 100 * EPS * absSum) {
+				converged = true;
+				break;
+			}
+			if(numEvaluations + 2 * NODES_PER_INTERVAL > maxEvaluations)
+				break;
+			Panel p = queue.peek();
+			double m = 0.5 * (p.a + p.b);
+			// stop when the worst subinterval can not be split any more
+			if(!(m > Math.min(p.a, p.b) && m < Math.max(p.a, p.b)))
+				break;
+			queue.poll();
+			Panel left = integrate(p.a, m);
+			Panel right = integrate(m, p.b);
+			queue.add(left);
+			queue.add(right);
+			numBisections++;
+
+			// the sums are recomputed from time to time to limit the accumulated rounding errors
+			if(numBisections % 64 == 0) {
+				sum = 0.0;
+				errSum = 0.0;
+				absSum = 0.0;
+				for(Panel q : queue) {
+					sum += q.result;
+					errSum += q.error;
+					absSum += q.resabs;
+				}
+			} else {
+				sum += left.result + right.result - p.result;
+				errSum += left.error + right.error - p.error;
+				absSum += left.resabs + right.resabs - p.resabs;
+			}
+		}
+
+		numIntervals = queue.size();
+		result = 0.0;
+		error = 0.0;
+		for(Panel q : queue) {
+			result += q.result;
+			error += q.error;
+		}
+		return result;
+	}
+
+	/**
+	 * Estimate of the absolute error of the last call of <tt>getIntegral()</tt>
+	 *
+	 * @return
+	 */
+	public double getErrorEstimate() {
+		return error;
+	}
+
+	public int getNumberOfEvaluations() {
+		return numEvaluations;
+	}
+
+	public int getNumberOfIntervals() {
+		return numIntervals;
+	}
+
+	public int getNumberOfBisections() {
+		return numBisections;
+	}
+
+	/**
+	 * Whether the requested accuracy was reached within the budget of function evaluations
+	 *
+	 * @return
+	 */
+	public boolean isConverged() {
+		return converged;
+	}
+}
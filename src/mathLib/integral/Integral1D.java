@@ -5,30 +5,34 @@ package mathLib.integral;
  * integration of a function (called integral function)
  * with adaptive accuracy.
  *
- * The default error bound is 1% of the convergence, but
- * can be set in the constructor as well.
+ * The integral is computed by AdaptiveIntegral1D: the subinterval
+ * with the largest Gauss-Kronrod error estimate is bisected until
+ * the relative error bound is reached. The budget of function
+ * evaluations allows 20 bisections per iteration of the maximum
+ * number of iterations.
  */
 
 import flanagan.integration.IntegralFunction;
-import flanagan.integration.Integration;
-import mathLib.util.MathUtils;
 
 public class Integral1D {
 
-	int numIntervals = 10 ; // the entire integral region is divided into this number of subintervals
-	int numPoints = 5 ; // each sub interval is divided into this number of pieces
+	int numIntervals = 10 ; // the entire integral region is first divided into this number of subintervals
 	double x_start, x_end ;
 	double errorBound = 1e-12 ; // accuracy to the number of digits
 	IntegralFunction func ;
-	int numIterations = 0 ;
+	int numIterations = 0 ; // number of bisections of the last integration
 	int maxNumIterations = 50 ; // maximum number of iterations
+	double errorEstimate = 0 ;
 
 	public void setNumIntervals(int M){
 		numIntervals = M ;
 	}
 
+	/**
+	 * @deprecated each subinterval is integrated by the 21-point Kronrod rule, the number of points is ignored
+	 */
+	@Deprecated
 	public void setNumPoints(int N){
-		numPoints = N ;
 	}
 
 	public void setErrorBound(double error){
@@ -50,40 +54,18 @@ public class Integral1D {
 	}
 
 	public double getIntegral(){
-		double result_final = 0 ;
-		double result_temp = getFirstGuess() ;
-		double[] X ;
-		while(Math.abs(result_final-result_temp) >= Math.abs(errorBound*result_final) && numIntervals < 10*maxNumIterations+1){
-			result_final = result_temp ;
-			result_temp = 0 ;
-			X = MathUtils.linspace(x_start, x_end, numIntervals+1) ;
-			for(int i=0; i<numIntervals; i++){
-				result_temp += getInvervalIntegral(X[i], X[i+1]) ;
-			}
-			numIntervals += 10 ;
-			numIterations++ ;
-		}
-
-		return result_final ;
-	}
-
-	private double getFirstGuess(){
-		double firstGuess = 0 ;
-		int numIntervalsCoarse = 5 ;
-		double[] X = MathUtils.linspace(x_start, x_end, numIntervalsCoarse+1) ;
-		for(int i=0; i<numIntervalsCoarse; i++){
-			firstGuess += getInvervalIntegral(X[i], X[i+1]) ;
-		}
-		return firstGuess ;
+		AdaptiveIntegral1D integral = new AdaptiveIntegral1D(func, x_start, x_end) ;
+		integral.setRelativeErrorBound(errorBound);
+		integral.setNumInitialIntervals(numIntervals);
+		integral.setMaximumNumberOfEvaluations(AdaptiveIntegral1D.NODES_PER_INTERVAL*(numIntervals + 20*maxNumIterations));
+		double result = integral.getIntegral() ;
+		numIterations = integral.getNumberOfBisections() ;
+		errorEstimate = integral.getErrorEstimate() ;
+		return result ;
 	}
 
-	private double getInvervalIntegral(double x_start, double x_end){
-
-		Integration intervalIntegral = new Integration() ;
-		intervalIntegral.setIntegrationFunction(func);
-		intervalIntegral.setLimits(x_start, x_end);
-
-		return intervalIntegral.gaussQuad(numPoints) ;
+	public double getErrorEstimate(){
+		return errorEstimate ;
 	}
 
 	public int getNumberOfIterations(){
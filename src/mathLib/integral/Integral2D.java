@@ -1,18 +1,62 @@
 package mathLib.integral;
 
+import java.util.concurrent.ExecutorService;
+
 import mathLib.integral.intf.IntegralDomain2D;
-import mathLib.integral.intf.IntegralFunction1D;
 import mathLib.integral.intf.IntegralFunction2D;
 
+/**
+ * Integral of a function of two variables on a domain
+ * <tt>var1Min <= var1 <= var1Max, var2Min(var1) <= var2 <= var2Max(var1)</tt>.
+ *
+ * The inner variable is mapped to <tt>[0,1]</tt> and the integral is
+ * computed by AdaptiveCubature on <tt>[var1Min,var1Max] x [0,1]</tt>,
+ * instead of nesting two 1D adaptive integrals.
+ */
 public class Integral2D {
 	
 	IntegralFunction2D func2d ;
 	IntegralDomain2D domain ;
+
+	double errorBound = 1e-10 ; // relative error
+	double absErrorBound = 0 ;
+	int maxEvaluations = 2000000 ;
+	int nThreads = 1 ;
+	ExecutorService executor = null ;
+	double errorEstimate = 0 ;
+	int numEvaluations = 0 ;
 	
 	public Integral2D(IntegralFunction2D func, IntegralDomain2D domain) {
 		this.func2d = func ;
 		this.domain = domain ;
 	}
+
+	/**
+	 * Integral on the rectangle <tt>[var1Min,var1Max] x [var2Min,var2Max]</tt>
+	 */
+	public Integral2D(IntegralFunction2D func, double var1Min, double var1Max, double var2Min, double var2Max) {
+		this(func, new IntegralDomain2D() {
+			@Override
+			public double getVar1Min() {
+				return var1Min ;
+			}
+
+			@Override
+			public double getVar1Max() {
+				return var1Max ;
+			}
+
+			@Override
+			public double getVar2Min(double var1) {
+				return var2Min ;
+			}
+
+			@Override
+			public double getVar2Max(double var1) {
+				return var2Max ;
+			}
+		}) ;
+	}
 	
 	public void setFunction(IntegralFunction2D func) {
 		this.func2d = func ;
@@ -21,26 +65,55 @@ public class Integral2D {
 	public void setDomain(IntegralDomain2D domain) {
 		this.domain = domain ;
 	}
+
+	public void setErrorBound(double error) {
+		errorBound = error ;
+	}
+
+	public void setAbsoluteErrorBound(double error) {
+		absErrorBound = error ;
+	}
+
+	public void setMaximumNumberOfEvaluations(int maxEvaluations) {
+		this.maxEvaluations = maxEvaluations ;
+	}
+
+	/**
+	 * Integrate on <tt>nThreads</tt> threads, the function and the domain must be thread-safe
+	 *
+	 * @param nThreads
+	 * @param executor can be null
+	 */
+	public void setParallel(int nThreads, ExecutorService executor) {
+		this.nThreads = nThreads ;
+		this.executor = executor ;
+	}
 	
 	public double getIntegral() {
-		IntegralFunction1D func1d = new IntegralFunction1D() {
-			@Override
-			public double function(double var1) {
+		AdaptiveCubature cubature = new AdaptiveCubature(
+				x -> {
+					double lo = domain.getVar2Min(x[0]) ;
+					double hi = domain.getVar2Max(x[0]) ;
+					return func2d.function(x[0], lo + (hi - lo) * x[1]) * (hi - lo) ;
+				},
+				new double[] {domain.getVar1Min(), 0},
+				new double[] {domain.getVar1Max(), 1}) ;
+		cubature.setRelativeErrorBound(errorBound);
+		cubature.setAbsoluteErrorBound(absErrorBound);
+		cubature.setMaximumNumberOfEvaluations(maxEvaluations);
+		cubature.setParallel(nThreads, executor);
+		double result = cubature.getIntegral() ;
+		errorEstimate = cubature.getErrorEstimate() ;
+		numEvaluations = cubature.getNumberOfEvaluations() ;
+		return result ;
+	}
 
-				IntegralFunction1D func = new IntegralFunction1D() {
-					@Override
-					public double function(double var2) {
-						return func2d.function(var1, var2);
-					}
-				};
+	public double getErrorEstimate() {
+		return errorEstimate ;
+	}
 
-				Integral1D integral = new Integral1D(func, domain.getVar2Min(var1), domain.getVar2Max(var1)) ;
-				return integral.getIntegral();
-			}
-		};
-		
-		Integral1D integral = new Integral1D(func1d, domain.getVar1Min(), domain.getVar1Max()) ;
-		return integral.getIntegral() ;
+	public int getNumberOfEvaluations() {
+		return numEvaluations ;
 	}
 	
 }
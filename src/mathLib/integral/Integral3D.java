@@ -1,56 +1,134 @@
 package mathLib.integral;
 
+import java.util.concurrent.ExecutorService;
+
 import mathLib.integral.intf.IntegralDomain3D;
-import mathLib.integral.intf.IntegralFunction1D;
 import mathLib.integral.intf.IntegralFunction3D;
 
+/**
+ * Integral of a function of three variables on a domain
+ * <tt>var1Min <= var1 <= var1Max, var2Min(var1) <= var2 <= var2Max(var1),
+ * var3Min(var1,var2) <= var3 <= var3Max(var1,var2)</tt>.
+ *
+ * The two inner variables are mapped to <tt>[0,1]</tt> and the integral is
+ * computed by AdaptiveCubature on <tt>[var1Min,var1Max] x [0,1] x [0,1]</tt>,
+ * instead of nesting three 1D adaptive integrals.
+ */
 public class Integral3D {
-
+	
 	IntegralFunction3D func3d;
 	IntegralDomain3D domain;
 
+	double errorBound = 1e-10; // relative error
+	double absErrorBound = 0;
+	int maxEvaluations = 2000000;
+	int nThreads = 1;
+	ExecutorService executor = null;
+	double errorEstimate = 0;
+	int numEvaluations = 0;
+	
 	public Integral3D(IntegralFunction3D func, IntegralDomain3D domain) {
 		this.func3d = func;
 		this.domain = domain;
 	}
 
+	/**
+	 * Integral on the box <tt>[var1Min,var1Max] x [var2Min,var2Max] x [var3Min,var3Max]</tt>
+	 */
+	public Integral3D(IntegralFunction3D func, double var1Min, double var1Max, double var2Min, double var2Max,
+			double var3Min, double var3Max) {
+		this(func, new IntegralDomain3D() {
+			@Override
+			public double getVar1Min() {
+				return var1Min;
+			}
+
+			@Override
+			public double getVar1Max() {
+				return var1Max;
+			}
+
+			@Override
+			public double getVar2Min(double var1) {
+				return var2Min;
+			}
+
+			@Override
+			public double getVar2Max(double var1) {
+				return var2Max;
+			}
+
+			@Override
+			public double getVar3Min(double var1, double var2) {
+				return var3Min;
+			}
+
+			@Override
+			public double getVar3Max(double var1, double var2) {
+				return var3Max;
+			}
+		});
+	}
+	
 	public void setFunction(IntegralFunction3D func) {
 		this.func3d = func;
 	}
-
+	
 	public void setDomain(IntegralDomain3D domain) {
 		this.domain = domain;
 	}
 
+	public void setErrorBound(double error) {
+		errorBound = error;
+	}
+
+	public void setAbsoluteErrorBound(double error) {
+		absErrorBound = error;
+	}
+
+	public void setMaximumNumberOfEvaluations(int maxEvaluations) {
+		this.maxEvaluations = maxEvaluations;
+	}
+
+	/**
+	 * Integrate on <tt>nThreads</tt> threads, the function and the domain must be thread-safe
+	 *
+	 * @param nThreads
+	 * @param executor can be null
+	 */
+	public void setParallel(int nThreads, ExecutorService executor) {
+		this.nThreads = nThreads;
+		this.executor = executor;
+	}
+	
 	public double getIntegral() {
-		IntegralFunction1D func1d = new IntegralFunction1D() {
-			@Override
-			public double function(double var1) {
-
-				IntegralFunction1D func2d = new IntegralFunction1D() {
-					@Override
-					public double function(double var2) {
-						IntegralFunction1D func = new IntegralFunction1D() {
-
-							@Override
-							public double function(double var3) {
-								return func3d.function(var1, var2, var3);
-							}
-						};
-						Integral1D integral3 = new Integral1D(func, domain.getVar3Min(var1, var2),
-								domain.getVar3Max(var1, var2));
-						return integral3.getIntegral();
-					}
-				};
-				// step 2: define the adaptive integral
-				Integral1D integral2 = new Integral1D(func2d, domain.getVar2Min(var1),
-						domain.getVar2Max(var1));
-				return integral2.getIntegral();
-			}
-		};
+		AdaptiveCubature cubature = new AdaptiveCubature(
+				x -> {
+					double lo2 = domain.getVar2Min(x[0]);
+					double hi2 = domain.getVar2Max(x[0]);
+					double var2 = lo2 + (hi2 - lo2) * x[1];
+					double lo3 = domain.getVar3Min(x[0], var2);
+					double hi3 = domain.getVar3Max(x[0], var2);
+					return func3d.function(x[0], var2, lo3 + (hi3 - lo3) * x[2]) * (hi2 - lo2) * (hi3 - lo3);
+				},
+				new double[] {domain.getVar1Min(), 0, 0},
+				new double[] {domain.getVar1Max(), 1, 1});
+		cubature.setRelativeErrorBound(errorBound);
+		cubature.setAbsoluteErrorBound(absErrorBound);
+		cubature.setMaximumNumberOfEvaluations(maxEvaluations);
+		cubature.setParallel(nThreads, executor);
+		double result = cubature.getIntegral();
+		errorEstimate = cubature.getErrorEstimate();
+		numEvaluations = cubature.getNumberOfEvaluations();
+		return result;
+	}
 
-		Integral1D integral = new Integral1D(func1d, domain.getVar1Min(), domain.getVar1Max());
-		return integral.getIntegral();
+	public double getErrorEstimate() {
+		return errorEstimate;
 	}
 
+	public int getNumberOfEvaluations() {
+		return numEvaluations;
+	}
+	
 }
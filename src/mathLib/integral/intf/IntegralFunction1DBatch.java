@@ -0,0 +1,8 @@
+package mathLib.integral.intf;
+
+/**
+ * Integral function evaluated at several points per call: <tt>fx[i] = f(x[i])</tt>
+ */
+public interface IntegralFunction1DBatch {
+	void function(double[] x, double[] fx);
+}
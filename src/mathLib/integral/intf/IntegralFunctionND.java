@@ -0,0 +1,5 @@
+package mathLib.integral.intf;
+
+public interface IntegralFunctionND {
+	double function(double[] x) ;
+}
@@ -24,6 +24,35 @@ public class GaussKronrodQuadrature {
 			0.101930119817240435037, 0.083276741576704748725, 0.0626720483341090635695, 0.040601429800386941331,
 			0.0176140071391521183119 };
 
+	/**
+	 * Abscissae of the 21-point Kronrod rule on [-1,1] (QUADPACK qk21): the positive nodes in
+	 * decreasing order and 0. <tt>XGK21[1], XGK21[3], ..., XGK21[9]</tt> are the nodes of the
+	 * embedded 10-point Gauss rule.
+	 */
+	public static final double[] XGK21 = { 0.995657163025808080735527280689003,
+			0.973906528517171720077964012084452, 0.930157491355708226001207180059508,
+			0.865063366688984510732096688423493, 0.780817726586416897063717578345042,
+			0.679409568299024406234327365114874, 0.562757134668604683339000099272694,
+			0.433395394129247190799265943165784, 0.294392862701460198131126603103866,
+			0.148874338981631210884826001129720, 0.000000000000000000000000000000000 };
+
+	/**
+	 * Weights of the 21-point Kronrod rule for the nodes <tt>XGK21</tt>
+	 */
+	public static final double[] WGK21 = { 0.011694638867371874278064396062192,
+			0.032558162307964727478818972459390, 0.054755896574351996031381300244580,
+			0.075039674810919952767043140916190, 0.093125454583697605535065465083366,
+			0.109387158802297641899210590325805, 0.123491976262065851077208964530151,
+			0.134709217311473325928054001771707, 0.142775938577060080797094273138717,
+			0.147739104901338491374841515972068, 0.149445554002916905664936468389821 };
+
+	/**
+	 * Weights of the embedded 10-point Gauss rule for the nodes <tt>XGK21[1], XGK21[3], ..., XGK21[9]</tt>
+	 */
+	public static final double[] WG10 = { 0.066671344308688137593568809893332,
+			0.149451349150580593145776339657697, 0.219086362515982043995534934228163,
+			0.269266719309996355091226921569469, 0.295524224714752870173892994651338 };
+
 	IntegralFunction func;
 	double start, end;
 
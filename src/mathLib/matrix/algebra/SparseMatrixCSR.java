@@ -0,0 +1,654 @@
+package mathLib.matrix.algebra;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+import mathLib.fem.util.FutureyeException;
+import mathLib.fem.util.SequenceFEM;
+import mathLib.matrix.algebra.intf.Matrix;
+import mathLib.matrix.algebra.intf.MatrixEntry;
+import mathLib.matrix.algebra.intf.SparseMatrix;
+import mathLib.matrix.algebra.intf.Vector;
+import mathLib.util.io.MatlabMatFileWriter;
+
+/**
+ * Row-major sparse matrix stored in primitive arrays
+ * <p>
+ * Entries are kept in compressed sparse row (CSR) format: <tt>rowPtr</tt>, <tt>colIndex</tt>
+ * and <tt>data</tt>. Column indices are sorted within each row.
+ * <p>
+ * Calls of <tt>add()</tt> and <tt>set()</tt> on entries that already exist in the compressed
+ * structure are written in place after a binary search in the row. New entries are appended to a
+ * triplet (COO) buffer and merged into the compressed structure in one O(nnz+n) radix pass, either
+ * when the buffer grows as large as the structure itself or lazily before the next read
+ * (<tt>get()</tt>, <tt>mult()</tt>, iteration, ...). No boxing takes place at any time, so this class
+ * can replace <tt>SparseMatrixRowMajor</tt> as global stiffness matrix of the assemblers.
+ * <p>
+ * Unlike <tt>SparseMatrixRowMajor</tt>, an existing entry that is set to zero stays in the
+ * structure as an explicit zero, so that the sparsity pattern is kept for the next assembly.
+ * Use <tt>trim()</tt> to remove explicit zeros.
+ *
+ */
+public class SparseMatrixCSR implements SparseMatrix {
+	protected int rowDim = 0;
+	protected int colDim = 0;
+
+	/**
+	 * Compressed structure (0-based indices)
+	 */
+	protected int nRows = 0;
+	protected int[] rowPtr = new int[1];
+	protected int[] colIndex = new int[0];
+	protected double[] data = new double[0];
+
+	/**
+	 * Pending triplets (0-based indices) which are not yet merged into the compressed structure.
+	 * <tt>tSet[k]==true</tt> marks an assignment, otherwise the value is accumulated.
+	 */
+	protected int nTriplets = 0;
+	protected int[] tRow = new int[0];
+	protected int[] tCol = new int[0];
+	protected double[] tVal = new double[0];
+	protected boolean[] tSet = new boolean[0];
+	protected int tMaxRow = -1;
+	protected int tMaxCol = -1;
+
+	/**
+	 * Minimum size of the triplet buffer before an automatic compaction
+	 */
+	protected static final int MIN_COMPACT_SIZE = 4096;
+
+	protected String name = this.getClass().getSimpleName()+SequenceFEM.getInstance().nextSeq();
+
+	public SparseMatrixCSR() {
+	}
+
+	public SparseMatrixCSR(String name) {
+		this.name = name;
+	}
+
+	public SparseMatrixCSR(int rowDim, int colDim) {
+		this.rowDim = rowDim;
+		this.colDim = colDim;
+		this.nRows = rowDim;
+		this.rowPtr = new int[rowDim+1];
+	}
+
+	public SparseMatrixCSR(String name, int rowDim, int colDim) {
+		this(rowDim, colDim);
+		this.name = name;
+	}
+
+	/**
+	 * Construct a matrix directly from CSR arrays with 0-based indices.
+	 * The arrays are used without copy. Column indices must be sorted within each row.
+	 * <p>
+	 * The index arrays are never modified in place, so several matrices with the same
+	 * sparsity pattern can share <tt>rowPtr</tt> and <tt>colIndex</tt>.
+	 *
+	 * @param rowDim
+	 * @param colDim
+	 * @param rowPtr length <tt>rowDim+1</tt>
+	 * @param colIndex
+	 * @param data
+	 */
+	public SparseMatrixCSR(int rowDim, int colDim, int[] rowPtr, int[] colIndex, double[] data) {
+		this.rowDim = rowDim;
+		this.colDim = colDim;
+		this.nRows = rowDim;
+		this.rowPtr = rowPtr;
+		this.colIndex = colIndex;
+		this.data = data;
+	}
+
+	/**
+	 * Copy all the entries of <tt>sMat</tt> into a new compressed matrix
+	 *
+	 * @param sMat
+	 */
+	public SparseMatrixCSR(SparseMatrix sMat) {
+		this(sMat.getRowDim(), sMat.getColDim());
+		for(MatrixEntry e : sMat) {
+			add(e.getRow(), e.getCol(), e.getValue());
+		}
+		compact();
+	}
+
+	@Override
+	public void setColDim(int nColDim) {
+		this.colDim = nColDim;
+	}
+
+	@Override
+	public void setRowDim(int nRowDim) {
+		this.rowDim = nRowDim;
+	}
+
+	@Override
+	public int getRowDim() {
+		return rowDim;
+	}
+
+	@Override
+	public int getColDim() {
+		return colDim;
+	}
+
+	private void checkIndex(int row, int col) {
+		if(rowDim != 0) {
+			if(row < 1 || row > rowDim)
+				throw new FutureyeException("Row number "+row+" exceeds dimenstion [1,"+rowDim+"]");
+		} else if(row < 1) {
+			throw new FutureyeException("Row number "+row+" must be positive");
+		}
+		if(colDim != 0) {
+			if(col < 1 || col > colDim)
+				throw new FutureyeException("Column number "+col+" exceeds dimenstion [1,"+colDim+"]");
+		} else if(col < 1) {
+			throw new FutureyeException("Column number "+col+" must be positive");
+		}
+	}
+
+	/**
+	 * Return the position of entry (r,c) (0-based) in <tt>data</tt>, or -1 if it is not
+	 * in the compressed structure
+	 */
+	protected int find(int r, int c) {
+		if(r >= nRows)
+			return -1;
+		int k = Arrays.binarySearch(colIndex, rowPtr[r], rowPtr[r+1], c);
+		return k < 0 ? -1 : k;
+	}
+
+	@Override
+	public void set(int row, int col, double value) {
+		checkIndex(row, col);
+		if(nTriplets == 0) {
+			int k = find(row-1, col-1);
+			if(k >= 0) {
+				data[k] = value;
+				return;
+			}
+			if(Math.abs(value) < Matrix.zeroEps)
+				return;
+		}
+		appendTriplet(row-1, col-1, value, true);
+	}
+
+	@Override
+	public double get(int row, int col) {
+		checkIndex(row, col);
+		compact();
+		int k = find(row-1, col-1);
+		return k < 0 ? 0.0 : data[k];
+	}
+
+	@Override
+	public void add(int row, int col, double value) {
+		checkIndex(row, col);
+		if(nTriplets == 0) {
+			int k = find(row-1, col-1);
+			if(k >= 0) {
+				data[k] += value;
+				return;
+			}
+		}
+		appendTriplet(row-1, col-1, value, false);
+	}
+
+	@Override
+	public double apply(int row, int col) {
+		return this.get(row, col);
+	}
+
+	@Override
+	public void update(int row, int col, double value) {
+		this.set(row, col, value);
+	}
+
+	private void appendTriplet(int r, int c, double value, boolean isSet) {
+		if(nTriplets == tRow.length) {
+			int newSize = Math.max(16, tRow.length + (tRow.length>>1));
+			tRow = Arrays.copyOf(tRow, newSize);
+			tCol = Arrays.copyOf(tCol, newSize);
+			tVal = Arrays.copyOf(tVal, newSize);
+			tSet = Arrays.copyOf(tSet, newSize);
+		}
+		tRow[nTriplets] = r;
+		tCol[nTriplets] = c;
+		tVal[nTriplets] = value;
+		tSet[nTriplets] = isSet;
+		nTriplets++;
+		if(r > tMaxRow) tMaxRow = r;
+		if(c > tMaxCol) tMaxCol = c;
+		//Keep the buffer bounded, amortized O(1) per call
+		if(nTriplets >= Math.max(MIN_COMPACT_SIZE, Math.max(rowPtr[nRows], nRows)))
+			compact();
+	}
+
+	/**
+	 * Merge pending triplets into the compressed structure.
+	 * <p>
+	 * The triplets are sorted by (row,col) with two stable counting sorts, so the
+	 * order of calls on the same entry is preserved; each row is then merged with
+	 * the existing sorted row of the compressed structure.
+	 */
+	public void compact() {
+		if(nTriplets == 0)
+			return;
+		int nr = Math.max(Math.max(rowDim, nRows), tMaxRow+1);
+		int nc = Math.max(colDim, tMaxCol+1);
+		int n = nTriplets;
+
+		//stable counting sort by column, then by row
+		int[] byCol = new int[n];
+		int[] cnt = new int[nc+1];
+		for(int k=0; k<n; k++) cnt[tCol[k]+1]++;
+		for(int c=0; c<nc; c++) cnt[c+1] += cnt[c];
+		for(int k=0; k<n; k++) byCol[cnt[tCol[k]]++] = k;
+
+		int[] order = new int[n];
+		int[] tPtr = new int[nr+1];
+		for(int k=0; k<n; k++) tPtr[tRow[k]+1]++;
+		for(int r=0; r<nr; r++) tPtr[r+1] += tPtr[r];
+		int[] pos = Arrays.copyOf(tPtr, nr);
+		for(int k=0; k<n; k++) {
+			int t = byCol[k];
+			order[pos[tRow[t]]++] = t;
+		}
+		byCol = null;
+		pos = null;
+
+		int oldNnz = rowPtr[nRows];
+		int[] newPtr = new int[nr+1];
+		int[] newCol = new int[oldNnz+n];
+		double[] newData = new double[oldNnz+n];
+		int nnz = 0;
+		for(int r=0; r<nr; r++) {
+			int i = r < nRows ? rowPtr[r] : 0;
+			int iEnd = r < nRows ? rowPtr[r+1] : 0;
+			int j = tPtr[r], jEnd = tPtr[r+1];
+			while(i < iEnd || j < jEnd) {
+				int ci = i < iEnd ? colIndex[i] : Integer.MAX_VALUE;
+				int cj = j < jEnd ? tCol[order[j]] : Integer.MAX_VALUE;
+				if(ci < cj) {
+					newCol[nnz] = ci;
+					newData[nnz++] = data[i++];
+				} else {
+					//apply all the pending operations on entry (r,cj) in their original order
+					boolean exists = ci == cj;
+					double v = exists ? data[i++] : 0.0;
+					boolean zeroSet = false;
+					while(j < jEnd && tCol[order[j]] == cj) {
+						int t = order[j++];
+						if(tSet[t]) {
+							v = tVal[t];
+							zeroSet = Math.abs(v) < Matrix.zeroEps;
+						} else {
+							v += tVal[t];
+							zeroSet = false;
+						}
+					}
+					if(exists || !zeroSet) {
+						newCol[nnz] = cj;
+						newData[nnz++] = v;
+					}
+				}
+			}
+			newPtr[r+1] = nnz;
+		}
+		this.nRows = nr;
+		this.rowPtr = newPtr;
+		this.colIndex = nnz == newCol.length ? newCol : Arrays.copyOf(newCol, nnz);
+		this.data = nnz == newData.length ? newData : Arrays.copyOf(newData, nnz);
+		clearTriplets();
+	}
+
+	private void clearTriplets() {
+		//release the buffer, it is reallocated on demand
+		this.tRow = new int[0];
+		this.tCol = new int[0];
+		this.tVal = new double[0];
+		this.tSet = new boolean[0];
+		this.nTriplets = 0;
+		this.tMaxRow = -1;
+		this.tMaxCol = -1;
+	}
+
+	/**
+	 * Remove explicit zeros (absolute value less than <tt>Matrix.zeroEps</tt>) from the compressed structure
+	 *
+	 * @return <tt>this</tt> for convenience only
+	 */
+	public SparseMatrixCSR trim() {
+		compact();
+		int nnz = 0;
+		for(int k=rowPtr[nRows]; --k>=0;)
+			if(Math.abs(data[k]) >= Matrix.zeroEps) nnz++;
+		//the index arrays may be shared with other matrices, never modify them in place
+		int[] newPtr = new int[nRows+1];
+		int[] newCol = new int[nnz];
+		double[] newData = new double[nnz];
+		nnz = 0;
+		for(int r=0; r<nRows; r++) {
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++) {
+				if(Math.abs(data[k]) >= Matrix.zeroEps) {
+					newCol[nnz] = colIndex[k];
+					newData[nnz++] = data[k];
+				}
+			}
+			newPtr[r+1] = nnz;
+		}
+		this.rowPtr = newPtr;
+		this.colIndex = newCol;
+		this.data = newData;
+		return this;
+	}
+
+	/**
+	 * Set all stored values to zero but keep the sparsity pattern, so that the matrix
+	 * can be assembled again without any structural change.
+	 */
+	public void zeroData() {
+		compact();
+		Arrays.fill(data, 0, rowPtr[nRows], 0.0);
+	}
+
+	/**
+	 * Number of non zero values (absolute value not less than <tt>Matrix.zeroEps</tt>), as for
+	 * <tt>SparseMatrixRowMajor</tt>. Explicit zeros, e.g. after <tt>zeroData()</tt>, are not counted.
+	 *
+	 * @see #getNumberOfStoredEntries()
+	 */
+	@Override
+	public int getNonZeroNumber() {
+		compact();
+		int nnz = 0;
+		for(int k=rowPtr[nRows]; --k>=0;)
+			if(Math.abs(data[k]) >= Matrix.zeroEps) nnz++;
+		return nnz;
+	}
+
+	/**
+	 * Number of entries in the compressed structure, including explicit zeros
+	 */
+	public int getNumberOfStoredEntries() {
+		compact();
+		return rowPtr[nRows];
+	}
+
+	/**
+	 * The returned map is a copy, changes are not reflected in this matrix
+	 */
+	@Override
+	public Map<Integer, Map<Integer, Double>> getAll() {
+		compact();
+		Map<Integer,Map<Integer,Double>> m = new HashMap<Integer,Map<Integer,Double>>();
+		for(int r=0; r<nRows; r++) {
+			if(rowPtr[r] == rowPtr[r+1])
+				continue;
+			Map<Integer,Double> aRow = new HashMap<Integer,Double>();
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++)
+				aRow.put(colIndex[k]+1, data[k]);
+			m.put(r+1, aRow);
+		}
+		return m;
+	}
+
+	@Override
+	public void setAll(int nRowBase, int nColBase,
+			Map<Integer, Map<Integer, Double>> map) {
+		for(Entry<Integer, Map<Integer, Double>> rowEentry : map.entrySet()) {
+			int nRow = rowEentry.getKey();
+			for(Entry<Integer, Double> entry : rowEentry.getValue().entrySet()) {
+				set(nRowBase+nRow, nColBase+entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	@Override
+	public void clearAll() {
+		this.rowDim = 0;
+		this.colDim = 0;
+		clearData();
+	}
+
+	@Override
+	public void clearData() {
+		this.nRows = 0;
+		this.rowPtr = new int[1];
+		this.colIndex = new int[0];
+		this.data = new double[0];
+		clearTriplets();
+	}
+
+	@Override
+	public void mult(Vector x, Vector y) {
+		compact();
+		for(int r=0; r<nRows; r++) {
+			double v = 0.0;
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++)
+				v += data[k]*x.get(colIndex[k]+1);
+			y.set(r+1, v);
+		}
+		//rows without any stored entry, y is overwritten like by the other implementations
+		for(int r=nRows; r<y.getDim(); r++)
+			y.set(r+1, 0.0);
+	}
+
+	/**
+	 * y=A*x on primitive arrays with 0-based indices
+	 *
+	 * @param x
+	 * @param y
+	 */
+	public void mult(double[] x, double[] y) {
+		compact();
+		for(int r=0; r<nRows; r++) {
+			double v = 0.0;
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++)
+				v += data[k]*x[colIndex[k]];
+			y[r] = v;
+		}
+		if(nRows < y.length)
+			Arrays.fill(y, nRows, y.length, 0.0);
+	}
+
+	/**
+	 * A=A'
+	 *
+	 */
+	@Override
+	public SparseMatrixCSR trans() {
+		compact();
+		int nc = Math.max(colDim, maxColumn()+1);
+		int nnz = rowPtr[nRows];
+		int[] tPtr = new int[nc+1];
+		int[] tIdx = new int[nnz];
+		double[] tData = new double[nnz];
+		for(int k=0; k<nnz; k++) tPtr[colIndex[k]+1]++;
+		for(int c=0; c<nc; c++) tPtr[c+1] += tPtr[c];
+		int[] pos = Arrays.copyOf(tPtr, nc);
+		//rows are visited in increasing order, so the new rows are sorted
+		for(int r=0; r<nRows; r++) {
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++) {
+				int p = pos[colIndex[k]]++;
+				tIdx[p] = r;
+				tData[p] = data[k];
+			}
+		}
+		int dim = this.colDim;
+		this.colDim = this.rowDim;
+		this.rowDim = dim;
+		this.nRows = nc;
+		this.rowPtr = tPtr;
+		this.colIndex = tIdx;
+		this.data = tData;
+		return this;
+	}
+
+	private int maxColumn() {
+		int max = -1;
+		for(int k=rowPtr[nRows]; --k>=0;)
+			if(colIndex[k] > max) max = colIndex[k];
+		return max;
+	}
+
+	@Override
+	public SparseMatrixCSR copy() {
+		compact();
+		SparseMatrixCSR newM = new SparseMatrixCSR(this.rowDim, this.colDim,
+				Arrays.copyOf(rowPtr, nRows+1),
+				Arrays.copyOf(colIndex, rowPtr[nRows]),
+				Arrays.copyOf(data, rowPtr[nRows]));
+		newM.nRows = this.nRows;
+		return newM;
+	}
+
+	/**
+	 * Convert to <tt>CompressedRowMatrix</tt> for the iterative solvers without going through
+	 * the generic (boxing) iterator.
+	 * <p>
+	 * The values are copied. So subsequent changes in this matrix
+	 * are not reflected in the returned matrix, and vice-versa.
+	 */
+	public CompressedRowMatrix getCompressedRowMatrix() {
+		compact();
+		CompressedRowMatrix rlt = new CompressedRowMatrix(Math.max(rowDim, nRows),
+				Math.max(colDim, maxColumn()+1));
+		for(int r=0; r<nRows; r++) {
+			int begin = rowPtr[r], end = rowPtr[r+1];
+			rlt.colIndex[r] = Arrays.copyOfRange(colIndex, begin, end);
+			rlt.data[r] = Arrays.copyOfRange(data, begin, end);
+		}
+		return rlt;
+	}
+
+	/**
+	 * Row pointers of the compressed structure (0-based, length <tt>getRowDim()+1</tt>).
+	 * The array is backed by this matrix.
+	 */
+	public int[] getRowPointers() {
+		compact();
+		return rowPtr;
+	}
+
+	/**
+	 * Column indices of the compressed structure (0-based).
+	 * The array is backed by this matrix.
+	 */
+	public int[] getColIndices() {
+		compact();
+		return colIndex;
+	}
+
+	/**
+	 * Values of the compressed structure. The array is backed by this matrix.
+	 */
+	public double[] getData() {
+		compact();
+		return data;
+	}
+
+	@Override
+	public void print() {
+		for(int i=1;i<=rowDim;i++) {
+			for(int j=1;j<=colDim;j++) {
+				System.out.print(String.format("%8.6f   ", get(i,j)));
+			}
+			System.out.println();
+		}
+		System.out.println();
+	}
+
+	public String toString() {
+		return "SparseMatrix:"+name+"("+
+			this.rowDim+","+this.colDim+
+			"):NNZ="+getNonZeroNumber();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public SparseMatrix setName(String name) {
+		this.name = name;
+		return this;
+	}
+
+	/**
+	 * Write this matrix to a file with Matlab mat file format.
+	 * The variable name in matlab workspace is specified by <tt>setName()</tt>.
+	 *
+	 * @param fileName
+	 */
+	@Override
+	public void writeMatFile(String fileName) {
+		MatlabMatFileWriter w = new MatlabMatFileWriter();
+		w.addSparseMatrix(this);
+		w.writeFile(fileName);
+	}
+
+	@Override
+	public void writeSimpleFile(String fileName) {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Return a row-major iterator, column indices are increasing within each row
+	 */
+	@Override
+	public Iterator<MatrixEntry> iterator() {
+		compact();
+		return new CSRIterator();
+	}
+
+	/**
+	 * Iterator over the compressed structure. The same entry object is returned by every call of <tt>next()</tt>.
+	 */
+	class CSRIterator implements Iterator<MatrixEntry>, MatrixEntry {
+		int row = 0;
+		int pos = -1;
+
+		@Override
+		public boolean hasNext() {
+			return pos+1 < rowPtr[nRows];
+		}
+
+		@Override
+		public MatrixEntry next() {
+			if(!hasNext())
+				throw new NoSuchElementException();
+			pos++;
+			while(rowPtr[row+1] <= pos)
+				row++;
+			return this;
+		}
+
+		@Override
+		public int getRow() {
+			return row+1;
+		}
+
+		@Override
+		public int getCol() {
+			return colIndex[pos]+1;
+		}
+
+		@Override
+		public double getValue() {
+			return data[pos];
+		}
+
+		@Override
+		public void setValue(double value) {
+			data[pos] = value;
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package mathLib.matrix.algebra.solver;
+
+import java.util.Arrays;
+
+/**
+ * Approximate minimum degree ordering of a symmetric sparsity pattern.
+ * <p>
+ * The elimination is simulated on the quotient graph: an eliminated pivot becomes an
+ * element, whose list of variables replaces the edges between them, and the elements
+ * adjacent to the pivot are absorbed into it. So the memory stays of the order of the
+ * number of non-zeros of the pattern. The external degree of a variable <tt>i</tt> is
+ * bounded as in AMD (Amestoy, Davis and Duff) by
+ * <tt>|A_i \ L_p| + |L_p \ i| + sum(|L_e \ L_p|)</tt>; elements included in the new element
+ * are absorbed as well. Supervariables and dense rows are not detected.
+ *
+ */
+public class AMDOrdering {
+
+	private static final byte VARIABLE = 0;
+	private static final byte ELEMENT = 1;
+	private static final byte ABSORBED = 2;
+
+	/**
+	 * @param n
+	 * @param ptr pointers of the adjacency lists (length <tt>n+1</tt>)
+	 * @param idx neighbours (0-based) of each node in <tt>idx[ptr[i] ... ptr[i+1]-1]</tt>.
+	 *        The pattern must be symmetric, diagonal entries are ignored
+	 * @return <tt>perm</tt>, where <tt>perm[k]</tt> is the node eliminated at step <tt>k</tt>
+	 */
+	public static int[] order(int n, int[] ptr, int[] idx) {
+		int[][] vars = new int[n][];
+		int[] nVars = new int[n];
+		int[][] els = new int[n][];
+		int[] nEls = new int[n];
+		int[][] elVars = new int[n][];
+		byte[] state = new byte[n];
+		int[] degree = new int[n];
+		int[] head = new int[n+1];
+		int[] next = new int[n];
+		int[] prev = new int[n];
+		int[] mark = new int[n];
+		int[] w = new int[n];
+		int[] wMark = new int[n];
+		int[] perm = new int[n];
+		int[] lp = new int[n];
+		Arrays.fill(head, -1);
+
+		for(int i=0; i<n; i++) {
+			int len = 0;
+			int[] v = new int[ptr[i+1]-ptr[i]];
+			for(int k=ptr[i]; k<ptr[i+1]; k++)
+				if(idx[k] != i)
+					v[len++] = idx[k];
+			vars[i] = v;
+			nVars[i] = len;
+			els[i] = new int[4];
+			degree[i] = len;
+			insert(i, len, head, next, prev);
+		}
+
+		int stamp = 0;
+		int minDegree = 0;
+		for(int k=0; k<n; k++) {
+			while(head[minDegree] == -1)
+				minDegree++;
+			int p = head[minDegree];
+			remove(p, degree[p], head, next, prev);
+			perm[k] = p;
+			state[p] = ELEMENT;
+
+			//variables of the new element: L_p = A_p + sum(L_e) for the elements e of p
+			stamp++;
+			mark[p] = stamp;
+			int nlp = 0;
+			int[] vp = vars[p];
+			for(int m=0; m<nVars[p]; m++) {
+				int v = vp[m];
+				if(state[v] == VARIABLE && mark[v] != stamp) {
+					mark[v] = stamp;
+					lp[nlp++] = v;
+				}
+			}
+			int[] ep = els[p];
+			for(int m=0; m<nEls[p]; m++) {
+				int e = ep[m];
+				if(state[e] != ELEMENT)
+					continue;
+				for(int v : elVars[e]) {
+					if(state[v] == VARIABLE && mark[v] != stamp) {
+						mark[v] = stamp;
+						lp[nlp++] = v;
+					}
+				}
+				state[e] = ABSORBED;
+				elVars[e] = null;
+			}
+			vars[p] = null;
+			els[p] = null;
+			elVars[p] = Arrays.copyOf(lp, nlp);
+
+			//w[e] = |L_e \ L_p| for the elements adjacent to L_p
+			for(int m=0; m<nlp; m++) {
+				int i = lp[m];
+				int[] ei = els[i];
+				for(int q=0; q<nEls[i]; q++) {
+					int e = ei[q];
+					if(state[e] != ELEMENT)
+						continue;
+					if(wMark[e] != stamp) {
+						wMark[e] = stamp;
+						w[e] = elVars[e].length;
+					}
+					w[e]--;
+				}
+			}
+
+			//update the lists and the approximate degrees of the variables of L_p
+			int remaining = n - k - 1;
+			for(int m=0; m<nlp; m++) {
+				int i = lp[m];
+				remove(i, degree[i], head, next, prev);
+				int d = nlp - 1;
+				int[] ei = els[i];
+				int ne = 0;
+				for(int q=0; q<nEls[i]; q++) {
+					int e = ei[q];
+					if(state[e] != ELEMENT)
+						continue;
+					if(w[e] == 0) {
+						//aggressive absorption: L_e is included in L_p
+						state[e] = ABSORBED;
+						elVars[e] = null;
+						continue;
+					}
+					d += w[e];
+					ei[ne++] = e;
+				}
+				if(ne == ei.length)
+					els[i] = ei = Arrays.copyOf(ei, 2*ne);
+				ei[ne++] = p;
+				nEls[i] = ne;
+				int[] vi = vars[i];
+				int nv = 0;
+				for(int q=0; q<nVars[i]; q++) {
+					int v = vi[q];
+					if(state[v] == VARIABLE && mark[v] != stamp)
+						vi[nv++] = v;
+				}
+				nVars[i] = nv;
+				d += nv;
+				d = Math.min(d, Math.min(remaining, degree[i]+nlp-1));
+				degree[i] = d;
+				insert(i, d, head, next, prev);
+				if(d < minDegree)
+					minDegree = d;
+			}
+		}
+		return perm;
+	}
+
+	private static void insert(int i, int d, int[] head, int[] next, int[] prev) {
+		int h = head[d];
+		next[i] = h;
+		prev[i] = -1;
+		if(h != -1)
+			prev[h] = i;
+		head[d] = i;
+	}
+
+	private static void remove(int i, int d, int[] head, int[] next, int[] prev) {
+		if(prev[i] != -1)
+			next[prev[i]] = next[i];
+		else
+			head[d] = next[i];
+		if(next[i] != -1)
+			prev[next[i]] = prev[i];
+	}
+}
@@ -0,0 +1,634 @@
+package mathLib.matrix.algebra.solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import mathLib.fem.util.FutureyeException;
+import mathLib.matrix.algebra.CompressedRowMatrix;
+import mathLib.matrix.algebra.intf.AlgebraVector;
+
+/**
+ * Smoothed aggregation algebraic multigrid (AMG)
+ * <p>
+ * The hierarchy is built once from a <tt>CompressedRowMatrix</tt>:
+ * <ul>
+ * <li>strength of connection: <code>|a_ij| &gt;= theta*sqrt(|a_ii*a_jj|)</code>
+ * <li>greedy aggregation of strongly connected unknowns, unknowns without strong
+ *     connections (e.g. Dirichlet rows) are left to the smoother
+ * <li>tentative prolongation from the constant vector, smoothed by one damped Jacobi step
+ *     <code>P = (I - w D^{-1} A) T</code>, <code>w = 4/(3 rho)</code> with rho a Gershgorin bound of <code>D^{-1} A</code>
+ * <li>Galerkin coarse matrices <code>A_c = P^T A P</code> and a dense LU solve on the coarsest level
+ * </ul>
+ * One application of the preconditioner is a V-cycle with forward Gauss-Seidel pre-smoothing
+ * and backward Gauss-Seidel post-smoothing, which is symmetric positive definite for SPD
+ * matrices and can be used with <tt>Solver.solveCG(A, b, x, M)</tt>. <tt>solve()</tt>
+ * iterates V-cycles as a standalone solver.
+ * <p>
+ * The setup can be kept across time steps or nonlinear iterations: reuse the object as it is
+ * (the preconditioner only needs to be close to the matrix), or call <tt>update()</tt> with
+ * a matrix of the same structure to recompute the numeric part while keeping the aggregates.
+ * <p>
+ * The work vectors are members of the object, so one instance must not be applied by several
+ * threads concurrently.
+ *
+ */
+public class AMGPreconditioner implements Preconditioner {
+	/**
+	 * Strength threshold
+	 */
+	public double theta = 0.08;
+	/**
+	 * Levels with at most <tt>coarseSize</tt> unknowns are solved directly
+	 */
+	public int coarseSize = 400;
+	public int maxLevels = 20;
+	public int preSmooth = 1;
+	public int postSmooth = 1;
+
+	/**
+	 * Parameters of <tt>solve()</tt>, same meaning as in <tt>Solver</tt>
+	 */
+	public double epsRelIter = 1e-9;
+	public double epsAbsIterMin = 1e-15;
+	public double epsAbsIterMax = 1e-6;
+	public int maxIter = 500;
+	public boolean debug = false;
+
+	protected List<Level> levels = new ArrayList<Level>();
+	/**
+	 * LU factors of the coarsest matrix, row-major, and the pivot rows
+	 */
+	protected double[] coarseLU;
+	protected int[] coarsePiv;
+
+	protected SolverStatistics statistics = null;
+
+	/**
+	 * Matrix of one level in compressed row format, 0-based
+	 */
+	protected static class CSR {
+		int nRow, nCol;
+		int[] rowPtr;
+		int[] colIdx;
+		double[] val;
+
+		CSR(int nRow, int nCol, int[] rowPtr, int[] colIdx, double[] val) {
+			this.nRow = nRow;
+			this.nCol = nCol;
+			this.rowPtr = rowPtr;
+			this.colIdx = colIdx;
+			this.val = val;
+		}
+
+		int nnz() {
+			return rowPtr[nRow];
+		}
+	}
+
+	protected static class Level {
+		CSR A;
+		/**
+		 * Prolongation to this level from the next coarser one and its transpose
+		 */
+		CSR P, R;
+		/**
+		 * Aggregate index of each unknown, -1 if the unknown is not aggregated
+		 */
+		int[] aggregate;
+		int nAggregates;
+		int[] diagPos;
+		double[] x, b, r;
+	}
+
+	/**
+	 * Build the hierarchy with the default parameters
+	 *
+	 * @param A
+	 */
+	public AMGPreconditioner(CompressedRowMatrix A) {
+		setup(toCSR(A), false);
+	}
+
+	/**
+	 * Build the hierarchy
+	 *
+	 * @param A
+	 * @param theta strength threshold, 0 &lt;= theta &lt; 1
+	 * @param coarseSize size of the coarsest level solved by LU
+	 */
+	public AMGPreconditioner(CompressedRowMatrix A, double theta, int coarseSize) {
+		this.theta = theta;
+		this.coarseSize = coarseSize;
+		setup(toCSR(A), false);
+	}
+
+	/**
+	 * Recompute the prolongations and coarse matrices for new values of the matrix.
+	 * The matrix must have the same dimension and sparsity as the one of the setup,
+	 * the aggregates are reused.
+	 *
+	 * @param A
+	 */
+	public void update(CompressedRowMatrix A) {
+		CSR a = toCSR(A);
+		if(a.nRow != levels.get(0).A.nRow)
+			throw new FutureyeException("AMGPreconditioner.update(): dimension "+a.nRow+
+					" != "+levels.get(0).A.nRow);
+		setup(a, true);
+	}
+
+	protected void setup(CSR A, boolean reuseAggregates) {
+		List<Level> old = levels;
+		levels = new ArrayList<Level>();
+		int l = 0;
+		while(true) {
+			Level lev = new Level();
+			lev.A = A;
+			lev.diagPos = diagonalPositions(A);
+			lev.x = new double[A.nRow];
+			lev.b = new double[A.nRow];
+			lev.r = new double[A.nRow];
+			levels.add(lev);
+			if(A.nRow <= coarseSize || levels.size() >= maxLevels)
+				break;
+			if(reuseAggregates) {
+				if(l+1 >= old.size())
+					break;
+				lev.aggregate = old.get(l).aggregate;
+				lev.nAggregates = old.get(l).nAggregates;
+			} else {
+				aggregate(lev);
+				//no reasonable coarsening any more
+				if(lev.nAggregates == 0 || lev.nAggregates > 0.9*A.nRow) {
+					lev.aggregate = null;
+					break;
+				}
+			}
+			lev.P = smoothedProlongation(lev);
+			lev.R = transpose(lev.P);
+			A = multiply(lev.R, multiply(A, lev.P));
+			l++;
+		}
+		factorCoarse(levels.get(levels.size()-1).A);
+	}
+
+	/**
+	 * Greedy aggregation on the strength graph
+	 */
+	protected void aggregate(Level lev) {
+		CSR A = lev.A;
+		int n = A.nRow;
+		double[] absDiag = new double[n];
+		for(int i=0; i<n; i++)
+			absDiag[i] = lev.diagPos[i] < 0 ? 0.0 : Math.abs(A.val[lev.diagPos[i]]);
+		//strong connections
+		boolean[] strong = new boolean[A.nnz()];
+		boolean[] hasStrong = new boolean[n];
+		for(int i=0; i<n; i++) {
+			for(int k=A.rowPtr[i]; k<A.rowPtr[i+1]; k++) {
+				int j = A.colIdx[k];
+				if(j != i && A.val[k] != 0.0 &&
+						Math.abs(A.val[k]) >= theta*Math.sqrt(absDiag[i]*absDiag[j])) {
+					strong[k] = true;
+					hasStrong[i] = true;
+				}
+			}
+		}
+		int[] agg = new int[n];
+		Arrays.fill(agg, -1);
+		int nAgg = 0;
+		//phase 1: unknowns whose strong neighbourhood is free form new aggregates
+		for(int i=0; i<n; i++) {
+			if(agg[i] >= 0 || !hasStrong[i])
+				continue;
+			boolean free = true;
+			for(int k=A.rowPtr[i]; k<A.rowPtr[i+1] && free; k++) {
+				if(strong[k] && agg[A.colIdx[k]] >= 0)
+					free = false;
+			}
+			if(!free)
+				continue;
+			agg[i] = nAgg;
+			for(int k=A.rowPtr[i]; k<A.rowPtr[i+1]; k++) {
+				if(strong[k])
+					agg[A.colIdx[k]] = nAgg;
+			}
+			nAgg++;
+		}
+		//phase 2: join the aggregate of a strong neighbour from phase 1
+		int[] agg1 = Arrays.copyOf(agg, n);
+		for(int i=0; i<n; i++) {
+			if(agg[i] >= 0 || !hasStrong[i])
+				continue;
+			for(int k=A.rowPtr[i]; k<A.rowPtr[i+1]; k++) {
+				if(strong[k] && agg1[A.colIdx[k]] >= 0) {
+					agg[i] = agg1[A.colIdx[k]];
+					break;
+				}
+			}
+		}
+		//phase 3: the remaining unknowns with their free strong neighbours
+		for(int i=0; i<n; i++) {
+			if(agg[i] >= 0 || !hasStrong[i])
+				continue;
+			agg[i] = nAgg;
+			for(int k=A.rowPtr[i]; k<A.rowPtr[i+1]; k++) {
+				if(strong[k] && agg[A.colIdx[k]] < 0)
+					agg[A.colIdx[k]] = nAgg;
+			}
+			nAgg++;
+		}
+		lev.aggregate = agg;
+		lev.nAggregates = nAgg;
+	}
+
+	/**
+	 * <code>P = (I - w D^{-1} A) T</code>, T the normalized piecewise constant prolongation
+	 */
+	protected CSR smoothedProlongation(Level lev) {
+		CSR A = lev.A;
+		int n = A.nRow;
+		int nc = lev.nAggregates;
+		int[] agg = lev.aggregate;
+		double[] t = new double[n];
+		int[] size = new int[nc];
+		for(int i=0; i<n; i++)
+			if(agg[i] >= 0) size[agg[i]]++;
+		for(int i=0; i<n; i++)
+			t[i] = agg[i] < 0 ? 0.0 : 1.0/Math.sqrt(size[agg[i]]);
+
+		//Gershgorin bound of the spectral radius of D^{-1}A
+		double rho = 0.0;
+		for(int i=0; i<n; i++) {
+			if(lev.diagPos[i] < 0) continue;
+			double s = 0.0;
+			for(int k=A.rowPtr[i]; k<A.rowPtr[i+1]; k++)
+				s += Math.abs(A.val[k]);
+			rho = Math.max(rho, s/Math.abs(A.val[lev.diagPos[i]]));
+		}
+		double omega = rho == 0.0 ? 0.0 : 4.0/(3.0*rho);
+
+		int[] marker = new int[nc];
+		Arrays.fill(marker, -1);
+		int[] rowPtr = new int[n+1];
+		for(int i=0; i<n; i++) {
+			int len = 0;
+			if(agg[i] >= 0) {
+				marker[agg[i]] = i;
+				len++;
+			}
+			for(int k=A.rowPtr[i]; k<A.rowPtr[i+1]; k++) {
+				int c = agg[A.colIdx[k]];
+				if(c >= 0 && marker[c] != i) {
+					marker[c] = i;
+					len++;
+				}
+			}
+			rowPtr[i+1] = rowPtr[i] + len;
+		}
+		int[] colIdx = new int[rowPtr[n]];
+		double[] val = new double[rowPtr[n]];
+		Arrays.fill(marker, -1);
+		for(int i=0; i<n; i++) {
+			int begin = rowPtr[i], end = begin;
+			if(agg[i] >= 0) {
+				marker[agg[i]] = end;
+				colIdx[end] = agg[i];
+				val[end++] = t[i];
+			}
+			double s = lev.diagPos[i] < 0 ? 0.0 : omega/A.val[lev.diagPos[i]];
+			for(int k=A.rowPtr[i]; k<A.rowPtr[i+1]; k++) {
+				int j = A.colIdx[k];
+				int c = agg[j];
+				if(c < 0) continue;
+				if(marker[c] < begin) {
+					marker[c] = end;
+					colIdx[end] = c;
+					val[end++] = 0.0;
+				}
+				val[marker[c]] -= s*A.val[k]*t[j];
+			}
+		}
+		return new CSR(n, nc, rowPtr, colIdx, val);
+	}
+
+	/**
+	 * Sparse matrix product <code>A*B</code>
+	 */
+	protected static CSR multiply(CSR A, CSR B) {
+		int n = A.nRow, m = B.nCol;
+		int[] marker = new int[m];
+		Arrays.fill(marker, -1);
+		int[] rowPtr = new int[n+1];
+		for(int i=0; i<n; i++) {
+			int len = 0;
+			for(int ka=A.rowPtr[i]; ka<A.rowPtr[i+1]; ka++) {
+				int j = A.colIdx[ka];
+				for(int kb=B.rowPtr[j]; kb<B.rowPtr[j+1]; kb++) {
+					int c = B.colIdx[kb];
+					if(marker[c] != i) {
+						marker[c] = i;
+						len++;
+					}
+				}
+			}
+			rowPtr[i+1] = rowPtr[i] + len;
+		}
+		int[] colIdx = new int[rowPtr[n]];
+		double[] val = new double[rowPtr[n]];
+		Arrays.fill(marker, -1);
+		for(int i=0; i<n; i++) {
+			int begin = rowPtr[i], end = begin;
+			for(int ka=A.rowPtr[i]; ka<A.rowPtr[i+1]; ka++) {
+				int j = A.colIdx[ka];
+				double a = A.val[ka];
+				for(int kb=B.rowPtr[j]; kb<B.rowPtr[j+1]; kb++) {
+					int c = B.colIdx[kb];
+					if(marker[c] < begin) {
+						marker[c] = end;
+						colIdx[end] = c;
+						val[end++] = a*B.val[kb];
+					} else {
+						val[marker[c]] += a*B.val[kb];
+					}
+				}
+			}
+		}
+		return new CSR(n, m, rowPtr, colIdx, val);
+	}
+
+	protected static CSR transpose(CSR A) {
+		int[] rowPtr = new int[A.nCol+1];
+		for(int k=0; k<A.nnz(); k++)
+			rowPtr[A.colIdx[k]+1]++;
+		for(int c=0; c<A.nCol; c++)
+			rowPtr[c+1] += rowPtr[c];
+		int[] pos = Arrays.copyOf(rowPtr, A.nCol);
+		int[] colIdx = new int[A.nnz()];
+		double[] val = new double[A.nnz()];
+		for(int i=0; i<A.nRow; i++) {
+			for(int k=A.rowPtr[i]; k<A.rowPtr[i+1]; k++) {
+				int p = pos[A.colIdx[k]]++;
+				colIdx[p] = i;
+				val[p] = A.val[k];
+			}
+		}
+		return new CSR(A.nCol, A.nRow, rowPtr, colIdx, val);
+	}
+
+	protected static CSR toCSR(CompressedRowMatrix A) {
+		int n = A.getRowDim();
+		int[][] colIndex = A.getColIndex();
+		double[][] data = A.getData();
+		int[] rowPtr = new int[n+1];
+		for(int r=0; r<n; r++)
+			rowPtr[r+1] = rowPtr[r] + colIndex[r].length;
+		int[] colIdx = new int[rowPtr[n]];
+		double[] val = new double[rowPtr[n]];
+		for(int r=0; r<n; r++) {
+			System.arraycopy(colIndex[r], 0, colIdx, rowPtr[r], colIndex[r].length);
+			System.arraycopy(data[r], 0, val, rowPtr[r], colIndex[r].length);
+		}
+		return new CSR(n, A.getColDim(), rowPtr, colIdx, val);
+	}
+
+	/**
+	 * Position of the diagonal entry of each row, -1 if it is missing or zero
+	 */
+	protected static int[] diagonalPositions(CSR A) {
+		int[] diag = new int[A.nRow];
+		for(int i=0; i<A.nRow; i++) {
+			diag[i] = -1;
+			for(int k=A.rowPtr[i]; k<A.rowPtr[i+1]; k++) {
+				if(A.colIdx[k] == i && A.val[k] != 0.0) {
+					diag[i] = k;
+					break;
+				}
+			}
+		}
+		return diag;
+	}
+
+	/**
+	 * Dense LU factorization with partial pivoting of the coarsest matrix.
+	 * Zero pivots (e.g. the constant null space of a pure Neumann problem) are
+	 * skipped, giving a particular solution of the consistent singular system.
+	 */
+	protected void factorCoarse(CSR A) {
+		int n = A.nRow;
+		double[] lu = new double[n*n];
+		for(int i=0; i<n; i++)
+			for(int k=A.rowPtr[i]; k<A.rowPtr[i+1]; k++)
+				lu[i*n+A.colIdx[k]] += A.val[k];
+		double maxAbs = 0.0;
+		for(int k=0; k<lu.length; k++)
+			maxAbs = Math.max(maxAbs, Math.abs(lu[k]));
+		double tiny = 1e-13*maxAbs;
+		int[] piv = new int[n];
+		for(int j=0; j<n; j++) {
+			int p = j;
+			for(int i=j+1; i<n; i++)
+				if(Math.abs(lu[i*n+j]) > Math.abs(lu[p*n+j])) p = i;
+			piv[j] = p;
+			if(p != j) {
+				for(int k=0; k<n; k++) {
+					double t = lu[j*n+k];
+					lu[j*n+k] = lu[p*n+k];
+					lu[p*n+k] = t;
+				}
+			}
+			double d = lu[j*n+j];
+			if(Math.abs(d) <= tiny) {
+				lu[j*n+j] = 0.0;
+				continue;
+			}
+			for(int i=j+1; i<n; i++) {
+				double f = lu[i*n+j] /= d;
+				if(f == 0.0) continue;
+				for(int k=j+1; k<n; k++)
+					lu[i*n+k] -= f*lu[j*n+k];
+			}
+		}
+		coarseLU = lu;
+		coarsePiv = piv;
+	}
+
+	protected void solveCoarse(double[] b, double[] x) {
+		int n = coarsePiv.length;
+		double[] lu = coarseLU;
+		System.arraycopy(b, 0, x, 0, n);
+		for(int j=0; j<n; j++) {
+			int p = coarsePiv[j];
+			if(p != j) {
+				double t = x[j]; x[j] = x[p]; x[p] = t;
+			}
+		}
+		for(int i=0; i<n; i++) {
+			double s = x[i];
+			for(int k=0; k<i; k++)
+				s -= lu[i*n+k]*x[k];
+			x[i] = s;
+		}
+		for(int i=n; --i>=0;) {
+			double d = lu[i*n+i];
+			if(d == 0.0) {
+				x[i] = 0.0;
+				continue;
+			}
+			double s = x[i];
+			for(int k=i+1; k<n; k++)
+				s -= lu[i*n+k]*x[k];
+			x[i] = s/d;
+		}
+	}
+
+	protected static void gaussSeidel(Level lev, boolean forward) {
+		CSR A = lev.A;
+		int n = A.nRow;
+		double[] x = lev.x, b = lev.b;
+		for(int t=0; t<n; t++) {
+			int i = forward ? t : n-1-t;
+			int d = lev.diagPos[i];
+			if(d < 0) continue;
+			double s = b[i];
+			for(int k=A.rowPtr[i]; k<A.rowPtr[i+1]; k++)
+				s -= A.val[k]*x[A.colIdx[k]];
+			x[i] += s/A.val[d];
+		}
+	}
+
+	/**
+	 * V-cycle on level <tt>l</tt> for <tt>lev.b</tt>, starting from <tt>lev.x=0</tt>
+	 */
+	protected void cycle(int l) {
+		Level lev = levels.get(l);
+		if(l == levels.size()-1) {
+			solveCoarse(lev.b, lev.x);
+			return;
+		}
+		CSR A = lev.A;
+		int n = A.nRow;
+		double[] x = lev.x, r = lev.r;
+		for(int s=0; s<preSmooth; s++)
+			gaussSeidel(lev, true);
+		for(int i=0; i<n; i++) {
+			double s = lev.b[i];
+			for(int k=A.rowPtr[i]; k<A.rowPtr[i+1]; k++)
+				s -= A.val[k]*x[A.colIdx[k]];
+			r[i] = s;
+		}
+		Level coarse = levels.get(l+1);
+		CSR R = lev.R;
+		for(int i=0; i<R.nRow; i++) {
+			double s = 0.0;
+			for(int k=R.rowPtr[i]; k<R.rowPtr[i+1]; k++)
+				s += R.val[k]*r[R.colIdx[k]];
+			coarse.b[i] = s;
+		}
+		Arrays.fill(coarse.x, 0.0);
+		cycle(l+1);
+		CSR P = lev.P;
+		for(int i=0; i<n; i++) {
+			double s = 0.0;
+			for(int k=P.rowPtr[i]; k<P.rowPtr[i+1]; k++)
+				s += P.val[k]*coarse.x[P.colIdx[k]];
+			x[i] += s;
+		}
+		for(int s=0; s<postSmooth; s++)
+			gaussSeidel(lev, false);
+	}
+
+	/**
+	 * One V-cycle with zero initial guess: <code>z = M^{-1} r</code>
+	 */
+	@Override
+	public void apply(AlgebraVector r, AlgebraVector z) {
+		Level fine = levels.get(0);
+		System.arraycopy(r.getData(), 0, fine.b, 0, fine.b.length);
+		Arrays.fill(fine.x, 0.0);
+		cycle(0);
+		System.arraycopy(fine.x, 0, z.getData(), 0, fine.x.length);
+	}
+
+	/**
+	 * Standalone multigrid solver: V-cycles on the matrix of the setup until
+	 * the residual criterion of <tt>Solver</tt> is satisfied
+	 *
+	 * @param b
+	 * @param x initial guess and solution
+	 * @return x
+	 */
+	public AlgebraVector solve(AlgebraVector b, AlgebraVector x) {
+		statistics = new SolverStatistics("AMG");
+		Level fine = levels.get(0);
+		CSR A = fine.A;
+		int n = A.nRow;
+		double[] bData = b.getData();
+		double[] xData = x.getData();
+		double firstNorm2 = 0, norm2 = 0;
+		for(int iter=0; iter<=maxIter; iter++) {
+			norm2 = 0.0;
+			for(int i=0; i<n; i++) {
+				double s = bData[i];
+				for(int k=A.rowPtr[i]; k<A.rowPtr[i+1]; k++)
+					s -= A.val[k]*xData[A.colIdx[k]];
+				fine.b[i] = s;
+				norm2 += s*s;
+			}
+			norm2 = Math.sqrt(norm2);
+			if(iter == 0) firstNorm2 = norm2;
+			statistics.addResidual(norm2);
+			if((norm2<=this.epsRelIter*firstNorm2 && norm2<=this.epsAbsIterMax) ||
+					norm2<=this.epsAbsIterMin) {
+				statistics.finish(iter, true);
+				if(debug)
+					System.out.println(
+						String.format("Iter----->i=%05d, RError=%8.3e, AError=%8.3e",
+								iter,norm2/firstNorm2,norm2));
+				return x;
+			}
+			if(iter == maxIter)
+				break;
+			Arrays.fill(fine.x, 0.0);
+			cycle(0);
+			for(int i=0; i<n; i++)
+				xData[i] += fine.x[i];
+		}
+		statistics.finish(maxIter, false);
+		System.out.println("Iter Max----->maxIter="+maxIter+"  norm2="+norm2);
+		return x;
+	}
+
+	/**
+	 * Statistics of the last <tt>solve()</tt>
+	 */
+	public SolverStatistics getStatistics() {
+		return statistics;
+	}
+
+	public int getNumberOfLevels() {
+		return levels.size();
+	}
+
+	/**
+	 * Sum of the nonzeros of all levels divided by the nonzeros of the finest level
+	 */
+	public double getOperatorComplexity() {
+		double nnz = 0;
+		for(Level lev : levels)
+			nnz += lev.A.nnz();
+		return nnz/levels.get(0).A.nnz();
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("AMG: levels=").append(levels.size());
+		sb.append(String.format(", operator complexity=%.2f", getOperatorComplexity()));
+		for(int l=0; l<levels.size(); l++) {
+			CSR A = levels.get(l).A;
+			sb.append("\n  level ").append(l).append(": n=").append(A.nRow).append(", nnz=").append(A.nnz());
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,70 @@
+package mathLib.matrix.algebra.solver;
+
+import java.util.Arrays;
+
+import mathLib.fem.util.FutureyeException;
+import mathLib.matrix.algebra.CompressedRowMatrix;
+
+/**
+ * Base class of the preconditioners which need a copy of the matrix in
+ * compressed row format with sorted column indices and known diagonal positions
+ *
+ */
+abstract class AbstractCSRPreconditioner implements Preconditioner {
+	protected int n;
+	protected int[] rowPtr;
+	protected int[] colIdx;
+	protected double[] val;
+	/**
+	 * Position of the diagonal entry of each row in <tt>val</tt>
+	 */
+	protected int[] diagPos;
+
+	AbstractCSRPreconditioner(CompressedRowMatrix A) {
+		n = A.getRowDim();
+		int[][] colIndex = A.getColIndex();
+		double[][] data = A.getData();
+		rowPtr = new int[n+1];
+		for(int r=0; r<n; r++)
+			rowPtr[r+1] = rowPtr[r] + colIndex[r].length;
+		colIdx = new int[rowPtr[n]];
+		val = new double[rowPtr[n]];
+		diagPos = new int[n];
+		for(int r=0; r<n; r++) {
+			int len = colIndex[r].length;
+			int begin = rowPtr[r];
+			System.arraycopy(colIndex[r], 0, colIdx, begin, len);
+			System.arraycopy(data[r], 0, val, begin, len);
+			if(!isSorted(colIdx, begin, begin+len))
+				sortRow(begin, begin+len);
+			int k = Arrays.binarySearch(colIdx, begin, begin+len, r);
+			if(k < 0 || val[k] == 0.0)
+				throw new FutureyeException(getClass().getSimpleName()+": zero diagonal at row "+(r+1));
+			diagPos[r] = k;
+		}
+	}
+
+	private static boolean isSorted(int[] a, int begin, int end) {
+		for(int k=begin+1; k<end; k++)
+			if(a[k-1] > a[k]) return false;
+		return true;
+	}
+
+	/**
+	 * Insertion sort of one row, rows of FEM matrices are short
+	 */
+	private void sortRow(int begin, int end) {
+		for(int k=begin+1; k<end; k++) {
+			int c = colIdx[k];
+			double v = val[k];
+			int m = k-1;
+			while(m >= begin && colIdx[m] > c) {
+				colIdx[m+1] = colIdx[m];
+				val[m+1] = val[m];
+				m--;
+			}
+			colIdx[m+1] = c;
+			val[m+1] = v;
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package mathLib.matrix.algebra.solver;
+
+import mathLib.matrix.algebra.intf.AlgebraVector;
+
+/**
+ * Block preconditioner of a <tt>SaddlePointOperator</tt>
+ *<blockquote><pre>
+ * DIAGONAL:   M = (B  0 )     TRIANGULAR:   M = (B  C )
+ *                 (0  Sh)                       (0  Sh)
+ *</pre></blockquote>
+ * where <tt>B = diag(B1,...,Bm)</tt> is applied by the sparse LU factorizations of the
+ * <tt>SchurComplementOperator</tt> and <tt>Sh</tt> approximates the Schur complement <tt>S</tt>
+ * (<tt>PressureSchurPreconditioner</tt>).
+ * <p>
+ * The diagonal preconditioner is symmetric positive definite if the <tt>Bi</tt> are, as
+ * required by MINRES on the symmetric form of the Stokes matrix. With <tt>Sh = S</tt>, the
+ * preconditioned matrix has 3 distinct eigenvalues (MINRES converges in 3 iterations) for the
+ * diagonal one, and 2 (GMRES in 2 iterations) for the triangular one. The sign of <tt>Sh</tt> in
+ * the triangular preconditioner follows <tt>SaddlePointOperator.isSymmetric()</tt>.
+ *
+ */
+public class BlockSaddlePointPreconditioner implements Preconditioner {
+
+	public enum Type { DIAGONAL, TRIANGULAR }
+
+	protected SchurComplementOperator S;
+	protected PressureSchurPreconditioner Sh;
+	protected Type type;
+
+	private double[] u, w;
+
+	public BlockSaddlePointPreconditioner(SchurComplementOperator S,
+			PressureSchurPreconditioner Sh, Type type) {
+		this.S = S;
+		this.Sh = Sh;
+		this.type = type;
+		int maxDim = 0;
+		for(int i=1; i<=S.A.getVelocityBlockDim(); i++)
+			maxDim = Math.max(maxDim, S.A.getBlockDim(i));
+		u = new double[maxDim];
+		w = new double[maxDim];
+	}
+
+	@Override
+	public void apply(AlgebraVector r, AlgebraVector z) {
+		SaddlePointOperator A = S.A;
+		double[] dr = r.getData();
+		double[] dz = z.getData();
+		int m = A.getVelocityBlockDim();
+		int pOff = A.offset[m];
+		Sh.apply(dr, pOff, dz, pOff);
+		if(type == Type.TRIANGULAR && A.isSymmetric()) {
+			for(int k=pOff; k<A.offset[m+1]; k++)
+				dz[k] = -dz[k];
+		}
+		for(int i=0; i<m; i++) {
+			int off = A.offset[i];
+			int dim = A.getBlockDim(i+1);
+			if(type == Type.TRIANGULAR) {
+				//u = ri - Ci*zp
+				A.multC(i, dz, pOff, u, 0);
+				for(int k=0; k<dim; k++)
+					u[k] = dr[off+k] - u[k];
+			} else {
+				System.arraycopy(dr, off, u, 0, dim);
+			}
+			S.solveVelocity(i+1, u, w);
+			System.arraycopy(w, 0, dz, off, dim);
+		}
+	}
+}
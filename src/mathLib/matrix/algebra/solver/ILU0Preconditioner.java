@@ -0,0 +1,70 @@
+package mathLib.matrix.algebra.solver;
+
+import java.util.Arrays;
+
+import mathLib.fem.util.FutureyeException;
+import mathLib.matrix.algebra.CompressedRowMatrix;
+import mathLib.matrix.algebra.intf.AlgebraVector;
+
+/**
+ * Incomplete LU factorization with zero fill-in, ILU(0): <code>M = LU</code>
+ * where L and U have the sparsity pattern of A.
+ * <p>
+ * For a symmetric matrix the factorization is equivalent to the incomplete
+ * Cholesky factorization IC(0) (U = D L'), so it can be used with CG as well.
+ *
+ */
+public class ILU0Preconditioner extends AbstractCSRPreconditioner {
+
+	public ILU0Preconditioner(CompressedRowMatrix A) {
+		super(A);
+		factorize();
+	}
+
+	/**
+	 * IKJ variant, L (unit lower) and U are stored in place of A
+	 */
+	protected void factorize() {
+		int[] pos = new int[n];
+		Arrays.fill(pos, -1);
+		for(int i=0; i<n; i++) {
+			int begin = rowPtr[i], end = rowPtr[i+1];
+			for(int k=begin; k<end; k++)
+				pos[colIdx[k]] = k;
+			for(int k=begin; k<diagPos[i]; k++) {
+				int c = colIdx[k];
+				double lik = val[k] / val[diagPos[c]];
+				val[k] = lik;
+				for(int m=diagPos[c]+1; m<rowPtr[c+1]; m++) {
+					int p = pos[colIdx[m]];
+					if(p >= 0)
+						val[p] -= lik*val[m];
+				}
+			}
+			if(val[diagPos[i]] == 0.0)
+				throw new FutureyeException("ILU0Preconditioner: zero pivot at row "+(i+1));
+			for(int k=begin; k<end; k++)
+				pos[colIdx[k]] = -1;
+		}
+	}
+
+	@Override
+	public void apply(AlgebraVector r, AlgebraVector z) {
+		double[] rData = r.getData();
+		double[] zData = z.getData();
+		//Ly = r
+		for(int i=0; i<n; i++) {
+			double s = rData[i];
+			for(int k=rowPtr[i]; k<diagPos[i]; k++)
+				s -= val[k]*zData[colIdx[k]];
+			zData[i] = s;
+		}
+		//Uz = y
+		for(int i=n; --i>=0;) {
+			double s = zData[i];
+			for(int k=diagPos[i]+1; k<rowPtr[i+1]; k++)
+				s -= val[k]*zData[colIdx[k]];
+			zData[i] = s/val[diagPos[i]];
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package mathLib.matrix.algebra.solver;
+
+import mathLib.fem.util.FutureyeException;
+import mathLib.matrix.algebra.CompressedRowMatrix;
+import mathLib.matrix.algebra.intf.AlgebraVector;
+
+/**
+ * Jacobi (diagonal) preconditioner: <code>M = diag(A)</code>
+ *
+ */
+public class JacobiPreconditioner implements Preconditioner {
+	protected double[] invDiag;
+
+	public JacobiPreconditioner(CompressedRowMatrix A) {
+		int n = A.getRowDim();
+		int[][] colIndex = A.getColIndex();
+		double[][] data = A.getData();
+		invDiag = new double[n];
+		for(int r=0; r<n; r++) {
+			double d = 0.0;
+			for(int c=0; c<colIndex[r].length; c++) {
+				if(colIndex[r][c] == r)
+					d += data[r][c];
+			}
+			if(d == 0.0)
+				throw new FutureyeException("JacobiPreconditioner: zero diagonal at row "+(r+1));
+			invDiag[r] = 1.0/d;
+		}
+	}
+
+	@Override
+	public void apply(AlgebraVector r, AlgebraVector z) {
+		double[] rData = r.getData();
+		double[] zData = z.getData();
+		for(int i=invDiag.length; --i>=0;)
+			zData[i] = invDiag[i]*rData[i];
+	}
+}
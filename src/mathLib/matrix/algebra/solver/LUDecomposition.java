@@ -261,6 +261,9 @@ public class LUDecomposition {
 	/**
 	 * A=P*L*U
 	 * Sparse LU decomposition
+	 * <p>
+	 * No fill-reducing ordering is used, see <tt>SparseLU</tt> and <tt>SparseCholesky</tt>
+	 * for large matrices or repeated factorizations of the same pattern.
 	 *
 	 * @param A (Input) Sparse coefficient matrix
 	 * @param L (Output) Lower triangular matrix with ones on its diagonal
@@ -0,0 +1,20 @@
+package mathLib.matrix.algebra.solver;
+
+import mathLib.matrix.algebra.intf.AlgebraVector;
+
+/**
+ * Preconditioner M of the iterative solvers in <tt>Solver</tt>
+ * <p>
+ * A preconditioner is set up once for a given matrix A (usually in its constructor)
+ * and can be applied any number of times afterwards.
+ *
+ */
+public interface Preconditioner {
+	/**
+	 * Solve <code>Mz = r</code>
+	 *
+	 * @param r input, not modified
+	 * @param z output
+	 */
+	void apply(AlgebraVector r, AlgebraVector z);
+}
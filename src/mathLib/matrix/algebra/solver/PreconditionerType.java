@@ -0,0 +1,39 @@
+package mathLib.matrix.algebra.solver;
+
+import mathLib.matrix.algebra.CompressedRowMatrix;
+
+/**
+ * Preconditioners which can be built by <tt>Solver</tt> from a <tt>CompressedRowMatrix</tt>
+ *
+ */
+public enum PreconditionerType {
+	NONE,
+	JACOBI,
+	SSOR,
+	ILU0,
+	/**
+	 * Smoothed aggregation algebraic multigrid, one V-cycle
+	 */
+	AMG;
+
+	/**
+	 * Build a preconditioner of this type for matrix <tt>A</tt>
+	 *
+	 * @param A
+	 * @return null for <tt>NONE</tt>
+	 */
+	public Preconditioner create(CompressedRowMatrix A) {
+		switch(this) {
+		case JACOBI:
+			return new JacobiPreconditioner(A);
+		case SSOR:
+			return new SSORPreconditioner(A, 1.0);
+		case ILU0:
+			return new ILU0Preconditioner(A);
+		case AMG:
+			return new AMGPreconditioner(A);
+		default:
+			return null;
+		}
+	}
+}
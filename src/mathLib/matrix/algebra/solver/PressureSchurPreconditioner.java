@@ -0,0 +1,71 @@
+package mathLib.matrix.algebra.solver;
+
+import mathLib.matrix.algebra.intf.AlgebraVector;
+import mathLib.matrix.algebra.intf.SparseMatrix;
+
+/**
+ * Preconditioner of the pressure Schur complement <tt>S</tt> of the Stokes equations,
+ * <tt>M = Sh</tt> with either
+ * <ul>
+ * <li> the scaled pressure mass matrix <tt>Sh = scale*Mp</tt>, spectrally equivalent to <tt>S</tt>
+ *      independently of the mesh size (<tt>scale = 1/viscosity</tt> for the Stokes equations),
+ *      applied by its sparse Cholesky factorization
+ * <li> a diagonal approximation, e.g. <tt>SchurComplementOperator.getDiagonalApproximation()</tt>
+ * </ul>
+ * <tt>Sh</tt> is symmetric positive definite, so it can be used by CG and MINRES.
+ *
+ */
+public class PressureSchurPreconditioner implements Preconditioner {
+	protected SparseCholesky massMatrix = null;
+	protected double scale = 1.0;
+	protected double[] invDiag = null;
+
+	private double[] y;
+
+	/**
+	 * @param Mp pressure mass matrix
+	 * @param scale
+	 */
+	public PressureSchurPreconditioner(SparseMatrix Mp, double scale) {
+		this.massMatrix = new SparseCholesky();
+		this.massMatrix.factorize(Mp);
+		this.scale = scale;
+	}
+
+	/**
+	 * @param diag diagonal of <tt>Sh</tt>, entries close to zero are replaced by 1
+	 */
+	public PressureSchurPreconditioner(double[] diag) {
+		double max = 0.0;
+		for(int i=0; i<diag.length; i++)
+			max = Math.max(max, Math.abs(diag[i]));
+		invDiag = new double[diag.length];
+		for(int i=0; i<diag.length; i++)
+			invDiag[i] = Math.abs(diag[i]) <= 1e-14*max ? 1.0 : 1.0/Math.abs(diag[i]);
+	}
+
+	@Override
+	public void apply(AlgebraVector r, AlgebraVector z) {
+		double[] rData = r.getData();
+		double[] zData = z.getData();
+		apply(rData, 0, zData, 0);
+	}
+
+	/**
+	 * z[zOff...] = inv(Sh)*r[rOff...]
+	 */
+	public void apply(double[] r, int rOff, double[] z, int zOff) {
+		if(invDiag != null) {
+			for(int i=invDiag.length; --i>=0;)
+				z[zOff+i] = invDiag[i]*r[rOff+i];
+		} else {
+			int n = massMatrix.getSymbolicFactorization().getDim();
+			if(y == null)
+				y = new double[n];
+			System.arraycopy(r, rOff, y, 0, n);
+			massMatrix.solve(y, y);
+			for(int i=0; i<n; i++)
+				z[zOff+i] = y[i]/scale;
+		}
+	}
+}
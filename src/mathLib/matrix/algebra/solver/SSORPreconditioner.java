@@ -0,0 +1,49 @@
+package mathLib.matrix.algebra.solver;
+
+import mathLib.matrix.algebra.CompressedRowMatrix;
+import mathLib.matrix.algebra.intf.AlgebraVector;
+
+/**
+ * Symmetric successive over-relaxation (SSOR) preconditioner
+ * <p>
+ * <code>M = (D/w+L) (D/w)^{-1} (D/w+U) w/(2-w)</code>, where A=L+D+U.
+ * M is symmetric positive definite for SPD A and 0&lt;w&lt;2, so it can be used with CG.
+ *
+ */
+public class SSORPreconditioner extends AbstractCSRPreconditioner {
+	protected double omega;
+
+	/**
+	 *
+	 * @param A
+	 * @param omega relaxation factor, 0 &lt; omega &lt; 2 (omega=1: symmetric Gauss-Seidel)
+	 */
+	public SSORPreconditioner(CompressedRowMatrix A, double omega) {
+		super(A);
+		this.omega = omega;
+	}
+
+	@Override
+	public void apply(AlgebraVector r, AlgebraVector z) {
+		double[] rData = r.getData();
+		double[] zData = z.getData();
+		//(D/w+L) y = r
+		for(int i=0; i<n; i++) {
+			double s = rData[i];
+			for(int k=rowPtr[i]; k<diagPos[i]; k++)
+				s -= val[k]*zData[colIdx[k]];
+			zData[i] = s*omega/val[diagPos[i]];
+		}
+		//y = (D/w) y * (2-w)/w
+		double scale = (2.0-omega)/omega;
+		for(int i=0; i<n; i++)
+			zData[i] *= val[diagPos[i]]/omega*scale;
+		//(D/w+U) z = y
+		for(int i=n; --i>=0;) {
+			double s = zData[i];
+			for(int k=diagPos[i]+1; k<rowPtr[i+1]; k++)
+				s -= val[k]*zData[colIdx[k]];
+			zData[i] = s*omega/val[diagPos[i]];
+		}
+	}
+}
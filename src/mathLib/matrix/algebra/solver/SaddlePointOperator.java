@@ -0,0 +1,225 @@
+package mathLib.matrix.algebra.solver;
+
+import mathLib.fem.util.FutureyeException;
+import mathLib.matrix.algebra.FullVector;
+import mathLib.matrix.algebra.SparseBlockMatrix;
+import mathLib.matrix.algebra.SparseBlockVector;
+import mathLib.matrix.algebra.SparseMatrixCSR;
+import mathLib.matrix.algebra.SparseVectorHashMap;
+import mathLib.matrix.algebra.intf.AlgebraMatrix;
+import mathLib.matrix.algebra.intf.AlgebraVector;
+import mathLib.matrix.algebra.intf.SparseMatrix;
+import mathLib.matrix.algebra.intf.SparseVector;
+
+/**
+ * Block saddle point matrix of the Stokes (or linearized Navier-Stokes) equations as an
+ * <tt>AlgebraMatrix</tt> acting on the concatenated vector <tt>(u1,...,u_m,p)</tt>:
+ *<blockquote><pre>
+ * A = (B1   0   C1)
+ *     (0   B2   C2)
+ *     (C1' C2'  C )
+ *</pre></blockquote>
+ * with <tt>m = getRowBlockDim()-1</tt> velocity blocks and the pressure in the last block.
+ * Missing blocks are zero. The blocks are copied once into compressed rows, so the
+ * iterative solvers only do array products.
+ * <p>
+ * If <tt>setSymmetric(true)</tt>, the pressure row is multiplied by -1, which makes the matrix
+ * symmetric when <tt>Ci' = -trans(Ci)</tt> and the <tt>Bi</tt> are symmetric (Stokes), as required
+ * by MINRES. The right hand side must be transformed by <tt>negatePressure()</tt> as well.
+ *
+ */
+public class SaddlePointOperator implements AlgebraMatrix {
+	protected int nVelocity;
+	protected SparseMatrixCSR[] B;
+	protected SparseMatrixCSR[] C;
+	protected SparseMatrixCSR[] CT;
+	protected SparseMatrixCSR Cp;
+	/**
+	 * <tt>offset[i]</tt> is the position of block <tt>i</tt> (0-based) in the concatenated vector
+	 */
+	protected int[] offset;
+	protected boolean symmetric = false;
+
+	public SaddlePointOperator(SparseBlockMatrix A) {
+		int nb = A.getRowBlockDim();
+		if(nb < 2 || A.getColBlockDim() != nb)
+			throw new FutureyeException("SaddlePointOperator: "+nb+"x"+A.getColBlockDim()+" blocks");
+		nVelocity = nb - 1;
+		B = new SparseMatrixCSR[nVelocity];
+		C = new SparseMatrixCSR[nVelocity];
+		CT = new SparseMatrixCSR[nVelocity];
+		offset = new int[nb+1];
+		for(int i=0; i<nVelocity; i++) {
+			SparseMatrix Bi = A.getBlock(i+1, i+1);
+			if(Bi == null)
+				throw new FutureyeException("SaddlePointOperator: missing velocity block ("+(i+1)+","+(i+1)+")");
+			B[i] = new SparseMatrixCSR(Bi);
+			C[i] = toCSR(A.getBlock(i+1, nb));
+			CT[i] = toCSR(A.getBlock(nb, i+1));
+			offset[i+1] = offset[i] + Bi.getRowDim();
+		}
+		int np = 0;
+		for(int i=0; i<nVelocity; i++) {
+			if(C[i] != null)
+				np = Math.max(np, C[i].getColDim());
+			if(CT[i] != null)
+				np = Math.max(np, CT[i].getRowDim());
+		}
+		Cp = toCSR(A.getBlock(nb, nb));
+		if(Cp != null)
+			np = Math.max(np, Cp.getRowDim());
+		offset[nb] = offset[nVelocity] + np;
+	}
+
+	private static SparseMatrixCSR toCSR(SparseMatrix M) {
+		if(M == null)
+			return null;
+		return new SparseMatrixCSR(M);
+	}
+
+	/**
+	 * Multiply the pressure row by -1 in <tt>mult()</tt>
+	 */
+	public void setSymmetric(boolean symmetric) {
+		this.symmetric = symmetric;
+	}
+
+	public boolean isSymmetric() {
+		return symmetric;
+	}
+
+	/**
+	 * Number of velocity blocks
+	 */
+	public int getVelocityBlockDim() {
+		return nVelocity;
+	}
+
+	/**
+	 * Dimension of block <tt>i</tt>, <tt>1 <= i <= getVelocityBlockDim()+1</tt>
+	 */
+	public int getBlockDim(int i) {
+		return offset[i] - offset[i-1];
+	}
+
+	public int getPressureDim() {
+		return offset[nVelocity+1] - offset[nVelocity];
+	}
+
+	/**
+	 * y[yOff...] += a*M*x[xOff...]
+	 */
+	static void multAdd(SparseMatrixCSR M, double a, double[] x, int xOff, double[] y, int yOff) {
+		int[] rowPtr = M.getRowPointers();
+		int[] colIndex = M.getColIndices();
+		double[] data = M.getData();
+		for(int r=0; r<rowPtr.length-1; r++) {
+			double v = 0.0;
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++)
+				v += data[k]*x[xOff+colIndex[k]];
+			y[yOff+r] += a*v;
+		}
+	}
+
+	/**
+	 * y = Ci*p, <tt>i</tt> 0-based
+	 */
+	void multC(int i, double[] p, int pOff, double[] y, int yOff) {
+		for(int r=getBlockDim(i+1); --r>=0;)
+			y[yOff+r] = 0.0;
+		if(C[i] != null)
+			multAdd(C[i], 1.0, p, pOff, y, yOff);
+	}
+
+	/**
+	 * q += a*Ci'*u, <tt>i</tt> 0-based
+	 */
+	void multCTAdd(int i, double a, double[] u, int uOff, double[] q, int qOff) {
+		if(CT[i] != null)
+			multAdd(CT[i], a, u, uOff, q, qOff);
+	}
+
+	@Override
+	public void mult(AlgebraVector x, AlgebraVector y) {
+		double[] dx = x.getData();
+		double[] dy = y.getData();
+		int pOff = offset[nVelocity];
+		for(int k=offset[nVelocity+1]; --k>=0;)
+			dy[k] = 0.0;
+		for(int i=0; i<nVelocity; i++) {
+			multAdd(B[i], 1.0, dx, offset[i], dy, offset[i]);
+			if(C[i] != null)
+				multAdd(C[i], 1.0, dx, pOff, dy, offset[i]);
+			multCTAdd(i, 1.0, dx, offset[i], dy, pOff);
+		}
+		if(Cp != null)
+			multAdd(Cp, 1.0, dx, pOff, dy, pOff);
+		if(symmetric)
+			negatePressure(dy);
+	}
+
+	/**
+	 * Multiply the pressure part of a concatenated vector by -1
+	 */
+	public void negatePressure(double[] x) {
+		for(int k=offset[nVelocity]; k<offset[nVelocity+1]; k++)
+			x[k] = -x[k];
+	}
+
+	/**
+	 * Concatenate the blocks of <tt>f</tt>
+	 */
+	public FullVector concat(SparseBlockVector f) {
+		FullVector v = new FullVector(offset[nVelocity+1]);
+		double[] data = v.getData();
+		for(int i=0; i<=nVelocity; i++) {
+			SparseVector fi = f.getBlock(i+1);
+			if(fi == null)
+				continue;
+			int dim = Math.min(fi.getDim(), getBlockDim(i+1));
+			for(int k=0; k<dim; k++)
+				data[offset[i]+k] = fi.get(k+1);
+		}
+		return v;
+	}
+
+	/**
+	 * Split a concatenated vector into blocks
+	 */
+	public SparseBlockVector split(FullVector x) {
+		double[] data = x.getData();
+		SparseBlockVector rlt = new SparseBlockVector(nVelocity+1);
+		for(int i=0; i<=nVelocity; i++) {
+			double[] block = new double[getBlockDim(i+1)];
+			System.arraycopy(data, offset[i], block, 0, block.length);
+			rlt.setBlock(i+1, new SparseVectorHashMap(block));
+		}
+		return rlt;
+	}
+
+	@Override
+	public int getRowDim() {
+		return offset[nVelocity+1];
+	}
+
+	@Override
+	public int getColDim() {
+		return offset[nVelocity+1];
+	}
+
+	@Override
+	public void mult(AlgebraMatrix B, AlgebraMatrix C) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public AlgebraMatrix getTrans() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void print() {
+		System.out.println(getClass().getSimpleName()+": "+nVelocity+" velocity blocks of dimension "+
+				getBlockDim(1)+", pressure dimension "+getPressureDim());
+	}
+}
@@ -0,0 +1,201 @@
+package mathLib.matrix.algebra.solver;
+
+import mathLib.matrix.algebra.FullVector;
+import mathLib.matrix.algebra.SparseMatrixCSR;
+import mathLib.matrix.algebra.intf.AlgebraMatrix;
+import mathLib.matrix.algebra.intf.AlgebraVector;
+
+/**
+ * Matrix-free pressure Schur complement of a <tt>SaddlePointOperator</tt>
+ * <blockquote><pre>
+ * S = C - C1'*inv(B1)*C1 - C2'*inv(B2)*C2 - ...
+ * </pre></blockquote>
+ * <tt>S</tt> is never formed: <tt>mult()</tt> applies <tt>inv(Bi)</tt> with the sparse LU
+ * factorization of each velocity block, which is computed once in the constructor. So a product
+ * with <tt>S</tt> costs one pair of triangular solves per velocity block, instead of one solve per
+ * pressure unknown to form <tt>S</tt> explicitly.
+ *
+ */
+public class SchurComplementOperator implements AlgebraMatrix {
+	protected SaddlePointOperator A;
+	protected SparseLU[] invB;
+
+	private double[] u, w;
+
+	public SchurComplementOperator(SaddlePointOperator A) {
+		this.A = A;
+		int m = A.getVelocityBlockDim();
+		invB = new SparseLU[m];
+		int maxDim = 0;
+		for(int i=0; i<m; i++) {
+			invB[i] = new SparseLU();
+			//the velocity blocks of the same mesh usually share their pattern
+			if(i > 0 && invB[0].getSymbolicFactorization().matches(A.getBlockDim(i+1),
+					A.B[i].getRowPointers(), A.B[i].getColIndices()))
+				invB[i].setSymbolicFactorization(invB[0].getSymbolicFactorization());
+			invB[i].factorize(A.B[i]);
+			maxDim = Math.max(maxDim, A.getBlockDim(i+1));
+		}
+		u = new double[maxDim];
+		w = new double[maxDim];
+	}
+
+	/**
+	 * Solve <tt>Bi*x = b</tt>, <tt>i</tt> 1-based
+	 */
+	public void solveVelocity(int i, double[] b, double[] x) {
+		invB[i-1].solve(b, x);
+	}
+
+	/**
+	 * Factorization of the velocity block <tt>i</tt> (1-based)
+	 */
+	public SparseLU getVelocityFactorization(int i) {
+		return invB[i-1];
+	}
+
+	@Override
+	public void mult(AlgebraVector x, AlgebraVector y) {
+		double[] p = x.getData();
+		double[] q = y.getData();
+		int np = A.getPressureDim();
+		for(int k=0; k<np; k++)
+			q[k] = 0.0;
+		if(A.Cp != null)
+			SaddlePointOperator.multAdd(A.Cp, 1.0, p, 0, q, 0);
+		for(int i=0; i<invB.length; i++) {
+			//q -= Ci'*inv(Bi)*Ci*p
+			A.multC(i, p, 0, u, 0);
+			invB[i].solve(u, w);
+			A.multCTAdd(i, -1.0, w, 0, q, 0);
+		}
+	}
+
+	/**
+	 * Right hand side of the Schur complement system:
+	 * <tt>fp - C1'*inv(B1)*f1 - C2'*inv(B2)*f2 - ...</tt>
+	 *
+	 * @param f concatenated right hand side <tt>(f1,...,fm,fp)</tt>
+	 * @return
+	 */
+	public FullVector getRightHandSide(FullVector f) {
+		double[] df = f.getData();
+		int pOff = A.offset[invB.length];
+		FullVector rhs = new FullVector(A.getPressureDim());
+		double[] r = rhs.getData();
+		System.arraycopy(df, pOff, r, 0, r.length);
+		for(int i=0; i<invB.length; i++) {
+			System.arraycopy(df, A.offset[i], u, 0, A.getBlockDim(i+1));
+			invB[i].solve(u, w);
+			A.multCTAdd(i, -1.0, w, 0, r, 0);
+		}
+		return rhs;
+	}
+
+	/**
+	 * Velocity from the pressure: <tt>ui = inv(Bi)*(fi - Ci*p)</tt>
+	 *
+	 * @param f concatenated right hand side
+	 * @param p pressure
+	 * @return concatenated solution <tt>(u1,...,um,p)</tt>
+	 */
+	public FullVector backSubstitute(FullVector f, FullVector p) {
+		double[] df = f.getData();
+		FullVector x = new FullVector(A.getRowDim());
+		double[] dx = x.getData();
+		int pOff = A.offset[invB.length];
+		System.arraycopy(p.getData(), 0, dx, pOff, A.getPressureDim());
+		for(int i=0; i<invB.length; i++) {
+			int off = A.offset[i];
+			A.multC(i, dx, pOff, u, 0);
+			for(int k=A.getBlockDim(i+1); --k>=0;)
+				u[k] = df[off+k] - u[k];
+			invB[i].solve(u, w);
+			System.arraycopy(w, 0, dx, off, A.getBlockDim(i+1));
+		}
+		return x;
+	}
+
+	/**
+	 * Diagonal of the sparse approximation <tt>C - sum(Ci'*inv(diag(Bi))*Ci)</tt> of <tt>S</tt>
+	 * (SIMPLE), e.g. to precondition <tt>S</tt> when no pressure mass matrix is available
+	 */
+	public double[] getDiagonalApproximation() {
+		int np = A.getPressureDim();
+		double[] d = new double[np];
+		if(A.Cp != null) {
+			int[] rowPtr = A.Cp.getRowPointers();
+			int[] colIndex = A.Cp.getColIndices();
+			double[] data = A.Cp.getData();
+			for(int r=0; r<rowPtr.length-1; r++)
+				for(int k=rowPtr[r]; k<rowPtr[r+1]; k++)
+					if(colIndex[k] == r)
+						d[r] += data[k];
+		}
+		for(int i=0; i<invB.length; i++) {
+			SparseMatrixCSR Ci = A.C[i];
+			SparseMatrixCSR CTi = A.CT[i];
+			if(Ci == null || CTi == null)
+				continue;
+			double[] diagB = diagonal(A.B[i]);
+			//d[r] -= sum_j CT(r,j)*C(j,r)/B(j,j), C is read by rows
+			int[] rowPtr = Ci.getRowPointers();
+			int[] colIndex = Ci.getColIndices();
+			double[] data = Ci.getData();
+			int[] tPtr = CTi.getRowPointers();
+			int[] tCol = CTi.getColIndices();
+			double[] tData = CTi.getData();
+			for(int j=0; j<rowPtr.length-1; j++) {
+				if(diagB[j] == 0.0)
+					continue;
+				for(int k=rowPtr[j]; k<rowPtr[j+1]; k++) {
+					int r = colIndex[k];
+					if(r >= tPtr.length-1)
+						continue;
+					for(int q=tPtr[r]; q<tPtr[r+1]; q++)
+						if(tCol[q] == j)
+							d[r] -= tData[q]*data[k]/diagB[j];
+				}
+			}
+		}
+		return d;
+	}
+
+	private static double[] diagonal(SparseMatrixCSR M) {
+		int[] rowPtr = M.getRowPointers();
+		int[] colIndex = M.getColIndices();
+		double[] data = M.getData();
+		double[] d = new double[rowPtr.length-1];
+		for(int r=0; r<d.length; r++)
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++)
+				if(colIndex[k] == r)
+					d[r] += data[k];
+		return d;
+	}
+
+	@Override
+	public int getRowDim() {
+		return A.getPressureDim();
+	}
+
+	@Override
+	public int getColDim() {
+		return A.getPressureDim();
+	}
+
+	@Override
+	public void mult(AlgebraMatrix B, AlgebraMatrix C) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public AlgebraMatrix getTrans() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void print() {
+		System.out.println(getClass().getSimpleName()+": dimension "+getRowDim()+", "+
+				invB.length+" velocity factorizations");
+	}
+}
@@ -5,6 +5,9 @@
  */
 package mathLib.matrix.algebra.solver;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 import mathLib.matrix.algebra.CompressedColMatrix;
 import mathLib.matrix.algebra.CompressedRowMatrix;
 import mathLib.matrix.algebra.FullMatrix;
@@ -66,15 +69,51 @@ import mathLib.matrix.algebra.solver.external.SolverJBLAS;
  *     (C1' C2' C3' C )
  *     
  *</blockquote></pre>
+ * The system is solved according to <tt>setMethod()</tt>. By default <tt>S</tt> is not formed:
+ * the matrix-free <tt>SchurComplementOperator</tt> applies <tt>inv(Bi)</tt> by sparse LU
+ * factorizations computed once, and (6) is solved by GMRES preconditioned by the pressure
+ * mass matrix (<tt>setPressureMassMatrix()</tt>) or by a diagonal approximation of <tt>S</tt>.
+ * Alternatively the whole block system is solved by MINRES or GMRES with a block diagonal or
+ * block triangular preconditioner.
+ * 
  * @author liuyueming
  *
  */
 public class SchurComplementStokesSolver {
+	
+	public enum Method {
+		/**
+		 * <tt>S</tt> formed explicitly (one velocity solve per pressure unknown), dense LU
+		 */
+		SCHUR_DENSE,
+		/**
+		 * Matrix-free <tt>S</tt>, GMRES preconditioned by the pressure Schur preconditioner
+		 */
+		SCHUR_GMRES,
+		/**
+		 * Block system, MINRES with the block diagonal preconditioner.
+		 * The velocity blocks must be symmetric positive definite (Stokes)
+		 */
+		BLOCK_MINRES,
+		/**
+		 * Block system, GMRES with the block triangular preconditioner
+		 */
+		BLOCK_GMRES
+	}
+	
 	protected SparseBlockMatrix A;
 	protected SparseBlockVector f;
 	double init = 1.0;
 	public boolean debug = false;
 	
+	protected Method method = Method.SCHUR_GMRES;
+	protected SparseMatrix pressureMass = null;
+	protected double pressureMassScale = 1.0;
+	protected Solver solver = new Solver();
+	
+	//factorizations of the velocity blocks of invB_v(), one per block of the current solve
+	private Map<CompressedRowMatrix, SparseLU> factorizations = new IdentityHashMap<CompressedRowMatrix, SparseLU>();
+	
 	public SchurComplementStokesSolver(SparseBlockMatrix A,SparseBlockVector f) {
 		this.A = A;
 		this.f = f;
@@ -84,7 +123,34 @@ public class SchurComplementStokesSolver {
 		this.init = init;
 	}
 	
+	public void setMethod(Method method) {
+		this.method = method;
+	}
+	
+	/**
+	 * Precondition the Schur complement by <tt>scale*Mp</tt>, where <tt>Mp</tt> is the
+	 * pressure mass matrix and <tt>scale</tt> is usually <tt>1/viscosity</tt>. Without it,
+	 * <tt>diag(C - sum(Ci'*inv(diag(Bi))*Ci))</tt> is used.
+	 * 
+	 * @param Mp
+	 * @param scale
+	 */
+	public void setPressureMassMatrix(SparseMatrix Mp, double scale) {
+		this.pressureMass = Mp;
+		this.pressureMassScale = scale;
+	}
+	
+	/**
+	 * Iterative solver of the iterative methods, to set the tolerances and get the statistics
+	 */
+	public Solver getSolver() {
+		return solver;
+	}
+	
 	public SparseBlockVector solve2D() {
+		if(method != Method.SCHUR_DENSE)
+			return solveIterative();
+		
 		SparseMatrix B1 = A.getBlock(1, 1);
 		SparseMatrix B2 = A.getBlock(2, 2);
 		SparseMatrix C1 = A.getBlock(1, 3);
@@ -105,8 +171,6 @@ public class SchurComplementStokesSolver {
 //		System.out.print("f1=[");f1.print();System.out.print("]';");
 //		System.out.print("f2=[");f2.print();System.out.print("]';");
 //		System.out.print("f3=[");f3.print();System.out.print("]';");
-		B1.writeMatFile("B1.mat");
-		
 		FullVector tmp1 = null;
 		FullVector tmp2 = null;
 		FullVector rhs  = new FullVector(C1.getColDim());
@@ -119,6 +183,7 @@ public class SchurComplementStokesSolver {
 		//for Sparse LU Decomposition
 		CompressedRowMatrix BB1 = new CompressedRowMatrix(B1, false);
 		CompressedRowMatrix BB2 = new CompressedRowMatrix(B2, false);
+		factorizations.clear();
 		CompressedColMatrix CC1 = new CompressedColMatrix(C1, false);
 		CompressedColMatrix CC2 = new CompressedColMatrix(C2, false);
 		
@@ -252,6 +317,9 @@ public class SchurComplementStokesSolver {
 	 *
 	 */
 	public SparseBlockVector solve3D() {
+		if(method != Method.SCHUR_DENSE)
+			return solveIterative();
+		
 		System.out.println("Begin solve3D...");
 		long begin=0,end=0;
 		begin = System.currentTimeMillis();
@@ -287,6 +355,7 @@ public class SchurComplementStokesSolver {
 		CompressedRowMatrix BB1  = new CompressedRowMatrix(B1, false);
 		CompressedRowMatrix BB2  = new CompressedRowMatrix(B2, false);
 		CompressedRowMatrix BB3  = new CompressedRowMatrix(B3, false);
+		factorizations.clear();
 		CompressedColMatrix CC1  = new CompressedColMatrix(C1, false);
 		CompressedColMatrix CC2  = new CompressedColMatrix(C2, false);
 		CompressedColMatrix CC3  = new CompressedColMatrix(C3, false);
@@ -383,7 +452,54 @@ public class SchurComplementStokesSolver {
 	
 	
 	/**
-	 * inv(B)*v
+	 * Solve the block system with the matrix-free Schur complement or the block preconditioners,
+	 * for any number of velocity blocks
+	 * 
+	 * @return
+	 */
+	protected SparseBlockVector solveIterative() {
+		long begin=0,end=0;
+		begin = System.currentTimeMillis();
+		SaddlePointOperator op = new SaddlePointOperator(A);
+		SchurComplementOperator S = new SchurComplementOperator(op);
+		PressureSchurPreconditioner Sh = null;
+		if(pressureMass != null)
+			Sh = new PressureSchurPreconditioner(pressureMass, pressureMassScale);
+		else
+			Sh = new PressureSchurPreconditioner(S.getDiagonalApproximation());
+		end = System.currentTimeMillis();
+		if(debug)
+			System.out.println("Factorization of the velocity blocks: "+(end-begin)+"ms");
+		
+		solver.debug = this.debug;
+		FullVector ff = op.concat(f);
+		FullVector x = null;
+		switch(method) {
+		case SCHUR_GMRES:
+			FullVector rhs = S.getRightHandSide(ff);
+			FullVector p = new FullVector(rhs.getDim());
+			solver.solveGMRES(S, rhs, p, Sh);
+			x = S.backSubstitute(ff, p);
+			break;
+		case BLOCK_MINRES:
+			op.setSymmetric(true);
+			op.negatePressure(ff.getData());
+			x = new FullVector(op.getRowDim());
+			solver.solveMINRES(op, ff, x,
+					new BlockSaddlePointPreconditioner(S, Sh, BlockSaddlePointPreconditioner.Type.DIAGONAL));
+			break;
+		default:
+			x = new FullVector(op.getRowDim());
+			solver.solveGMRES(op, ff, x,
+					new BlockSaddlePointPreconditioner(S, Sh, BlockSaddlePointPreconditioner.Type.TRIANGULAR));
+		}
+		if(debug)
+			System.out.println(solver.getStatistics());
+		return op.split(x);
+	}
+	
+	/**
+	 * inv(B)*v, the sparse LU factorization of <tt>B</tt> is kept for the following calls with the same <tt>B</tt>
 	 * 
 	 * @param v
 	 * @return
@@ -395,31 +511,32 @@ public class SchurComplementStokesSolver {
 //		sov.debug = this.debug;
 //		sov.solveCGS(B, v, x);
 		
-		SolverJBLAS sov = new SolverJBLAS();
-		SparseMatrix SS2 = B.getSparseMatrix();
-		SparseVector Srhs = v.getSparseVector();
 		long begin=0,end=0;
 		begin = System.currentTimeMillis();
-		FullVector x = new FullVector(sov.solveDGESV(SS2, Srhs));
+		SparseLU lu = factorizations.get(B);
+		if(lu == null) {
+			lu = new SparseLU();
+			lu.factorize(B.getSparseMatrix());
+			factorizations.put(B, lu);
+		}
+		FullVector x = lu.solve(v);
 		end = System.currentTimeMillis();
 		System.out.println("solve inv(B)*v time="+(end-begin)+"ms");
 		return x;
 	}
 	
+	/**
+	 * inv(B)*C by the sparse LU factorization of B (AMD ordering)
+	 * @param B
+	 * @param C
+	 * @return
+	 */
 	public FullMatrix invB_C(SparseMatrix B, SparseMatrix C) {
 		long begin,end;
 		begin = System.currentTimeMillis();
-		SparseMatrixRowMajor L = new SparseMatrixRowMajor(B.getRowDim(),B.getColDim());
-		SparseMatrixRowMajor U = new SparseMatrixRowMajor(B.getRowDim(),B.getColDim());
-		SparseMatrix P = new SparseMatrixRowMajor(B.getRowDim(),B.getColDim());
-		SparseMatrix X = new SparseMatrixRowMajor(C.getRowDim(),C.getColDim());
-//		LUDecomposition.solve((SparseMatrixRowMajor)B, L, U, P, X, C);
-		LUDecomposition.LU((SparseMatrixRowMajor)B, L, U, P);
-//		FullMatrix LL = new FullMatrix(L);
-//		FullMatrix UU = new FullMatrix(U);
-		FullMatrix CC = new FullMatrix(C);
-		FullMatrix XX = new FullMatrix(X);
-		LUDecomposition.backSubstitution(L, U, P, XX, CC);
+		SparseLU lu = new SparseLU();
+		lu.factorize(B);
+		FullMatrix XX = lu.solve(new FullMatrix(C));
 		end = System.currentTimeMillis();
 		System.out.println("SparseLU Solve time="+(end-begin)+"ms");
 		return XX;
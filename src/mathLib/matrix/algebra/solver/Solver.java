@@ -28,6 +28,79 @@ public class Solver {
 
 	public boolean debug = false;
 
+	/**
+	 * Restart length m of GMRES(m)
+	 */
+	public int gmresRestart = 30;
+
+	/**
+	 * Preconditioner built by the <tt>SparseMatrix</tt> versions of the solvers
+	 */
+	public PreconditionerType preconditionerType = PreconditionerType.NONE;
+
+	/**
+	 * If true, the preconditioner built by the first <tt>SparseMatrix</tt> solve is kept and
+	 * reused by the following solves of the same dimension (e.g. time steps with a constant or
+	 * slowly changing matrix), until <tt>resetPreconditioner()</tt> is called.
+	 * For AMG the setup is usually the dominant cost.
+	 */
+	public boolean reusePreconditioner = false;
+
+	protected Preconditioner cachedPreconditioner = null;
+	protected PreconditionerType cachedType = null;
+	protected int cachedDim = -1;
+
+	protected SolverStatistics statistics = null;
+
+	/**
+	 * Statistics of the last solve: iterations, residual history and time
+	 *
+	 * @return
+	 */
+	public SolverStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Drop the preconditioner kept by <tt>reusePreconditioner</tt>
+	 */
+	public void resetPreconditioner() {
+		cachedPreconditioner = null;
+		cachedType = null;
+		cachedDim = -1;
+	}
+
+	/**
+	 * Preconditioner of type <tt>preconditionerType</tt> for <tt>A</tt>, the cached one
+	 * is returned if <tt>reusePreconditioner</tt> is set
+	 *
+	 * @param A
+	 * @return
+	 */
+	public Preconditioner getPreconditioner(CompressedRowMatrix A) {
+		if(reusePreconditioner && cachedType == preconditionerType &&
+				cachedDim == A.getRowDim())
+			return cachedPreconditioner;
+		Preconditioner M = preconditionerType.create(A);
+		if(reusePreconditioner) {
+			cachedPreconditioner = M;
+			cachedType = preconditionerType;
+			cachedDim = A.getRowDim();
+		}
+		return M;
+	}
+
+	protected boolean isConverged(double norm2, double firstNorm2) {
+		return (norm2<=this.epsRelIter*firstNorm2 && norm2<=this.epsAbsIterMax) ||
+				norm2<=this.epsAbsIterMin;
+	}
+
+	private static String methodName(String name, Preconditioner M) {
+		if(M == null)
+			return name;
+		return "P"+name+"("+M.getClass().getSimpleName().replace("Preconditioner", "")+")";
+	}
+
 	/**
 	 * Conjugate Gradients iterative method, solves
 	 * symmetric positive definite linear system:
@@ -40,12 +113,32 @@ public class Solver {
 	 */
 	public AlgebraVector solveCG(AlgebraMatrix A, AlgebraVector b,
 			AlgebraVector x) {
+		return solveCG(A, b, x, null);
+	}
+
+	/**
+	 * Preconditioned Conjugate Gradients iterative method, solves
+	 * symmetric positive definite linear system:
+	 * <tt>Ax = b</tt>
+	 * <p>
+	 * The preconditioner must be symmetric positive definite
+	 * (Jacobi, SSOR or ILU0 of a symmetric matrix)
+	 *
+	 * @param A
+	 * @param b
+	 * @param x
+	 * @param M preconditioner, null for identity
+	 * @return
+	 */
+	public AlgebraVector solveCG(AlgebraMatrix A, AlgebraVector b,
+			AlgebraVector x, Preconditioner M) {
 
 		double alpha = 0, beta = 0, rho = 0, rho_1 = 0;
+		statistics = new SolverStatistics(methodName("CG", M));
 
 		int dim = b.getDim();
 		AlgebraVector r = new FullVector(dim);
-		AlgebraVector z = new FullVector(dim);
+		AlgebraVector z = M == null ? r : new FullVector(dim);
 		AlgebraVector p = new FullVector(dim);
 		AlgebraVector q = new FullVector(dim);
 
@@ -59,8 +152,9 @@ public class Solver {
 		//for (iter.setFirst(); !iter.converged(r, x); iter.next()) {
 		for(int i=0;i<maxIter;i++) {
 			norm2 = r.norm2();
-			if((norm2<=this.epsRelIter*firstNorm2 && norm2<=this.epsAbsIterMax) ||
-					norm2<=this.epsAbsIterMin) {
+			statistics.addResidual(norm2);
+			if(isConverged(norm2, firstNorm2)) {
+				statistics.finish(i, true);
 				if(debug)
 					System.out.println(
 						String.format("Iter----->i=%05d, RError=%8.3e, AError=%8.3e",
@@ -68,10 +162,10 @@ public class Solver {
 				return x;
 			}
 
-		    //M.apply(r, z);
 			//Mz=r
-			//M：预�?�件矩阵，�?�为I,z==r
-			z=r;
+			//M: preconditioner, z==r if M==I
+			if(M != null)
+				M.apply(r, z);
 
 		    rho = r.dot(z);
 
@@ -91,6 +185,7 @@ public class Solver {
 
 		    rho_1 = rho;
 		}
+		statistics.finish((int)maxIter, false);
 		System.out.println("Iter Max----->maxIter="+maxIter+"  norm2="+norm2);
 		return x;
     }
@@ -107,8 +202,29 @@ public class Solver {
 	 */
 	public AlgebraVector solveCGS(AlgebraMatrix A, AlgebraVector b,
 			AlgebraVector x) {
+		return solveCGS(A, b, x, null);
+	}
+
+	/**
+	 * Preconditioned Conjugate Gradients squared iterative method,
+	 * solves the unsymmetric linear system
+	 * <tt>Ax = b</tt>
+	 * <p>
+	 * Convergence is decided on the true residual <tt>b-Ax</tt>: when the recursive
+	 * residual meets the tolerance but the true one does not, the iteration is restarted
+	 * from the true residual.
+	 *
+	 * @param A
+	 * @param b
+	 * @param x
+	 * @param M preconditioner, null for identity
+	 * @return
+	 */
+	public AlgebraVector solveCGS(AlgebraMatrix A, AlgebraVector b,
+			AlgebraVector x, Preconditioner M) {
 
         double rho_1 = 0, rho_2 = 0, alpha = 0, beta = 0;
+		statistics = new SolverStatistics(methodName("CGS", M));
 
 		int dim = b.getDim();
 		AlgebraVector r = new FullVector(dim);
@@ -130,31 +246,44 @@ public class Solver {
 
 		double firstNorm2 = r.norm2();
 		double norm2 = 0;
+		boolean restart = true;
 		long begin = System.currentTimeMillis(),end=0;
 		//for (iter.setFirst(); !iter.converged(r, x); iter.next()) {
 		for(int i=0;i<maxIter;i++) {
 			norm2 = r.norm2();
-			if((norm2<=this.epsRelIter*firstNorm2 && norm2<=this.epsAbsIterMax) ||
-					norm2<=this.epsAbsIterMin) {
-				if(debug) {
-					end = System.currentTimeMillis();
-					System.out.println(
-						String.format("Iter----->i=%05d, RError=%8.3e, AError=%8.3e, Time=%dms",
-								i,norm2/firstNorm2,norm2,(end-begin)));
+			statistics.addResidual(norm2);
+			if(isConverged(norm2, firstNorm2)) {
+				//the recursive residual may drift away from b-Ax, check the true residual
+				A.mult(x, r);
+				r.axpy(-1.0, b);
+				norm2 = r.norm2();
+				if(isConverged(norm2, firstNorm2)) {
+					statistics.finish(i, true);
+					if(debug) {
+						end = System.currentTimeMillis();
+						System.out.println(
+							String.format("Iter----->i=%05d, RError=%8.3e, AError=%8.3e, Time=%dms",
+									i,norm2/firstNorm2,norm2,(end-begin)));
+					}
+					return x;
 				}
-				return x;
+				//restart from the true residual
+				rtilde.set(r);
+				restart = true;
 			}
 
             rho_1 = rtilde.dot(r);
             if (rho_1 == 0) {
         		//System.out.println("Iter NotConverge maxIter="+i+"  norm2="+norm2);
             	//return x;
+				statistics.finish(i, false);
         		throw new FutureyeException("NotConverge, rho_1==0, iter="+i);
             }
 
-            if (i==0) {
+            if (restart) {
                 u.set(r);
                 p.set(u);
+                restart = false;
             } else {
                 beta = rho_1 / rho_2;
                 u.set(r).add(beta, q);
@@ -163,25 +292,342 @@ public class Solver {
             }
 
             //M.apply(p, phat);
-            phat.set(p);
+            if(M == null)
+            	phat.set(p);
+            else
+            	M.apply(p, phat);
 
             A.mult(phat, vhat);
             alpha = rho_1 / rtilde.dot(vhat);
             q.set(-alpha, vhat).add(u);
 
             //M.apply(sum.set(u).add(q), uhat);
-            uhat.set(sum.set(u).add(q));
+            if(M == null)
+            	uhat.set(sum.set(u).add(q));
+            else
+            	M.apply(sum.set(u).add(q), uhat);
             x.add(alpha, uhat);
             A.mult(uhat, qhat);
             r.add(-alpha, qhat);
 
             rho_2 = rho_1;
         }
+		statistics.finish((int)maxIter, false);
 		end = System.currentTimeMillis();
 		System.out.println("Iter Max----->maxIter="+maxIter+", Norm2="+norm2+", Time="+(end-begin));
 		return x;
     }
 
+	/**
+	 * Restarted generalized minimal residual method GMRES(m) with right preconditioning,
+	 * solves the unsymmetric linear system
+	 * <tt>Ax = b</tt>
+	 * <p>
+	 * The restart length m is given by <tt>gmresRestart</tt>. With right preconditioning
+	 * the monitored residual is the true residual <tt>b-Ax</tt>.
+	 *
+	 * @param A
+	 * @param b
+	 * @param x
+	 * @param M preconditioner, null for identity
+	 * @return
+	 */
+	public AlgebraVector solveGMRES(AlgebraMatrix A, AlgebraVector b,
+			AlgebraVector x, Preconditioner M) {
+		statistics = new SolverStatistics(methodName("GMRES("+gmresRestart+")", M));
+		int dim = b.getDim();
+		int m = Math.max(1, Math.min(gmresRestart, dim));
+
+		FullVector[] V = new FullVector[m+1];
+		for(int k=0; k<=m; k++)
+			V[k] = new FullVector(dim);
+		double[][] H = new double[m+1][m];
+		double[] cs = new double[m];
+		double[] sn = new double[m];
+		double[] g = new double[m+1];
+		double[] y = new double[m];
+		AlgebraVector r = new FullVector(dim);
+		AlgebraVector w = new FullVector(dim);
+		AlgebraVector z = new FullVector(dim);
+
+		// r = b - Ax
+		A.mult(x, r);
+		r.axpy(-1.0, b);
+		double firstNorm2 = r.norm2();
+		double norm2 = firstNorm2;
+		statistics.addResidual(norm2);
+		int iter = 0;
+		while(true) {
+			if(isConverged(norm2, firstNorm2)) {
+				statistics.finish(iter, true);
+				if(debug)
+					System.out.println(
+						String.format("Iter----->i=%05d, RError=%8.3e, AError=%8.3e",
+								iter,norm2/firstNorm2,norm2));
+				return x;
+			}
+			if(iter >= maxIter)
+				break;
+
+			double beta = norm2;
+			V[0].set(1.0/beta, r);
+			java.util.Arrays.fill(g, 0.0);
+			g[0] = beta;
+			int k = 0;
+			for(; k<m && iter<maxIter; k++) {
+				iter++;
+				// w = A*M^{-1}*v_k
+				if(M == null) {
+					A.mult(V[k], w);
+				} else {
+					M.apply(V[k], z);
+					A.mult(z, w);
+				}
+				//modified Gram-Schmidt
+				for(int j=0; j<=k; j++) {
+					H[j][k] = w.dot(V[j]);
+					w.add(-H[j][k], V[j]);
+				}
+				H[k+1][k] = w.norm2();
+				if(H[k+1][k] != 0.0)
+					V[k+1].set(1.0/H[k+1][k], w);
+				//apply previous Givens rotations to the new column
+				for(int j=0; j<k; j++) {
+					double t = cs[j]*H[j][k] + sn[j]*H[j+1][k];
+					H[j+1][k] = -sn[j]*H[j][k] + cs[j]*H[j+1][k];
+					H[j][k] = t;
+				}
+				double d = Math.hypot(H[k][k], H[k+1][k]);
+				if(d == 0.0) {
+					cs[k] = 1.0;
+					sn[k] = 0.0;
+				} else {
+					cs[k] = H[k][k]/d;
+					sn[k] = H[k+1][k]/d;
+				}
+				H[k][k] = d;
+				H[k+1][k] = 0.0;
+				g[k+1] = -sn[k]*g[k];
+				g[k] = cs[k]*g[k];
+				norm2 = Math.abs(g[k+1]);
+				statistics.addResidual(norm2);
+				if(isConverged(norm2, firstNorm2)) {
+					k++;
+					break;
+				}
+			}
+			//solve H y = g and update x = x + M^{-1} V y
+			for(int i=k; --i>=0;) {
+				double t = g[i];
+				for(int j=i+1; j<k; j++)
+					t -= H[i][j]*y[j];
+				y[i] = t/H[i][i];
+			}
+			w.set(0.0, w);
+			for(int j=0; j<k; j++)
+				w.add(y[j], V[j]);
+			if(M == null) {
+				x.add(w);
+			} else {
+				M.apply(w, z);
+				x.add(z);
+			}
+			//true residual for the restart
+			A.mult(x, r);
+			r.axpy(-1.0, b);
+			norm2 = r.norm2();
+		}
+		//not converged, e.g. the preconditioner of a previous matrix is not good enough any more,
+		//reported by getStatistics()
+		statistics.finish(iter, false);
+		if(debug)
+			System.out.println("Iter Max----->maxIter="+maxIter+"  norm2="+norm2);
+		return x;
+	}
+
+	/**
+	 * Biconjugate gradient stabilized method BiCGStab with right preconditioning,
+	 * solves the unsymmetric linear system
+	 * <tt>Ax = b</tt>
+	 *
+	 * @param A
+	 * @param b
+	 * @param x
+	 * @param M preconditioner, null for identity
+	 * @return
+	 */
+	public AlgebraVector solveBiCGStab(AlgebraMatrix A, AlgebraVector b,
+			AlgebraVector x, Preconditioner M) {
+		statistics = new SolverStatistics(methodName("BiCGStab", M));
+		double rho = 1, rho_1 = 1, alpha = 1, omega = 1, beta = 0;
+
+		int dim = b.getDim();
+		AlgebraVector r = new FullVector(dim);
+		AlgebraVector rtilde = new FullVector(dim);
+		AlgebraVector p = new FullVector(dim);
+		AlgebraVector v = new FullVector(dim);
+		AlgebraVector s = new FullVector(dim);
+		AlgebraVector t = new FullVector(dim);
+		AlgebraVector phat = M == null ? p : new FullVector(dim);
+		AlgebraVector shat = M == null ? s : new FullVector(dim);
+
+		// r = b - Ax
+		A.mult(x, r);
+		r.axpy(-1.0, b);
+		rtilde.set(r);
+
+		double firstNorm2 = r.norm2();
+		double norm2 = 0;
+		for(int i=0;i<maxIter;i++) {
+			norm2 = r.norm2();
+			statistics.addResidual(norm2);
+			if(isConverged(norm2, firstNorm2)) {
+				statistics.finish(i, true);
+				if(debug)
+					System.out.println(
+						String.format("Iter----->i=%05d, RError=%8.3e, AError=%8.3e",
+								i,norm2/firstNorm2,norm2));
+				return x;
+			}
+
+			rho = rtilde.dot(r);
+			if(rho == 0) {
+				statistics.finish(i, false);
+				throw new FutureyeException("NotConverge, rho==0, iter="+i);
+			}
+			if(i == 0) {
+				p.set(r);
+			} else {
+				beta = (rho/rho_1)*(alpha/omega);
+				// p = r + beta*(p - omega*v)
+				p.add(-omega, v).axpy(beta, r);
+			}
+			if(M != null)
+				M.apply(p, phat);
+			A.mult(phat, v);
+			alpha = rho / rtilde.dot(v);
+			// s = r - alpha*v
+			s.set(r).add(-alpha, v);
+			if(isConverged(s.norm2(), firstNorm2)) {
+				x.add(alpha, phat);
+				r.set(s);
+				continue;
+			}
+			if(M != null)
+				M.apply(s, shat);
+			A.mult(shat, t);
+			omega = t.dot(s)/t.dot(t);
+			x.add(alpha, phat).add(omega, shat);
+			// r = s - omega*t
+			r.set(s).add(-omega, t);
+			if(omega == 0) {
+				statistics.finish(i, false);
+				throw new FutureyeException("NotConverge, omega==0, iter="+i);
+			}
+			rho_1 = rho;
+		}
+		statistics.finish((int)maxIter, false);
+		System.out.println("Iter Max----->maxIter="+maxIter+"  norm2="+norm2);
+		return x;
+	}
+
+	/**
+	 * Preconditioned minimal residual method MINRES, solves the symmetric
+	 * (possibly indefinite, e.g. saddle point) linear system
+	 * <tt>Ax = b</tt>
+	 * <p>
+	 * The preconditioner must be symmetric positive definite. The monitored residual
+	 * is the <tt>inv(M)</tt>-norm of <tt>b-Ax</tt>, which is computed by the recurrence
+	 * without any extra product.
+	 *
+	 * @param A
+	 * @param b
+	 * @param x
+	 * @param M preconditioner, null for identity
+	 * @return
+	 */
+	public AlgebraVector solveMINRES(AlgebraMatrix A, AlgebraVector b,
+			AlgebraVector x, Preconditioner M) {
+		statistics = new SolverStatistics(methodName("MINRES", M));
+		int dim = b.getDim();
+		AlgebraVector vOld = new FullVector(dim);
+		AlgebraVector v = new FullVector(dim);
+		AlgebraVector vNew = new FullVector(dim);
+		AlgebraVector z = new FullVector(dim);
+		AlgebraVector zNew = M == null ? vNew : new FullVector(dim);
+		AlgebraVector wOld = new FullVector(dim);
+		AlgebraVector w = new FullVector(dim);
+		AlgebraVector wNew = new FullVector(dim);
+
+		// v = b - Ax, z = inv(M)*v
+		A.mult(x, v);
+		v.axpy(-1.0, b);
+		if(M == null)
+			z.set(v);
+		else
+			M.apply(v, z);
+		double gamma = Math.sqrt(z.dot(v));
+		double gammaOld = 1.0;
+		double eta = gamma;
+		double sOld = 0.0, s = 0.0, cOld = 1.0, c = 1.0;
+		double firstNorm2 = gamma;
+		double norm2 = gamma;
+		statistics.addResidual(norm2);
+		for(int i=0;i<maxIter;i++) {
+			if(isConverged(norm2, firstNorm2)) {
+				statistics.finish(i, true);
+				if(debug)
+					System.out.println(
+						String.format("Iter----->i=%05d, RError=%8.3e, AError=%8.3e",
+								i,norm2/firstNorm2,norm2));
+				return x;
+			}
+			//Lanczos step
+			z.scale(1.0/gamma);
+			A.mult(z, vNew);
+			double delta = vNew.dot(z);
+			vNew.add(-delta/gamma, v).add(-gamma/gammaOld, vOld);
+			if(M != null)
+				M.apply(vNew, zNew);
+			double gammaNew = Math.sqrt(Math.max(zNew.dot(vNew), 0.0));
+
+			//QR factorization of the tridiagonal matrix by Givens rotations
+			double alpha0 = c*delta - cOld*s*gamma;
+			double alpha1 = Math.hypot(alpha0, gammaNew);
+			double alpha2 = s*delta + cOld*c*gamma;
+			double alpha3 = sOld*gamma;
+			if(alpha1 == 0.0) {
+				statistics.finish(i, false);
+				throw new FutureyeException("NotConverge, MINRES breakdown, iter="+i);
+			}
+			double cNew = alpha0/alpha1;
+			double sNew = gammaNew/alpha1;
+
+			// w = (z - alpha3*wOld - alpha2*w)/alpha1
+			wNew.set(z).add(-alpha3, wOld).add(-alpha2, w).scale(1.0/alpha1);
+			x.add(cNew*eta, wNew);
+			eta = -sNew*eta;
+			norm2 = Math.abs(eta);
+			statistics.addResidual(norm2);
+
+			AlgebraVector t = vOld; vOld = v; v = vNew; vNew = t;
+			t = wOld; wOld = w; w = wNew; wNew = t;
+			if(M == null) {
+				zNew = vNew;
+				z.set(v);
+			} else {
+				t = z; z = zNew; zNew = t;
+			}
+			gammaOld = gamma;
+			gamma = gammaNew;
+			cOld = c; c = cNew;
+			sOld = s; s = sNew;
+		}
+		statistics.finish((int)maxIter, false);
+		System.out.println("Iter Max----->maxIter="+maxIter+"  norm2="+norm2);
+		return x;
+	}
+
 	/////////////////////////////////////////////////////////////
 
 	public Vector solveCG(SparseMatrix A, Vector b, Vector x) {
@@ -190,10 +636,10 @@ public class Solver {
 			throw new FutureyeException(
 					"ERROR: Solver.solver() m.dim!=v.dim ");
 		}
-		AlgebraMatrix algStiff = new CompressedRowMatrix(A,false);
+		CompressedRowMatrix algStiff = new CompressedRowMatrix(A,false);
 		FullVector algLoad = new FullVector(b);
 		FullVector algU = new FullVector(x);
-		solveCG(algStiff, algLoad, algU);
+		solveCG(algStiff, algLoad, algU, getPreconditioner(algStiff));
 		double[] data = algU.getData();
 		for(int i=0;i<data.length;i++) {
 			x.set(i+1, data[i]);
@@ -206,6 +652,51 @@ public class Solver {
 		return solveCG(A,b,x);
 	}
 
+	/**
+	 * GMRES(m) on a sparse matrix, the preconditioner is given by <tt>preconditionerType</tt>
+	 *
+	 * @param A
+	 * @param b
+	 * @param x initial guess and solution
+	 * @return
+	 */
+	public <Vec extends Vector> Vec solveGMRES(SparseMatrix A, Vec b, Vec x) {
+		return solveSparse(A, b, x, true);
+	}
+
+	/**
+	 * BiCGStab on a sparse matrix, the preconditioner is given by <tt>preconditionerType</tt>
+	 *
+	 * @param A
+	 * @param b
+	 * @param x initial guess and solution
+	 * @return
+	 */
+	public <Vec extends Vector> Vec solveBiCGStab(SparseMatrix A, Vec b, Vec x) {
+		return solveSparse(A, b, x, false);
+	}
+
+	private <Vec extends Vector> Vec solveSparse(SparseMatrix A, Vec b, Vec x, boolean gmres) {
+		if( !( A.getRowDim() == A.getColDim() &&
+				A.getRowDim() == b.getDim()) ) {
+			throw new FutureyeException(
+					"ERROR: Solver.solver() m.dim!=v.dim ");
+		}
+		CompressedRowMatrix algStiff = new CompressedRowMatrix(A,false);
+		FullVector algLoad = new FullVector(b);
+		FullVector algU = new FullVector(x);
+		Preconditioner M = getPreconditioner(algStiff);
+		if(gmres)
+			solveGMRES(algStiff, algLoad, algU, M);
+		else
+			solveBiCGStab(algStiff, algLoad, algU, M);
+		double[] data = algU.getData();
+		for(int i=0;i<data.length;i++) {
+			x.set(i+1, data[i]);
+		}
+		return x;
+	}
+
 	/**
 	 *
 	 * @param A
@@ -226,10 +717,10 @@ public class Solver {
 					"ERROR: Solver.solver() m.dim!=v.dim ");
 		}
 		//CGS
-		AlgebraMatrix algStiff = new CompressedRowMatrix(A,false);
+		CompressedRowMatrix algStiff = new CompressedRowMatrix(A,false);
 		FullVector algLoad = new FullVector(b);
 		FullVector algU = new FullVector(x);
-		solveCGS(algStiff, algLoad, algU);
+		solveCGS(algStiff, algLoad, algU, getPreconditioner(algStiff));
 		double[] data = algU.getData();
 		for(int i=0;i<data.length;i++) {
 			x.set(i+1, data[i]);
@@ -0,0 +1,73 @@
+package mathLib.matrix.algebra.solver;
+
+import java.util.Arrays;
+
+/**
+ * Report of an iterative solve: number of iterations, residual history and time
+ *
+ */
+public class SolverStatistics {
+	protected String method;
+	protected int iterations = 0;
+	protected boolean converged = false;
+	protected long timeNanos = 0;
+	protected double[] residuals = new double[16];
+	protected int nResiduals = 0;
+	protected long begin;
+
+	public SolverStatistics(String method) {
+		this.method = method;
+		this.begin = System.nanoTime();
+	}
+
+	void addResidual(double norm2) {
+		if(nResiduals == residuals.length)
+			residuals = Arrays.copyOf(residuals, 2*nResiduals);
+		residuals[nResiduals++] = norm2;
+	}
+
+	void finish(int iterations, boolean converged) {
+		this.iterations = iterations;
+		this.converged = converged;
+		this.timeNanos = System.nanoTime() - begin;
+	}
+
+	/**
+	 * Name of the method, e.g. "PCG(ILU0)"
+	 */
+	public String getMethod() {
+		return method;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	public boolean isConverged() {
+		return converged;
+	}
+
+	/**
+	 * Wall time of the solve in milliseconds, preconditioner setup excluded
+	 */
+	public double getTimeMillis() {
+		return timeNanos*1e-6;
+	}
+
+	/**
+	 * 2-norm of the residual, starting with the initial residual
+	 */
+	public double[] getResidualHistory() {
+		return Arrays.copyOf(residuals, nResiduals);
+	}
+
+	public double getFinalResidual() {
+		return nResiduals == 0 ? Double.NaN : residuals[nResiduals-1];
+	}
+
+	public String toString() {
+		return String.format("%s: %s, iter=%d, residual=%8.3e, time=%.1fms",
+				method, converged?"converged":"NOT converged", iterations,
+				getFinalResidual(), getTimeMillis());
+	}
+}
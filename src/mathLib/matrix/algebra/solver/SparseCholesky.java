@@ -0,0 +1,121 @@
+package mathLib.matrix.algebra.solver;
+
+import java.util.Arrays;
+
+import mathLib.fem.util.FutureyeException;
+import mathLib.matrix.algebra.solver.SparseSymbolicFactorization.Ordering;
+
+/**
+ * Sparse Cholesky factorization <tt>P*A*P' = L*L'</tt> of a symmetric positive definite matrix.
+ * <p>
+ * Both triangles of <tt>A</tt> must be stored (as assembled by the FEM classes), only the
+ * entries below the diagonal of <tt>P*A*P'</tt> are read. The numeric phase is left-looking: column
+ * <tt>j</tt> of <tt>L</tt> is computed from the columns <tt>k</tt> with <tt>L(j,k) != 0</tt>,
+ * which are kept in linked lists indexed by their next row, in a dense work vector
+ * scattered on the pattern given by the symbolic factorization.
+ *
+ */
+public class SparseCholesky extends SparseDirectSolver {
+	//strictly lower part of L with the pattern of the symbolic factorization, diagonal in diagL
+	protected double[] valL;
+	protected double[] diagL;
+
+	private double[] x;
+	private int[] head;
+	private int[] link;
+	private int[] first;
+
+	public SparseCholesky() {
+	}
+
+	public SparseCholesky(Ordering ordering) {
+		this.ordering = ordering;
+	}
+
+	@Override
+	protected void allocate() {
+		valL = new double[symbolic.colPtrL[n]];
+		diagL = new double[n];
+		x = new double[n];
+		head = new int[n];
+		link = new int[n];
+		first = new int[n];
+	}
+
+	@Override
+	protected void numeric(double[] data) {
+		int[] Lp = symbolic.colPtrL;
+		int[] Li = symbolic.rowIdxL;
+		int[] lowPtr = symbolic.lowPtr;
+		int[] lowRow = symbolic.lowRow;
+		int[] lowSrc = symbolic.lowSrc;
+		int[] diagSrc = symbolic.diagSrc;
+		Arrays.fill(head, -1);
+
+		for(int j=0; j<n; j++) {
+			//x = A(j:n,j)
+			x[j] = diagSrc[j] < 0 ? 0.0 : data[diagSrc[j]];
+			for(int q=lowPtr[j]; q<lowPtr[j+1]; q++)
+				x[lowRow[q]] += data[lowSrc[q]];
+
+			//x -= L(j:n,k)*L(j,k) for the columns k with L(j,k) != 0
+			int k = head[j];
+			head[j] = -1;
+			while(k != -1) {
+				int nextK = link[k];
+				int p = first[k];
+				double ljk = valL[p];
+				x[j] -= ljk*ljk;
+				int end = Lp[k+1];
+				for(int q=p+1; q<end; q++)
+					x[Li[q]] -= valL[q]*ljk;
+				if(++p < end) {
+					first[k] = p;
+					int r = Li[p];
+					link[k] = head[r];
+					head[r] = k;
+				}
+				k = nextK;
+			}
+
+			double d = x[j];
+			if(!(d > 0.0))
+				throw new FutureyeException("SparseCholesky: matrix is not positive definite at row "+(symbolic.perm[j]+1));
+			d = Math.sqrt(d);
+			diagL[j] = d;
+			x[j] = 0.0;
+			for(int q=Lp[j]; q<Lp[j+1]; q++) {
+				int r = Li[q];
+				valL[q] = x[r]/d;
+				x[r] = 0.0;
+			}
+			if(Lp[j] < Lp[j+1]) {
+				first[j] = Lp[j];
+				int r = Li[Lp[j]];
+				link[j] = head[r];
+				head[r] = j;
+			}
+		}
+	}
+
+	@Override
+	protected void solvePermuted(double[] y) {
+		int[] Lp = symbolic.colPtrL;
+		int[] Li = symbolic.rowIdxL;
+		//L*z = y
+		for(int j=0; j<n; j++) {
+			double yj = y[j]/diagL[j];
+			y[j] = yj;
+			if(yj != 0.0)
+				for(int q=Lp[j]; q<Lp[j+1]; q++)
+					y[Li[q]] -= valL[q]*yj;
+		}
+		//L'*y = z
+		for(int j=n; --j>=0;) {
+			double s = y[j];
+			for(int q=Lp[j]; q<Lp[j+1]; q++)
+				s -= valL[q]*y[Li[q]];
+			y[j] = s/diagL[j];
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package mathLib.matrix.algebra.solver;
+
+import mathLib.fem.util.FutureyeException;
+import mathLib.matrix.algebra.FullMatrix;
+import mathLib.matrix.algebra.FullVector;
+import mathLib.matrix.algebra.SparseMatrixCSR;
+import mathLib.matrix.algebra.intf.SparseMatrix;
+import mathLib.matrix.algebra.solver.SparseSymbolicFactorization.Ordering;
+
+/**
+ * Base class of the sparse direct solvers: the symbolic factorization is computed by the
+ * first call of <tt>factorize()</tt> and reused as long as the sparsity pattern of the
+ * matrix does not change, so that factorizing again a matrix with new values only costs
+ * the numeric phase.
+ * <p>
+ * Usage:
+ * <blockquote><pre>
+ * SparseLU lu = new SparseLU();
+ * for(...) {
+ *     //same pattern, new values
+ *     lu.factorize(A);
+ *     lu.solve(b, x);
+ * }
+ * </pre></blockquote>
+ *
+ */
+public abstract class SparseDirectSolver {
+	protected Ordering ordering = Ordering.AMD;
+	protected SparseSymbolicFactorization symbolic = null;
+	protected int n = 0;
+
+	protected int numSymbolic = 0;
+	protected int numNumeric = 0;
+
+	private double[] work;
+
+	public void setOrdering(Ordering ordering) {
+		this.ordering = ordering;
+		this.symbolic = null;
+	}
+
+	/**
+	 * Use an existing symbolic factorization, e.g. shared by several solvers
+	 */
+	public void setSymbolicFactorization(SparseSymbolicFactorization symbolic) {
+		this.symbolic = symbolic;
+		this.n = symbolic.n;
+		allocate();
+	}
+
+	public SparseSymbolicFactorization getSymbolicFactorization() {
+		return symbolic;
+	}
+
+	public void factorize(SparseMatrixCSR A) {
+		if(A.getRowDim() != A.getColDim())
+			throw new FutureyeException(getClass().getSimpleName()+": matrix is not square "+A.getRowDim()+"x"+A.getColDim());
+		factorize(A.getRowDim(), A.getRowPointers(), A.getColIndices(), A.getData());
+	}
+
+	public void factorize(SparseMatrix A) {
+		factorize(A instanceof SparseMatrixCSR ? (SparseMatrixCSR)A : new SparseMatrixCSR(A));
+	}
+
+	/**
+	 * Factorize the matrix given by its CSR arrays (0-based indices). The symbolic factorization
+	 * is only computed again if the pattern differs from the one of the previous call.
+	 *
+	 * @param n
+	 * @param rowPtr
+	 * @param colIndex
+	 * @param data
+	 */
+	public void factorize(int n, int[] rowPtr, int[] colIndex, double[] data) {
+		if(symbolic == null || !symbolic.matches(n, rowPtr, colIndex)) {
+			symbolic = new SparseSymbolicFactorization(n, rowPtr, colIndex, ordering);
+			this.n = n;
+			numSymbolic++;
+			allocate();
+		}
+		numeric(data);
+		numNumeric++;
+	}
+
+	/**
+	 * Allocate the numeric factors for the current symbolic factorization
+	 */
+	protected abstract void allocate();
+
+	protected abstract void numeric(double[] data);
+
+	/**
+	 * Solve with the factors of <tt>P*A*P'</tt>, <tt>y</tt> is overwritten by the solution
+	 */
+	protected abstract void solvePermuted(double[] y);
+
+	/**
+	 * Solve <tt>A*x=b</tt> with the last factorization, <tt>x</tt> and <tt>b</tt> may be the same array
+	 */
+	public void solve(double[] b, double[] x) {
+		if(numNumeric == 0)
+			throw new FutureyeException(getClass().getSimpleName()+": factorize() must be called before solve()");
+		if(work == null || work.length != n)
+			work = new double[n];
+		int[] perm = symbolic.perm;
+		for(int k=0; k<n; k++)
+			work[k] = b[perm[k]];
+		solvePermuted(work);
+		for(int k=0; k<n; k++)
+			x[perm[k]] = work[k];
+	}
+
+	public FullVector solve(FullVector b) {
+		FullVector x = new FullVector(b.getDim());
+		solve(b.getData(), x.getData());
+		return x;
+	}
+
+	/**
+	 * Solve <tt>A*X=B</tt> column by column
+	 */
+	public FullMatrix solve(FullMatrix B) {
+		int nCol = B.getColDim();
+		double[][] dB = B.getData();
+		FullMatrix X = new FullMatrix(B.getRowDim(), nCol);
+		double[][] dX = X.getData();
+		double[] col = new double[n];
+		for(int c=0; c<nCol; c++) {
+			for(int r=0; r<n; r++)
+				col[r] = dB[r][c];
+			solve(col, col);
+			for(int r=0; r<n; r++)
+				dX[r][c] = col[r];
+		}
+		return X;
+	}
+
+	public int getNumberOfSymbolicFactorizations() {
+		return numSymbolic;
+	}
+
+	public int getNumberOfNumericFactorizations() {
+		return numNumeric;
+	}
+}
@@ -0,0 +1,202 @@
+package mathLib.matrix.algebra.solver;
+
+import java.util.Arrays;
+
+import mathLib.fem.util.FutureyeException;
+import mathLib.matrix.algebra.solver.SparseSymbolicFactorization.Ordering;
+
+/**
+ * Sparse LU factorization <tt>P*A*P' = L*U</tt> of a matrix with a (nearly) symmetric pattern,
+ * such as FEM or method-of-lines matrices.
+ * <p>
+ * <tt>L</tt> (unit lower) and <tt>U'</tt> have the pattern of the Cholesky factor of
+ * <tt>A+A'</tt> given by the symbolic factorization. The pivots are taken on the diagonal
+ * (static pivoting, as PARDISO), so the symbolic factorization does not depend on the
+ * values and is reused. A pivot smaller than <tt>pivotTolerance*max|A|</tt> is replaced by
+ * <tt>+-pivotTolerance*max|A|</tt>, in which case <tt>solve()</tt> applies steps of iterative
+ * refinement. Column <tt>j</tt> of <tt>L</tt> and row <tt>j</tt> of <tt>U</tt> are computed
+ * together (left-looking) from the previous columns <tt>k</tt> with <tt>L(j,k) != 0</tt>.
+ *
+ */
+public class SparseLU extends SparseDirectSolver {
+	//L (strictly lower by columns) and U (strictly upper by rows) with the pattern of the
+	//symbolic factorization: U(j,i) is stored at the position of L(i,j)
+	protected double[] valL;
+	protected double[] valU;
+	protected double[] diagU;
+
+	protected double pivotTolerance = 1e-13;
+	protected int refinementSteps = 2;
+	protected int numPerturbedPivots = 0;
+
+	//copy of the values of A for the iterative refinement
+	private double[] dataA;
+
+	private double[] xL, xU;
+	private int[] head, link, first;
+	private double[] r, dx;
+
+	public SparseLU() {
+	}
+
+	public SparseLU(Ordering ordering) {
+		this.ordering = ordering;
+	}
+
+	/**
+	 * Relative size of the smallest pivot, 0 to fail on zero pivots
+	 */
+	public void setPivotTolerance(double pivotTolerance) {
+		this.pivotTolerance = pivotTolerance;
+	}
+
+	/**
+	 * Number of steps of iterative refinement when pivots have been perturbed
+	 */
+	public void setRefinementSteps(int refinementSteps) {
+		this.refinementSteps = refinementSteps;
+	}
+
+	/**
+	 * Number of pivots of the last factorization replaced by <tt>+-pivotTolerance*max|A|</tt>
+	 */
+	public int getNumberOfPerturbedPivots() {
+		return numPerturbedPivots;
+	}
+
+	@Override
+	protected void allocate() {
+		int nnz = symbolic.colPtrL[n];
+		valL = new double[nnz];
+		valU = new double[nnz];
+		diagU = new double[n];
+		xL = new double[n];
+		xU = new double[n];
+		head = new int[n];
+		link = new int[n];
+		first = new int[n];
+		r = new double[n];
+		dx = new double[n];
+	}
+
+	@Override
+	protected void numeric(double[] data) {
+		int[] Lp = symbolic.colPtrL;
+		int[] Li = symbolic.rowIdxL;
+		int[] lowPtr = symbolic.lowPtr, lowRow = symbolic.lowRow, lowSrc = symbolic.lowSrc;
+		int[] upPtr = symbolic.upPtr, upCol = symbolic.upCol, upSrc = symbolic.upSrc;
+		int[] diagSrc = symbolic.diagSrc;
+		int nnzA = symbolic.rowPtr[n];
+		if(dataA == null || dataA.length != nnzA)
+			dataA = new double[nnzA];
+		System.arraycopy(data, 0, dataA, 0, nnzA);
+		double maxA = 0.0;
+		for(int k=0; k<nnzA; k++)
+			maxA = Math.max(maxA, Math.abs(data[k]));
+		double tiny = pivotTolerance*maxA;
+		numPerturbedPivots = 0;
+		Arrays.fill(head, -1);
+
+		for(int j=0; j<n; j++) {
+			//xL = A(j+1:n,j), xU = A(j,j:n)
+			xU[j] = diagSrc[j] < 0 ? 0.0 : data[diagSrc[j]];
+			for(int q=lowPtr[j]; q<lowPtr[j+1]; q++)
+				xL[lowRow[q]] = data[lowSrc[q]];
+			for(int q=upPtr[j]; q<upPtr[j+1]; q++)
+				xU[upCol[q]] = data[upSrc[q]];
+
+			//xL -= L(j+1:n,k)*U(k,j), xU -= L(j,k)*U(k,j:n) for the columns k with L(j,k) != 0
+			int k = head[j];
+			head[j] = -1;
+			while(k != -1) {
+				int nextK = link[k];
+				int p = first[k];
+				double ljk = valL[p];
+				double ukj = valU[p];
+				xU[j] -= ljk*ukj;
+				int end = Lp[k+1];
+				for(int q=p+1; q<end; q++) {
+					int i = Li[q];
+					xL[i] -= valL[q]*ukj;
+					xU[i] -= ljk*valU[q];
+				}
+				if(++p < end) {
+					first[k] = p;
+					int row = Li[p];
+					link[k] = head[row];
+					head[row] = k;
+				}
+				k = nextK;
+			}
+
+			double piv = xU[j];
+			if(Math.abs(piv) <= tiny) {
+				if(tiny == 0.0)
+					throw new FutureyeException("SparseLU: zero pivot at row "+(symbolic.perm[j]+1));
+				piv = piv >= 0.0 ? tiny : -tiny;
+				numPerturbedPivots++;
+			}
+			diagU[j] = piv;
+			xU[j] = 0.0;
+			for(int q=Lp[j]; q<Lp[j+1]; q++) {
+				int i = Li[q];
+				valL[q] = xL[i]/piv;
+				valU[q] = xU[i];
+				xL[i] = 0.0;
+				xU[i] = 0.0;
+			}
+			if(Lp[j] < Lp[j+1]) {
+				first[j] = Lp[j];
+				int row = Li[Lp[j]];
+				link[j] = head[row];
+				head[row] = j;
+			}
+		}
+	}
+
+	@Override
+	protected void solvePermuted(double[] y) {
+		int[] Lp = symbolic.colPtrL;
+		int[] Li = symbolic.rowIdxL;
+		//L*z = y
+		for(int j=0; j<n; j++) {
+			double yj = y[j];
+			if(yj != 0.0)
+				for(int q=Lp[j]; q<Lp[j+1]; q++)
+					y[Li[q]] -= valL[q]*yj;
+		}
+		//U*y = z
+		for(int j=n; --j>=0;) {
+			double s = y[j];
+			for(int q=Lp[j]; q<Lp[j+1]; q++)
+				s -= valU[q]*y[Li[q]];
+			y[j] = s/diagU[j];
+		}
+	}
+
+	/**
+	 * Solve <tt>A*x=b</tt>, with iterative refinement if pivots have been perturbed
+	 */
+	@Override
+	public void solve(double[] b, double[] x) {
+		if(numPerturbedPivots == 0 || refinementSteps <= 0) {
+			super.solve(b, x);
+			return;
+		}
+		double[] rhs = b == x ? b.clone() : b;
+		super.solve(rhs, x);
+		int[] rowPtr = symbolic.rowPtr;
+		int[] colIndex = symbolic.colIndex;
+		for(int step=0; step<refinementSteps; step++) {
+			for(int i=0; i<n; i++) {
+				double s = rhs[i];
+				for(int k=rowPtr[i]; k<rowPtr[i+1]; k++)
+					s -= dataA[k]*x[colIndex[k]];
+				r[i] = s;
+			}
+			super.solve(r, dx);
+			for(int i=0; i<n; i++)
+				x[i] += dx[i];
+		}
+	}
+}
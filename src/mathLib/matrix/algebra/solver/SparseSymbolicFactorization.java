@@ -0,0 +1,255 @@
+package mathLib.matrix.algebra.solver;
+
+import java.util.Arrays;
+
+import mathLib.fem.util.FutureyeException;
+
+/**
+ * Symbolic phase of the sparse direct solvers <tt>SparseCholesky</tt> and <tt>SparseLU</tt>:
+ * fill-reducing ordering of the pattern of <tt>A+A'</tt>, elimination tree, and pattern of the
+ * factor <tt>L</tt> of <tt>P*A*P'</tt>, computed from the row subtrees of the elimination tree
+ * in <tt>O(nnz(L))</tt>.
+ * <p>
+ * It only depends on the sparsity pattern of <tt>A</tt> (CSR arrays with 0-based indices), so
+ * it is computed once and reused by the numeric factorizations of all the matrices with the
+ * same pattern, e.g. at every time step.
+ *
+ */
+public class SparseSymbolicFactorization {
+
+	public enum Ordering { NATURAL, AMD }
+
+	protected int n;
+	//pattern of A, to check if the factorization can be reused
+	protected int[] rowPtr;
+	protected int[] colIndex;
+
+	/**
+	 * <tt>perm[k]</tt> is the row/column of <tt>A</tt> at position <tt>k</tt>, <tt>invPerm</tt> its inverse
+	 */
+	protected int[] perm;
+	protected int[] invPerm;
+	/**
+	 * Elimination tree, -1 for the roots
+	 */
+	protected int[] parent;
+
+	/**
+	 * Pattern of the strictly lower part of <tt>L</tt> by columns, row indices are sorted
+	 */
+	protected int[] colPtrL;
+	protected int[] rowIdxL;
+
+	/**
+	 * Entries of <tt>A</tt> in the permuted matrix: <tt>lowSrc</tt> are the positions in the
+	 * CSR data of the entries below the diagonal, by columns of <tt>P*A*P'</tt> (rows in
+	 * <tt>lowRow</tt>), <tt>upSrc</tt> the ones above the diagonal by rows (columns in
+	 * <tt>upCol</tt>), <tt>diagSrc</tt> the diagonal (-1 if missing)
+	 */
+	protected int[] lowPtr, lowRow, lowSrc;
+	protected int[] upPtr, upCol, upSrc;
+	protected int[] diagSrc;
+
+	public SparseSymbolicFactorization(int n, int[] rowPtr, int[] colIndex, Ordering ordering) {
+		this.n = n;
+		this.rowPtr = rowPtr.clone();
+		this.colIndex = Arrays.copyOf(colIndex, rowPtr[n]);
+		for(int k=0; k<rowPtr[n]; k++)
+			if(colIndex[k] < 0 || colIndex[k] >= n)
+				throw new FutureyeException("SparseSymbolicFactorization: column index "+(colIndex[k]+1)+" out of a square matrix of dimension "+n);
+
+		//pattern of A+A' without the diagonal
+		int[] adjPtr = new int[n+1];
+		for(int r=0; r<n; r++) {
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++) {
+				int c = colIndex[k];
+				if(c != r) {
+					adjPtr[r+1]++;
+					adjPtr[c+1]++;
+				}
+			}
+		}
+		for(int r=0; r<n; r++)
+			adjPtr[r+1] += adjPtr[r];
+		int[] adjIdx = new int[adjPtr[n]];
+		int[] pos = Arrays.copyOf(adjPtr, n);
+		for(int r=0; r<n; r++) {
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++) {
+				int c = colIndex[k];
+				if(c != r) {
+					adjIdx[pos[r]++] = c;
+					adjIdx[pos[c]++] = r;
+				}
+			}
+		}
+		//remove the duplicates of symmetric entries
+		int[] mark = new int[n];
+		Arrays.fill(mark, -1);
+		int nnz = 0;
+		for(int r=0; r<n; r++) {
+			int begin = adjPtr[r];
+			adjPtr[r] = nnz;
+			for(int k=begin; k<pos[r]; k++) {
+				int c = adjIdx[k];
+				if(mark[c] != r) {
+					mark[c] = r;
+					adjIdx[nnz++] = c;
+				}
+			}
+		}
+		adjPtr[n] = nnz;
+
+		if(ordering == Ordering.AMD) {
+			perm = AMDOrdering.order(n, adjPtr, adjIdx);
+		} else {
+			perm = new int[n];
+			for(int k=0; k<n; k++)
+				perm[k] = k;
+		}
+		invPerm = new int[n];
+		for(int k=0; k<n; k++)
+			invPerm[perm[k]] = k;
+
+		eliminationTree(adjPtr, adjIdx);
+		patternL(adjPtr, adjIdx);
+		mapEntries();
+	}
+
+	private void eliminationTree(int[] adjPtr, int[] adjIdx) {
+		parent = new int[n];
+		int[] ancestor = new int[n];
+		for(int k=0; k<n; k++) {
+			parent[k] = -1;
+			ancestor[k] = -1;
+			int row = perm[k];
+			for(int q=adjPtr[row]; q<adjPtr[row+1]; q++) {
+				//follow the path from i to the root of its subtree, with path compression
+				int i = invPerm[adjIdx[q]];
+				while(i != -1 && i < k) {
+					int next = ancestor[i];
+					ancestor[i] = k;
+					if(next == -1)
+						parent[i] = k;
+					i = next;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The pattern of row <tt>k</tt> of <tt>L</tt> is the subtree of the elimination tree made of
+	 * the paths from the entries <tt>A(k,i), i < k</tt>, up to <tt>k</tt>
+	 */
+	private void patternL(int[] adjPtr, int[] adjIdx) {
+		int[] flag = new int[n];
+		int[] count = new int[n];
+		for(int pass=0; pass<2; pass++) {
+			Arrays.fill(flag, -1);
+			if(pass == 1) {
+				colPtrL = new int[n+1];
+				for(int j=0; j<n; j++)
+					colPtrL[j+1] = colPtrL[j] + count[j];
+				rowIdxL = new int[colPtrL[n]];
+				System.arraycopy(colPtrL, 0, count, 0, n);
+			}
+			for(int k=0; k<n; k++) {
+				flag[k] = k;
+				int row = perm[k];
+				for(int q=adjPtr[row]; q<adjPtr[row+1]; q++) {
+					int i = invPerm[adjIdx[q]];
+					if(i > k)
+						continue;
+					for(; flag[i] != k; i=parent[i]) {
+						flag[i] = k;
+						if(pass == 0)
+							count[i]++;
+						else
+							rowIdxL[count[i]++] = k;
+					}
+				}
+			}
+		}
+	}
+
+	private void mapEntries() {
+		lowPtr = new int[n+1];
+		upPtr = new int[n+1];
+		diagSrc = new int[n];
+		Arrays.fill(diagSrc, -1);
+		for(int r=0; r<n; r++) {
+			int pr = invPerm[r];
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++) {
+				int pc = invPerm[colIndex[k]];
+				if(pr > pc)
+					lowPtr[pc+1]++;
+				else if(pr < pc)
+					upPtr[pr+1]++;
+			}
+		}
+		for(int j=0; j<n; j++) {
+			lowPtr[j+1] += lowPtr[j];
+			upPtr[j+1] += upPtr[j];
+		}
+		lowRow = new int[lowPtr[n]];
+		lowSrc = new int[lowPtr[n]];
+		upCol = new int[upPtr[n]];
+		upSrc = new int[upPtr[n]];
+		int[] lowPos = Arrays.copyOf(lowPtr, n);
+		int[] upPos = Arrays.copyOf(upPtr, n);
+		for(int r=0; r<n; r++) {
+			int pr = invPerm[r];
+			for(int k=rowPtr[r]; k<rowPtr[r+1]; k++) {
+				int pc = invPerm[colIndex[k]];
+				if(pr > pc) {
+					lowRow[lowPos[pc]] = pr;
+					lowSrc[lowPos[pc]++] = k;
+				} else if(pr < pc) {
+					upCol[upPos[pr]] = pc;
+					upSrc[upPos[pr]++] = k;
+				} else {
+					diagSrc[pr] = k;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Whether a matrix with this pattern can be factorized with this symbolic factorization
+	 */
+	public boolean matches(int n, int[] rowPtr, int[] colIndex) {
+		if(n != this.n)
+			return false;
+		for(int r=0; r<=n; r++)
+			if(rowPtr[r] != this.rowPtr[r])
+				return false;
+		for(int k=rowPtr[n]; --k>=0;)
+			if(colIndex[k] != this.colIndex[k])
+				return false;
+		return true;
+	}
+
+	public int getDim() {
+		return n;
+	}
+
+	/**
+	 * @return <tt>perm</tt>, where <tt>perm[k]</tt> is the row/column (0-based) of <tt>A</tt> eliminated at step <tt>k</tt>
+	 */
+	public int[] getPermutation() {
+		return perm;
+	}
+
+	/**
+	 * @return parent of each column of <tt>P*A*P'</tt> in the elimination tree, -1 for a root
+	 */
+	public int[] getEliminationTree() {
+		return parent;
+	}
+
+	/**
+	 * Number of non-zeros of <tt>L</tt>, including the diagonal
+	 */
+	public int getNonZeroNumberOfL() {
+		return colPtrL[n] + n;
+	}
+}
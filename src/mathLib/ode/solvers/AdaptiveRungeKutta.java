@@ -0,0 +1,512 @@
+package mathLib.ode.solvers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Adaptive step integration of <tt>y' = f(x,y)</tt> by an embedded Runge-Kutta pair:
+ * Dormand-Prince 5(4) or Cash-Karp 5(4).
+ * <p>
+ * The local error of each step is estimated by the difference of the two embedded solutions
+ * and the step is accepted if
+ * <tt>sqrt(mean((err_i/(absTol + relTol*|y_i|))^2)) <= 1</tt>; the next step size follows
+ * from the error. The solution is advanced with the 5th order formula.
+ * <p>
+ * Between the steps the solution is given by a continuous extension: the 4th order dense
+ * output of Dormand-Prince, or the cubic Hermite interpolant for Cash-Karp. So any number of
+ * output points costs a single integration. The Hermite interpolant is only 3rd order, so for
+ * Cash-Karp the steps are shortened to end exactly on the output points of <tt>integrate()</tt>,
+ * which are then as accurate as the integration; the <tt>DenseOutput</tt> of Cash-Karp is
+ * 3rd order between the steps.
+ *
+ */
+public class AdaptiveRungeKutta {
+
+	public enum Method { DORMAND_PRINCE, CASH_KARP }
+
+	DerivnFunction func ;
+	double x0 ;
+	double[] y0 ;
+	int numEquations ;
+	Method method ;
+
+	double relTol = 1e-8 ;
+	double absTol = 1e-10 ;
+	double initialStep = 0.0 ; // 0: estimated from f(x0,y0)
+	double maxStep = Double.POSITIVE_INFINITY ;
+	int maxNumSteps = 100000 ;
+
+	// statistics of the last integration
+	int numSteps, numRejectedSteps, numEvaluations ;
+
+	// step size control
+	private static final double SAFETY = 0.9 ;
+	private static final double MIN_FACTOR = 0.2 ;
+	private static final double MAX_FACTOR = 10.0 ;
+
+	// Dormand-Prince 5(4) coefficients
+	private static final double
+		DP_C2 = 1.0/5.0, DP_C3 = 3.0/10.0, DP_C4 = 4.0/5.0, DP_C5 = 8.0/9.0,
+		DP_A21 = 1.0/5.0,
+		DP_A31 = 3.0/40.0, DP_A32 = 9.0/40.0,
+		DP_A41 = 44.0/45.0, DP_A42 = -56.0/15.0, DP_A43 = 32.0/9.0,
+		DP_A51 = 19372.0/6561.0, DP_A52 = -25360.0/2187.0, DP_A53 = 64448.0/6561.0, DP_A54 = -212.0/729.0,
+		DP_A61 = 9017.0/3168.0, DP_A62 = -355.0/33.0, DP_A63 = 46732.0/5247.0, DP_A64 = 49.0/176.0, DP_A65 = -5103.0/18656.0,
+		DP_A71 = 35.0/384.0, DP_A73 = 500.0/1113.0, DP_A74 = 125.0/192.0, DP_A75 = -2187.0/6784.0, DP_A76 = 11.0/84.0,
+		DP_E1 = 71.0/57600.0, DP_E3 = -71.0/16695.0, DP_E4 = 71.0/1920.0, DP_E5 = -17253.0/339200.0, DP_E6 = 22.0/525.0, DP_E7 = -1.0/40.0,
+		// dense output
+		DP_D1 = -12715105075.0/11282082432.0, DP_D3 = 87487479700.0/32700410799.0, DP_D4 = -10690763975.0/1880347072.0,
+		DP_D5 = 701980252875.0/199316789632.0, DP_D6 = -1453857185.0/822651844.0, DP_D7 = 69997945.0/29380423.0 ;
+
+	// Cash-Karp 5(4) coefficients
+	private static final double
+		CK_C2 = 1.0/5.0, CK_C3 = 3.0/10.0, CK_C4 = 3.0/5.0, CK_C6 = 7.0/8.0,
+		CK_A21 = 1.0/5.0,
+		CK_A31 = 3.0/40.0, CK_A32 = 9.0/40.0,
+		CK_A41 = 3.0/10.0, CK_A42 = -9.0/10.0, CK_A43 = 6.0/5.0,
+		CK_A51 = -11.0/54.0, CK_A52 = 5.0/2.0, CK_A53 = -70.0/27.0, CK_A54 = 35.0/27.0,
+		CK_A61 = 1631.0/55296.0, CK_A62 = 175.0/512.0, CK_A63 = 575.0/13824.0, CK_A64 = 44275.0/110592.0, CK_A65 = 253.0/4096.0,
+		CK_B1 = 37.0/378.0, CK_B3 = 250.0/621.0, CK_B4 = 125.0/594.0, CK_B6 = 512.0/1771.0,
+		CK_E1 = CK_B1 - 2825.0/27648.0, CK_E3 = CK_B3 - 18575.0/48384.0, CK_E4 = CK_B4 - 13525.0/55296.0,
+		CK_E5 = -277.0/14336.0, CK_E6 = CK_B6 - 1.0/4.0 ;
+
+	public AdaptiveRungeKutta(DerivnFunction func, double x0, double[] y0, Method method) {
+		this.func = func ;
+		this.x0 = x0 ;
+		this.y0 = Arrays.copyOf(y0, y0.length) ;
+		this.numEquations = y0.length ;
+		this.method = method ;
+	}
+
+	public AdaptiveRungeKutta(DerivnFunction func, double x0, double... y0) {
+		this(func, x0, y0, Method.DORMAND_PRINCE) ;
+	}
+
+	public void setX0(double x0) {
+		this.x0 = x0 ;
+	}
+
+	public void setY0(double[] y0) {
+		this.y0 = Arrays.copyOf(y0, y0.length) ;
+		this.numEquations = y0.length ;
+	}
+
+	public void setMethod(Method method) {
+		this.method = method ;
+	}
+
+	public void setTolerances(double relTol, double absTol) {
+		this.relTol = relTol ;
+		this.absTol = absTol ;
+	}
+
+	public void setInitialStep(double h) {
+		this.initialStep = Math.abs(h) ;
+	}
+
+	public void setMaximumStep(double h) {
+		this.maxStep = Math.abs(h) ;
+	}
+
+	public void setMaximumNumberOfSteps(int maxNumSteps) {
+		this.maxNumSteps = maxNumSteps ;
+	}
+
+	/**
+	 * Number of accepted steps of the last integration
+	 *
+	 * @return
+	 */
+	public int getNumberOfSteps() {
+		return numSteps ;
+	}
+
+	public int getNumberOfRejectedSteps() {
+		return numRejectedSteps ;
+	}
+
+	public int getNumberOfEvaluations() {
+		return numEvaluations ;
+	}
+
+	/**
+	 * Solution at <tt>x1</tt>
+	 *
+	 * @param x1
+	 * @return
+	 */
+	public double[] integrate(double x1) {
+		double[][] y = integrate(new double[] {x1}) ;
+		double[] y1 = new double[numEquations] ;
+		for(int k=0; k<numEquations; k++)
+			y1[k] = y[k][0] ;
+		return y1 ;
+	}
+
+	/**
+	 * Solution at the points <tt>x1[i]</tt>: <tt>y[k][i] = y_k(x1[i])</tt>. If the points are
+	 * ordered along the direction of integration, they are all interpolated during one
+	 * integration from <tt>x0</tt> to the last point; otherwise the integration is restarted
+	 * from each point to the next one.
+	 *
+	 * @param x1
+	 * @return
+	 */
+	public double[][] integrate(double[] x1) {
+		double[][] y = new double[numEquations][x1.length] ;
+		resetStatistics() ;
+		if(x1.length == 0)
+			return y ;
+		if(isMonotone(x1)) {
+			run(x1[x1.length-1], x1, y, null) ;
+			return y ;
+		}
+		double xStart = x0 ;
+		double[] yStart = y0 ;
+		double[][] yi = new double[numEquations][1] ;
+		for(int i=0; i<x1.length; i++) {
+			run(x1[i], new double[] {x1[i]}, yi, null) ;
+			for(int k=0; k<numEquations; k++)
+				y[k][i] = yi[k][0] ;
+			x0 = x1[i] ;
+			y0 = new double[numEquations] ;
+			for(int k=0; k<numEquations; k++)
+				y0[k] = yi[k][0] ;
+		}
+		x0 = xStart ;
+		y0 = yStart ;
+		return y ;
+	}
+
+	/**
+	 * Integrate from <tt>x0</tt> to <tt>x1</tt> and keep all the steps: the returned
+	 * solution can be evaluated anywhere in between
+	 *
+	 * @param x1
+	 * @return
+	 */
+	public DenseOutput integrateDense(double x1) {
+		resetStatistics() ;
+		DenseOutput dense = new DenseOutput(numEquations) ;
+		run(x1, new double[0], null, dense) ;
+		return dense ;
+	}
+
+	private void resetStatistics() {
+		numSteps = 0 ;
+		numRejectedSteps = 0 ;
+		numEvaluations = 0 ;
+	}
+
+	private boolean isMonotone(double[] x1) {
+		double dir = Math.signum(x1[x1.length-1] - x0) ;
+		double prev = x0 ;
+		for(int i=0; i<x1.length; i++) {
+			if((x1[i] - prev) * dir < 0)
+				return false ;
+			prev = x1[i] ;
+		}
+		return true ;
+	}
+
+	private double[] eval(double x, double[] y) {
+		numEvaluations++ ;
+		return func.values(x, y) ;
+	}
+
+	private double errorNorm(double[] err, double[] y, double[] yNew) {
+		double sum = 0.0 ;
+		for(int i=0; i<numEquations; i++) {
+			double sc = absTol + relTol * Math.max(Math.abs(y[i]), Math.abs(yNew[i])) ;
+			double e = err[i] / sc ;
+			sum += e * e ;
+		}
+		return Math.sqrt(sum / numEquations) ;
+	}
+
+	private double initialStepSize(double x, double[] y, double[] f, double dir, double span) {
+		if(initialStep > 0)
+			return Math.min(initialStep, span) ;
+		double[] sc = new double[numEquations] ;
+		double d0 = 0.0, d1 = 0.0 ;
+		for(int i=0; i<numEquations; i++) {
+			sc[i] = absTol + relTol * Math.abs(y[i]) ;
+			d0 += (y[i] / sc[i]) * (y[i] / sc[i]) ;
+			d1 += (f[i] / sc[i]) * (f[i] / sc[i]) ;
+		}
+		d0 = Math.sqrt(d0 / numEquations) ;
+		d1 = Math.sqrt(d1 / numEquations) ;
+		double h0 = (d0 < 1e-5 || d1 < 1e-5) ? 1e-6 : 0.01 * d0 / d1 ;
+		h0 = Math.min(h0, span) ;
+		double[] y1 = new double[numEquations] ;
+		for(int i=0; i<numEquations; i++)
+			y1[i] = y[i] + dir * h0 * f[i] ;
+		double[] f1 = eval(x + dir * h0, y1) ;
+		double d2 = 0.0 ;
+		for(int i=0; i<numEquations; i++) {
+			double d = (f1[i] - f[i]) / sc[i] ;
+			d2 += d * d ;
+		}
+		d2 = Math.sqrt(d2 / numEquations) / h0 ;
+		double h1 = Math.max(d1, d2) <= 1e-15 ? Math.max(1e-6, h0 * 1e-3) : Math.pow(0.01 / Math.max(d1, d2), 0.2) ;
+		return Math.min(Math.min(100 * h0, h1), span) ;
+	}
+
+	/**
+	 * Integrate from <tt>x0</tt> to <tt>xEnd</tt>, interpolate the solution at the (ordered)
+	 * points <tt>xOut</tt> into <tt>yOut</tt> and record the steps in <tt>dense</tt>
+	 */
+	private void run(double xEnd, double[] xOut, double[][] yOut, DenseOutput dense) {
+		int n = numEquations ;
+		int iOut = 0 ;
+		double x = x0 ;
+		double[] y = Arrays.copyOf(y0, n) ;
+		// output points at x0
+		while(iOut < xOut.length && xOut[iOut] == x) {
+			for(int k=0; k<n; k++)
+				yOut[k][iOut] = y[k] ;
+			iOut++ ;
+		}
+		if(dense != null)
+			dense.xStart = dense.xEnd = x ;
+		if(xEnd == x) {
+			if(dense != null)
+				dense.y0 = Arrays.copyOf(y, n) ;
+			return ;
+		}
+
+		double dir = Math.signum(xEnd - x) ;
+		double span = Math.abs(xEnd - x) ;
+		double[] k1 = eval(x, y) ;
+		double h = Math.min(initialStepSize(x, y, k1, dir, span), maxStep) ;
+
+		double[] k2 = new double[n], k3 = new double[n], k4 = new double[n], k5 = new double[n], k6 = new double[n] ;
+		double[] k7 ;
+		double[] yt = new double[n], yNew = new double[n], err = new double[n] ;
+		double[] r1 = new double[n], r2 = new double[n], r3 = new double[n], r4 = new double[n], r5 = new double[n] ;
+		boolean rejected = false ;
+
+		while(dir * (xEnd - x) > 0) {
+			if(numSteps + numRejectedSteps >= maxNumSteps)
+				throw new RuntimeException("Maximum number of steps (" + maxNumSteps + ") reached at x = " + x) ;
+			// end of the step: xEnd, or for Cash-Karp the next output point
+			double xStop = method == Method.CASH_KARP && iOut < xOut.length ? xOut[iOut] : xEnd ;
+			double hProposed = h ;
+			boolean clipped = false ;
+			if(h >= Math.abs(xStop - x)) {
+				h = Math.abs(xStop - x) ;
+				clipped = true ;
+			}
+			double hs = dir * h ;
+			if(x + hs == x)
+				throw new RuntimeException("Step size underflow at x = " + x) ;
+
+			if(method == Method.DORMAND_PRINCE) {
+				for(int i=0; i<n; i++)
+					yt[i] = y[i] + hs * DP_A21 * k1[i] ;
+				k2 = eval(x + DP_C2 * hs, yt) ;
+				for(int i=0; i<n; i++)
+					yt[i] = y[i] + hs * (DP_A31 * k1[i] + DP_A32 * k2[i]) ;
+				k3 = eval(x + DP_C3 * hs, yt) ;
+				for(int i=0; i<n; i++)
+					yt[i] = y[i] + hs * (DP_A41 * k1[i] + DP_A42 * k2[i] + DP_A43 * k3[i]) ;
+				k4 = eval(x + DP_C4 * hs, yt) ;
+				for(int i=0; i<n; i++)
+					yt[i] = y[i] + hs * (DP_A51 * k1[i] + DP_A52 * k2[i] + DP_A53 * k3[i] + DP_A54 * k4[i]) ;
+				k5 = eval(x + DP_C5 * hs, yt) ;
+				for(int i=0; i<n; i++)
+					yt[i] = y[i] + hs * (DP_A61 * k1[i] + DP_A62 * k2[i] + DP_A63 * k3[i] + DP_A64 * k4[i] + DP_A65 * k5[i]) ;
+				k6 = eval(x + hs, yt) ;
+				for(int i=0; i<n; i++)
+					yNew[i] = y[i] + hs * (DP_A71 * k1[i] + DP_A73 * k3[i] + DP_A74 * k4[i] + DP_A75 * k5[i] + DP_A76 * k6[i]) ;
+				// first stage of the next step (FSAL)
+				k7 = eval(x + hs, yNew) ;
+				for(int i=0; i<n; i++)
+					err[i] = hs * (DP_E1 * k1[i] + DP_E3 * k3[i] + DP_E4 * k4[i] + DP_E5 * k5[i] + DP_E6 * k6[i] + DP_E7 * k7[i]) ;
+			} else {
+				for(int i=0; i<n; i++)
+					yt[i] = y[i] + hs * CK_A21 * k1[i] ;
+				k2 = eval(x + CK_C2 * hs, yt) ;
+				for(int i=0; i<n; i++)
+					yt[i] = y[i] + hs * (CK_A31 * k1[i] + CK_A32 * k2[i]) ;
+				k3 = eval(x + CK_C3 * hs, yt) ;
+				for(int i=0; i<n; i++)
+					yt[i] = y[i] + hs * (CK_A41 * k1[i] + CK_A42 * k2[i] + CK_A43 * k3[i]) ;
+				k4 = eval(x + CK_C4 * hs, yt) ;
+				for(int i=0; i<n; i++)
+					yt[i] = y[i] + hs * (CK_A51 * k1[i] + CK_A52 * k2[i] + CK_A53 * k3[i] + CK_A54 * k4[i]) ;
+				k5 = eval(x + hs, yt) ;
+				for(int i=0; i<n; i++)
+					yt[i] = y[i] + hs * (CK_A61 * k1[i] + CK_A62 * k2[i] + CK_A63 * k3[i] + CK_A64 * k4[i] + CK_A65 * k5[i]) ;
+				k6 = eval(x + CK_C6 * hs, yt) ;
+				for(int i=0; i<n; i++) {
+					yNew[i] = y[i] + hs * (CK_B1 * k1[i] + CK_B3 * k3[i] + CK_B4 * k4[i] + CK_B6 * k6[i]) ;
+					err[i] = hs * (CK_E1 * k1[i] + CK_E3 * k3[i] + CK_E4 * k4[i] + CK_E5 * k5[i] + CK_E6 * k6[i]) ;
+				}
+				k7 = null ;
+			}
+
+			double e = errorNorm(err, y, yNew) ;
+			if(!(e <= 1.0)) {
+				// rejected: retry with a smaller step
+				numRejectedSteps++ ;
+				double fac = Double.isNaN(e) ? MIN_FACTOR : Math.max(MIN_FACTOR, SAFETY * Math.pow(e, -0.2)) ;
+				h *= fac ;
+				rejected = true ;
+				continue ;
+			}
+			numSteps++ ;
+			if(k7 == null)
+				k7 = eval(x + hs, yNew) ; // derivative at the end of the Cash-Karp step
+
+			// continuous extension: y(x+theta*h) = r1 + theta*(r2 + (1-theta)*(r3 + theta*(r4 + (1-theta)*r5)))
+			for(int i=0; i<n; i++) {
+				double dy = yNew[i] - y[i] ;
+				double b = hs * k1[i] - dy ;
+				r1[i] = y[i] ;
+				r2[i] = dy ;
+				r3[i] = b ;
+				r4[i] = dy - hs * k7[i] - b ;
+				r5[i] = method == Method.DORMAND_PRINCE ?
+						hs * (DP_D1 * k1[i] + DP_D3 * k3[i] + DP_D4 * k4[i] + DP_D5 * k5[i] + DP_D6 * k6[i] + DP_D7 * k7[i]) : 0.0 ;
+			}
+			double xNew = clipped ? xStop : x + hs ;
+			while(iOut < xOut.length && dir * (xOut[iOut] - xNew) <= 0) {
+				double theta = (xOut[iOut] - x) / hs ;
+				for(int k=0; k<n; k++)
+					yOut[k][iOut] = xOut[iOut] == xNew ? yNew[k] : interpolate(theta, r1[k], r2[k], r3[k], r4[k], r5[k]) ;
+				iOut++ ;
+			}
+			if(dense != null)
+				dense.add(x, hs, r1, r2, r3, r4, r5) ;
+
+			x = xNew ;
+			double[] tmp = y ;
+			y = yNew ;
+			yNew = tmp ;
+			k1 = k7 ;
+
+			double fac = e == 0.0 ? MAX_FACTOR : Math.min(MAX_FACTOR, Math.max(MIN_FACTOR, SAFETY * Math.pow(e, -0.2))) ;
+			// no increase right after a rejected step
+			if(rejected)
+				fac = Math.min(fac, 1.0) ;
+			rejected = false ;
+			// a step shortened to reach xStop does not limit the next one
+			h = Math.min(clipped ? Math.max(h * fac, hProposed) : h * fac, maxStep) ;
+		}
+		// the last point is the end of the integration
+		while(iOut < xOut.length) {
+			for(int k=0; k<n; k++)
+				yOut[k][iOut] = y[k] ;
+			iOut++ ;
+		}
+		if(dense != null) {
+			dense.xEnd = x ;
+			dense.y0 = Arrays.copyOf(y0, n) ;
+		}
+	}
+
+	static double interpolate(double theta, double r1, double r2, double r3, double r4, double r5) {
+		double theta1 = 1.0 - theta ;
+		return r1 + theta * (r2 + theta1 * (r3 + theta * (r4 + theta1 * r5))) ;
+	}
+
+	/**
+	 * Continuous solution recorded by <tt>integrateDense()</tt>
+	 */
+	public static class DenseOutput {
+		final int numEquations ;
+		double xStart, xEnd ;
+		double[] y0 ;
+		final List<double[]> steps = new ArrayList<double[]>() ;
+		double[] xSteps = new double[16] ;
+
+		DenseOutput(int numEquations) {
+			this.numEquations = numEquations ;
+		}
+
+		// step data: x, h, r1...r5
+		void add(double x, double h, double[] r1, double[] r2, double[] r3, double[] r4, double[] r5) {
+			int n = numEquations ;
+			double[] s = new double[2 + 5*n] ;
+			s[0] = x ;
+			s[1] = h ;
+			System.arraycopy(r1, 0, s, 2, n) ;
+			System.arraycopy(r2, 0, s, 2+n, n) ;
+			System.arraycopy(r3, 0, s, 2+2*n, n) ;
+			System.arraycopy(r4, 0, s, 2+3*n, n) ;
+			System.arraycopy(r5, 0, s, 2+4*n, n) ;
+			if(steps.size() == xSteps.length)
+				xSteps = Arrays.copyOf(xSteps, 2*xSteps.length) ;
+			xSteps[steps.size()] = x ;
+			steps.add(s) ;
+		}
+
+		public double getXStart() {
+			return xStart ;
+		}
+
+		public double getXEnd() {
+			return xEnd ;
+		}
+
+		public int getNumberOfSteps() {
+			return steps.size() ;
+		}
+
+		private double[] findStep(double x) {
+			int m = steps.size() ;
+			if(m == 0)
+				return null ;
+			boolean forward = xEnd >= xStart ;
+			// last step whose start is before x in the direction of integration
+			int lo = 0, hi = m - 1 ;
+			while(lo < hi) {
+				int mid = (lo + hi + 1) >>> 1 ;
+				if(forward ? xSteps[mid] <= x : xSteps[mid] >= x)
+					lo = mid ;
+				else
+					hi = mid - 1 ;
+			}
+			return steps.get(lo) ;
+		}
+
+		/**
+		 * Component <tt>k</tt> of the solution at <tt>x</tt>
+		 *
+		 * @param k
+		 * @param x
+		 * @return
+		 */
+		public double value(int k, double x) {
+			double[] s = findStep(x) ;
+			if(s == null)
+				return y0[k] ;
+			int n = numEquations ;
+			double theta = (x - s[0]) / s[1] ;
+			return interpolate(theta, s[2+k], s[2+n+k], s[2+2*n+k], s[2+3*n+k], s[2+4*n+k]) ;
+		}
+
+		public double[] values(double x) {
+			double[] y = new double[numEquations] ;
+			for(int k=0; k<numEquations; k++)
+				y[k] = value(k, x) ;
+			return y ;
+		}
+
+		/**
+		 * <tt>y[k][i] = y_k(x[i])</tt>
+		 *
+		 * @param x
+		 * @return
+		 */
+		public double[][] values(double[] x) {
+			double[][] y = new double[numEquations][x.length] ;
+			for(int i=0; i<x.length; i++)
+				for(int k=0; k<numEquations; k++)
+					y[k][i] = value(k, x[i]) ;
+			return y ;
+		}
+	}
+}
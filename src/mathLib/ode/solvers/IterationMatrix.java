@@ -0,0 +1,296 @@
+package mathLib.ode.solvers;
+
+import java.util.Arrays;
+
+import mathLib.matrix.algebra.SparseMatrixCSR;
+import mathLib.matrix.algebra.intf.MatrixEntry;
+import mathLib.matrix.algebra.intf.SparseMatrix;
+import mathLib.matrix.algebra.solver.SparseLU;
+
+/**
+ * Jacobian <tt>J</tt> of a stiff system and LU factorization of the iteration matrix
+ * <tt>I - c*J</tt> with partial pivoting.
+ * <p>
+ * The Jacobian is kept either as a dense matrix or in LAPACK band storage with <tt>ml</tt>
+ * sub-diagonals and <tt>mu</tt> super-diagonals, in which case the factorization costs
+ * <tt>O(n*ml*(ml+mu))</tt> instead of <tt>O(n^3)</tt>. A general sparse Jacobian is kept in
+ * CSR storage and factorized by <tt>SparseLU</tt>, whose symbolic factorization is computed
+ * once for the pattern of the Jacobian.
+ *
+ */
+class IterationMatrix {
+
+	final int n ;
+	final boolean banded ;
+	final boolean sparse ;
+	final int ml, mu ;
+
+	// dense: jac[i][j]; band: jac(i,j) = band[(mu+i-j) + j*(ml+mu+1)]; sparse: CSR with the diagonal
+	double[][] jac ;
+	double[] band ;
+	private int[] rowPtr, colIndex ;
+	private double[] values, iteration ;
+	private SparseLU sparseLU ;
+
+	// factorization: dense lu[i][j], or band storage with ml extra rows for the fill-in
+	private double[][] lu ;
+	private double[] luBand ;
+	private final int[] pivot ;
+
+	IterationMatrix(int n) {
+		this.n = n ;
+		this.banded = false ;
+		this.sparse = false ;
+		this.ml = this.mu = n - 1 ;
+		this.jac = new double[n][n] ;
+		this.pivot = new int[n] ;
+	}
+
+	IterationMatrix(int n, int ml, int mu) {
+		this.n = n ;
+		this.banded = true ;
+		this.sparse = false ;
+		this.ml = ml ;
+		this.mu = mu ;
+		this.band = new double[(ml + mu + 1) * n] ;
+		this.pivot = new int[n] ;
+	}
+
+	/**
+	 * Sparse storage with the pattern of <tt>J</tt> (1-based) and of the diagonal
+	 */
+	IterationMatrix(int n, SparseMatrix J) {
+		this.n = n ;
+		this.banded = false ;
+		this.sparse = true ;
+		this.ml = this.mu = n - 1 ;
+		this.pivot = null ;
+		SparseMatrixCSR pattern = new SparseMatrixCSR(n, n) ;
+		for(int i=1; i<=n; i++)
+			pattern.add(i, i, 0.0) ;
+		for(MatrixEntry e : J)
+			pattern.add(e.getRow(), e.getCol(), 0.0) ;
+		this.rowPtr = pattern.getRowPointers() ;
+		this.colIndex = pattern.getColIndices() ;
+		this.values = new double[rowPtr[n]] ;
+		this.iteration = new double[rowPtr[n]] ;
+		this.sparseLU = new SparseLU() ;
+	}
+
+	/**
+	 * Whether <tt>J(i,j)</tt> (0-based) is in the storage
+	 */
+	boolean contains(int i, int j) {
+		if(sparse)
+			return Arrays.binarySearch(colIndex, rowPtr[i], rowPtr[i+1], j) >= 0 ;
+		return banded ? i - j <= ml && j - i <= mu : true ;
+	}
+
+	void clear() {
+		if(sparse)
+			Arrays.fill(values, 0.0) ;
+		else if(banded)
+			Arrays.fill(band, 0.0) ;
+		else
+			for(double[] row : jac)
+				Arrays.fill(row, 0.0) ;
+	}
+
+	/**
+	 * Set <tt>J(i,j)</tt> (0-based); entries outside of the band are ignored
+	 */
+	void set(int i, int j, double value) {
+		if(sparse) {
+			int k = Arrays.binarySearch(colIndex, rowPtr[i], rowPtr[i+1], j) ;
+			if(k >= 0)
+				values[k] = value ;
+		}
+		else if(!banded)
+			jac[i][j] = value ;
+		else if(i - j <= ml && j - i <= mu)
+			band[(mu + i - j) + j * (ml + mu + 1)] = value ;
+	}
+
+	double get(int i, int j) {
+		if(sparse) {
+			int k = Arrays.binarySearch(colIndex, rowPtr[i], rowPtr[i+1], j) ;
+			return k < 0 ? 0.0 : values[k] ;
+		}
+		if(!banded)
+			return jac[i][j] ;
+		if(i - j > ml || j - i > mu)
+			return 0.0 ;
+		return band[(mu + i - j) + j * (ml + mu + 1)] ;
+	}
+
+	/**
+	 * Factorize <tt>I - c*J</tt>
+	 *
+	 * @return false if the matrix is singular
+	 */
+	boolean factorize(double c) {
+		if(sparse)
+			return factorizeSparse(c) ;
+		return banded ? factorizeBand(c) : factorizeDense(c) ;
+	}
+
+	// only the numeric factorization is done again, a perturbed pivot is reported as singular
+	private boolean factorizeSparse(double c) {
+		for(int i=0; i<n; i++) {
+			for(int k=rowPtr[i]; k<rowPtr[i+1]; k++)
+				iteration[k] = (colIndex[k] == i ? 1.0 : 0.0) - c * values[k] ;
+		}
+		sparseLU.factorize(n, rowPtr, colIndex, iteration) ;
+		return sparseLU.getNumberOfPerturbedPivots() == 0 ;
+	}
+
+	private boolean factorizeDense(double c) {
+		if(lu == null)
+			lu = new double[n][n] ;
+		for(int i=0; i<n; i++) {
+			for(int j=0; j<n; j++)
+				lu[i][j] = -c * jac[i][j] ;
+			lu[i][i] += 1.0 ;
+		}
+		for(int k=0; k<n; k++) {
+			int p = k ;
+			double max = Math.abs(lu[k][k]) ;
+			for(int i=k+1; i<n; i++) {
+				if(Math.abs(lu[i][k]) > max) {
+					max = Math.abs(lu[i][k]) ;
+					p = i ;
+				}
+			}
+			pivot[k] = p ;
+			if(max == 0.0)
+				return false ;
+			if(p != k) {
+				double[] tmp = lu[p] ;
+				lu[p] = lu[k] ;
+				lu[k] = tmp ;
+			}
+			double[] rowK = lu[k] ;
+			double d = rowK[k] ;
+			for(int i=k+1; i<n; i++) {
+				double[] rowI = lu[i] ;
+				double l = rowI[k] / d ;
+				rowI[k] = l ;
+				if(l != 0.0)
+					for(int j=k+1; j<n; j++)
+						rowI[j] -= l * rowK[j] ;
+			}
+		}
+		return true ;
+	}
+
+	// as LAPACK dgbtf2: column j of the factors is stored in luBand[j*ld ... j*ld+ld-1], row i at kv+i-j
+	private boolean factorizeBand(double c) {
+		int kv = ml + mu ;
+		int ld = 2 * ml + mu + 1 ;
+		if(luBand == null)
+			luBand = new double[ld * n] ;
+		else
+			Arrays.fill(luBand, 0.0) ;
+		int lda = ml + mu + 1 ;
+		for(int j=0; j<n; j++) {
+			for(int i=Math.max(0, j-mu); i<=Math.min(n-1, j+ml); i++)
+				luBand[(kv + i - j) + j * ld] = -c * band[(mu + i - j) + j * lda] ;
+			luBand[kv + j * ld] += 1.0 ;
+		}
+		int ju = 0 ;
+		for(int j=0; j<n; j++) {
+			int km = Math.min(ml, n - 1 - j) ;
+			int jp = 0 ;
+			double max = Math.abs(luBand[kv + j * ld]) ;
+			for(int r=1; r<=km; r++) {
+				double v = Math.abs(luBand[kv + r + j * ld]) ;
+				if(v > max) {
+					max = v ;
+					jp = r ;
+				}
+			}
+			pivot[j] = j + jp ;
+			if(max == 0.0)
+				return false ;
+			ju = Math.max(ju, Math.min(j + mu + jp, n - 1)) ;
+			if(jp != 0) {
+				for(int col=j; col<=ju; col++) {
+					int a = (kv + j + jp - col) + col * ld ;
+					int b = (kv + j - col) + col * ld ;
+					double tmp = luBand[a] ;
+					luBand[a] = luBand[b] ;
+					luBand[b] = tmp ;
+				}
+			}
+			if(km > 0) {
+				double d = luBand[kv + j * ld] ;
+				for(int r=1; r<=km; r++)
+					luBand[kv + r + j * ld] /= d ;
+				for(int col=j+1; col<=ju; col++) {
+					double t = luBand[(kv + j - col) + col * ld] ;
+					if(t != 0.0)
+						for(int r=1; r<=km; r++)
+							luBand[(kv + j + r - col) + col * ld] -= luBand[kv + r + j * ld] * t ;
+				}
+			}
+		}
+		return true ;
+	}
+
+	/**
+	 * Solve <tt>(I - c*J) x = b</tt> with the last factorization, <tt>b</tt> is overwritten by <tt>x</tt>
+	 */
+	void solve(double[] b) {
+		if(sparse) {
+			sparseLU.solve(b, b) ;
+			return ;
+		}
+		if(!banded) {
+			for(int k=0; k<n; k++) {
+				int p = pivot[k] ;
+				if(p != k) {
+					double t = b[p] ;
+					b[p] = b[k] ;
+					b[k] = t ;
+				}
+			}
+			for(int i=1; i<n; i++) {
+				double[] row = lu[i] ;
+				double s = b[i] ;
+				for(int j=0; j<i; j++)
+					s -= row[j] * b[j] ;
+				b[i] = s ;
+			}
+			for(int i=n-1; i>=0; i--) {
+				double[] row = lu[i] ;
+				double s = b[i] ;
+				for(int j=i+1; j<n; j++)
+					s -= row[j] * b[j] ;
+				b[i] = s / row[i] ;
+			}
+			return ;
+		}
+		int kv = ml + mu ;
+		int ld = 2 * ml + mu + 1 ;
+		for(int j=0; j<n-1; j++) {
+			int lm = Math.min(ml, n - 1 - j) ;
+			int l = pivot[j] ;
+			if(l != j) {
+				double t = b[l] ;
+				b[l] = b[j] ;
+				b[j] = t ;
+			}
+			double bj = b[j] ;
+			if(bj != 0.0)
+				for(int r=1; r<=lm; r++)
+					b[j + r] -= luBand[kv + r + j * ld] * bj ;
+		}
+		for(int j=n-1; j>=0; j--) {
+			double bj = b[j] / luBand[kv + j * ld] ;
+			b[j] = bj ;
+			if(bj != 0.0)
+				for(int i=Math.max(0, j-kv); i<j; i++)
+					b[i] -= luBand[(kv + i - j) + j * ld] * bj ;
+		}
+	}
+}
@@ -0,0 +1,6 @@
+package mathLib.ode.solvers;
+
+@FunctionalInterface
+public interface JacobianFunction {
+	double[][] jacobian(double x, double[] y) ; // J[i][j] = df_i/dy_j
+}
@@ -9,6 +9,8 @@ public class OdeSolver {
 	DerivFunction func ;
 	double x0 ;
 	double y0 ;
+	double relTol = 1e-8 ;
+	double absTol = 1e-10 ;
 
 	public OdeSolver(DerivFunction func, double x0, double y0) {
 		this.func = func ;
@@ -24,6 +26,17 @@ public class OdeSolver {
 		this.y0 = y0 ;
 	}
 
+	/**
+	 * Error tolerances of the adaptive step methods
+	 *
+	 * @param relTol
+	 * @param absTol
+	 */
+	public void setTolerances(double relTol, double absTol) {
+		this.relTol = relTol ;
+		this.absTol = absTol ;
+	}
+
 	public Sequence eulerSequence(double x1) {
 		return n -> {
 			if(n==0)
@@ -225,5 +238,35 @@ public class OdeSolver {
 		return y ;
 	}
 
+	//*********** adaptive step methods ***********
+
+	/**
+	 * Adaptive step integrator starting from <tt>(x0, y0)</tt>, which gives access to the
+	 * dense output and to the step statistics
+	 *
+	 * @param method
+	 * @return
+	 */
+	public AdaptiveRungeKutta adaptive(AdaptiveRungeKutta.Method method) {
+		AdaptiveRungeKutta solver = new AdaptiveRungeKutta((x, y) -> new double[]{func.value(x, y[0])}, x0, new double[]{y0}, method) ;
+		solver.setTolerances(relTol, absTol) ;
+		return solver ;
+	}
+
+	public double dormandPrince(double x1) {
+		return adaptive(AdaptiveRungeKutta.Method.DORMAND_PRINCE).integrate(x1)[0] ;
+	}
+
+	public double[] dormandPrince(double[] x1) {
+		return adaptive(AdaptiveRungeKutta.Method.DORMAND_PRINCE).integrate(x1)[0] ;
+	}
+
+	public double cashKarp(double x1) {
+		return adaptive(AdaptiveRungeKutta.Method.CASH_KARP).integrate(x1)[0] ;
+	}
+
+	public double[] cashKarp(double[] x1) {
+		return adaptive(AdaptiveRungeKutta.Method.CASH_KARP).integrate(x1)[0] ;
+	}
 
 }
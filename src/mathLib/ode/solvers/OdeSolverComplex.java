@@ -105,7 +105,56 @@ public class OdeSolverComplex {
 		return y ;
 	}
 
+	//*********** adaptive step methods ***********
 
+	public void setTolerances(double relTol, double absTol) {
+		odeSystemSolver.setTolerances(relTol, absTol) ;
+	}
+
+	public AdaptiveRungeKutta adaptive(AdaptiveRungeKutta.Method method) {
+		return odeSystemSolver.adaptive(method) ;
+	}
+
+	public double[] dormandPrince(double x1) {
+		return odeSystemSolver.dormandPrince(x1) ;
+	}
+
+	public double[][] dormandPrince(double[] x1) {
+		return odeSystemSolver.dormandPrince(x1) ;
+	}
+
+	public Complex dormandPrinceComplex(double x1) {
+		double[] z = odeSystemSolver.dormandPrince(x1) ;
+		return z[0]+j*z[1] ;
+	}
+
+	public Complex[] dormandPrinceComplex(double[] x1) {
+		double[][] z = odeSystemSolver.dormandPrince(x1) ;
+		Complex[] y = new Complex[z[0].length] ;
+		for(int i=0, len=y.length; i<len; i++)
+			y[i] = z[0][i]+j*z[1][i] ;
+		return y ;
+	}
+
+	public double[] cashKarp(double x1) {
+		return odeSystemSolver.cashKarp(x1) ;
+	}
+
+	public double[][] cashKarp(double[] x1) {
+		return odeSystemSolver.cashKarp(x1) ;
+	}
+
+	public Complex cashKarpComplex(double x1) {
+		double[] z = odeSystemSolver.cashKarp(x1) ;
+		return z[0]+j*z[1] ;
+	}
 
+	public Complex[] cashKarpComplex(double[] x1) {
+		double[][] z = odeSystemSolver.cashKarp(x1) ;
+		Complex[] y = new Complex[z[0].length] ;
+		for(int i=0, len=y.length; i<len; i++)
+			y[i] = z[0][i]+j*z[1][i] ;
+		return y ;
+	}
 
 }
@@ -12,6 +12,10 @@ public class OdeSystemSolver {
 	double x0 ;
 	double[] y0 ;
 	int numEquation ;
+	double relTol = 1e-8 ;
+	double absTol = 1e-10 ;
+	JacobianFunction jacobian ;
+	SparseJacobianFunction sparseJacobian ;
 
 	public OdeSystemSolver(DerivnFunction func, double x0, double... y0) {
 		this.func = func ;
@@ -29,6 +33,32 @@ public class OdeSystemSolver {
 		this.numEquation = y0.length ;
 	}
 
+	/**
+	 * Error tolerances of the adaptive step methods
+	 *
+	 * @param relTol
+	 * @param absTol
+	 */
+	public void setTolerances(double relTol, double absTol) {
+		this.relTol = relTol ;
+		this.absTol = absTol ;
+	}
+
+	/**
+	 * Jacobian of the system for the stiff methods, finite differences are used if none is set
+	 *
+	 * @param jacobian
+	 */
+	public void setJacobian(JacobianFunction jacobian) {
+		this.jacobian = jacobian ;
+		this.sparseJacobian = null ;
+	}
+
+	public void setSparseJacobian(SparseJacobianFunction jacobian) {
+		this.sparseJacobian = jacobian ;
+		this.jacobian = null ;
+	}
+
 	public ArraySequence eulerSequence(double x1) {
 		return n -> {
 			if(n==0)
@@ -159,4 +189,70 @@ public class OdeSystemSolver {
 		return y ;
 	}
 
+	//*********** adaptive step methods ***********
+
+	/**
+	 * Adaptive step integrator starting from <tt>(x0, y0)</tt>, which gives access to the
+	 * dense output and to the step statistics
+	 *
+	 * @param method
+	 * @return
+	 */
+	public AdaptiveRungeKutta adaptive(AdaptiveRungeKutta.Method method) {
+		AdaptiveRungeKutta solver = new AdaptiveRungeKutta(func, x0, y0, method) ;
+		solver.setTolerances(relTol, absTol) ;
+		return solver ;
+	}
+
+	public double[] dormandPrince(double x1) {
+		return adaptive(AdaptiveRungeKutta.Method.DORMAND_PRINCE).integrate(x1) ;
+	}
+
+	public double[][] dormandPrince(double[] x1) {
+		return adaptive(AdaptiveRungeKutta.Method.DORMAND_PRINCE).integrate(x1) ;
+	}
+
+	public double[] cashKarp(double x1) {
+		return adaptive(AdaptiveRungeKutta.Method.CASH_KARP).integrate(x1) ;
+	}
+
+	public double[][] cashKarp(double[] x1) {
+		return adaptive(AdaptiveRungeKutta.Method.CASH_KARP).integrate(x1) ;
+	}
+
+	//*********** stiff methods ***********
+
+	/**
+	 * Stiff integrator starting from <tt>(x0, y0)</tt>, with the Jacobian and the tolerances
+	 * of this solver
+	 *
+	 * @param method
+	 * @return
+	 */
+	public StiffOdeSolver stiff(StiffOdeSolver.Method method) {
+		StiffOdeSolver solver = new StiffOdeSolver(func, x0, y0, method) ;
+		solver.setTolerances(relTol, absTol) ;
+		if(jacobian != null)
+			solver.setJacobian(jacobian) ;
+		if(sparseJacobian != null)
+			solver.setSparseJacobian(sparseJacobian) ;
+		return solver ;
+	}
+
+	public double[] bdf(double x1) {
+		return stiff(StiffOdeSolver.Method.BDF).integrate(x1) ;
+	}
+
+	public double[][] bdf(double[] x1) {
+		return stiff(StiffOdeSolver.Method.BDF).integrate(x1) ;
+	}
+
+	public double[] rosenbrock(double x1) {
+		return stiff(StiffOdeSolver.Method.ROSENBROCK).integrate(x1) ;
+	}
+
+	public double[][] rosenbrock(double[] x1) {
+		return stiff(StiffOdeSolver.Method.ROSENBROCK).integrate(x1) ;
+	}
+
 }
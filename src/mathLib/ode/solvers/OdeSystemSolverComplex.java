@@ -37,7 +37,7 @@ public class OdeSystemSolverComplex {
 				vals[i] = z[2*i] + j*z[2*i+1] ;
 			}
 			// create complex equations
-			eqnsComplex = func.value(x0, vals) ;
+			eqnsComplex = func.value(x, vals) ;
 			// decompose into real/imag equations
 			for(int i=0; i<numEquations; i++) {
 				eqnsReIm[2*i] = eqnsComplex[i].re() ;
@@ -144,4 +144,66 @@ public class OdeSystemSolverComplex {
 		return y ; // number of rows = N (number of equations)
 	}
 
+	//*********** adaptive step methods ***********
+
+	public void setTolerances(double relTol, double absTol) {
+		odeSystemSolver.setTolerances(relTol, absTol) ;
+	}
+
+	public AdaptiveRungeKutta adaptive(AdaptiveRungeKutta.Method method) {
+		return odeSystemSolver.adaptive(method) ;
+	}
+
+	public double[] dormandPrince(double x1) {
+		return odeSystemSolver.dormandPrince(x1) ;
+	}
+
+	public double[][] dormandPrince(double[] x1) {
+		return odeSystemSolver.dormandPrince(x1) ; // number of rows = 2N (real, imag)
+	}
+
+	public Complex[] dormandPrinceComplex(double x1) {
+		double[] z = odeSystemSolver.dormandPrince(x1) ;
+		Complex[] y = new Complex[numEquations] ;
+		for(int i=0; i<numEquations; i++)
+			y[i] = z[2*i]+j*z[2*i+1] ;
+		return y ;
+	}
+
+	public Complex[][] dormandPrinceComplex(double[] x1) {
+		double[][] z = odeSystemSolver.dormandPrince(x1) ; // 2*N real equations
+		Complex[][] y = new Complex[numEquations][x1.length] ; // N complex equations
+		for(int i=0; i<numEquations; i++)
+			for(int k=0, len=x1.length; k<len; k++) {
+				y[i][k] = z[2*i][k]+j*z[2*i+1][k] ;
+			}
+		return y ; // number of rows = N (number of equations)
+	}
+
+	public double[] cashKarp(double x1) {
+		return odeSystemSolver.cashKarp(x1) ;
+	}
+
+	public double[][] cashKarp(double[] x1) {
+		return odeSystemSolver.cashKarp(x1) ; // number of rows = 2N (real, imag)
+	}
+
+	public Complex[] cashKarpComplex(double x1) {
+		double[] z = odeSystemSolver.cashKarp(x1) ;
+		Complex[] y = new Complex[numEquations] ;
+		for(int i=0; i<numEquations; i++)
+			y[i] = z[2*i]+j*z[2*i+1] ;
+		return y ;
+	}
+
+	public Complex[][] cashKarpComplex(double[] x1) {
+		double[][] z = odeSystemSolver.cashKarp(x1) ; // 2*N real equations
+		Complex[][] y = new Complex[numEquations][x1.length] ; // N complex equations
+		for(int i=0; i<numEquations; i++)
+			for(int k=0, len=x1.length; k<len; k++) {
+				y[i][k] = z[2*i][k]+j*z[2*i+1][k] ;
+			}
+		return y ; // number of rows = N (number of equations)
+	}
+
 }
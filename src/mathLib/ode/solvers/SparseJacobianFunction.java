@@ -0,0 +1,8 @@
+package mathLib.ode.solvers;
+
+import mathLib.matrix.algebra.intf.SparseMatrix;
+
+@FunctionalInterface
+public interface SparseJacobianFunction {
+	SparseMatrix jacobian(double x, double[] y) ; // J(i,j) = df_i/dy_j, 1-based indices
+}
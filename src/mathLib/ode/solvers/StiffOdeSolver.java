@@ -0,0 +1,718 @@
+package mathLib.ode.solvers;
+
+import java.util.Arrays;
+
+import mathLib.matrix.algebra.intf.MatrixEntry;
+import mathLib.matrix.algebra.intf.SparseMatrix;
+
+/**
+ * Integration of stiff systems <tt>y' = f(x,y)</tt> by implicit methods:
+ * <ul>
+ * <li><tt>BDF</tt>: variable order (1 to 5), variable step backward differentiation formulas
+ * in quasi-constant step form (as ode15s/scipy). Each step solves the implicit equations
+ * by a simplified Newton iteration with the matrix <tt>I - c*J</tt>. The Jacobian is only
+ * recomputed when the Newton iteration fails to converge, and the matrix is only
+ * factorized again when the step size or the order changes.
+ * <li><tt>ROSENBROCK</tt>: the linearly implicit Rosenbrock 2(3) pair of Shampine and
+ * Reichelt (ode23s), L-stable, with a new Jacobian at every step. Best for moderate
+ * tolerances and small systems.
+ * </ul>
+ * The Jacobian is given by a <tt>JacobianFunction</tt> (dense), a <tt>SparseJacobianFunction</tt>
+ * or computed by finite differences. A banded Jacobian (given bandwidths, or detected from
+ * the entries of the sparse Jacobian) is factorized in band storage, e.g. for method-of-lines
+ * discretizations, and its finite difference approximation costs <tt>ml+mu+1</tt>
+ * evaluations of <tt>f</tt> instead of <tt>n</tt>. Other sparse Jacobians are factorized by
+ * <tt>SparseLU</tt>, with one symbolic factorization as long as their pattern does not change.
+ *
+ */
+public class StiffOdeSolver {
+
+	public enum Method { BDF, ROSENBROCK }
+
+	DerivnFunction func ;
+	double x0 ;
+	double[] y0 ;
+	int numEquations ;
+	Method method ;
+
+	JacobianFunction jacobian ;
+	SparseJacobianFunction sparseJacobian ;
+	int bandLower = -1, bandUpper = -1 ;
+
+	double relTol = 1e-6 ;
+	double absTol = 1e-8 ;
+	double initialStep = 0.0 ; // 0: estimated from f(x0,y0)
+	double maxStep = Double.POSITIVE_INFINITY ;
+	int maxNumSteps = 100000 ;
+	int maxOrder = 5 ;
+
+	// statistics of the last integration
+	int numSteps, numRejectedSteps, numEvaluations, numJacobianEvaluations, numDecompositions ;
+
+	private IterationMatrix matrix ;
+
+	private static final double EPS = Math.ulp(1.0) ;
+	private static final int MAX_ORDER = 5 ;
+	private static final int NEWTON_MAXITER = 4 ;
+	private static final double MIN_FACTOR = 0.2 ;
+	private static final double MAX_FACTOR = 10.0 ;
+
+	// BDF: gamma[k] = sum_{j=1..k} 1/j, error constants 1/(k+1)
+	private static final double[] GAMMA = new double[MAX_ORDER + 2] ;
+	private static final double[] ERROR_CONST = new double[MAX_ORDER + 2] ;
+	static {
+		for(int k=1; k<MAX_ORDER+2; k++)
+			GAMMA[k] = GAMMA[k-1] + 1.0 / k ;
+		for(int k=0; k<MAX_ORDER+2; k++)
+			ERROR_CONST[k] = 1.0 / (k + 1) ;
+	}
+
+	// Rosenbrock 2(3)
+	private static final double ROS_D = 1.0 / (2.0 + Math.sqrt(2.0)) ;
+	private static final double ROS_E32 = 6.0 + Math.sqrt(2.0) ;
+
+	public StiffOdeSolver(DerivnFunction func, double x0, double[] y0, Method method) {
+		this.func = func ;
+		this.x0 = x0 ;
+		this.y0 = Arrays.copyOf(y0, y0.length) ;
+		this.numEquations = y0.length ;
+		this.method = method ;
+	}
+
+	public StiffOdeSolver(DerivnFunction func, double x0, double... y0) {
+		this(func, x0, y0, Method.BDF) ;
+	}
+
+	public void setX0(double x0) {
+		this.x0 = x0 ;
+	}
+
+	public void setY0(double[] y0) {
+		this.y0 = Arrays.copyOf(y0, y0.length) ;
+		this.numEquations = y0.length ;
+	}
+
+	public void setMethod(Method method) {
+		this.method = method ;
+	}
+
+	/**
+	 * Dense Jacobian <tt>J[i][j] = df_i/dy_j</tt>
+	 *
+	 * @param jacobian
+	 */
+	public void setJacobian(JacobianFunction jacobian) {
+		this.jacobian = jacobian ;
+		this.sparseJacobian = null ;
+	}
+
+	/**
+	 * Sparse Jacobian, its bandwidths are detected from its entries unless given by
+	 * <tt>setJacobianBandwidth()</tt>
+	 *
+	 * @param jacobian
+	 */
+	public void setSparseJacobian(SparseJacobianFunction jacobian) {
+		this.sparseJacobian = jacobian ;
+		this.jacobian = null ;
+	}
+
+	/**
+	 * The Jacobian has <tt>lower</tt> sub-diagonals and <tt>upper</tt> super-diagonals:
+	 * <tt>df_i/dy_j = 0</tt> for <tt>i-j > lower</tt> or <tt>j-i > upper</tt>
+	 *
+	 * @param lower
+	 * @param upper
+	 */
+	public void setJacobianBandwidth(int lower, int upper) {
+		this.bandLower = lower ;
+		this.bandUpper = upper ;
+	}
+
+	public void setTolerances(double relTol, double absTol) {
+		this.relTol = relTol ;
+		this.absTol = absTol ;
+	}
+
+	public void setInitialStep(double h) {
+		this.initialStep = Math.abs(h) ;
+	}
+
+	public void setMaximumStep(double h) {
+		this.maxStep = Math.abs(h) ;
+	}
+
+	public void setMaximumNumberOfSteps(int maxNumSteps) {
+		this.maxNumSteps = maxNumSteps ;
+	}
+
+	/**
+	 * Maximum order of the BDF method, between 1 and 5
+	 *
+	 * @param maxOrder
+	 */
+	public void setMaximumOrder(int maxOrder) {
+		this.maxOrder = Math.max(1, Math.min(MAX_ORDER, maxOrder)) ;
+	}
+
+	public int getNumberOfSteps() {
+		return numSteps ;
+	}
+
+	public int getNumberOfRejectedSteps() {
+		return numRejectedSteps ;
+	}
+
+	/**
+	 * Number of evaluations of <tt>f</tt>, including those of the finite difference Jacobians
+	 *
+	 * @return
+	 */
+	public int getNumberOfEvaluations() {
+		return numEvaluations ;
+	}
+
+	public int getNumberOfJacobianEvaluations() {
+		return numJacobianEvaluations ;
+	}
+
+	public int getNumberOfDecompositions() {
+		return numDecompositions ;
+	}
+
+	/**
+	 * Solution at <tt>x1</tt>
+	 *
+	 * @param x1
+	 * @return
+	 */
+	public double[] integrate(double x1) {
+		double[][] y = integrate(new double[] {x1}) ;
+		double[] y1 = new double[numEquations] ;
+		for(int k=0; k<numEquations; k++)
+			y1[k] = y[k][0] ;
+		return y1 ;
+	}
+
+	/**
+	 * Solution at the points <tt>x1[i]</tt>: <tt>y[k][i] = y_k(x1[i])</tt>. Points ordered along
+	 * the direction of integration are interpolated during one integration.
+	 *
+	 * @param x1
+	 * @return
+	 */
+	public double[][] integrate(double[] x1) {
+		double[][] y = new double[numEquations][x1.length] ;
+		numSteps = numRejectedSteps = numEvaluations = numJacobianEvaluations = numDecompositions = 0 ;
+		if(x1.length == 0)
+			return y ;
+		double dir = Math.signum(x1[x1.length-1] - x0) ;
+		boolean monotone = true ;
+		for(int i=0; i<x1.length; i++)
+			if((x1[i] - (i == 0 ? x0 : x1[i-1])) * dir < 0)
+				monotone = false ;
+		if(monotone) {
+			run(x1[x1.length-1], x1, y) ;
+			return y ;
+		}
+		double xStart = x0 ;
+		double[] yStart = y0 ;
+		double[][] yi = new double[numEquations][1] ;
+		for(int i=0; i<x1.length; i++) {
+			run(x1[i], new double[] {x1[i]}, yi) ;
+			x0 = x1[i] ;
+			y0 = new double[numEquations] ;
+			for(int k=0; k<numEquations; k++)
+				y[k][i] = y0[k] = yi[k][0] ;
+		}
+		x0 = xStart ;
+		y0 = yStart ;
+		return y ;
+	}
+
+	private void run(double xEnd, double[] xOut, double[][] yOut) {
+		int iOut = 0 ;
+		while(iOut < xOut.length && xOut[iOut] == x0) {
+			for(int k=0; k<numEquations; k++)
+				yOut[k][iOut] = y0[k] ;
+			iOut++ ;
+		}
+		if(xEnd == x0)
+			return ;
+		if(method == Method.BDF)
+			runBDF(xEnd, xOut, yOut, iOut) ;
+		else
+			runRosenbrock(xEnd, xOut, yOut, iOut) ;
+	}
+
+	private double[] eval(double x, double[] y) {
+		numEvaluations++ ;
+		return func.values(x, y) ;
+	}
+
+	private double norm(double[] v, double[] scale) {
+		double sum = 0.0 ;
+		for(int i=0; i<numEquations; i++) {
+			double e = v[i] / scale[i] ;
+			sum += e * e ;
+		}
+		return Math.sqrt(sum / numEquations) ;
+	}
+
+	private double initialStepSize(double x, double[] y, double[] f, double dir, double span, int order) {
+		if(initialStep > 0)
+			return Math.min(initialStep, span) ;
+		int n = numEquations ;
+		double[] sc = new double[n] ;
+		for(int i=0; i<n; i++)
+			sc[i] = absTol + relTol * Math.abs(y[i]) ;
+		double d0 = norm(y, sc), d1 = norm(f, sc) ;
+		double h0 = (d0 < 1e-5 || d1 < 1e-5) ? 1e-6 : 0.01 * d0 / d1 ;
+		h0 = Math.min(h0, span) ;
+		double[] y1 = new double[n] ;
+		for(int i=0; i<n; i++)
+			y1[i] = y[i] + dir * h0 * f[i] ;
+		double[] f1 = eval(x + dir * h0, y1) ;
+		for(int i=0; i<n; i++)
+			y1[i] = f1[i] - f[i] ;
+		double d2 = norm(y1, sc) / h0 ;
+		double h1 = Math.max(d1, d2) <= 1e-15 ? Math.max(1e-6, h0 * 1e-3) :
+			Math.pow(0.01 / Math.max(d1, d2), 1.0 / (order + 1)) ;
+		return Math.min(Math.min(100 * h0, h1), Math.min(span, maxStep)) ;
+	}
+
+	//*********** Jacobian ****************
+
+	/**
+	 * Evaluate the Jacobian at <tt>(x, y)</tt> into <tt>matrix</tt>, <tt>f = f(x,y)</tt>
+	 */
+	private void updateJacobian(double x, double[] y, double[] f) {
+		numJacobianEvaluations++ ;
+		int n = numEquations ;
+		if(jacobian != null) {
+			if(matrix == null)
+				matrix = new IterationMatrix(n) ;
+			double[][] J = jacobian.jacobian(x, y) ;
+			for(int i=0; i<n; i++)
+				System.arraycopy(J[i], 0, matrix.jac[i], 0, n) ;
+			return ;
+		}
+		if(sparseJacobian != null) {
+			SparseMatrix J = sparseJacobian.jacobian(x, y) ;
+			int ml = bandLower, mu = bandUpper ;
+			if(ml < 0 || mu < 0) {
+				ml = 0 ;
+				mu = 0 ;
+				for(MatrixEntry e : J) {
+					ml = Math.max(ml, e.getRow() - e.getCol()) ;
+					mu = Math.max(mu, e.getCol() - e.getRow()) ;
+				}
+			}
+			// band storage pays off when the band is narrow, otherwise sparse LU
+			boolean band = 2 * ml + mu + 1 < n / 2 ;
+			if(band) {
+				if(matrix == null || !matrix.banded || matrix.ml < ml || matrix.mu < mu)
+					matrix = new IterationMatrix(n, ml, mu) ;
+			}
+			else {
+				// the pattern, and its symbolic factorization, is kept while it contains the entries of J
+				boolean fits = matrix != null && matrix.sparse ;
+				if(fits)
+					for(MatrixEntry e : J)
+						if(!matrix.contains(e.getRow() - 1, e.getCol() - 1)) {
+							fits = false ;
+							break ;
+						}
+				if(!fits)
+					matrix = new IterationMatrix(n, J) ;
+			}
+			matrix.clear() ;
+			for(MatrixEntry e : J)
+				matrix.set(e.getRow() - 1, e.getCol() - 1, e.getValue()) ;
+			return ;
+		}
+		// finite differences, columns of a banded Jacobian are perturbed by groups
+		boolean band = bandLower >= 0 && bandUpper >= 0 && bandLower + bandUpper + 1 < n ;
+		if(matrix == null)
+			matrix = band ? new IterationMatrix(n, bandLower, bandUpper) : new IterationMatrix(n) ;
+		int groups = band ? bandLower + bandUpper + 1 : 1 ;
+		double[] yp = Arrays.copyOf(y, n) ;
+		double[] del = new double[n] ;
+		double sqrtEps = Math.sqrt(EPS) ;
+		if(!band) {
+			for(int j=0; j<n; j++) {
+				del[j] = sqrtEps * Math.max(Math.abs(y[j]), 1e-5) ;
+				yp[j] = y[j] + del[j] ;
+				del[j] = yp[j] - y[j] ;
+				double[] fp = eval(x, yp) ;
+				for(int i=0; i<n; i++)
+					matrix.jac[i][j] = (fp[i] - f[i]) / del[j] ;
+				yp[j] = y[j] ;
+			}
+			return ;
+		}
+		for(int g=0; g<groups; g++) {
+			for(int j=g; j<n; j+=groups) {
+				del[j] = sqrtEps * Math.max(Math.abs(y[j]), 1e-5) ;
+				yp[j] = y[j] + del[j] ;
+				del[j] = yp[j] - y[j] ;
+			}
+			double[] fp = eval(x, yp) ;
+			for(int j=g; j<n; j+=groups) {
+				for(int i=Math.max(0, j-bandUpper); i<=Math.min(n-1, j+bandLower); i++)
+					matrix.set(i, j, (fp[i] - f[i]) / del[j]) ;
+				yp[j] = y[j] ;
+			}
+		}
+	}
+
+	private boolean factorize(double c) {
+		numDecompositions++ ;
+		return matrix.factorize(c) ;
+	}
+
+	//*********** BDF ****************
+
+	// R(order, factor) of the change of the step size of the difference array
+	private static double[][] computeR(int order, double factor) {
+		double[][] M = new double[order+1][order+1] ;
+		for(int j=0; j<=order; j++)
+			M[0][j] = 1.0 ;
+		for(int i=1; i<=order; i++)
+			for(int j=1; j<=order; j++)
+				M[i][j] = (i - 1 - factor * j) / i ;
+		// cumulative product along the columns
+		for(int i=1; i<=order; i++)
+			for(int j=0; j<=order; j++)
+				M[i][j] *= M[i-1][j] ;
+		return M ;
+	}
+
+	// D[0...order] = (R*U)^T D[0...order]
+	private void changeD(double[][] D, int order, double factor) {
+		double[][] R = computeR(order, factor) ;
+		double[][] U = computeR(order, 1.0) ;
+		double[][] RU = new double[order+1][order+1] ;
+		for(int i=0; i<=order; i++)
+			for(int k=0; k<=order; k++)
+				for(int j=0; j<=order; j++)
+					RU[i][j] += R[i][k] * U[k][j] ;
+		int n = numEquations ;
+		double[][] Dn = new double[order+1][n] ;
+		for(int j=0; j<=order; j++)
+			for(int i=0; i<=order; i++) {
+				double r = RU[i][j] ;
+				if(r != 0.0)
+					for(int m=0; m<n; m++)
+						Dn[j][m] += r * D[i][m] ;
+			}
+		for(int j=0; j<=order; j++)
+			D[j] = Dn[j] ;
+	}
+
+	private void runBDF(double xEnd, double[] xOut, double[][] yOut, int iOut) {
+		int n = numEquations ;
+		double dir = Math.signum(xEnd - x0) ;
+		double x = x0 ;
+		double[] f0 = eval(x, y0) ;
+		double hAbs = initialStepSize(x, y0, f0, dir, Math.abs(xEnd - x0), 1) ;
+		double newtonTol = Math.max(10 * EPS / relTol, Math.min(0.03, Math.sqrt(relTol))) ;
+
+		double[][] D = new double[MAX_ORDER + 3][n] ;
+		D[0] = Arrays.copyOf(y0, n) ;
+		for(int i=0; i<n; i++)
+			D[1][i] = f0[i] * hAbs * dir ;
+		int order = 1 ;
+		int nEqualSteps = 0 ;
+
+		matrix = null ;
+		updateJacobian(x, y0, f0) ;
+		boolean jacCurrent = true ;
+		boolean luValid = false ;
+		double luC = 0.0 ;
+
+		double[] yPredict = new double[n], psi = new double[n], scale = new double[n] ;
+		double[] yNew = new double[n], d = new double[n], dy = new double[n] ;
+
+		while(dir * (xEnd - x) > 0) {
+			if(numSteps + numRejectedSteps >= maxNumSteps)
+				throw new RuntimeException("Maximum number of steps (" + maxNumSteps + ") reached at x = " + x) ;
+			double minStep = 10 * Math.ulp(x) ;
+			if(hAbs > maxStep) {
+				changeD(D, order, maxStep / hAbs) ;
+				hAbs = maxStep ;
+				nEqualSteps = 0 ;
+				luValid = false ;
+			}
+			if(hAbs < minStep)
+				throw new RuntimeException("Step size underflow at x = " + x) ;
+
+			double xNew = x + dir * hAbs ;
+			if(dir * (xNew - xEnd) > 0) {
+				xNew = xEnd ;
+				changeD(D, order, Math.abs(xNew - x) / hAbs) ;
+				nEqualSteps = 0 ;
+				luValid = false ;
+			}
+			double h = xNew - x ;
+			hAbs = Math.abs(h) ;
+
+			Arrays.fill(yPredict, 0.0) ;
+			Arrays.fill(psi, 0.0) ;
+			for(int j=0; j<=order; j++)
+				for(int i=0; i<n; i++)
+					yPredict[i] += D[j][i] ;
+			for(int j=1; j<=order; j++)
+				for(int i=0; i<n; i++)
+					psi[i] += D[j][i] * GAMMA[j] ;
+			double alpha = GAMMA[order] ;
+			for(int i=0; i<n; i++) {
+				psi[i] /= alpha ;
+				scale[i] = absTol + relTol * Math.abs(yPredict[i]) ;
+			}
+			double c = h / alpha ;
+
+			// simplified Newton iteration, the Jacobian is updated once if it fails
+			boolean converged = false ;
+			int nIter = 0 ;
+			while(true) {
+				boolean singular = false ;
+				if(!luValid || luC != c) {
+					singular = !factorize(c) ;
+					luValid = !singular ;
+					luC = c ;
+				}
+				if(!singular) {
+					System.arraycopy(yPredict, 0, yNew, 0, n) ;
+					Arrays.fill(d, 0.0) ;
+					double dyNormOld = -1.0 ;
+					for(nIter=1; nIter<=NEWTON_MAXITER; nIter++) {
+						double[] f = eval(xNew, yNew) ;
+						boolean finite = true ;
+						for(int i=0; i<n; i++) {
+							dy[i] = c * f[i] - psi[i] - d[i] ;
+							if(Double.isNaN(f[i]) || Double.isInfinite(f[i]))
+								finite = false ;
+						}
+						if(!finite)
+							break ;
+						matrix.solve(dy) ;
+						double dyNorm = norm(dy, scale) ;
+						double rate = dyNormOld < 0 ? -1.0 : dyNorm / dyNormOld ;
+						if(rate >= 0 && (rate >= 1 || Math.pow(rate, NEWTON_MAXITER - nIter + 1) / (1 - rate) * dyNorm > newtonTol))
+							break ;
+						for(int i=0; i<n; i++) {
+							yNew[i] += dy[i] ;
+							d[i] += dy[i] ;
+						}
+						if(dyNorm == 0 || (rate >= 0 && rate / (1 - rate) * dyNorm < newtonTol)) {
+							converged = true ;
+							break ;
+						}
+						dyNormOld = dyNorm ;
+					}
+				}
+				if(converged || jacCurrent)
+					break ;
+				updateJacobian(xNew, yPredict, eval(xNew, yPredict)) ;
+				jacCurrent = true ;
+				luValid = false ;
+			}
+
+			if(!converged) {
+				numRejectedSteps++ ;
+				changeD(D, order, 0.5) ;
+				hAbs *= 0.5 ;
+				nEqualSteps = 0 ;
+				luValid = false ;
+				continue ;
+			}
+
+			double safety = 0.9 * (2 * NEWTON_MAXITER + 1) / (2 * NEWTON_MAXITER + Math.min(nIter, NEWTON_MAXITER)) ;
+			for(int i=0; i<n; i++) {
+				scale[i] = absTol + relTol * Math.abs(yNew[i]) ;
+				dy[i] = ERROR_CONST[order] * d[i] ;
+			}
+			double errorNorm = norm(dy, scale) ;
+			if(errorNorm > 1) {
+				numRejectedSteps++ ;
+				double factor = Math.max(MIN_FACTOR, safety * Math.pow(errorNorm, -1.0 / (order + 1))) ;
+				changeD(D, order, factor) ;
+				hAbs *= factor ;
+				nEqualSteps = 0 ;
+				luValid = false ;
+				continue ;
+			}
+
+			// accepted
+			numSteps++ ;
+			nEqualSteps++ ;
+			jacCurrent = false ;
+			for(int i=0; i<n; i++) {
+				D[order+2][i] = d[i] - D[order+1][i] ;
+				D[order+1][i] = d[i] ;
+			}
+			for(int j=order; j>=0; j--)
+				for(int i=0; i<n; i++)
+					D[j][i] += D[j+1][i] ;
+
+			// interpolating polynomial of the last order+1 points
+			while(iOut < xOut.length && dir * (xOut[iOut] - xNew) <= 0) {
+				for(int k=0; k<n; k++) {
+					double p = 1.0, v = D[0][k] ;
+					for(int j=1; j<=order; j++) {
+						p *= (xOut[iOut] - (xNew - (j - 1) * h)) / (h * j) ;
+						v += D[j][k] * p ;
+					}
+					yOut[k][iOut] = v ;
+				}
+				iOut++ ;
+			}
+			x = xNew ;
+
+			if(nEqualSteps < order + 1)
+				continue ;
+
+			// order and step size selection
+			double errM = Double.POSITIVE_INFINITY, errP = Double.POSITIVE_INFINITY ;
+			if(order > 1) {
+				for(int i=0; i<n; i++)
+					dy[i] = ERROR_CONST[order-1] * D[order][i] ;
+				errM = norm(dy, scale) ;
+			}
+			if(order < maxOrder) {
+				for(int i=0; i<n; i++)
+					dy[i] = ERROR_CONST[order+1] * D[order+2][i] ;
+				errP = norm(dy, scale) ;
+			}
+			double fM = errM == 0 ? MAX_FACTOR : Math.pow(errM, -1.0 / order) ;
+			double f0r = errorNorm == 0 ? MAX_FACTOR : Math.pow(errorNorm, -1.0 / (order + 1)) ;
+			double fP = errP == 0 ? MAX_FACTOR : Math.pow(errP, -1.0 / (order + 2)) ;
+			double best = f0r ;
+			int newOrder = order ;
+			if(fM > best) {
+				best = fM ;
+				newOrder = order - 1 ;
+			}
+			if(fP > best) {
+				best = fP ;
+				newOrder = order + 1 ;
+			}
+			order = newOrder ;
+			double factor = Math.min(MAX_FACTOR, safety * best) ;
+			changeD(D, order, factor) ;
+			hAbs *= factor ;
+			nEqualSteps = 0 ;
+			luValid = false ;
+		}
+		while(iOut < xOut.length) {
+			for(int k=0; k<n; k++)
+				yOut[k][iOut] = D[0][k] ;
+			iOut++ ;
+		}
+	}
+
+	//*********** Rosenbrock 2(3) ****************
+
+	private void runRosenbrock(double xEnd, double[] xOut, double[][] yOut, int iOut) {
+		int n = numEquations ;
+		double dir = Math.signum(xEnd - x0) ;
+		double x = x0 ;
+		double[] y = Arrays.copyOf(y0, n) ;
+		double[] f0 = eval(x, y) ;
+		double hAbs = initialStepSize(x, y, f0, dir, Math.abs(xEnd - x0), 2) ;
+
+		double[] k1 = new double[n], k2 = new double[n], k3 = new double[n] ;
+		double[] yt = new double[n], yNew = new double[n], err = new double[n], scale = new double[n] ;
+		double[] T = new double[n] ;
+
+		matrix = null ;
+		boolean jacCurrent = false ;
+		boolean rejected = false ;
+		while(dir * (xEnd - x) > 0) {
+			if(numSteps + numRejectedSteps >= maxNumSteps)
+				throw new RuntimeException("Maximum number of steps (" + maxNumSteps + ") reached at x = " + x) ;
+			if(!jacCurrent) {
+				updateJacobian(x, y, f0) ;
+				// time derivative of f
+				double dt = Math.sqrt(EPS) * Math.max(Math.abs(x), hAbs) ;
+				double[] ft = eval(x + dir * dt, y) ;
+				for(int i=0; i<n; i++)
+					T[i] = (ft[i] - f0[i]) / (dir * dt) ;
+				jacCurrent = true ;
+			}
+			hAbs = Math.min(hAbs, maxStep) ;
+			boolean last = false ;
+			if(hAbs >= Math.abs(xEnd - x)) {
+				hAbs = Math.abs(xEnd - x) ;
+				last = true ;
+			}
+			double h = dir * hAbs ;
+			if(x + h == x)
+				throw new RuntimeException("Step size underflow at x = " + x) ;
+
+			if(!factorize(ROS_D * h)) {
+				numRejectedSteps++ ;
+				hAbs *= 0.5 ;
+				continue ;
+			}
+			for(int i=0; i<n; i++)
+				k1[i] = f0[i] + h * ROS_D * T[i] ;
+			matrix.solve(k1) ;
+			for(int i=0; i<n; i++)
+				yt[i] = y[i] + 0.5 * h * k1[i] ;
+			double[] f1 = eval(x + 0.5 * h, yt) ;
+			for(int i=0; i<n; i++)
+				k2[i] = f1[i] - k1[i] ;
+			matrix.solve(k2) ;
+			for(int i=0; i<n; i++) {
+				k2[i] += k1[i] ;
+				yNew[i] = y[i] + h * k2[i] ;
+			}
+			double xNew = last ? xEnd : x + h ;
+			double[] f2 = eval(xNew, yNew) ;
+			for(int i=0; i<n; i++)
+				k3[i] = f2[i] - ROS_E32 * (k2[i] - f1[i]) - 2.0 * (k1[i] - f0[i]) + h * ROS_D * T[i] ;
+			matrix.solve(k3) ;
+			for(int i=0; i<n; i++) {
+				err[i] = h / 6.0 * (k1[i] - 2.0 * k2[i] + k3[i]) ;
+				scale[i] = absTol + relTol * Math.max(Math.abs(y[i]), Math.abs(yNew[i])) ;
+			}
+			double errorNorm = norm(err, scale) ;
+			if(!(errorNorm <= 1.0)) {
+				numRejectedSteps++ ;
+				hAbs *= Double.isNaN(errorNorm) ? MIN_FACTOR : Math.max(MIN_FACTOR, 0.9 * Math.pow(errorNorm, -1.0 / 3.0)) ;
+				rejected = true ;
+				continue ;
+			}
+
+			numSteps++ ;
+			// continuous extension: y(x+s*h) = y + h*(s(1-s) k1 + s(s-2d) k2)/(1-2d)
+			while(iOut < xOut.length && dir * (xOut[iOut] - xNew) <= 0) {
+				double s = (xOut[iOut] - x) / h ;
+				double a1 = s * (1 - s) / (1 - 2 * ROS_D) ;
+				double a2 = s * (s - 2 * ROS_D) / (1 - 2 * ROS_D) ;
+				for(int k=0; k<n; k++)
+					yOut[k][iOut] = y[k] + h * (a1 * k1[k] + a2 * k2[k]) ;
+				iOut++ ;
+			}
+			x = xNew ;
+			double[] tmp = y ;
+			y = yNew ;
+			yNew = tmp ;
+			f0 = f2 ;
+			jacCurrent = false ;
+
+			double factor = errorNorm == 0 ? 5.0 : Math.min(5.0, 0.9 * Math.pow(errorNorm, -1.0 / 3.0)) ;
+			if(rejected)
+				factor = Math.min(factor, 1.0) ;
+			rejected = false ;
+			hAbs *= factor ;
+		}
+		while(iOut < xOut.length) {
+			for(int k=0; k<n; k++)
+				yOut[k][iOut] = y[k] ;
+			iOut++ ;
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package mathLib.optimize.swarm;
+
+/**
+ * Fitness function evaluating several particles in one call
+ *
+ */
+@FunctionalInterface
+public interface BatchFitnessFunction {
+
+	/**
+	 * Evaluates the particles <tt>first ... first+count-1</tt>
+	 *
+	 * @param positions : Positions of all the particles, particle k is stored in <tt>positions[k*dim ... k*dim+dim-1]</tt>
+	 * @param dim : Dimension of the particles
+	 * @param first : First particle to evaluate
+	 * @param count : Number of particles to evaluate
+	 * @param fitness : The fitness of particle k is written to <tt>fitness[k]</tt>
+	 */
+	void evaluate(double[] positions, int dim, int first, int count, double[] fitness);
+}
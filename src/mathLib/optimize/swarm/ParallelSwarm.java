@@ -0,0 +1,422 @@
+package mathLib.optimize.swarm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A particle swarm of any dimension stored as structure of arrays
+ * <p>
+ * Positions, velocities and personal bests of all the particles are kept in contiguous
+ * arrays: particle k is <tt>position[k*dim ... k*dim+dim-1]</tt>. The particles are split into
+ * batches of <tt>batchSize</tt> particles which are scored by one call of a
+ * <tt>BatchFitnessFunction</tt>, on <tt>nThreads</tt> threads.
+ * <p>
+ * In synchronous mode every iteration evaluates all the particles, then updates the
+ * personal and global bests and moves the particles. In asynchronous mode a batch is moved
+ * (with the global best known at that time) and evaluated again as soon as its evaluation
+ * is finished, so the threads never wait for the slowest batch of the iteration.
+ *
+ */
+public class ParallelSwarm {
+
+	public static double DEFAULT_INERTIA = 0.7298;
+	public static double DEFAULT_PARTICLE_INCREMENT = 1.49618;
+	public static double DEFAULT_GLOBAL_INCREMENT = 1.49618;
+
+	/** Number of particles */
+	final int numberOfParticles;
+	/** Dimension of the particles */
+	final int dim;
+
+	/** Positions, velocities, personal best positions: numberOfParticles*dim */
+	double position[], velocity[], bestPosition[];
+	/** Fitness and personal best fitness of each particle */
+	double fitness[], bestFitness[];
+
+	/** Best position so far (global best) */
+	double globalBestPosition[];
+	/** Best fitness so far (global best) */
+	double globalBestFitness;
+	/** Index of the particle which found the global best */
+	int globalBestIndex = -1;
+
+	double minPosition[], maxPosition[], maxVelocity[];
+
+	double inertia = DEFAULT_INERTIA;
+	double particleIncrement = DEFAULT_PARTICLE_INCREMENT;
+	double globalIncrement = DEFAULT_GLOBAL_INCREMENT;
+
+	BatchFitnessFunction fitnessFunction;
+	boolean maximize;
+
+	int nThreads = 1;
+	ExecutorService executor = null;
+	int batchSize = 0; // 0: numberOfParticles/nThreads
+	boolean asynchronous = false;
+
+	Random random = new Random();
+	int numberOfEvaluations = 0;
+	int numberOfIterations = 0;
+
+	//-------------------------------------------------------------------------
+	// Constructors
+	//-------------------------------------------------------------------------
+
+	/**
+	 * @param numberOfParticles : Number of particles
+	 * @param minPosition : Lower bound of each coordinate
+	 * @param maxPosition : Upper bound of each coordinate
+	 * @param fitnessFunction : Scores a batch of particles
+	 * @param maximize : Should we try to maximize or minimize this function?
+	 */
+	public ParallelSwarm(int numberOfParticles, double[] minPosition, double[] maxPosition,
+			BatchFitnessFunction fitnessFunction, boolean maximize) {
+		if (numberOfParticles <= 0) throw new RuntimeException("Number of particles should be greater than zero.");
+		if (minPosition.length != maxPosition.length) throw new RuntimeException("minPosition and maxPosition have different dimensions");
+		this.numberOfParticles = numberOfParticles;
+		this.dim = minPosition.length;
+		this.minPosition = minPosition.clone();
+		this.maxPosition = maxPosition.clone();
+		this.fitnessFunction = fitnessFunction;
+		this.maximize = maximize;
+		maxVelocity = new double[dim];
+		for (int j = 0; j < dim; j++)
+			maxVelocity[j] = (maxPosition[j] - minPosition[j]) / 2.0;
+	}
+
+	/**
+	 * Swarm with a fitness function evaluating one particle at a time, it must be thread-safe
+	 * if more than one thread is used
+	 */
+	public ParallelSwarm(int numberOfParticles, double[] minPosition, double[] maxPosition,
+			FitnessFunction fitnessFunction) {
+		this(numberOfParticles, minPosition, maxPosition, (x, dim, first, count, fit) -> {
+			for (int k = first; k < first + count; k++)
+				fit[k] = fitnessFunction.evaluate(Arrays.copyOfRange(x, k * dim, k * dim + dim));
+		}, fitnessFunction.isMaximize());
+	}
+
+	//-------------------------------------------------------------------------
+	// Parameters
+	//-------------------------------------------------------------------------
+
+	/**
+	 * Set the number of threads and the executor evaluating the fitness. If no executor is given,
+	 * a fixed thread pool is created for each call of <tt>solve()</tt> or <tt>evolve()</tt>.
+	 *
+	 * @param nThreads
+	 * @param executor
+	 */
+	public void setParallel(int nThreads, ExecutorService executor) {
+		if (nThreads < 1) throw new IllegalArgumentException("Number of threads must be positive: " + nThreads);
+		this.nThreads = nThreads;
+		this.executor = executor;
+	}
+
+	/**
+	 * Number of particles passed to one call of the fitness function
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public void setAsynchronous(boolean asynchronous) {
+		this.asynchronous = asynchronous;
+	}
+
+	public void setSeed(long seed) {
+		random = new Random(seed);
+	}
+
+	public void setInertia(double inertia) {
+		this.inertia = inertia;
+	}
+
+	public void setParticleIncrement(double particleIncrement) {
+		this.particleIncrement = particleIncrement;
+	}
+
+	public void setGlobalIncrement(double globalIncrement) {
+		this.globalIncrement = globalIncrement;
+	}
+
+	public void setMaxVelocity(double[] maxVelocity) {
+		this.maxVelocity = maxVelocity.clone();
+	}
+
+	//-------------------------------------------------------------------------
+	// Methods
+	//-------------------------------------------------------------------------
+
+	/**
+	 * Random positions and velocities, clears the bests
+	 */
+	public void init() {
+		int size = numberOfParticles * dim;
+		position = new double[size];
+		velocity = new double[size];
+		bestPosition = new double[size];
+		fitness = new double[numberOfParticles];
+		bestFitness = new double[numberOfParticles];
+		globalBestPosition = new double[dim];
+		double worst = maximize ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+		Arrays.fill(bestFitness, worst);
+		globalBestFitness = worst;
+		globalBestIndex = -1;
+		numberOfEvaluations = 0;
+		numberOfIterations = 0;
+		for (int k = 0; k < numberOfParticles; k++) {
+			for (int j = 0; j < dim; j++) {
+				int i = k * dim + j;
+				position[i] = minPosition[j] + random.nextDouble() * (maxPosition[j] - minPosition[j]);
+				velocity[i] = (2 * random.nextDouble() - 1) * maxVelocity[j];
+			}
+		}
+		System.arraycopy(position, 0, bestPosition, 0, size);
+	}
+
+	private boolean isBetter(double value, double reference) {
+		return maximize ? value > reference : value < reference;
+	}
+
+	private int getBatchSize() {
+		if (batchSize > 0) return Math.min(batchSize, numberOfParticles);
+		return (numberOfParticles + nThreads - 1) / nThreads;
+	}
+
+	/**
+	 * Update the personal and global bests with the fitness of particles <tt>first ... first+count-1</tt>
+	 */
+	private void updateBests(int first, int count) {
+		numberOfEvaluations += count;
+		for (int k = first; k < first + count; k++) {
+			double fit = fitness[k];
+			if (Double.isNaN(fit)) continue;
+			if (isBetter(fit, bestFitness[k])) {
+				bestFitness[k] = fit;
+				System.arraycopy(position, k * dim, bestPosition, k * dim, dim);
+			}
+			if (isBetter(fit, globalBestFitness)) {
+				globalBestFitness = fit;
+				globalBestIndex = k;
+				System.arraycopy(position, k * dim, globalBestPosition, 0, dim);
+			}
+		}
+	}
+
+	/**
+	 * Move particles <tt>first ... first+count-1</tt>: velocity and position update, then velocity
+	 * and position constraints (a particle leaving the domain stops on its boundary)
+	 */
+	private void move(int first, int count) {
+		for (int k = first; k < first + count; k++) {
+			int base = k * dim;
+			for (int j = 0; j < dim; j++) {
+				int i = base + j;
+				double v = inertia * velocity[i]
+						+ particleIncrement * random.nextDouble() * (bestPosition[i] - position[i])
+						+ globalIncrement * random.nextDouble() * (globalBestPosition[j] - position[i]);
+				if (v > maxVelocity[j]) v = maxVelocity[j];
+				else if (v < -maxVelocity[j]) v = -maxVelocity[j];
+				double x = position[i] + v;
+				if (x > maxPosition[j]) {
+					x = maxPosition[j];
+					v = 0.0;
+				} else if (x < minPosition[j]) {
+					x = minPosition[j];
+					v = 0.0;
+				}
+				position[i] = x;
+				velocity[i] = v;
+			}
+		}
+	}
+
+	/**
+	 * One synchronous iteration: evaluate all the particles, update the bests, move the particles
+	 */
+	public void evolve() {
+		if (position == null) init();
+		ExecutorService exec = getExecutor();
+		try {
+			evaluateAll(exec);
+		} finally {
+			if (exec != null && executor == null) exec.shutdown();
+		}
+		updateBests(0, numberOfParticles);
+		move(0, numberOfParticles);
+		numberOfIterations++;
+	}
+
+	/**
+	 * Run <tt>numIterations</tt> iterations, each particle is evaluated <tt>numIterations</tt> times
+	 *
+	 * @param numIterations
+	 */
+	public void solve(int numIterations) {
+		if (position == null) init();
+		ExecutorService exec = getExecutor();
+		try {
+			if (asynchronous && exec != null) {
+				solveAsynchronous(numIterations, exec);
+			} else {
+				for (int it = 0; it < numIterations; it++) {
+					evaluateAll(exec);
+					updateBests(0, numberOfParticles);
+					move(0, numberOfParticles);
+					numberOfIterations++;
+				}
+			}
+		} finally {
+			if (exec != null && executor == null) exec.shutdown();
+		}
+	}
+
+	private ExecutorService getExecutor() {
+		if (nThreads <= 1) return executor;
+		if (executor != null) return executor;
+		return Executors.newFixedThreadPool(nThreads);
+	}
+
+	private void evaluateAll(ExecutorService exec) {
+		int bs = getBatchSize();
+		if (exec == null) {
+			for (int first = 0; first < numberOfParticles; first += bs)
+				fitnessFunction.evaluate(position, dim, first, Math.min(bs, numberOfParticles - first), fitness);
+			return;
+		}
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int first = 0; first < numberOfParticles; first += bs) {
+			final int f = first, count = Math.min(bs, numberOfParticles - first);
+			futures.add(exec.submit(() -> fitnessFunction.evaluate(position, dim, f, count, fitness)));
+		}
+		try {
+			for (Future<?> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Swarm evaluation interrupted");
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Swarm evaluation failed: " + e.getCause(), e.getCause());
+		}
+	}
+
+	/**
+	 * Each batch is moved and evaluated again as soon as its evaluation is done, until every
+	 * batch has been evaluated <tt>numIterations</tt> times. Only this thread updates the
+	 * bests and the positions, a batch in evaluation is never moved.
+	 */
+	private void solveAsynchronous(int numIterations, ExecutorService exec) {
+		int bs = getBatchSize();
+		int nBatches = (numberOfParticles + bs - 1) / bs;
+		int[] done = new int[nBatches];
+		CompletionService<Integer> completion = new ExecutorCompletionService<Integer>(exec);
+		int running = 0;
+		for (int b = 0; b < nBatches && numIterations > 0; b++) {
+			submit(completion, b, bs);
+			running++;
+		}
+		try {
+			while (running > 0) {
+				int b = completion.take().get();
+				running--;
+				int first = b * bs, count = Math.min(bs, numberOfParticles - first);
+				updateBests(first, count);
+				if (++done[b] < numIterations) {
+					move(first, count);
+					submit(completion, b, bs);
+					running++;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Swarm evaluation interrupted");
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Swarm evaluation failed: " + e.getCause(), e.getCause());
+		}
+		// last move, as in synchronous mode
+		move(0, numberOfParticles);
+		numberOfIterations += numIterations;
+	}
+
+	private void submit(CompletionService<Integer> completion, final int b, int bs) {
+		final int first = b * bs, count = Math.min(bs, numberOfParticles - first);
+		completion.submit(() -> {
+			fitnessFunction.evaluate(position, dim, first, count, fitness);
+			return b;
+		});
+	}
+
+	//-------------------------------------------------------------------------
+	// Getters
+	//-------------------------------------------------------------------------
+
+	public double getBestFitness() {
+		return globalBestFitness;
+	}
+
+	public double[] getBestPosition() {
+		return globalBestPosition;
+	}
+
+	public int getBestParticleIndex() {
+		return globalBestIndex;
+	}
+
+	public int getDimension() {
+		return dim;
+	}
+
+	public int getNumberOfParticles() {
+		return numberOfParticles;
+	}
+
+	public int getNumberOfEvaluations() {
+		return numberOfEvaluations;
+	}
+
+	public int getNumberOfIterations() {
+		return numberOfIterations;
+	}
+
+	/**
+	 * Positions of all the particles, particle k is <tt>[k*dim ... k*dim+dim-1]</tt>
+	 */
+	public double[] getPositions() {
+		return position;
+	}
+
+	public double[] getVelocities() {
+		return velocity;
+	}
+
+	public double[] getFitness() {
+		return fitness;
+	}
+
+	public double[] getPosition(int k) {
+		return Arrays.copyOfRange(position, k * dim, k * dim + dim);
+	}
+
+	public double[] getParticleBestPosition(int k) {
+		return Arrays.copyOfRange(bestPosition, k * dim, k * dim + dim);
+	}
+
+	public double getParticleBestFitness(int k) {
+		return bestFitness[k];
+	}
+
+	@Override
+	public String toString() {
+		return "ParallelSwarm: " + numberOfParticles + " particles, dim = " + dim
+				+ ", best fitness = " + globalBestFitness + ", best position = " + Arrays.toString(globalBestPosition);
+	}
+}
@@ -85,6 +85,41 @@ public interface Sequence {
 		return (seq1+seq2+seq3+seq4+seq5)/24.0 ;
 	}
 
+	/**
+	 * Wynn epsilon algorithm applied from the index 0. See {@link TabulatedSequence#wynnEpsilon()}.
+	 * @return a {@code Sequence} object.
+	 */
+	default Sequence wynnEpsilon() {
+		return tabulate().wynnEpsilon() ;
+	}
+
+	/**
+	 * Levin u-transformation of a sequence of partial sums from the index 0.
+	 * See {@link TabulatedSequence#levinU()}.
+	 * @return a {@code Sequence} object.
+	 */
+	default Sequence levinU() {
+		return tabulate().levinU() ;
+	}
+
+	/**
+	 * memoised version of the sequence, see {@link TabulatedSequence}. Transformations of the
+	 * returned sequence evaluate each term of this sequence only once.
+	 * @return a {@code TabulatedSequence} object.
+	 */
+	default TabulatedSequence tabulate() {
+		return new TabulatedSequence(this) ;
+	}
+
+	/**
+	 * memoised version of the sequence for the indices greater than or equal to <tt>start</tt>
+	 * @param start first tabulated index
+	 * @return a {@code TabulatedSequence} object.
+	 */
+	default TabulatedSequence tabulate(long start) {
+		return new TabulatedSequence(this, start) ;
+	}
+
 	//*************** operations *******************
 
 	/**
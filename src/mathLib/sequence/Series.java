@@ -1,49 +1,124 @@
 package mathLib.sequence;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class Series {
 
 	Sequence seq = null ;
 
-	Map<Long, Double> cache ;
+	TabulatedSequence terms ; // cached terms a_k, contiguous from terms.getStart()
+	TabulatedSequence partialSums ; // cached partial sums of the cached terms
 	boolean doCache = false ;
 	double convergenceTol = 1e-10 ;
 	long maxIterations = 10000L ;
 
 	public Series(Sequence seq) {
 		this.seq = seq ;
-		this.cache = new HashMap<>() ;
 	}
 
 	public void setCachingFlag(boolean doCaching){
 		this.doCache = doCaching ;
+		if(!doCaching) {
+			terms = null ;
+			partialSums = null ;
+		}
+	}
+
+	public void setConvergenceTol(double tol) {
+		this.convergenceTol = tol ;
+	}
+
+	public void setMaxIterations(long maxIterations) {
+		this.maxIterations = maxIterations ;
 	}
 
 	// finite series
 	public double sum(long initial, long last){
 		double result = 0.0 ;
-		double x = 0.0 ;
+		if(doCache) {
+			// here is where caching happens: the terms are read from the table, not recomputed.
+			// They are summed rather than subtracting two partial sums, which would lose the
+			// precision of small tails.
+			TabulatedSequence t = getTerms(initial) ;
+			for(long k=initial; k<last+1; k++)
+				result += t.evaluate(k) ;
+			return result ;
+		}
 		for(long k=initial; k<last+1; k++)
-			if(doCache) {
-				// here is where caching happens
-				if(cache.containsKey(k)) {
-					result += cache.get(k) ; // if a[k] has been evaluated before, we just retrieve it
-				}
-				else{
-					x = seq.evaluate(k) ; // if first time a[k] evaluated, put it in the map
-					cache.put(k, x) ;
-					result += x ;
-				}
-			}
-			else{
-				result += seq.evaluate(k) ;
-			}
-
+			result += seq.evaluate(k) ;
 		return result ;
 	}
 
+	// the cached terms, kept if the table reaches initial (it is then extended up to the last
+	// summed index), otherwise replaced by a new table starting at initial
+	private TabulatedSequence getTerms(long initial) {
+		if(terms==null || initial<terms.getStart() || initial>terms.getStart()+terms.size()) {
+			terms = seq.tabulate(initial) ;
+			partialSums = null ;
+		}
+		return terms ;
+	}
+
+	/**
+	 * partial sums <tt>S_n = a_initial + ... + a_n</tt>, tabulated. With caching on, the table is kept
+	 * and reused by the following calls with the same <tt>initial</tt>, and it shares the cached terms
+	 * with <tt>sum(initial, last)</tt>.
+	 * @param initial first index of the series
+	 * @return a {@code TabulatedSequence} object
+	 */
+	public TabulatedSequence getPartialSums(long initial) {
+		if(!doCache)
+			return seq.tabulate(initial).partialSums() ;
+		if(terms==null || terms.getStart()!=initial) {
+			terms = seq.tabulate(initial) ;
+			partialSums = null ;
+		}
+		if(partialSums==null)
+			partialSums = terms.partialSums() ;
+		return partialSums ;
+	}
+
+	/**
+	 * infinite sum accelerated with the Levin u-transformation of the partial sums (logarithmic
+	 * and linear convergence, e.g. <tt>sum(1/k^2)</tt> or alternating series).
+	 * Each term of the series is evaluated once.
+	 * @param initial first index of the series
+	 * @return the estimated limit
+	 */
+	public double sumLevin(long initial) {
+		return limit(getPartialSums(initial).levinU(), initial) ;
+	}
+
+	/**
+	 * infinite sum accelerated with the Wynn epsilon algorithm on the partial sums (linear
+	 * convergence and alternating series). Each term of the series is evaluated once.
+	 * @param initial first index of the series
+	 * @return the estimated limit
+	 */
+	public double sumWynn(long initial) {
+		return limit(getPartialSums(initial).wynnEpsilon(), initial) ;
+	}
+
+	// stops when two consecutive estimates agree, or when their difference starts growing again:
+	// the later estimates of Levin and Wynn lose accuracy to round-off
+	private double limit(Sequence estimates, long initial) {
+		double previous = estimates.evaluate(initial) ;
+		double best = previous ;
+		double bestError = Double.MAX_VALUE ;
+		for(long k=initial+1; k<initial+maxIterations; k++) {
+			double current = estimates.evaluate(k) ;
+			double absError = Math.abs(current-previous) ;
+			if(absError<=convergenceTol*Math.abs(current))
+				return current ;
+			if(absError<bestError) {
+				best = current ;
+				bestError = absError ;
+			}
+			else if(absError>100.0*bestError || Double.isNaN(absError))
+				break ;
+			previous = current ;
+		}
+		return best ;
+	}
+
 	// only with initial index --> implies infinite sum
 	public double sum(long initial){
 		double result = 0.0 ;
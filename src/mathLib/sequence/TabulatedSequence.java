@@ -0,0 +1,269 @@
+package mathLib.sequence;
+
+import java.util.Arrays;
+
+/**
+ * sequence whose terms are evaluated once and stored in a growable primitive table.
+ * Terms from the start index on are filled lazily and in order, so evaluating the term
+ * <tt>n</tt> evaluates the underlying sequence for all the indices <tt>start..n</tt> exactly once.
+ * <p>
+ * The transformations of a tabulated sequence are tabulated too and read the table of
+ * their base sequence: chaining them (e.g. <tt>aitken().aitken()</tt>) costs one evaluation
+ * of the base per index instead of a number growing exponentially with the depth.
+ * The Wynn-epsilon and Levin-u transforms are updated incrementally when a new term is
+ * added to the table.
+ * <p>
+ * Not thread-safe.
+ *
+ */
+public class TabulatedSequence implements Sequence {
+
+	static final double TINY = 1e-60 ;
+	static final double HUGE = 1e60 ;
+
+	Sequence seq ;
+	long start ;
+	double[] table ;
+	int size ;
+
+	public TabulatedSequence(Sequence seq) {
+		this(seq, 0L) ;
+	}
+
+	/**
+	 * @param seq the underlying sequence
+	 * @param start first tabulated index, terms below it are evaluated directly
+	 */
+	public TabulatedSequence(Sequence seq, long start) {
+		this.seq = seq ;
+		this.start = start ;
+		this.table = new double[16] ;
+		this.size = 0 ;
+	}
+
+	@Override
+	public double evaluate(long k) {
+		if(k<start)
+			return seq.evaluate(k) ;
+		long i = k-start ;
+		if(i>=size) {
+			if(i>=Integer.MAX_VALUE-8)
+				throw new IllegalArgumentException("index is too large to be tabulated: " + k) ;
+			fill((int) i) ;
+		}
+		return table[(int) i] ;
+	}
+
+	/**
+	 * evaluates the terms up to the table position <tt>last</tt>, in increasing order
+	 */
+	protected void fill(int last) {
+		if(last>=table.length)
+			table = Arrays.copyOf(table, Math.max(last+1, 2*table.length)) ;
+		for(int i=size; i<=last; i++) {
+			table[i] = next(start+i) ;
+			size = i+1 ; // the term is visible for the evaluation of the next ones
+		}
+	}
+
+	/**
+	 * computes the term <tt>k</tt> knowing that all the terms <tt>start..k-1</tt> are in the table
+	 */
+	protected double next(long k) {
+		return seq.evaluate(k) ;
+	}
+
+	public long getStart() {
+		return start ;
+	}
+
+	/**
+	 * @return the number of terms evaluated so far
+	 */
+	public int size() {
+		return size ;
+	}
+
+	/**
+	 * @return the terms <tt>start..start+size()-1</tt>
+	 */
+	public double[] toArray() {
+		return Arrays.copyOf(table, size) ;
+	}
+
+	/**
+	 * removes all the stored terms (e.g. when the underlying sequence has been changed)
+	 */
+	public void clear() {
+		size = 0 ;
+	}
+
+	/**
+	 * sequence of the partial sums <tt>S_n = a_start + ... + a_n</tt>, accumulated incrementally
+	 * @return a {@code TabulatedSequence} object
+	 */
+	public TabulatedSequence partialSums() {
+		return new PartialSums(this) ;
+	}
+
+	//*************** tabulated transformations *******************
+
+	@Override
+	public TabulatedSequence diff() {
+		return new TabulatedSequence(Sequence.super.diff(), start) ;
+	}
+
+	@Override
+	public TabulatedSequence aitken() {
+		return new TabulatedSequence(Sequence.super.aitken(), start) ;
+	}
+
+	@Override
+	public TabulatedSequence shanks() {
+		return new TabulatedSequence(Sequence.super.shanks(), start+1) ;
+	}
+
+	@Override
+	public TabulatedSequence richardson() {
+		return new TabulatedSequence(Sequence.super.richardson(), start) ;
+	}
+
+	@Override
+	public TabulatedSequence richardson2() {
+		return new TabulatedSequence(Sequence.super.richardson2(), start) ;
+	}
+
+	@Override
+	public TabulatedSequence richardson3() {
+		return new TabulatedSequence(Sequence.super.richardson3(), start) ;
+	}
+
+	@Override
+	public TabulatedSequence richardson4() {
+		return new TabulatedSequence(Sequence.super.richardson4(), start) ;
+	}
+
+	/**
+	 * Wynn epsilon algorithm. The term <tt>n</tt> is the highest even-order epsilon built on
+	 * the terms <tt>start..n</tt> (the iterated Shanks transformation). Mostly used for
+	 * alternating and linearly convergent sequences.
+	 * @return a {@code TabulatedSequence} object
+	 */
+	@Override
+	public TabulatedSequence wynnEpsilon() {
+		return new WynnEpsilon(this) ;
+	}
+
+	/**
+	 * Levin u-transformation of a sequence of partial sums, with the remainder estimates
+	 * <tt>(n-start+1)*(S_n - S_(n-1))</tt>. The term <tt>n</tt> uses the terms <tt>start..n</tt>.
+	 * Mostly used for logarithmically convergent series, e.g. <tt>sum(1/k^2)</tt>.
+	 * @return a {@code TabulatedSequence} object
+	 */
+	@Override
+	public TabulatedSequence levinU() {
+		return new LevinU(this) ;
+	}
+
+	@Override
+	public TabulatedSequence tabulate() {
+		return this ;
+	}
+
+	//*************** incremental transformations *******************
+
+	static class PartialSums extends TabulatedSequence {
+
+		PartialSums(TabulatedSequence terms) {
+			super(terms, terms.start) ;
+		}
+
+		@Override
+		protected double next(long k) {
+			int i = (int) (k-start) ;
+			double a = seq.evaluate(k) ;
+			return (i==0) ? a : table[i-1] + a ;
+		}
+
+		@Override
+		public double evaluate(long k) {
+			return (k<start) ? 0.0 : super.evaluate(k) ;
+		}
+	}
+
+	static class WynnEpsilon extends TabulatedSequence {
+
+		// e[j] = eps_(m-j)^(j) after the term m has been added
+		double[] e = new double[16] ;
+
+		WynnEpsilon(TabulatedSequence base) {
+			super(base, base.start) ;
+		}
+
+		@Override
+		protected double next(long k) {
+			int m = (int) (k-start) ;
+			if(m>=e.length)
+				e = Arrays.copyOf(e, 2*e.length) ;
+			e[m] = seq.evaluate(k) ;
+			if(m==0)
+				return e[0] ;
+			double aux2 = 0.0, aux1 ;
+			for(int j=m; j>=1; j--) {
+				aux1 = aux2 ;
+				aux2 = e[j-1] ;
+				double d = e[j]-aux2 ;
+				e[j-1] = (Math.abs(d)<TINY) ? aux1 + HUGE : aux1 + 1.0/d ;
+			}
+			return (m%2==0) ? e[0] : e[1] ;
+		}
+	}
+
+	static class LevinU extends TabulatedSequence {
+
+		double beta = 1.0 ;
+		double[] num = new double[16] ;
+		double[] den = new double[16] ;
+		double previous ;
+
+		LevinU(TabulatedSequence base) {
+			super(base, base.start) ;
+		}
+
+		@Override
+		protected double next(long k) {
+			int m = (int) (k-start) ;
+			if(m>=num.length) {
+				num = Arrays.copyOf(num, 2*num.length) ;
+				den = Arrays.copyOf(den, 2*den.length) ;
+			}
+			double s = seq.evaluate(k) ;
+			double omega = (beta+m)*((m==0) ? s : s-previous) ;
+			previous = s ;
+			if(Math.abs(omega)<TINY) {
+				num[m] = HUGE ;
+				den[m] = HUGE ;
+			}
+			else {
+				num[m] = s/omega ;
+				den[m] = 1.0/omega ;
+			}
+			if(m>0) {
+				num[m-1] = num[m]-num[m-1] ;
+				den[m-1] = den[m]-den[m-1] ;
+				double bn1 = beta+m-1 ;
+				double bn2 = beta+m ;
+				double coef = bn1/bn2 ;
+				double pow = 1.0 ;
+				for(int j=2; j<=m; j++) {
+					double factor = (beta+m-j)*pow/bn2 ;
+					num[m-j] = num[m-j+1]-factor*num[m-j] ;
+					den[m-j] = den[m-j+1]-factor*den[m-j] ;
+					pow *= coef ;
+				}
+			}
+			return (Math.abs(den[0])<TINY) ? HUGE : num[0]/den[0] ;
+		}
+	}
+
+}
@@ -0,0 +1,12 @@
+package mathLib.sfg;
+
+import mathLib.numbers.Complex;
+
+/**
+ * Gain of the edge <tt>from -> to</tt> (base 1) of a signal flow graph as a function of a
+ * parameter (wavelength, frequency, ...)
+ *
+ */
+public interface GainFunction {
+	Complex gain(int from, int to, double parameter) ;
+}
@@ -0,0 +1,661 @@
+package mathLib.sfg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import mathLib.numbers.Complex;
+
+/**
+ * Mason's gain formula on a signal flow graph with the topology and the gains kept apart.
+ * <p>
+ * Loops and forward paths are stored as sequences of edges and as bitsets of their nodes.
+ * The elementary cycles are enumerated once by Johnson's algorithm, two loops touch if the
+ * intersection of their bitsets is not empty, and the groups of non-touching loops are
+ * visited recursively by intersecting bitsets of candidate loops. <tt>Delta</tt> and the
+ * cofactors are then evaluated without building the groups explicitly.
+ * <p>
+ * The topology is only computed again when an arrow is added: the gains can be changed by
+ * <tt>setGain()</tt> or <tt>setGains()</tt>, and <tt>sweep()</tt> evaluates the transfer
+ * function for many values of a parameter. Parallel edges are merged into one edge whose
+ * gain is the sum of their gains, which does not change the result of Mason's formula.
+ * Unlike {@link SFG}, arrows with a zero gain are kept, since their gain may depend on the
+ * parameter of a sweep.
+ *
+ */
+public class SFGEngine {
+
+	private final ArrayList<String> nodesName ;
+	private final int n ;
+
+	// merged edges
+	private int numEdges = 0 ;
+	private int[] edgeFrom = new int[16], edgeTo = new int[16] ;
+	private double[] edgeRe = new double[16], edgeIm = new double[16] ;
+	private final List<List<Integer>> outEdges ;
+
+	// topology: loops as lists of edges and bitsets of nodes
+	private boolean analyzed = false ;
+	private int nodeWords, loopWords ;
+	private int[][] loopEdges ;
+	private long[][] loopNodes ;
+	// loops of larger index which do not touch loop i
+	private long[][] nonTouching ;
+	private final HashMap<Integer, Transfer> transfers = new HashMap<>() ;
+
+	// Delta of the sets of loops met by the recursion of deltaOf(): terms (loop, child set)
+	// of set s in termStart[s] ... termStart[s+1]-1
+	private HashMap<LoopSet, Integer> deltaIndex ;
+	private int numDeltas, numTerms, rootDelta ;
+	private int[] termStart, termLoop, termChild ;
+
+	// gains of the loops and Deltas, updated when the gains of the edges change
+	private boolean gainsUpdated = false ;
+	private double[] loopRe, loopIm ;
+	private double[] deltaRe, deltaIm ;
+
+	private static class Transfer {
+		int[][] pathEdges ;
+		int[] cofactors ;
+	}
+
+	public SFGEngine(ArrayList<String> names) {
+		nodesName = new ArrayList<>(names) ;
+		n = nodesName.size() ;
+		outEdges = new ArrayList<>(n) ;
+		for (int i = 0; i < n; i++) {
+			outEdges.add(new ArrayList<>()) ;
+		}
+	}
+
+	/**
+	 * Build the engine from the nodes and arrows of an existing graph
+	 */
+	public SFGEngine(SFG sfg) {
+		this(sfg.getNodes()) ;
+		ArrayList<Edge>[] graph = sfg.getEdges() ;
+		for (int i = 0; i < graph.length; i++) {
+			for (Edge e : graph[i]) {
+				addArrow(i + 1, e.getTo() + 1, e.getGain()) ;
+			}
+		}
+	}
+
+	public ArrayList<String> getNodes() {
+		return nodesName ;
+	}
+
+	public void addArrow(int from, int to, Complex gain) { // from/to base 1
+		checkNode(from) ;
+		checkNode(to) ;
+		int e = findEdge(from - 1, to - 1) ;
+		if (e >= 0) {
+			edgeRe[e] += gain.re() ;
+			edgeIm[e] += gain.im() ;
+			gainsUpdated = false ;
+			return ;
+		}
+		if (numEdges == edgeFrom.length) {
+			int size = 2 * numEdges ;
+			edgeFrom = Arrays.copyOf(edgeFrom, size) ;
+			edgeTo = Arrays.copyOf(edgeTo, size) ;
+			edgeRe = Arrays.copyOf(edgeRe, size) ;
+			edgeIm = Arrays.copyOf(edgeIm, size) ;
+		}
+		edgeFrom[numEdges] = from - 1 ;
+		edgeTo[numEdges] = to - 1 ;
+		edgeRe[numEdges] = gain.re() ;
+		edgeIm[numEdges] = gain.im() ;
+		outEdges.get(from - 1).add(numEdges) ;
+		numEdges++ ;
+		analyzed = false ;
+		gainsUpdated = false ;
+		transfers.clear() ;
+	}
+
+	public void addArrow(int from, int to, double gain_real, double gain_imag) { // from/to base 1
+		addArrow(from, to, new Complex(gain_real, gain_imag)) ;
+	}
+
+	public void addArrow(String nodeFrom, String nodeTo, Complex gain) {
+		addArrow(indexOf(nodeFrom), indexOf(nodeTo), gain) ;
+	}
+
+	public void addArrow(String nodeFrom, String nodeTo, double gain) {
+		addArrow(indexOf(nodeFrom), indexOf(nodeTo), new Complex(gain, 0)) ;
+	}
+
+	public void addArrow(String nodeFrom, String nodeTo, double gain_real, double gain_imag) {
+		addArrow(indexOf(nodeFrom), indexOf(nodeTo), new Complex(gain_real, gain_imag)) ;
+	}
+
+	/**
+	 * Change the gain of an existing arrow (the sum of the gains of parallel arrows) without
+	 * changing the topology
+	 */
+	public void setGain(int from, int to, Complex gain) { // from/to base 1
+		checkNode(from) ;
+		checkNode(to) ;
+		int e = findEdge(from - 1, to - 1) ;
+		if (e < 0)
+			throw new IllegalArgumentException("No arrow from " + nodesName.get(from - 1) + " to " + nodesName.get(to - 1)) ;
+		edgeRe[e] = gain.re() ;
+		edgeIm[e] = gain.im() ;
+		gainsUpdated = false ;
+	}
+
+	public void setGain(String nodeFrom, String nodeTo, Complex gain) {
+		setGain(indexOf(nodeFrom), indexOf(nodeTo), gain) ;
+	}
+
+	/**
+	 * Set the gains of all the arrows for one value of the parameter
+	 */
+	public void setGains(GainFunction func, double parameter) {
+		for (int e = 0; e < numEdges; e++) {
+			Complex g = func.gain(edgeFrom[e] + 1, edgeTo[e] + 1, parameter) ;
+			edgeRe[e] = g.re() ;
+			edgeIm[e] = g.im() ;
+		}
+		gainsUpdated = false ;
+	}
+
+	public Complex getGain(int src, int dest) { // src/dest base 1
+		Transfer t = getTransfer(src, dest) ;
+		updateGains() ;
+		return transferGain(t) ;
+	}
+
+	public Complex getGain(String nodeSrc, String nodeDest) {
+		return getGain(indexOf(nodeSrc), indexOf(nodeDest)) ;
+	}
+
+	/**
+	 * Transfer function from <tt>nodeSrc</tt> to <tt>nodeDest</tt> for each value of the parameter.
+	 * The loops, forward paths and groups of non-touching loops are only enumerated once.
+	 */
+	public Complex[] sweep(String nodeSrc, String nodeDest, GainFunction func, double[] parameters) {
+		Transfer t = getTransfer(indexOf(nodeSrc), indexOf(nodeDest)) ;
+		Complex[] result = new Complex[parameters.length] ;
+		for (int k = 0; k < parameters.length; k++) {
+			setGains(func, parameters[k]) ;
+			updateGains() ;
+			result[k] = transferGain(t) ;
+		}
+		return result ;
+	}
+
+	/**
+	 * Determinant of the graph: <tt>1 - sum(L_i) + sum(L_i*L_j) - ...</tt>
+	 */
+	public Complex getDelta() {
+		analyze() ;
+		updateGains() ;
+		return delta(rootDelta) ;
+	}
+
+	/**
+	 * Cofactors of the forward paths from <tt>src</tt> to <tt>dest</tt> (in the order of
+	 * <tt>printForwardPaths()</tt>)
+	 */
+	public Complex[] getCofactors(int src, int dest) { // src/dest base 1
+		Transfer t = getTransfer(src, dest) ;
+		updateGains() ;
+		Complex[] cofactors = new Complex[t.cofactors.length] ;
+		for (int p = 0; p < cofactors.length; p++) {
+			cofactors[p] = delta(t.cofactors[p]) ;
+		}
+		return cofactors ;
+	}
+
+	public Complex[] getCofactors(String nodeSrc, String nodeDest) {
+		return getCofactors(indexOf(nodeSrc), indexOf(nodeDest)) ;
+	}
+
+	public int getNumberOfLoops() {
+		analyze() ;
+		return loopEdges.length ;
+	}
+
+	public int getNumberOfForwardPaths(String nodeSrc, String nodeDest) {
+		return getTransfer(indexOf(nodeSrc), indexOf(nodeDest)).pathEdges.length ;
+	}
+
+	/**
+	 * Number of groups of <tt>k</tt> non-touching loops for <tt>k = 1, 2, ...</tt> (the sums
+	 * of Mason's formula). The cost of an evaluation is the number of terms of the sets of
+	 * loops met by the recursion, which can be much smaller.
+	 */
+	public long[] getNumberOfNonTouchingGroups() {
+		analyze() ;
+		if (rootDelta < 0)
+			return new long[0] ;
+		int levels = Math.min(loopEdges.length, n) ;
+		long[][] count = new long[rootDelta + 1][] ;
+		for (int s = 0; s <= rootDelta; s++) {
+			count[s] = new long[levels + 1] ;
+			for (int t = termStart[s]; t < termStart[s + 1]; t++) {
+				count[s][1]++ ;
+				int c = termChild[t] ;
+				if (c >= 0)
+					for (int k = 2; k <= levels; k++) {
+						count[s][k] += count[c][k - 1] ;
+					}
+			}
+		}
+		int maxLevel = levels ;
+		while (count[rootDelta][maxLevel] == 0)
+			maxLevel-- ;
+		return Arrays.copyOfRange(count[rootDelta], 1, maxLevel + 1) ;
+	}
+
+	/**
+	 * Number of terms <tt>L_i*Delta(C)</tt> evaluated for each set of gains
+	 */
+	public int getNumberOfTerms() {
+		analyze() ;
+		return numTerms ;
+	}
+
+	public String printAllLoops() {
+		analyze() ;
+		updateGains() ;
+		StringBuilder output = new StringBuilder() ;
+		for (int i = 0; i < loopEdges.length; i++) {
+			output.append("L").append(i + 1).append(": ").append(printEdges(loopEdges[i])) ;
+			output.append(" , Gain = ").append(new Complex(loopRe[i], loopIm[i])).append("\n") ;
+		}
+		return output.toString() ;
+	}
+
+	public String printForwardPaths(String nodeSrc, String nodeDest) {
+		Transfer t = getTransfer(indexOf(nodeSrc), indexOf(nodeDest)) ;
+		StringBuilder output = new StringBuilder() ;
+		double[] g = new double[2] ;
+		for (int p = 0; p < t.pathEdges.length; p++) {
+			product(t.pathEdges[p], g) ;
+			output.append("Forward Path #").append(p + 1).append(": ").append(printEdges(t.pathEdges[p])) ;
+			output.append(" , Gain = ").append(new Complex(g[0], g[1])).append("\n") ;
+		}
+		return output.toString() ;
+	}
+
+	//------------------------ topology ------------------------
+
+	private void analyze() {
+		if (analyzed)
+			return ;
+		nodeWords = (n + 63) >>> 6 ;
+		ArrayList<int[]> loops = new JohnsonCycles().find() ;
+		int numLoops = loops.size() ;
+		loopWords = (numLoops + 63) >>> 6 ;
+		loopEdges = loops.toArray(new int[numLoops][]) ;
+		loopNodes = new long[numLoops][] ;
+		for (int i = 0; i < numLoops; i++) {
+			loopNodes[i] = nodeSet(loopEdges[i], -1) ;
+		}
+		nonTouching = new long[numLoops][loopWords] ;
+		for (int i = 0; i < numLoops; i++) {
+			for (int k = i + 1; k < numLoops; k++) {
+				if (!intersects(loopNodes[i], loopNodes[k]))
+					nonTouching[i][k >>> 6] |= 1L << k ;
+			}
+		}
+		loopRe = new double[numLoops] ;
+		loopIm = new double[numLoops] ;
+		deltaIndex = new HashMap<>() ;
+		numDeltas = 0 ;
+		numTerms = 0 ;
+		termStart = new int[16] ;
+		termLoop = new int[16] ;
+		termChild = new int[16] ;
+		deltaRe = new double[0] ;
+		deltaIm = new double[0] ;
+		transfers.clear() ;
+		analyzed = true ;
+		long[] allLoops = new long[loopWords] ;
+		for (int i = 0; i < numLoops; i++) {
+			allLoops[i >>> 6] |= 1L << i ;
+		}
+		rootDelta = deltaOf(allLoops, 0) ;
+	}
+
+	private Transfer getTransfer(int src, int dest) {
+		checkNode(src) ;
+		checkNode(dest) ;
+		if (src == dest)
+			throw new IllegalArgumentException("Source and destination must be different: " + nodesName.get(src - 1)) ;
+		analyze() ;
+		Integer key = (src - 1) * n + (dest - 1) ;
+		Transfer t = transfers.get(key) ;
+		if (t != null)
+			return t ;
+		ArrayList<int[]> paths = new ArrayList<>() ;
+		boolean[] visited = new boolean[n] ;
+		visited[src - 1] = true ;
+		findPaths(src - 1, dest - 1, visited, new int[n], 0, paths) ;
+		t = new Transfer() ;
+		t.pathEdges = paths.toArray(new int[paths.size()][]) ;
+		t.cofactors = new int[paths.size()] ;
+		for (int p = 0; p < paths.size(); p++) {
+			long[] nodes = nodeSet(t.pathEdges[p], dest - 1) ;
+			long[] loops = new long[loopWords] ;
+			for (int i = 0; i < loopEdges.length; i++) {
+				if (!intersects(nodes, loopNodes[i]))
+					loops[i >>> 6] |= 1L << i ;
+			}
+			t.cofactors[p] = deltaOf(loops, 0) ;
+		}
+		transfers.put(key, t) ;
+		return t ;
+	}
+
+	private void findPaths(int cur, int dest, boolean[] visited, int[] stack, int length, ArrayList<int[]> paths) {
+		for (int e : outEdges.get(cur)) {
+			int to = edgeTo[e] ;
+			stack[length] = e ;
+			if (to == dest) {
+				paths.add(Arrays.copyOf(stack, length + 1)) ;
+			}
+			else if (!visited[to]) {
+				visited[to] = true ;
+				findPaths(to, dest, visited, stack, length + 1, paths) ;
+				visited[to] = false ;
+			}
+		}
+	}
+
+	/**
+	 * Elementary cycles by Johnson's algorithm: the cycles whose smallest node is <tt>s</tt>
+	 * are searched in the strongly connected component of <tt>s</tt> in the subgraph of the
+	 * nodes <tt>>= s</tt>.
+	 */
+	private class JohnsonCycles {
+		final boolean[] inComponent = new boolean[n] ;
+		final boolean[] blocked = new boolean[n] ;
+		final long[][] blockedBy = new long[n][nodeWords] ;
+		final int[] stack = new int[n] ;
+		final List<List<Integer>> inEdges ;
+		final ArrayList<int[]> cycles = new ArrayList<>() ;
+
+		JohnsonCycles() {
+			inEdges = new ArrayList<>(n) ;
+			for (int i = 0; i < n; i++) {
+				inEdges.add(new ArrayList<>()) ;
+			}
+			for (int e = 0; e < numEdges; e++) {
+				inEdges.get(edgeTo[e]).add(e) ;
+			}
+		}
+
+		ArrayList<int[]> find() {
+			for (int s = 0; s < n; s++) {
+				component(s) ;
+				for (int v = s; v < n; v++) {
+					if (inComponent[v]) {
+						blocked[v] = false ;
+						Arrays.fill(blockedBy[v], 0L) ;
+					}
+				}
+				circuit(s, s, 0) ;
+			}
+			return cycles ;
+		}
+
+		private void component(int s) {
+			boolean[] forward = new boolean[n] ;
+			reach(s, s, forward, true) ;
+			Arrays.fill(inComponent, false) ;
+			reach(s, s, inComponent, false) ;
+			for (int v = s; v < n; v++) {
+				inComponent[v] &= forward[v] ;
+			}
+		}
+
+		private void reach(int s, int min, boolean[] mark, boolean forward) {
+			int[] queue = new int[n] ;
+			int head = 0, tail = 0 ;
+			queue[tail++] = s ;
+			mark[s] = true ;
+			while (head < tail) {
+				int v = queue[head++] ;
+				for (int e : forward ? outEdges.get(v) : inEdges.get(v)) {
+					int w = forward ? edgeTo[e] : edgeFrom[e] ;
+					if (w >= min && !mark[w]) {
+						mark[w] = true ;
+						queue[tail++] = w ;
+					}
+				}
+			}
+		}
+
+		private boolean circuit(int v, int s, int length) {
+			boolean found = false ;
+			blocked[v] = true ;
+			for (int e : outEdges.get(v)) {
+				int w = edgeTo[e] ;
+				if (!inComponent[w])
+					continue ;
+				stack[length] = e ;
+				if (w == s) {
+					cycles.add(Arrays.copyOf(stack, length + 1)) ;
+					found = true ;
+				}
+				else if (!blocked[w] && circuit(w, s, length + 1)) {
+					found = true ;
+				}
+			}
+			if (found) {
+				unblock(v) ;
+			}
+			else {
+				for (int e : outEdges.get(v)) {
+					int w = edgeTo[e] ;
+					if (inComponent[w])
+						blockedBy[w][v >>> 6] |= 1L << v ;
+				}
+			}
+			return found ;
+		}
+
+		private void unblock(int u) {
+			blocked[u] = false ;
+			long[] b = blockedBy[u] ;
+			for (int k = 0; k < b.length; k++) {
+				while (b[k] != 0L) {
+					long bit = b[k] & -b[k] ;
+					b[k] ^= bit ;
+					int w = (k << 6) + Long.numberOfTrailingZeros(bit) ;
+					if (blocked[w])
+						unblock(w) ;
+				}
+			}
+		}
+	}
+
+	//------------------------ evaluation ------------------------
+
+	/**
+	 * Index of <tt>Delta(C)</tt> for the set <tt>C</tt> of loops, -1 if <tt>C</tt> is empty.
+	 * A group of non-touching loops of <tt>C</tt> is either empty or made of its first loop
+	 * <tt>i</tt> and of a group of the loops after <tt>i</tt> which do not touch it, so
+	 * <tt>Delta(C) = 1 - sum(L_i * Delta(C & nonTouching[i]))</tt>. The distinct sets met by
+	 * this recursion are numbered once, after their children, and only their terms are kept.
+	 * The words of <tt>set</tt> before <tt>first</tt> are empty.
+	 */
+	private int deltaOf(long[] set, int first) {
+		boolean empty = true ;
+		int count = 0 ;
+		for (int k = first; k < loopWords; k++) {
+			empty &= set[k] == 0L ;
+			count += Long.bitCount(set[k]) ;
+		}
+		if (empty)
+			return -1 ;
+		LoopSet key = new LoopSet(set) ;
+		Integer index = deltaIndex.get(key) ;
+		if (index != null)
+			return index ;
+		int[] loops = new int[count], children = new int[count] ;
+		int c = 0 ;
+		for (int k = first; k < loopWords; k++) {
+			long word = set[k] ;
+			while (word != 0L) {
+				long bit = word & -word ;
+				word ^= bit ;
+				int i = (k << 6) + Long.numberOfTrailingZeros(bit) ;
+				long[] next = new long[loopWords] ;
+				for (int m = k; m < loopWords; m++) {
+					next[m] = set[m] & nonTouching[i][m] ;
+				}
+				loops[c] = i ;
+				children[c++] = deltaOf(next, k) ;
+			}
+		}
+		if (numTerms + count > termLoop.length) {
+			int size = Math.max(2 * termLoop.length, numTerms + count) ;
+			termLoop = Arrays.copyOf(termLoop, size) ;
+			termChild = Arrays.copyOf(termChild, size) ;
+		}
+		System.arraycopy(loops, 0, termLoop, numTerms, count) ;
+		System.arraycopy(children, 0, termChild, numTerms, count) ;
+		numTerms += count ;
+		if (numDeltas + 2 > termStart.length)
+			termStart = Arrays.copyOf(termStart, 2 * termStart.length) ;
+		termStart[numDeltas + 1] = numTerms ;
+		deltaIndex.put(key, numDeltas) ;
+		gainsUpdated = false ;
+		return numDeltas++ ;
+	}
+
+	private void updateGains() {
+		if (gainsUpdated)
+			return ;
+		double[] g = new double[2] ;
+		for (int i = 0; i < loopEdges.length; i++) {
+			product(loopEdges[i], g) ;
+			loopRe[i] = g[0] ;
+			loopIm[i] = g[1] ;
+		}
+		if (deltaRe.length < numDeltas) {
+			deltaRe = new double[termStart.length] ;
+			deltaIm = new double[termStart.length] ;
+		}
+		for (int s = 0; s < numDeltas; s++) {
+			double re = 1.0, im = 0.0 ;
+			for (int t = termStart[s]; t < termStart[s + 1]; t++) {
+				int i = termLoop[t], c = termChild[t] ;
+				if (c < 0) {
+					re -= loopRe[i] ;
+					im -= loopIm[i] ;
+				}
+				else {
+					re -= loopRe[i] * deltaRe[c] - loopIm[i] * deltaIm[c] ;
+					im -= loopRe[i] * deltaIm[c] + loopIm[i] * deltaRe[c] ;
+				}
+			}
+			deltaRe[s] = re ;
+			deltaIm[s] = im ;
+		}
+		gainsUpdated = true ;
+	}
+
+	private void product(int[] edges, double[] result) {
+		double re = 1.0, im = 0.0 ;
+		for (int e : edges) {
+			double r = re * edgeRe[e] - im * edgeIm[e] ;
+			im = re * edgeIm[e] + im * edgeRe[e] ;
+			re = r ;
+		}
+		result[0] = re ;
+		result[1] = im ;
+	}
+
+	private Complex delta(int index) {
+		return index < 0 ? Complex.ONE : new Complex(deltaRe[index], deltaIm[index]) ;
+	}
+
+	// sum(P_k * Delta_k) / Delta
+	private Complex transferGain(Transfer t) {
+		double re = 0.0, im = 0.0 ;
+		double[] g = new double[2] ;
+		for (int p = 0; p < t.pathEdges.length; p++) {
+			product(t.pathEdges[p], g) ;
+			int c = t.cofactors[p] ;
+			double dr = c < 0 ? 1.0 : deltaRe[c], di = c < 0 ? 0.0 : deltaIm[c] ;
+			re += g[0] * dr - g[1] * di ;
+			im += g[0] * di + g[1] * dr ;
+		}
+		return new Complex(re, im).divides(delta(rootDelta)) ;
+	}
+
+	private static class LoopSet {
+		final long[] words ;
+		final int hash ;
+
+		LoopSet(long[] words) {
+			this.words = words ;
+			this.hash = Arrays.hashCode(words) ;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash ;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof LoopSet && Arrays.equals(words, ((LoopSet) o).words) ;
+		}
+	}
+
+	//------------------------ helpers ------------------------
+
+	// nodes of a list of edges: the origins, and the end node 'last' of a path
+	private long[] nodeSet(int[] edges, int last) {
+		long[] set = new long[nodeWords] ;
+		for (int e : edges) {
+			set[edgeFrom[e] >>> 6] |= 1L << edgeFrom[e] ;
+		}
+		if (last >= 0)
+			set[last >>> 6] |= 1L << last ;
+		return set ;
+	}
+
+	private static boolean intersects(long[] a, long[] b) {
+		for (int k = 0; k < a.length; k++) {
+			if ((a[k] & b[k]) != 0L)
+				return true ;
+		}
+		return false ;
+	}
+
+	private String printEdges(int[] edges) {
+		StringBuilder sb = new StringBuilder(nodesName.get(edgeFrom[edges[0]])) ;
+		for (int e : edges) {
+			sb.append(" ").append(nodesName.get(edgeTo[e])) ;
+		}
+		return sb.toString() ;
+	}
+
+	private int findEdge(int from, int to) {
+		for (int e : outEdges.get(from)) {
+			if (edgeTo[e] == to)
+				return e ;
+		}
+		return -1 ;
+	}
+
+	private int indexOf(String node) {
+		int index = nodesName.indexOf(node) ;
+		if (index < 0)
+			throw new IllegalArgumentException("Unknown node: " + node) ;
+		return index + 1 ;
+	}
+
+	private void checkNode(int node) {
+		if (node < 1 || node > n)
+			throw new IllegalArgumentException("Node index out of range (base 1): " + node) ;
+	}
+}
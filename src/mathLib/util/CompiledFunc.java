@@ -10,6 +10,10 @@ import mathLib.func.symbolic.intf.MathFunc;
 public abstract class CompiledFunc {
 	//references to MathFunc objects
 	protected MathFunc[] funcRefs;
+	//value of the function if it is compiled to a field, see MathFunc.compileToStaticField()
+	protected double[] fieldValue;
+	//values of the functions compiled to a field which are read by this function, indexed as funcRefs
+	protected double[][] fieldRefs;
 
 	/**
 	 * This function should be implemented during compilation
@@ -45,4 +49,22 @@ public abstract class CompiledFunc {
 	public void setFuncRefs(MathFunc[] funcs) {
 		this.funcRefs = funcs;
 	}
+
+	/**
+	 * Set the array holding the value of the function compiled to a field,
+	 * it is written by each call of apply(...)
+	 * @param value
+	 */
+	public void setFieldValue(double[] value) {
+		this.fieldValue = value;
+	}
+
+	/**
+	 * Set the values of the functions compiled to a field which are read
+	 * by apply(...) instead of being evaluated
+	 * @param values
+	 */
+	public void setFieldRefs(double[][] values) {
+		this.fieldRefs = values;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,57 @@
+package mathLib.util;
+
+import mathLib.fem.assembler.AssembleParam;
+
+/**
+ * A compiled kernel evaluates several functions at once, e.g. all the entries of a local
+ * stiffness matrix and load vector of a weak form, in one generated method.
+ * Subexpressions shared by the functions (e.g. the Jacobian of the coordinate transform)
+ * are evaluated only once per call.
+ *
+ */
+public abstract class CompiledKernel extends CompiledFunc {
+	protected long opCountBefore;
+	protected long opCountAfter;
+
+	/**
+	 * Evaluate all the functions at <tt>args</tt> and accumulate them into <tt>out</tt>:
+	 * <code>out[k] += weight*f_k(args)</code>
+	 * <p>
+	 * This function is implemented during compilation
+	 *
+	 * @param ap parameters of the assembly, the DOF indices of each function are set in <tt>ap</tt>
+	 * before it is evaluated if <tt>ap</tt> is not null
+	 * @param args arguments defined in MathFunc
+	 * @param weight
+	 * @param out
+	 */
+	public abstract void accumulate(AssembleParam ap, double[] args, double weight, double[] out);
+
+	/**
+	 * A kernel has no single return value, use <tt>accumulate()</tt> instead
+	 */
+	@Override
+	public double apply(AssembleParam ap, double ...args) {
+		throw new UnsupportedOperationException("Use accumulate() for a compiled kernel");
+	}
+
+	public void setOpCount(long before, long after) {
+		this.opCountBefore = before;
+		this.opCountAfter = after;
+	}
+
+	/**
+	 * Number of operations of the functions evaluated one by one
+	 */
+	public long getOpCountBefore() {
+		return opCountBefore;
+	}
+
+	/**
+	 * Number of operations per call of <tt>accumulate()</tt> after common subexpression
+	 * elimination and simplification, see <tt>ExprOptimizer</tt>
+	 */
+	public long getOpCountAfter() {
+		return opCountAfter;
+	}
+}
@@ -0,0 +1,89 @@
+package tests;
+
+import mathLib.matrix.algebra.CompressedRowMatrix;
+import mathLib.matrix.algebra.FullVector;
+import mathLib.matrix.algebra.SparseMatrixCSR;
+import mathLib.matrix.algebra.solver.AMGPreconditioner;
+import mathLib.matrix.algebra.solver.ILU0Preconditioner;
+import mathLib.matrix.algebra.solver.Solver;
+
+/**
+ * Iteration counts of CG with AMG and ILU0 preconditioners and of standalone AMG
+ * for the P1 Laplacian on structured triangular meshes of increasing size
+ */
+public class TestAMG {
+
+	static double[][] localStiff = {
+			{ 1.0, -0.5, -0.5},
+			{-0.5,  0.5,  0.0},
+			{-0.5,  0.0,  0.5}
+	};
+
+	/**
+	 * P1 stiffness matrix on n*n squares, Dirichlet rows on the boundary
+	 */
+	static SparseMatrixCSR laplaceP1(int n) {
+		int dim = (n+1)*(n+1);
+		SparseMatrixCSR A = new SparseMatrixCSR(dim, dim);
+		int[] idx = new int[3];
+		for(int j=0; j<n; j++) {
+			for(int i=0; i<n; i++) {
+				int n1 = j*(n+1)+i+1;
+				int n2 = n1+1;
+				int n3 = n1+n+1;
+				int n4 = n3+1;
+				for(int t=0; t<2; t++) {
+					if(t == 0) {
+						idx[0] = n1; idx[1] = n2; idx[2] = n3;
+					} else {
+						idx[0] = n4; idx[1] = n3; idx[2] = n2;
+					}
+					for(int r=0; r<3; r++) {
+						if(isBoundary(idx[r], n)) continue;
+						for(int c=0; c<3; c++) {
+							if(!isBoundary(idx[c], n))
+								A.add(idx[r], idx[c], localStiff[r][c]);
+						}
+					}
+				}
+			}
+		}
+		for(int k=1; k<=dim; k++)
+			if(isBoundary(k, n)) A.set(k, k, 1.0);
+		A.compact();
+		return A;
+	}
+
+	static boolean isBoundary(int node, int n) {
+		int i = (node-1)%(n+1), j = (node-1)/(n+1);
+		return i == 0 || j == 0 || i == n || j == n;
+	}
+
+	public static void main(String[] args) {
+		Solver solver = new Solver();
+		solver.epsRelIter = 1e-10;
+		for(int n : new int[]{64, 128, 256, 512}) {
+			CompressedRowMatrix A = laplaceP1(n).getCompressedRowMatrix();
+			int dim = A.getRowDim();
+			FullVector b = new FullVector(dim, 1.0/(n*n));
+
+			long begin = System.nanoTime();
+			AMGPreconditioner amg = new AMGPreconditioner(A);
+			double setup = (System.nanoTime()-begin)*1e-6;
+			System.out.println(String.format("n=%d, dim=%d, AMG setup=%.1fms", n, dim, setup));
+			System.out.println(amg);
+
+			solver.solveCG(A, b, new FullVector(dim), new ILU0Preconditioner(A));
+			System.out.println("  "+solver.getStatistics());
+			solver.solveCG(A, b, new FullVector(dim), amg);
+			System.out.println("  "+solver.getStatistics());
+			amg.solve(b, new FullVector(dim));
+			System.out.println("  "+amg.getStatistics());
+
+			//numeric update with the same structure keeps the aggregates
+			begin = System.nanoTime();
+			amg.update(A);
+			System.out.println(String.format("  AMG update=%.1fms", (System.nanoTime()-begin)*1e-6));
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package tests;
+
+import static mathLib.func.symbolic.FMath.x;
+import static mathLib.func.symbolic.FMath.y;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import mathLib.func.symbolic.basic.FX;
+import mathLib.func.symbolic.intf.MathFunc;
+import mathLib.util.CompiledFunc;
+
+/**
+ * A compiled function containing both a composed function and a shared subexpression:
+ * the local variable of the composed function must not overlap with the one of the
+ * shared subexpression (r+s)
+ */
+public class TestCompileComposite {
+	public static void main(String[] args) {
+		MathFunc r = new FX("r") ;
+		MathFunc s = new FX("s") ;
+		Map<String, MathFunc> map = new HashMap<String, MathFunc>() ;
+		map.put("x", r+s) ;
+		map.put("y", r-s) ;
+		MathFunc g = (x*x + y).compose(map) ;
+		MathFunc h = g*(r+s) + (r+s)*(r+s) ;
+
+		CompiledFunc ch = h.compileWithASM("r", "s") ;
+		double maxDiff = 0.0 ;
+		for(double rv=-1.0; rv<=1.0; rv+=0.25)
+			for(double sv=-1.0; sv<=1.0; sv+=0.25)
+				maxDiff = Math.max(maxDiff, Math.abs(ch.apply(rv, sv) - h.apply(rv, sv))) ;
+		System.out.println(h + ", max difference = " + maxDiff);
+		if(maxDiff > 1e-12)
+			throw new RuntimeException("compiled and interpreted values differ: " + maxDiff);
+		System.out.println("PASSED");
+	}
+}
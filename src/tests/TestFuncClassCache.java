@@ -0,0 +1,63 @@
+package tests;
+
+import static mathLib.func.symbolic.FMath.x;
+import static mathLib.func.symbolic.FMath.y;
+
+import mathLib.fem.assembler.BasicAssembler;
+import mathLib.fem.core.Mesh;
+import mathLib.fem.element.FELinearTriangle;
+import mathLib.fem.mesh.Mesh2DRect;
+import mathLib.fem.util.FuncClassCache;
+import mathLib.fem.weakform.WeakForm;
+import mathLib.func.symbolic.intf.MathFunc;
+import mathLib.geometry.algebra.Point;
+import mathLib.matrix.algebra.intf.Matrix;
+
+/**
+ * Compiling a weak form again must reuse the classes generated the first time, including
+ * the class of the Jacobian compiled to a field, and assemble the same matrix
+ */
+public class TestFuncClassCache {
+	public static void main(String[] args) {
+		Mesh mesh = new Mesh2DRect(Point.getInstance(0.0, 0.0), Point.getInstance(1.0, 1.0), 5, 5).getMesh() ;
+		mesh.computeNodeBelongsToElements();
+		MathFunc k = 1.0 + x*y ;
+
+		FuncClassCache cache = FuncClassCache.getInstance() ;
+		WeakForm wf = getWeakForm(k) ;
+		wf.compile();
+		Matrix A1 = assemble(mesh, wf) ;
+		System.out.println("first compile: " + cache);
+
+		int misses = cache.getMisses() ;
+		int hits = cache.getHits() ;
+		wf.compile();
+		Matrix A2 = assemble(mesh, wf) ;
+		System.out.println("second compile: " + cache);
+		if(cache.getMisses() != misses || cache.getHits() == hits)
+			throw new RuntimeException("the second compile() generated new classes");
+
+		double maxDiff = 0.0 ;
+		for(int i=1; i<=A1.getRowDim(); i++)
+			for(int j=1; j<=A1.getColDim(); j++)
+				maxDiff = Math.max(maxDiff, Math.abs(A1.get(i, j)-A2.get(i, j))) ;
+		System.out.println("max difference = " + maxDiff);
+		if(maxDiff > 1e-12)
+			throw new RuntimeException("the cached classes assemble a different matrix: " + maxDiff);
+		System.out.println("PASSED");
+	}
+
+	static WeakForm getWeakForm(MathFunc k) {
+		return new WeakForm(new FELinearTriangle(),
+				(u, v) -> k * (u.diff("x")*v.diff("x") + u.diff("y")*v.diff("y")),
+				v -> v
+			) ;
+	}
+
+	static Matrix assemble(Mesh mesh, WeakForm wf) {
+		wf.setUseKernel(false);
+		BasicAssembler assembler = new BasicAssembler(mesh, wf) ;
+		assembler.assembleGlobal();
+		return assembler.getGlobalStiffMatrix() ;
+	}
+}
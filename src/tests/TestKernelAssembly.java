@@ -0,0 +1,71 @@
+package tests;
+
+import static mathLib.func.symbolic.FMath.x;
+import static mathLib.func.symbolic.FMath.y;
+
+import mathLib.fem.assembler.BasicAssembler;
+import mathLib.fem.core.Mesh;
+import mathLib.fem.element.FELinearLine1D;
+import mathLib.fem.element.FELinearTriangle;
+import mathLib.fem.mesh.Mesh2DRect;
+import mathLib.fem.tutorial.Ex8_AdvectionDiffusion1D;
+import mathLib.fem.weakform.WeakForm;
+import mathLib.func.symbolic.intf.MathFunc;
+import mathLib.geometry.algebra.Point;
+import mathLib.matrix.algebra.intf.Matrix;
+import mathLib.matrix.algebra.intf.Vector;
+
+/**
+ * The compiled kernel must assemble the same system as the entry by entry integration,
+ * also when the weak form contains a user defined function reading the DOF indices of
+ * <tt>AssembleParam</tt> (upwind coefficient of Ex8) or a coefficient composed with the
+ * coordinate transform (2D, k=1+x*y)
+ */
+public class TestKernelAssembly {
+	public static void main(String[] args) {
+		Mesh mesh = Ex8_AdvectionDiffusion1D.getMesh(1.0, 10) ;
+		mesh.computeNodeBelongsToElements();
+		WeakForm wf = Ex8_AdvectionDiffusion1D.getUpwindWeakForm(new FELinearLine1D(), 1.0, 20.0) ;
+		check("1D upwind", mesh, wf) ;
+
+		Mesh mesh2D = new Mesh2DRect(Point.getInstance(0.0, 0.0), Point.getInstance(1.0, 1.0), 6, 6).getMesh() ;
+		mesh2D.computeNodeBelongsToElements();
+		MathFunc k = 1.0 + x*y ;
+		MathFunc f = x*y ;
+		WeakForm wf2D = new WeakForm(new FELinearTriangle(),
+				(u, v) -> k * (u.diff("x")*v.diff("x") + u.diff("y")*v.diff("y")),
+				v -> f * v
+			) ;
+		wf2D.compile();
+		check("2D variable coefficient", mesh2D, wf2D) ;
+		System.out.println("PASSED");
+	}
+
+	static void check(String name, Mesh mesh, WeakForm wf) {
+		System.out.println(name + ", kernel available: " + (wf.getCompiledKernel() != null));
+		if(wf.getCompiledKernel() == null)
+			throw new RuntimeException(name + ": the kernel cannot be compiled");
+
+		wf.setUseKernel(true);
+		BasicAssembler withKernel = new BasicAssembler(mesh, wf) ;
+		withKernel.assembleGlobal();
+		Matrix A1 = withKernel.getGlobalStiffMatrix() ;
+		Vector b1 = withKernel.getGlobalLoadVector() ;
+
+		wf.setUseKernel(false);
+		BasicAssembler withoutKernel = new BasicAssembler(mesh, wf) ;
+		withoutKernel.assembleGlobal();
+		Matrix A2 = withoutKernel.getGlobalStiffMatrix() ;
+		Vector b2 = withoutKernel.getGlobalLoadVector() ;
+
+		double maxDiff = 0.0 ;
+		for(int i=1; i<=A1.getRowDim(); i++) {
+			for(int j=1; j<=A1.getColDim(); j++)
+				maxDiff = Math.max(maxDiff, Math.abs(A1.get(i, j)-A2.get(i, j))) ;
+			maxDiff = Math.max(maxDiff, Math.abs(b1.get(i)-b2.get(i))) ;
+		}
+		System.out.println(name + ", max difference = " + maxDiff);
+		if(maxDiff > 1e-12)
+			throw new RuntimeException(name + ": kernel and entry by entry assembly differ: " + maxDiff);
+	}
+}
@@ -0,0 +1,152 @@
+package tests;
+
+import mathLib.fem.NonlinearFEMProblem;
+import mathLib.fem.NonlinearFEMSolver;
+import mathLib.fem.assembler.SparsityPattern;
+import mathLib.matrix.algebra.SparseMatrixCSR;
+
+/**
+ * 1D Burgers equation with linear elements on [0,1], u=0 at both ends:
+ * <blockquote><pre>
+ *   steady:   -nu*u'' + u*u' = 1, nu=0.1
+ *   unsteady: u_t - nu*u'' + u*u' = 0, u(x,0) = sin(pi*x), nu=0.01, dt=0.01
+ * </pre></blockquote>
+ * Picard and Newton iterations must converge to the same discrete solution,
+ * reusing the factorization of the previous iterations
+ */
+public class TestNonlinearBurgers {
+
+	static class Burgers implements NonlinearFEMProblem {
+		SparsityPattern pattern;
+		int nEle;
+		double h, nu, f, dt;
+
+		Burgers(SparsityPattern pattern, int nEle, double nu, double f, double dt) {
+			this.pattern = pattern;
+			this.nEle = nEle;
+			this.h = 1.0/nEle;
+			this.nu = nu;
+			this.f = f;
+			this.dt = dt;
+		}
+
+		@Override
+		public void assembleLinear(SparseMatrixCSR A, double[] b) {
+			double[] data = A.getData();
+			for(int k=0; k<nEle; k++) {
+				int[] pos = pattern.getElementPositions(k);
+				for(int j=0; j<2; j++) {
+					for(int i=0; i<2; i++) {
+						data[pos[j*2+i]] += (i == j ? 1.0 : -1.0)*nu/h;
+						if(dt > 0.0)
+							data[pos[j*2+i]] += (i == j ? 2.0 : 1.0)*h/6.0/dt;
+					}
+					b[k+j] += f*h/2.0;
+				}
+			}
+		}
+
+		@Override
+		public void assembleNonlinear(double[] u, SparseMatrixCSR A, double[] b) {
+			//(U*u',v) with U the current iterate
+			double[] data = A.getData();
+			for(int k=0; k<nEle; k++) {
+				int[] pos = pattern.getElementPositions(k);
+				for(int j=0; j<2; j++) {
+					double intUv = (2.0*u[k+j] + u[k+1-j])*h/6.0;
+					data[pos[j*2]]   -= intUv/h;
+					data[pos[j*2+1]] += intUv/h;
+				}
+			}
+		}
+
+		@Override
+		public void assembleTimeStep(double[] uOld, double[] b) {
+			for(int k=0; k<nEle; k++)
+				for(int j=0; j<2; j++)
+					b[k+j] += (2.0*uOld[k+j] + uOld[k+1-j])*h/6.0/dt;
+		}
+
+		@Override
+		public void assembleJacobian(double[] u, SparseMatrixCSR J) {
+			//(du*u',v)
+			double[] data = J.getData();
+			for(int k=0; k<nEle; k++) {
+				int[] pos = pattern.getElementPositions(k);
+				double du = (u[k+1]-u[k])/h;
+				for(int j=0; j<2; j++)
+					for(int i=0; i<2; i++)
+						data[pos[j*2+i]] += du*(i == j ? 2.0 : 1.0)*h/6.0;
+			}
+		}
+	}
+
+	static NonlinearFEMSolver createSolver(SparsityPattern pattern, Burgers problem,
+			NonlinearFEMSolver.Method method) {
+		NonlinearFEMSolver solver = new NonlinearFEMSolver(pattern, problem);
+		solver.setMethod(method);
+		solver.setTolerance(1e-12);
+		solver.setMaxIterations(100);
+		solver.setDirichlet(new int[] {1, pattern.getDim()}, new double[] {0.0, 0.0});
+		return solver;
+	}
+
+	static double maxDiff(double[] a, double[] b) {
+		double max = 0.0;
+		for(int i=0; i<a.length; i++)
+			max = Math.max(max, Math.abs(a[i]-b[i]));
+		return max;
+	}
+
+	static String report(NonlinearFEMSolver solver) {
+		return "converged="+solver.isConverged()+", iterations="+solver.getIterations()+
+				", factorizations="+solver.getNumberOfFactorizations()+
+				", linear solves="+solver.getNumberOfLinearSolves()+
+				", GMRES iterations="+solver.getNumberOfLinearIterations();
+	}
+
+	public static void main(String[] args) {
+		int nEle = 200;
+		int[][] elementDOFs = new int[nEle][];
+		for(int k=0; k<nEle; k++)
+			elementDOFs[k] = new int[] {k, k+1};
+		SparsityPattern pattern = new SparsityPattern(nEle+1, elementDOFs);
+
+		//steady
+		Burgers steady = new Burgers(pattern, nEle, 0.1, 1.0, 0.0);
+		double[] u0 = new double[nEle+1];
+		NonlinearFEMSolver picard = createSolver(pattern, steady, NonlinearFEMSolver.Method.PICARD);
+		double[] uPicard = picard.solve(u0);
+		System.out.println("steady Picard: "+report(picard));
+		NonlinearFEMSolver newton = createSolver(pattern, steady, NonlinearFEMSolver.Method.NEWTON);
+		double[] uNewton = newton.solve(u0);
+		System.out.println("steady Newton: "+report(newton));
+		double steadyDiff = maxDiff(uPicard, uNewton);
+		System.out.println("steady max|Picard-Newton| = "+steadyDiff);
+		if(!picard.isConverged() || !newton.isConverged() || steadyDiff > 1e-8)
+			throw new RuntimeException("steady Burgers: Picard and Newton differ: "+steadyDiff);
+
+		//unsteady
+		Burgers unsteady = new Burgers(pattern, nEle, 0.01, 0.0, 0.01);
+		double[] uP = new double[nEle+1];
+		for(int i=0; i<=nEle; i++)
+			uP[i] = Math.sin(Math.PI*i/nEle);
+		double[] uN = uP.clone();
+		picard = createSolver(pattern, unsteady, NonlinearFEMSolver.Method.PICARD);
+		newton = createSolver(pattern, unsteady, NonlinearFEMSolver.Method.NEWTON);
+		double unsteadyDiff = 0.0;
+		for(int t=1; t<=40; t++) {
+			uP = picard.step(uP);
+			uN = newton.step(uN);
+			if(!picard.isConverged() || !newton.isConverged())
+				throw new RuntimeException("unsteady Burgers: step "+t+" not converged");
+			unsteadyDiff = Math.max(unsteadyDiff, maxDiff(uP, uN));
+		}
+		System.out.println("unsteady Picard: "+report(picard));
+		System.out.println("unsteady Newton: "+report(newton));
+		System.out.println("unsteady max|Picard-Newton| = "+unsteadyDiff);
+		if(unsteadyDiff > 1e-8)
+			throw new RuntimeException("unsteady Burgers: Picard and Newton differ: "+unsteadyDiff);
+		System.out.println("PASSED");
+	}
+}
@@ -0,0 +1,76 @@
+package tests;
+
+import mathLib.matrix.algebra.CompressedRowMatrix;
+import mathLib.matrix.algebra.FullVector;
+import mathLib.matrix.algebra.SparseMatrixCSR;
+import mathLib.matrix.algebra.solver.Preconditioner;
+import mathLib.matrix.algebra.solver.PreconditionerType;
+import mathLib.matrix.algebra.solver.Solver;
+
+/**
+ * Iteration counts and times of the Krylov solvers with different preconditioners
+ * on the 5-point Laplacian (symmetric) and a convection-diffusion operator (unsymmetric)
+ */
+public class TestPreconditionedSolvers {
+
+	static SparseMatrixCSR laplace(int n, double conv) {
+		int dim = n*n;
+		SparseMatrixCSR A = new SparseMatrixCSR(dim, dim);
+		for(int j=0; j<n; j++) {
+			for(int i=0; i<n; i++) {
+				int r = j*n+i+1;
+				A.add(r, r, 4.0);
+				if(i > 0)   A.add(r, r-1, -1.0-conv);
+				if(i < n-1) A.add(r, r+1, -1.0+conv);
+				if(j > 0)   A.add(r, r-n, -1.0);
+				if(j < n-1) A.add(r, r+n, -1.0);
+			}
+		}
+		A.compact();
+		return A;
+	}
+
+	static void run(Solver solver, String method, CompressedRowMatrix A, PreconditionerType type) {
+		int dim = A.getRowDim();
+		FullVector b = new FullVector(dim, 1.0);
+		FullVector x = new FullVector(dim);
+		long begin = System.nanoTime();
+		Preconditioner M = type.create(A);
+		long setup = System.nanoTime()-begin;
+		if(method.equals("CG"))
+			solver.solveCG(A, b, x, M);
+		else if(method.equals("CGS"))
+			solver.solveCGS(A, b, x, M);
+		else if(method.equals("GMRES"))
+			solver.solveGMRES(A, b, x, M);
+		else
+			solver.solveBiCGStab(A, b, x, M);
+		FullVector r = new FullVector(dim);
+		A.mult(x, r);
+		r.axpy(-1.0, b);
+		System.out.println(String.format("%-28s setup=%6.1fms  %s  |b-Ax|=%8.3e",
+				method+"+"+type, setup*1e-6, solver.getStatistics(), r.norm2()));
+		//a solver reporting convergence must meet the tolerance with the true residual
+		if(solver.getStatistics().isConverged() && r.norm2() > solver.epsAbsIterMax)
+			throw new RuntimeException(method+"+"+type+" converged with |b-Ax|="+r.norm2());
+	}
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		Solver solver = new Solver();
+		solver.epsRelIter = 1e-10;
+		solver.epsAbsIterMax = 1e-6;
+		solver.maxIter = 5000;
+
+		System.out.println("Laplacian "+n+"x"+n);
+		CompressedRowMatrix A = laplace(n, 0.0).getCompressedRowMatrix();
+		for(PreconditionerType type : PreconditionerType.values())
+			run(solver, "CG", A, type);
+
+		System.out.println("Convection-diffusion "+n+"x"+n);
+		CompressedRowMatrix B = laplace(n, 0.1).getCompressedRowMatrix();
+		for(String method : new String[]{"CGS", "BiCGStab", "GMRES"})
+			for(PreconditionerType type : PreconditionerType.values())
+				run(solver, method, B, type);
+	}
+}
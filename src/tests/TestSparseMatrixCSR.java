@@ -0,0 +1,114 @@
+package tests;
+
+import mathLib.matrix.algebra.SparseMatrixCSR;
+import mathLib.matrix.algebra.SparseMatrixRowMajor;
+import mathLib.matrix.algebra.SparseVectorHashMap;
+import mathLib.matrix.algebra.intf.MatrixEntry;
+import mathLib.matrix.algebra.intf.SparseMatrix;
+import mathLib.matrix.algebra.intf.Vector;
+
+/**
+ * Memory and throughput comparison of <tt>SparseMatrixCSR</tt> against <tt>SparseMatrixRowMajor</tt>
+ * on the pattern of a P1 assembly on a structured triangular mesh
+ */
+public class TestSparseMatrixCSR {
+
+	static double[][] localStiff = {
+			{ 1.0, -0.5, -0.5},
+			{-0.5,  0.5,  0.0},
+			{-0.5,  0.0,  0.5}
+	};
+
+	/**
+	 * Assemble n*n squares, each square is split into two triangles
+	 */
+	static void assemble(SparseMatrix A, int n) {
+		int[] idx = new int[3];
+		for(int j=0; j<n; j++) {
+			for(int i=0; i<n; i++) {
+				int n1 = j*(n+1)+i+1;
+				int n2 = n1+1;
+				int n3 = n1+n+1;
+				int n4 = n3+1;
+				for(int t=0; t<2; t++) {
+					if(t == 0) {
+						idx[0] = n1; idx[1] = n2; idx[2] = n3;
+					} else {
+						idx[0] = n4; idx[1] = n3; idx[2] = n2;
+					}
+					for(int r=0; r<3; r++)
+						for(int c=0; c<3; c++)
+							A.add(idx[r], idx[c], localStiff[r][c]);
+				}
+			}
+		}
+	}
+
+	static long usedMemory() {
+		Runtime rt = Runtime.getRuntime();
+		for(int i=0; i<3; i++) System.gc();
+		return rt.totalMemory()-rt.freeMemory();
+	}
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+		int dim = (n+1)*(n+1);
+		System.out.println("Mesh "+n+"x"+n+", dim="+dim);
+
+		long mem0 = usedMemory();
+		long begin = System.currentTimeMillis();
+		SparseMatrixRowMajor hashA = new SparseMatrixRowMajor(dim, dim);
+		assemble(hashA, n);
+		long tHash = System.currentTimeMillis()-begin;
+		long memHash = usedMemory()-mem0;
+
+		mem0 = usedMemory();
+		begin = System.currentTimeMillis();
+		SparseMatrixCSR csrA = new SparseMatrixCSR(dim, dim);
+		assemble(csrA, n);
+		csrA.compact();
+		long tCSR = System.currentTimeMillis()-begin;
+		long memCSR = usedMemory()-mem0;
+
+		//second assembly into an existing pattern
+		begin = System.currentTimeMillis();
+		csrA.zeroData();
+		assemble(csrA, n);
+		long tCSR2 = System.currentTimeMillis()-begin;
+
+		System.out.println(String.format("Assembly:  RowMajor=%dms, CSR=%dms, CSR(reuse pattern)=%dms", tHash, tCSR, tCSR2));
+		System.out.println(String.format("Memory:    RowMajor=%.1fMB, CSR=%.1fMB",
+				memHash/1048576.0, memCSR/1048576.0));
+		System.out.println("NNZ: RowMajor="+hashA.getNonZeroNumber()+", CSR="+csrA.getNonZeroNumber()+
+				" (stored entries="+csrA.getNumberOfStoredEntries()+")");
+		if(hashA.getNonZeroNumber() != csrA.getNonZeroNumber())
+			throw new RuntimeException("NNZ differs: RowMajor="+hashA.getNonZeroNumber()+", CSR="+csrA.getNonZeroNumber());
+
+		double maxDiff = 0.0;
+		for(MatrixEntry e : hashA) {
+			maxDiff = Math.max(maxDiff, Math.abs(e.getValue()-csrA.get(e.getRow(), e.getCol())));
+		}
+		System.out.println("Max entry difference: "+maxDiff);
+
+		Vector x = new SparseVectorHashMap(dim);
+		for(int i=1; i<=dim; i++) x.set(i, Math.sin(i));
+		Vector y1 = new SparseVectorHashMap(dim);
+		Vector y2 = new SparseVectorHashMap(dim);
+		begin = System.currentTimeMillis();
+		for(int k=0; k<10; k++) hashA.mult(x, y1);
+		long mHash = System.currentTimeMillis()-begin;
+		double[] xd = new double[dim];
+		double[] yd = new double[dim];
+		for(int i=0; i<dim; i++) xd[i] = x.get(i+1);
+		begin = System.currentTimeMillis();
+		for(int k=0; k<10; k++) csrA.mult(xd, yd);
+		long mCSR = System.currentTimeMillis()-begin;
+		csrA.mult(x, y2);
+		maxDiff = 0.0;
+		for(int i=1; i<=dim; i++) {
+			maxDiff = Math.max(maxDiff, Math.abs(y1.get(i)-y2.get(i)));
+			maxDiff = Math.max(maxDiff, Math.abs(y1.get(i)-yd[i-1]));
+		}
+		System.out.println(String.format("10 x mult: RowMajor=%dms, CSR=%dms, max difference=%g", mHash, mCSR, maxDiff));
+	}
+}
@@ -0,0 +1,144 @@
+package tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import mathLib.func.special.BesselFunction;
+import mathLib.func.special.GammaFunction;
+import mathLib.func.special.ModifiedBesselFunction;
+import mathLib.func.special.SphericalBesselFunction;
+import mathLib.numbers.Complex;
+import mathLib.util.MathUtils;
+import mathLib.util.Timer;
+
+public class TestSpecialFunctionBatch {
+	public static void main(String[] args) throws Exception {
+		int nmax = 20 ;
+		double[] x = MathUtils.linspace(0.05, 50.0, 2000) ;
+
+		// scalar path: one call per (order, argument)
+		BesselFunction bessel = new BesselFunction() ;
+		double[][] jScalar = new double[x.length][nmax+1] ;
+		double[][] yScalar = new double[x.length][nmax+1] ;
+		Timer timer1 = new Timer() ;
+		timer1.start();
+		for(int i=0; i<x.length; i++)
+			for(int n=0; n<=nmax; n++) {
+				jScalar[i][n] = bessel.jn(n, x[i]) ;
+				yScalar[i][n] = bessel.yn(n, x[i]) ;
+			}
+		timer1.stop();
+		System.out.print("scalar Jn, Yn: ");
+		timer1.show();
+
+		// batch path: all the orders at once by recurrence
+		Timer timer2 = new Timer() ;
+		timer2.start();
+		double[][] j = BesselFunction.jnAll(nmax, x) ;
+		double[][] y = BesselFunction.ynAll(nmax, x) ;
+		timer2.stop();
+		System.out.print("batch Jn, Yn: ");
+		timer2.show();
+		System.out.println("max Jn difference = " + maxDiff(j, jScalar));
+		System.out.println("max Yn difference = " + maxDiff(y, yScalar));
+
+		// Wronskian J(n+1)*Y(n) - J(n)*Y(n+1) = 2/(pi*x) of the batch values
+		double wronskian = 0.0 ;
+		for(int i=0; i<x.length; i++)
+			for(int n=0; n<nmax; n++) {
+				double w = j[i][n+1]*y[i][n] - j[i][n]*y[i][n+1] ;
+				wronskian = Math.max(wronskian, Math.abs(w*Math.PI*x[i]/2.0 - 1.0)) ;
+			}
+		System.out.println("max relative Wronskian error = " + wronskian);
+
+		// modified and spherical Bessel functions
+		ModifiedBesselFunction modified = new ModifiedBesselFunction() ;
+		SphericalBesselFunction spherical = new SphericalBesselFunction() ;
+		double[][] in = ModifiedBesselFunction.inAll(nmax, x) ;
+		double[][] kn = ModifiedBesselFunction.knAll(nmax, x) ;
+		double[][] jsph = SphericalBesselFunction.jnAll(nmax, x) ;
+		double iErr = 0.0, kErr = 0.0, jsphErr = 0.0 ;
+		for(int i=0; i<x.length; i+=50)
+			for(int n=0; n<=nmax; n++) {
+				iErr = Math.max(iErr, relDiff(in[i][n], modified.in(n, x[i]))) ;
+				kErr = Math.max(kErr, relDiff(kn[i][n], modified.kn(n, x[i]))) ;
+				jsphErr = Math.max(jsphErr, Math.abs(jsph[i][n] - spherical.jn(n, x[i]))) ;
+			}
+		System.out.println("max relative In difference = " + iErr);
+		System.out.println("max relative Kn difference = " + kErr);
+		System.out.println("max |jn difference| (spherical) = " + jsphErr);
+
+		// complex arguments
+		Complex z = new Complex(3.0, 2.0) ;
+		Complex[] jz = BesselFunction.jnAll(nmax, z) ;
+		Complex[] jzScalar = new Complex[nmax+1] ;
+		for(int n=0; n<=nmax; n++)
+			jzScalar[n] = bessel.jn(n, z) ;
+		double jzErr = 0.0 ;
+		for(int n=0; n<=nmax; n++)
+			jzErr = Math.max(jzErr, Math.hypot(jz[n].re()-jzScalar[n].re(), jz[n].im()-jzScalar[n].im())) ;
+		System.out.println("max |Jn(3+2i) difference| = " + jzErr);
+
+		// Gamma function
+		GammaFunction gammaFunc = new GammaFunction() ;
+		double[] t = MathUtils.linspace(0.1, 20.0, 200) ;
+		Timer timer3 = new Timer() ;
+		timer3.start();
+		double[] g = GammaFunction.gamma(t) ;
+		timer3.stop();
+		System.out.print("batch Gamma: ");
+		timer3.show();
+		double gammaErr = 0.0 ;
+		Timer timer4 = new Timer() ;
+		timer4.start();
+		for(int i=0; i<t.length; i++)
+			gammaErr = Math.max(gammaErr, relDiff(g[i], gammaFunc.gamma(t[i]))) ;
+		timer4.stop();
+		System.out.print("scalar Gamma: ");
+		timer4.show();
+		System.out.println("max relative Gamma difference = " + gammaErr);
+		System.out.println("Gamma(1+i) = " + GammaFunction.gamma(new Complex[] {new Complex(1.0, 1.0)})[0]);
+
+		// the static methods keep no state: split the arguments between threads
+		int nThreads = Runtime.getRuntime().availableProcessors() ;
+		ExecutorService executor = Executors.newFixedThreadPool(nThreads) ;
+		double[][] jParallel = new double[x.length][] ;
+		Timer timer5 = new Timer() ;
+		timer5.start();
+		List<Future<?>> futures = new ArrayList<>() ;
+		int chunk = (x.length + nThreads - 1)/nThreads ;
+		for(int k=0; k<nThreads; k++) {
+			final int from = k*chunk, to = Math.min(x.length, from+chunk) ;
+			futures.add(executor.submit(() -> {
+				for(int i=from; i<to; i++)
+					jParallel[i] = BesselFunction.jnAll(nmax, x[i]) ;
+			})) ;
+		}
+		for(Future<?> f : futures)
+			f.get() ;
+		timer5.stop();
+		executor.shutdown();
+		System.out.print("batch Jn on " + nThreads + " threads: ");
+		timer5.show();
+		System.out.println("max Jn difference = " + maxDiff(jParallel, j));
+	}
+
+	// absolute difference for |b|<1, relative above
+	static double maxDiff(double[][] a, double[][] b) {
+		double max = 0.0 ;
+		for(int i=0; i<a.length; i++)
+			for(int n=0; n<a[i].length; n++)
+				if(Double.isFinite(b[i][n]))
+					max = Math.max(max, Math.abs(a[i][n]-b[i][n])/Math.max(1.0, Math.abs(b[i][n]))) ;
+		return max ;
+	}
+
+	static double relDiff(double a, double b) {
+		if(!Double.isFinite(b) || b==0.0)
+			return 0.0 ;
+		return Math.abs(a-b)/Math.abs(b) ;
+	}
+}
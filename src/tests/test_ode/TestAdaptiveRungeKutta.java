@@ -0,0 +1,31 @@
+package tests.test_ode;
+
+import mathLib.ode.solvers.AdaptiveRungeKutta;
+import mathLib.ode.solvers.DerivnFunction;
+import mathLib.util.MathUtils;
+
+public class TestAdaptiveRungeKutta {
+
+	public static void main(String[] args) {
+		test1() ;
+	}
+
+	// y'' = -y , y(0) = 0 , y'(0) = 1 : the output points must be as accurate as the integration
+	public static void test1() {
+		DerivnFunction func = (x,y) -> new double[] {y[1], -y[0]} ;
+		double[] x = MathUtils.linspace(0.05, 10.0, 200) ;
+		for(AdaptiveRungeKutta.Method method : AdaptiveRungeKutta.Method.values()) {
+			AdaptiveRungeKutta solver = new AdaptiveRungeKutta(func, 0.0, new double[] {0.0, 1.0}, method) ;
+			solver.setTolerances(1e-10, 1e-12) ;
+			double[][] y = solver.integrate(x) ;
+			double maxErr = 0.0 ;
+			for(int i=0; i<x.length; i++)
+				maxErr = Math.max(maxErr, Math.abs(y[0][i] - Math.sin(x[i]))) ;
+			System.out.println(method + ": max error = " + maxErr + ", steps = " + solver.getNumberOfSteps()) ;
+			if(maxErr > 1e-9)
+				throw new RuntimeException(method + ": error at the output points " + maxErr) ;
+		}
+		System.out.println("PASSED") ;
+	}
+
+}